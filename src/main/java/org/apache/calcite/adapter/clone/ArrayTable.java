@@ -21,6 +21,7 @@ import org.apache.calcite.adapter.java.AbstractQueryableTable;
 import org.apache.calcite.linq4j.AbstractEnumerable;
 import org.apache.calcite.linq4j.Enumerable;
 import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.Linq4j;
 import org.apache.calcite.linq4j.Ord;
 import org.apache.calcite.linq4j.QueryProvider;
 import org.apache.calcite.linq4j.Queryable;
@@ -30,24 +31,43 @@ import org.apache.calcite.rel.RelCollations;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeFactory;
 import org.apache.calcite.rel.type.RelProtoDataType;
+import org.apache.calcite.schema.IndexableTable;
+import org.apache.calcite.schema.SampleableTable;
 import org.apache.calcite.schema.ScannableTable;
 import org.apache.calcite.schema.SchemaPlus;
 import org.apache.calcite.schema.Statistic;
 import org.apache.calcite.schema.Statistics;
+import org.apache.calcite.schema.VersionedTable;
 import org.apache.calcite.schema.impl.AbstractTableQueryable;
+import org.apache.calcite.sql.SqlKind;
 import org.apache.calcite.util.ImmutableBitSet;
 import org.apache.calcite.util.Pair;
 
 import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 
 import java.lang.reflect.Array;
 import java.lang.reflect.Type;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
 import java.util.AbstractList;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Random;
 
 /**
  * Implementation of table that reads rows from column stores, one per column.
@@ -55,9 +75,11 @@ import java.util.List;
  * values in the column; see {@link Representation} and
  * {@link RepresentationType}.
  */
-class ArrayTable extends AbstractQueryableTable implements ScannableTable {
+class ArrayTable extends AbstractQueryableTable
+    implements ScannableTable, SampleableTable, VersionedTable,
+    IndexableTable {
   private final RelProtoDataType protoRowType;
-  private final Supplier<Content> supplier;
+  final Supplier<Content> supplier;
 
   /** Creates an ArrayTable. */
   ArrayTable(Type elementType, RelProtoDataType protoRowType,
@@ -82,6 +104,12 @@ class ArrayTable extends AbstractQueryableTable implements ScannableTable {
     return Statistics.of(content.size, keys, content.collations);
   }
 
+  /** Returns the version of this table. An ArrayTable never changes; a
+   * refreshed materialization gets a new ArrayTable. */
+  public long getVersion() {
+    return 0L;
+  }
+
   public Enumerable<Object[]> scan(DataContext root) {
     return new AbstractEnumerable<Object[]>() {
       public Enumerator<Object[]> enumerator() {
@@ -91,6 +119,30 @@ class ArrayTable extends AbstractQueryableTable implements ScannableTable {
     };
   }
 
+  public Enumerable<Object[]> sample(DataContext root,
+      final double fraction) {
+    return new AbstractEnumerable<Object[]>() {
+      public Enumerator<Object[]> enumerator() {
+        final Content content = supplier.get();
+        return content.sampleEnumerator(fraction, new Random());
+      }
+    };
+  }
+
+  public ImmutableBitSet getIndexedColumns() {
+    return ImmutableBitSet.of(supplier.get().indexes.keySet());
+  }
+
+  public Enumerable<Object[]> lookup(DataContext root, final int column,
+      final List<Object> keys) {
+    return new AbstractEnumerable<Object[]>() {
+      public Enumerator<Object[]> enumerator() {
+        final Content content = supplier.get();
+        return content.lookup(column, keys);
+      }
+    };
+  }
+
   public <T> Queryable<T> asQueryable(final QueryProvider queryProvider,
       SchemaPlus schema, String tableName) {
     return new AbstractTableQueryable<T>(queryProvider, schema, this,
@@ -193,6 +245,32 @@ class ArrayTable extends AbstractQueryableTable implements ScannableTable {
      * @see ByteStringDictionary
      */
     BYTE_STRING_DICTIONARY,
+
+    /**
+     * Run-length encoding. Each run of equal values is stored once, as its
+     * value and the ordinal of the row after its last row. The run values
+     * are stored using one of the previous methods.
+     *
+     * <p>Good for a column that is sorted, or whose values come in long
+     * runs for some other reason, such as a date column of a table loaded
+     * in date order. Reading the value of a given row requires a binary
+     * search, so the runs should be long.</p>
+     *
+     * @see RunLength
+     */
+    RUN_LENGTH,
+
+    /**
+     * Frame of reference. Values of a fixed-point primitive type are stored
+     * as unsigned offsets from the minimum value, using one of the previous
+     * methods.
+     *
+     * <p>Good for a column whose values are large but close together, such
+     * as timestamps or sequence-generated keys.</p>
+     *
+     * @see FrameOfReference
+     */
+    FRAME_OF_REFERENCE,
   }
 
   /** Column definition and value set. */
@@ -200,14 +278,23 @@ class ArrayTable extends AbstractQueryableTable implements ScannableTable {
     final Representation representation;
     final Object dataSet;
     final int cardinality;
+    /** Synopsis of each block of rows, or null if not known. */
+    final ZoneMap zoneMap;
 
     Column(Representation representation, Object data, int cardinality) {
+      this(representation, data, cardinality, null);
+    }
+
+    Column(Representation representation, Object data, int cardinality,
+        ZoneMap zoneMap) {
       this.representation = representation;
       this.dataSet = data;
       this.cardinality = cardinality;
+      this.zoneMap = zoneMap;
     }
 
     public Column permute(int[] sources) {
+      // The zone map describes the rows in their old order, so drop it.
       return new Column(
           representation,
           representation.permute(dataSet, sources),
@@ -236,6 +323,216 @@ class ArrayTable extends AbstractQueryableTable implements ScannableTable {
     }
   }
 
+  /** Secondary index on a column. Contains the ordinals of the rows whose
+   * value is not null, sorted by value, so that the rows with a given value
+   * can be found by binary search. */
+  public static class Index {
+    final int ordinal;
+    final int[] rows;
+
+    Index(int ordinal, int[] rows) {
+      this.ordinal = ordinal;
+      this.rows = rows;
+    }
+
+    /** Creates an index on a column. */
+    static Index create(int ordinal, Column column, int rowCount) {
+      final Object[] values = new Object[rowCount];
+      column.representation.decode(column.dataSet, 0, rowCount, values);
+      final List<Integer> rowList = new ArrayList<>();
+      for (int i = 0; i < rowCount; i++) {
+        if (values[i] != null) {
+          rowList.add(i);
+        }
+      }
+      // The sort is stable, so rows with equal values remain in order.
+      Collections.sort(rowList,
+          new Comparator<Integer>() {
+            public int compare(Integer o1, Integer o2) {
+              //noinspection unchecked
+              return ((Comparable) values[o1]).compareTo(values[o2]);
+            }
+          });
+      final int[] rows = new int[rowList.size()];
+      for (int i = 0; i < rows.length; i++) {
+        rows[i] = rowList.get(i);
+      }
+      return new Index(ordinal, rows);
+    }
+
+    /** Adds to {@code rowList} the ordinals of the rows whose value is equal
+     * to {@code key}. */
+    void find(Column column, Comparable key, List<Integer> rowList) {
+      int low = 0;
+      int high = rows.length;
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        if (value(column, rows[mid]).compareTo(key) < 0) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      for (int i = low;
+           i < rows.length && value(column, rows[i]).compareTo(key) == 0;
+           i++) {
+        rowList.add(rows[i]);
+      }
+    }
+
+    private static Comparable value(Column column, int row) {
+      return (Comparable) column.representation.getObject(column.dataSet,
+          row);
+    }
+  }
+
+  /** Minimum value, maximum value and number of null values of each
+   * block of {@link #BLOCK_SIZE} rows of a column.
+   *
+   * <p>A scan can skip a block if a predicate cannot be true for any value
+   * between the block's minimum and maximum. */
+  public static class ZoneMap {
+    /** Number of rows in each block. */
+    static final int BLOCK_SIZE = 4096;
+
+    final Comparable[] mins;
+    final Comparable[] maxes;
+    final int[] nullCounts;
+
+    ZoneMap(Comparable[] mins, Comparable[] maxes, int[] nullCounts) {
+      this.mins = mins;
+      this.maxes = maxes;
+      this.nullCounts = nullCounts;
+    }
+
+    /** Creates a zone map of a list of values. */
+    static ZoneMap of(List<Comparable> values) {
+      final int blockCount = (values.size() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+      final Comparable[] mins = new Comparable[blockCount];
+      final Comparable[] maxes = new Comparable[blockCount];
+      final int[] nullCounts = new int[blockCount];
+      for (int i = 0; i < values.size(); i++) {
+        final int block = i / BLOCK_SIZE;
+        final Comparable value = values.get(i);
+        if (value == null) {
+          ++nullCounts[block];
+          continue;
+        }
+        //noinspection unchecked
+        if (mins[block] == null || mins[block].compareTo(value) > 0) {
+          mins[block] = value;
+        }
+        //noinspection unchecked
+        if (maxes[block] == null || maxes[block].compareTo(value) < 0) {
+          maxes[block] = value;
+        }
+      }
+      return new ZoneMap(mins, maxes, nullCounts);
+    }
+
+    /** Returns the class of the non-null values, or null if all values
+     * are null. */
+    Class valueClass() {
+      for (Comparable min : mins) {
+        if (min != null) {
+          return min.getClass();
+        }
+      }
+      return null;
+    }
+  }
+
+  /** Predicate on a single column: comparison with a constant value,
+   * or a test for null. */
+  public static class ColumnPredicate {
+    final int ordinal;
+    final SqlKind kind;
+    final Comparable value;
+
+    /** Creates a ColumnPredicate.
+     *
+     * @param ordinal Ordinal of column
+     * @param kind One of {@link SqlKind#EQUALS}, {@link SqlKind#LESS_THAN},
+     *     {@link SqlKind#LESS_THAN_OR_EQUAL}, {@link SqlKind#GREATER_THAN},
+     *     {@link SqlKind#GREATER_THAN_OR_EQUAL}, {@link SqlKind#IS_NULL},
+     *     {@link SqlKind#IS_NOT_NULL}
+     * @param value Value to compare with; null for IS NULL and IS NOT NULL
+     */
+    ColumnPredicate(int ordinal, SqlKind kind, Comparable value) {
+      this.ordinal = ordinal;
+      this.kind = kind;
+      this.value = value;
+      assert (value == null)
+          == (kind == SqlKind.IS_NULL || kind == SqlKind.IS_NOT_NULL);
+    }
+
+    @Override public String toString() {
+      return kind + "($" + ordinal
+          + (value == null ? "" : ", " + value) + ")";
+    }
+
+    /** Returns whether any row of a given block of a zone map may
+     * satisfy this predicate. */
+    boolean mayMatch(ZoneMap zoneMap, int block) {
+      final Comparable min = zoneMap.mins[block];
+      final Comparable max = zoneMap.maxes[block];
+      switch (kind) {
+      case IS_NULL:
+        return zoneMap.nullCounts[block] > 0;
+      case IS_NOT_NULL:
+        return min != null;
+      }
+      if (min == null) {
+        // All values are null. A comparison with null is never true.
+        return false;
+      }
+      //noinspection unchecked
+      switch (kind) {
+      case EQUALS:
+        return min.compareTo(value) <= 0 && max.compareTo(value) >= 0;
+      case LESS_THAN:
+        return min.compareTo(value) < 0;
+      case LESS_THAN_OR_EQUAL:
+        return min.compareTo(value) <= 0;
+      case GREATER_THAN:
+        return max.compareTo(value) > 0;
+      case GREATER_THAN_OR_EQUAL:
+        return max.compareTo(value) >= 0;
+      default:
+        throw new AssertionError(kind);
+      }
+    }
+
+    /** Returns whether a value satisfies this predicate. */
+    boolean test(Object o) {
+      switch (kind) {
+      case IS_NULL:
+        return o == null;
+      case IS_NOT_NULL:
+        return o != null;
+      }
+      if (o == null) {
+        return false;
+      }
+      //noinspection unchecked
+      final int c = ((Comparable) o).compareTo(value);
+      switch (kind) {
+      case EQUALS:
+        return c == 0;
+      case LESS_THAN:
+        return c < 0;
+      case LESS_THAN_OR_EQUAL:
+        return c <= 0;
+      case GREATER_THAN:
+        return c > 0;
+      case GREATER_THAN_OR_EQUAL:
+        return c >= 0;
+      default:
+        throw new AssertionError(kind);
+      }
+    }
+  }
+
   /** Representation of the values of a column. */
   public interface Representation {
     /** Returns the representation type. */
@@ -248,6 +545,23 @@ class ArrayTable extends AbstractQueryableTable implements ScannableTable {
     Object getObject(Object dataSet, int ordinal);
     int getInt(Object dataSet, int ordinal);
 
+    /** Decodes the values of {@code count} rows, starting at row
+     * {@code start}, into the first {@code count} elements of
+     * {@code target}. Faster than calling {@link #getObject} for each
+     * row. */
+    void decode(Object dataSet, int start, int count, Object[] target);
+
+    /** Sets in {@code rows} the ordinal of each row, among the
+     * {@code count} rows starting at row {@code start}, whose value is
+     * equal to {@code value}.
+     *
+     * <p>Values are compared in encoded form where possible; for example,
+     * a dictionary looks up the code of {@code value} once, then compares
+     * codes. {@code value} must not be null, and must be of the column's
+     * Java type. */
+    void findEqual(Object dataSet, Comparable value, int start, int count,
+        BitSet rows);
+
     /** Creates a data set that is the same as a given data set
      * but re-ordered. */
     Object permute(Object dataSet, int[] sources);
@@ -301,6 +615,21 @@ class ArrayTable extends AbstractQueryableTable implements ScannableTable {
       return ((Number) getObject(dataSet, ordinal)).intValue();
     }
 
+    public void decode(Object dataSet, int start, int count,
+        Object[] target) {
+      System.arraycopy((Comparable[]) dataSet, start, target, 0, count);
+    }
+
+    public void findEqual(Object dataSet, Comparable value, int start,
+        int count, BitSet rows) {
+      final Comparable[] values = (Comparable[]) dataSet;
+      for (int i = start; i < start + count; i++) {
+        if (value.equals(values[i])) {
+          rows.set(i);
+        }
+      }
+    }
+
     public int size(Object dataSet) {
       return ((Comparable[]) dataSet).length;
     }
@@ -311,11 +640,16 @@ class ArrayTable extends AbstractQueryableTable implements ScannableTable {
   }
 
   /** Representation that stores the values of a column in an array of
-   * primitive values. */
+   * primitive values.
+   *
+   * <p>The data set is either an array, or, if the column was read from a
+   * snapshot, a read-only {@link java.nio.Buffer} of the same primitive type
+   * over the mapped file; except for {@code boolean} values, which are
+   * always in an array. */
   public static class PrimitiveArray implements Representation {
     final int ordinal;
-    private final Primitive primitive;
-    private final Primitive p;
+    final Primitive primitive;
+    final Primitive p;
 
     PrimitiveArray(int ordinal, Primitive primitive, Primitive p) {
       this.ordinal = ordinal;
@@ -345,18 +679,159 @@ class ArrayTable extends AbstractQueryableTable implements ScannableTable {
     }
 
     public Object getObject(Object dataSet, int ordinal) {
+      if (dataSet instanceof Buffer) {
+        switch (primitive) {
+        case FLOAT:
+          return ((FloatBuffer) dataSet).get(ordinal);
+        case DOUBLE:
+          return ((DoubleBuffer) dataSet).get(ordinal);
+        default:
+          return box(p, longAt(dataSet, ordinal));
+        }
+      }
       return p.arrayItem(dataSet, ordinal);
     }
 
     public int getInt(Object dataSet, int ordinal) {
+      if (dataSet instanceof Buffer) {
+        return (int) longAt(dataSet, ordinal);
+      }
       return Array.getInt(dataSet, ordinal);
     }
 
+    public void decode(Object dataSet, int start, int count,
+        Object[] target) {
+      switch (primitive) {
+      case FLOAT:
+      case DOUBLE:
+      case BOOLEAN:
+        for (int i = 0; i < count; i++) {
+          target[i] = getObject(dataSet, start + i);
+        }
+        break;
+      default:
+        final long[] longs = new long[count];
+        decodeLongs(dataSet, start, count, longs);
+        for (int i = 0; i < count; i++) {
+          target[i] = box(p, longs[i]);
+        }
+      }
+    }
+
+    public void findEqual(Object dataSet, Comparable value, int start,
+        int count, BitSet rows) {
+      switch (primitive) {
+      case FLOAT:
+      case DOUBLE:
+      case BOOLEAN:
+        for (int i = start; i < start + count; i++) {
+          if (value.equals(getObject(dataSet, i))) {
+            rows.set(i);
+          }
+        }
+        break;
+      default:
+        final long v = ColumnLoader.ValueSet.toLong(value);
+        final long[] longs = new long[count];
+        decodeLongs(dataSet, start, count, longs);
+        for (int i = 0; i < count; i++) {
+          if (longs[i] == v) {
+            rows.set(start + i);
+          }
+        }
+      }
+    }
+
+    /** Decodes values of a fixed-point type other than boolean as
+     * {@code long} values. */
+    private void decodeLongs(Object dataSet, int start, int count,
+        long[] target) {
+      if (dataSet instanceof Buffer) {
+        for (int i = 0; i < count; i++) {
+          target[i] = longAt(dataSet, start + i);
+        }
+        return;
+      }
+      switch (primitive) {
+      case BYTE:
+        final byte[] bytes = (byte[]) dataSet;
+        for (int i = 0; i < count; i++) {
+          target[i] = bytes[start + i];
+        }
+        break;
+      case CHAR:
+        final char[] chars = (char[]) dataSet;
+        for (int i = 0; i < count; i++) {
+          target[i] = chars[start + i];
+        }
+        break;
+      case SHORT:
+        final short[] shorts = (short[]) dataSet;
+        for (int i = 0; i < count; i++) {
+          target[i] = shorts[start + i];
+        }
+        break;
+      case INT:
+        final int[] ints = (int[]) dataSet;
+        for (int i = 0; i < count; i++) {
+          target[i] = ints[start + i];
+        }
+        break;
+      case LONG:
+        System.arraycopy((long[]) dataSet, start, target, 0, count);
+        break;
+      default:
+        throw new AssertionError(primitive + " unexpected");
+      }
+    }
+
+    /** Returns a value of a fixed-point type other than boolean from a
+     * buffer, as a {@code long}. */
+    private long longAt(Object dataSet, int ordinal) {
+      switch (primitive) {
+      case BYTE:
+        return ((ByteBuffer) dataSet).get(ordinal);
+      case CHAR:
+        return ((CharBuffer) dataSet).get(ordinal);
+      case SHORT:
+        return ((ShortBuffer) dataSet).get(ordinal);
+      case INT:
+        return ((IntBuffer) dataSet).get(ordinal);
+      case LONG:
+        return ((LongBuffer) dataSet).get(ordinal);
+      default:
+        throw new AssertionError(primitive + " unexpected");
+      }
+    }
+
+    /** Returns the number of bits used to store each value. */
+    int bitCount() {
+      switch (primitive) {
+      case BOOLEAN:
+      case BYTE:
+        return 8;
+      case CHAR:
+      case SHORT:
+        return 16;
+      case INT:
+      case FLOAT:
+        return 32;
+      default:
+        return 64;
+      }
+    }
+
     public int size(Object dataSet) {
+      if (dataSet instanceof Buffer) {
+        return ((Buffer) dataSet).capacity();
+      }
       return Array.getLength(dataSet);
     }
 
     public String toString(Object dataSet) {
+      if (dataSet instanceof Buffer) {
+        return Column.asList(this, dataSet).toString();
+      }
       return p.arrayToString(dataSet);
     }
   }
@@ -364,11 +839,22 @@ class ArrayTable extends AbstractQueryableTable implements ScannableTable {
   /** Representation that stores column values in a dictionary of
    * primitive values, then uses a short code for each row. */
   public static class PrimitiveDictionary implements Representation {
-    PrimitiveDictionary() {
+    final int ordinal;
+    final Primitive p;
+    final Representation representation;
+
+    PrimitiveDictionary(int ordinal, Primitive p,
+        Representation representation) {
+      this.ordinal = ordinal;
+      this.p = p;
+      this.representation = representation;
     }
 
     public String toString() {
-      return "PrimitiveDictionary()";
+      return "PrimitiveDictionary(ordinal=" + ordinal
+          + ", p=" + p
+          + ", representation=" + representation
+          + ")";
     }
 
     public RepresentationType getType() {
@@ -376,27 +862,76 @@ class ArrayTable extends AbstractQueryableTable implements ScannableTable {
     }
 
     public Object freeze(ColumnLoader.ValueSet valueSet, int[] sources) {
-      throw new UnsupportedOperationException(); // TODO:
+      final int n = valueSet.map.keySet().size();
+      final Comparable[] keys =
+          valueSet.map.keySet().toArray(new Comparable[n]);
+      Arrays.sort(keys);
+      ColumnLoader.ValueSet codeValueSet =
+          new ColumnLoader.ValueSet(int.class);
+      final List<Comparable> list = permuteList(valueSet.values, sources);
+      for (Comparable value : list) {
+        final int code = Arrays.binarySearch(keys, value);
+        assert code >= 0 : code + ", " + value;
+        codeValueSet.add(code);
+      }
+      Object codes = representation.freeze(codeValueSet, null);
+      //noinspection unchecked
+      return Pair.of(codes, p.toArray2((List) Arrays.asList(keys)));
     }
 
     public Object permute(Object dataSet, int[] sources) {
-      throw new UnsupportedOperationException(); // TODO:
+      final Pair<Object, Object> pair = toPair(dataSet);
+      return Pair.of(representation.permute(pair.left, sources), pair.right);
     }
 
     public Object getObject(Object dataSet, int ordinal) {
-      throw new UnsupportedOperationException(); // TODO:
+      final Pair<Object, Object> pair = toPair(dataSet);
+      int code = representation.getInt(pair.left, ordinal);
+      return p.arrayItem(pair.right, code);
     }
 
     public int getInt(Object dataSet, int ordinal) {
-      throw new UnsupportedOperationException(); // TODO:
+      return ((Number) getObject(dataSet, ordinal)).intValue();
+    }
+
+    public void decode(Object dataSet, int start, int count,
+        Object[] target) {
+      final Pair<Object, Object> pair = toPair(dataSet);
+      final int[] codes = decodeInts(representation, pair.left, start, count);
+      for (int i = 0; i < count; i++) {
+        target[i] = p.arrayItem(pair.right, codes[i]);
+      }
+    }
+
+    public void findEqual(Object dataSet, Comparable value, int start,
+        int count, BitSet rows) {
+      final Pair<Object, Object> pair = toPair(dataSet);
+      // The dictionary is sorted, so we can find the code by binary search.
+      int low = 0;
+      int high = Array.getLength(pair.right) - 1;
+      while (low <= high) {
+        final int mid = (low + high) >>> 1;
+        //noinspection unchecked
+        final int c =
+            ((Comparable) p.arrayItem(pair.right, mid)).compareTo(value);
+        if (c < 0) {
+          low = mid + 1;
+        } else if (c > 0) {
+          high = mid - 1;
+        } else {
+          representation.findEqual(pair.left, mid, start, count, rows);
+          return;
+        }
+      }
     }
 
     public int size(Object dataSet) {
-      throw new UnsupportedOperationException(); // TODO:
+      final Pair<Object, Object> pair = toPair(dataSet);
+      return representation.size(pair.left);
     }
 
     public String toString(Object dataSet) {
-      throw new UnsupportedOperationException(); // TODO:
+      return Column.asList(this, dataSet).toString();
     }
   }
 
@@ -463,6 +998,29 @@ class ArrayTable extends AbstractQueryableTable implements ScannableTable {
       return ((Number) getObject(dataSet, ordinal)).intValue();
     }
 
+    public void decode(Object dataSet, int start, int count,
+        Object[] target) {
+      final Pair<Object, Comparable[]> pair = toPair(dataSet);
+      final int[] codes = decodeInts(representation, pair.left, start, count);
+      for (int i = 0; i < count; i++) {
+        target[i] = pair.right[codes[i]];
+      }
+    }
+
+    public void findEqual(Object dataSet, Comparable value, int start,
+        int count, BitSet rows) {
+      final Pair<Object, Comparable[]> pair = toPair(dataSet);
+      final Comparable[] codeValues = pair.right;
+      int n = codeValues.length;
+      if (n > 0 && codeValues[n - 1] == null) {
+        --n; // the last code, if present, represents null
+      }
+      final int code = Arrays.binarySearch(codeValues, 0, n, value);
+      if (code >= 0) {
+        representation.findEqual(pair.left, code, start, count, rows);
+      }
+    }
+
     public int size(Object dataSet) {
       final Pair<Object, Comparable[]> pair = toPair(dataSet);
       return representation.size(pair.left);
@@ -502,6 +1060,22 @@ class ArrayTable extends AbstractQueryableTable implements ScannableTable {
       throw new UnsupportedOperationException(); // TODO:
     }
 
+    public void decode(Object dataSet, int start, int count,
+        Object[] target) {
+      for (int i = 0; i < count; i++) {
+        target[i] = getObject(dataSet, start + i);
+      }
+    }
+
+    public void findEqual(Object dataSet, Comparable value, int start,
+        int count, BitSet rows) {
+      for (int i = start; i < start + count; i++) {
+        if (value.equals(getObject(dataSet, i))) {
+          rows.set(i);
+        }
+      }
+    }
+
     public int size(Object dataSet) {
       throw new UnsupportedOperationException(); // TODO:
     }
@@ -540,6 +1114,22 @@ class ArrayTable extends AbstractQueryableTable implements ScannableTable {
       throw new UnsupportedOperationException(); // TODO:
     }
 
+    public void decode(Object dataSet, int start, int count,
+        Object[] target) {
+      for (int i = 0; i < count; i++) {
+        target[i] = getObject(dataSet, start + i);
+      }
+    }
+
+    public void findEqual(Object dataSet, Comparable value, int start,
+        int count, BitSet rows) {
+      for (int i = start; i < start + count; i++) {
+        if (value.equals(getObject(dataSet, i))) {
+          rows.set(i);
+        }
+      }
+    }
+
     public int size(Object dataSet) {
       throw new UnsupportedOperationException(); // TODO:
     }
@@ -584,6 +1174,20 @@ class ArrayTable extends AbstractQueryableTable implements ScannableTable {
       return ((Number) pair.left).intValue();
     }
 
+    public void decode(Object dataSet, int start, int count,
+        Object[] target) {
+      Pair<Object, Integer> pair = toPair(dataSet);
+      Arrays.fill(target, 0, count, pair.left);
+    }
+
+    public void findEqual(Object dataSet, Comparable value, int start,
+        int count, BitSet rows) {
+      Pair<Object, Integer> pair = toPair(dataSet);
+      if (value.equals(pair.left)) {
+        rows.set(start, start + count);
+      }
+    }
+
     public int size(Object dataSet) {
       Pair<Object, Integer> pair = toPair(dataSet);
       return pair.right;
@@ -599,7 +1203,11 @@ class ArrayTable extends AbstractQueryableTable implements ScannableTable {
    * array. Each value does not necessarily occupy 8, 16, 32 or 64
    * bits (the number of bits used by the built-in types). This
    * representation is often used to store the value codes for a
-   * dictionary-based representation. */
+   * dictionary-based representation.
+   *
+   * <p>The data set is a {@code long[]}, or, if the column was read from a
+   * snapshot, a read-only {@link java.nio.LongBuffer} over the mapped
+   * file. */
   public static class BitSlicedPrimitiveArray implements Representation {
     final int ordinal;
     final int bitCount;
@@ -690,10 +1298,9 @@ class ArrayTable extends AbstractQueryableTable implements ScannableTable {
     }
 
     public Object getObject(Object dataSet, int ordinal) {
-      final long[] longs = (long[]) dataSet;
       final int chunksPerWord = 64 / bitCount;
       final int word = ordinal / chunksPerWord;
-      final long v = longs[word];
+      final long v = word(dataSet, word);
       final int chunk = ordinal % chunksPerWord;
       final int mask = (1 << bitCount) - 1;
       final int signMask = 1 << (bitCount - 1);
@@ -703,29 +1310,13 @@ class ArrayTable extends AbstractQueryableTable implements ScannableTable {
       if (signed && (x & signMask) != 0) {
         x = -x;
       }
-      switch (primitive) {
-      case BOOLEAN:
-        return x != 0;
-      case BYTE:
-        return (byte) x;
-      case CHAR:
-        return (char) x;
-      case SHORT:
-        return (short) x;
-      case INT:
-        return (int) x;
-      case LONG:
-        return x;
-      default:
-        throw new AssertionError(primitive + " unexpected");
-      }
+      return box(primitive, x);
     }
 
     public int getInt(Object dataSet, int ordinal) {
-      final long[] longs = (long[]) dataSet;
       final int chunksPerWord = 64 / bitCount;
       final int word = ordinal / chunksPerWord;
-      final long v = longs[word];
+      final long v = word(dataSet, word);
       final int chunk = ordinal % chunksPerWord;
       final int mask = (1 << bitCount) - 1;
       final int signMask = 1 << (bitCount - 1);
@@ -738,6 +1329,63 @@ class ArrayTable extends AbstractQueryableTable implements ScannableTable {
       return (int) x;
     }
 
+    public void decode(Object dataSet, int start, int count,
+        Object[] target) {
+      final long[] longs = new long[count];
+      decodeLongs(dataSet, start, count, longs);
+      for (int i = 0; i < count; i++) {
+        target[i] = box(primitive, longs[i]);
+      }
+    }
+
+    public void findEqual(Object dataSet, Comparable value, int start,
+        int count, BitSet rows) {
+      final long v = ColumnLoader.ValueSet.toLong(value);
+      final long[] longs = new long[count];
+      decodeLongs(dataSet, start, count, longs);
+      for (int i = 0; i < count; i++) {
+        if (longs[i] == v) {
+          rows.set(start + i);
+        }
+      }
+    }
+
+    /** Decodes the values of {@code count} rows, starting at row
+     * {@code start}. Unlike {@link #getObject}, reads each word only
+     * once. */
+    void decodeLongs(Object dataSet, int start, int count, long[] target) {
+      if (count == 0) {
+        return;
+      }
+      final int chunksPerWord = 64 / bitCount;
+      final long mask = (1L << bitCount) - 1L;
+      final long signMask = 1L << (bitCount - 1);
+      int word = start / chunksPerWord;
+      int chunk = start % chunksPerWord;
+      long w = word(dataSet, word) >> (chunk * bitCount);
+      for (int i = 0; i < count; i++) {
+        if (chunk == chunksPerWord) {
+          chunk = 0;
+          w = word(dataSet, ++word);
+        }
+        long x = w & mask;
+        if (signed && (x & signMask) != 0) {
+          x = -x;
+        }
+        target[i] = x;
+        w >>= bitCount;
+        ++chunk;
+      }
+    }
+
+    /** Returns a word of a data set. */
+    private static long word(Object dataSet, int word) {
+      if (dataSet instanceof LongBuffer) {
+        return ((LongBuffer) dataSet).get(word);
+      }
+      return ((long[]) dataSet)[word];
+    }
+
     public static long getLong(int bitCount, long[] values, int ordinal) {
       return getLong(
           bitCount, 64 / bitCount, (1L << bitCount) - 1L,
@@ -772,9 +1420,209 @@ class ArrayTable extends AbstractQueryableTable implements ScannableTable {
     }
 
     public int size(Object dataSet) {
-      final long[] longs = (long[]) dataSet;
+      final int wordCount = dataSet instanceof LongBuffer
+          ? ((LongBuffer) dataSet).capacity()
+          : ((long[]) dataSet).length;
       final int chunksPerWord = 64 / bitCount;
-      return longs.length * chunksPerWord; // may be slightly too high
+      return wordCount * chunksPerWord; // may be slightly too high
+    }
+
+    public String toString(Object dataSet) {
+      return Column.asList(this, dataSet).toString();
+    }
+  }
+
+  /** Representation that stores each run of equal values once.
+   *
+   * <p>The data set is a pair: the values of the runs, stored using
+   * another representation; and an array containing, for each run, the
+   * ordinal of the row after its last row.</p> */
+  public static class RunLength implements Representation {
+    final int ordinal;
+    final Representation representation;
+
+    RunLength(int ordinal, Representation representation) {
+      this.ordinal = ordinal;
+      this.representation = representation;
+    }
+
+    public String toString() {
+      return "RunLength(ordinal=" + ordinal
+          + ", representation=" + representation
+          + ")";
+    }
+
+    public RepresentationType getType() {
+      return RepresentationType.RUN_LENGTH;
+    }
+
+    public Object freeze(ColumnLoader.ValueSet valueSet, int[] sources) {
+      final List<Comparable> list = permuteList(valueSet.values, sources);
+      final ColumnLoader.ValueSet runValueSet =
+          new ColumnLoader.ValueSet(valueSet.clazz);
+      final List<Integer> runEnds = Lists.newArrayList();
+      for (int i = 0; i < list.size(); i++) {
+        final Comparable value = list.get(i);
+        if (i == 0) {
+          runValueSet.add(value);
+        } else if (!Objects.equals(value, list.get(i - 1))) {
+          runEnds.add(i);
+          runValueSet.add(value);
+        }
+      }
+      if (!list.isEmpty()) {
+        runEnds.add(list.size());
+      }
+      final int[] ends = new int[runEnds.size()];
+      for (int i = 0; i < ends.length; i++) {
+        ends[i] = runEnds.get(i);
+      }
+      return Pair.of(representation.freeze(runValueSet, null), ends);
+    }
+
+    public Object permute(Object dataSet, int[] sources) {
+      // Re-ordering breaks up runs; decode, then encode again.
+      final int size = size(dataSet);
+      final Object[] values = new Object[size];
+      decode(dataSet, 0, size, values);
+      final ColumnLoader.ValueSet valueSet =
+          new ColumnLoader.ValueSet(Object.class);
+      for (Object value : values) {
+        valueSet.add((Comparable) value);
+      }
+      return freeze(valueSet, sources);
+    }
+
+    public Object getObject(Object dataSet, int ordinal) {
+      final Pair<Object, int[]> pair = toPair(dataSet);
+      return representation.getObject(pair.left, run(pair.right, ordinal));
+    }
+
+    public int getInt(Object dataSet, int ordinal) {
+      final Pair<Object, int[]> pair = toPair(dataSet);
+      return representation.getInt(pair.left, run(pair.right, ordinal));
+    }
+
+    public void decode(Object dataSet, int start, int count,
+        Object[] target) {
+      final Pair<Object, int[]> pair = toPair(dataSet);
+      final int[] ends = pair.right;
+      int i = 0;
+      for (int run = run(ends, start); i < count; run++) {
+        final int end = Math.min(ends[run] - start, count);
+        Arrays.fill(target, i, end,
+            representation.getObject(pair.left, run));
+        i = end;
+      }
+    }
+
+    public void findEqual(Object dataSet, Comparable value, int start,
+        int count, BitSet rows) {
+      if (count == 0) {
+        return;
+      }
+      final Pair<Object, int[]> pair = toPair(dataSet);
+      final int[] ends = pair.right;
+      final int firstRun = run(ends, start);
+      final int lastRun = run(ends, start + count - 1);
+      final BitSet runs = new BitSet();
+      representation.findEqual(pair.left, value, firstRun,
+          lastRun - firstRun + 1, runs);
+      for (int run = runs.nextSetBit(0); run >= 0;
+           run = runs.nextSetBit(run + 1)) {
+        final int runStart = run == 0 ? 0 : ends[run - 1];
+        rows.set(Math.max(runStart, start),
+            Math.min(ends[run], start + count));
+      }
+    }
+
+    /** Returns the run that contains a given row. */
+    private static int run(int[] ends, int ordinal) {
+      final int i = Arrays.binarySearch(ends, ordinal);
+      return i >= 0 ? i + 1 : -(i + 1);
+    }
+
+    public int size(Object dataSet) {
+      final Pair<Object, int[]> pair = toPair(dataSet);
+      final int[] ends = pair.right;
+      return ends.length == 0 ? 0 : ends[ends.length - 1];
+    }
+
+    public String toString(Object dataSet) {
+      return Column.asList(this, dataSet).toString();
+    }
+  }
+
+  /** Representation that stores fixed-point values as offsets from a
+   * base value. The offsets are stored using another representation. */
+  public static class FrameOfReference implements Representation {
+    final int ordinal;
+    final long base;
+    final Primitive p;
+    final Representation representation;
+
+    FrameOfReference(int ordinal, long base, Primitive p,
+        Representation representation) {
+      this.ordinal = ordinal;
+      this.base = base;
+      this.p = p;
+      this.representation = representation;
+    }
+
+    public String toString() {
+      return "FrameOfReference(ordinal=" + ordinal
+          + ", base=" + base
+          + ", p=" + p
+          + ", representation=" + representation
+          + ")";
+    }
+
+    public RepresentationType getType() {
+      return RepresentationType.FRAME_OF_REFERENCE;
+    }
+
+    public Object freeze(ColumnLoader.ValueSet valueSet, int[] sources) {
+      final ColumnLoader.ValueSet offsetValueSet =
+          new ColumnLoader.ValueSet(int.class);
+      final List<Comparable> list = permuteList(valueSet.values, sources);
+      for (Comparable value : list) {
+        final long offset = ColumnLoader.ValueSet.toLong(value) - base;
+        assert offset >= 0 && offset <= Integer.MAX_VALUE : value;
+        offsetValueSet.add((int) offset);
+      }
+      return representation.freeze(offsetValueSet, null);
+    }
+
+    public Object permute(Object dataSet, int[] sources) {
+      return representation.permute(dataSet, sources);
+    }
+
+    public Object getObject(Object dataSet, int ordinal) {
+      return box(p, base + representation.getInt(dataSet, ordinal));
+    }
+
+    public int getInt(Object dataSet, int ordinal) {
+      return (int) (base + representation.getInt(dataSet, ordinal));
+    }
+
+    public void decode(Object dataSet, int start, int count,
+        Object[] target) {
+      final int[] offsets = decodeInts(representation, dataSet, start, count);
+      for (int i = 0; i < count; i++) {
+        target[i] = box(p, base + offsets[i]);
+      }
+    }
+
+    public void findEqual(Object dataSet, Comparable value, int start,
+        int count, BitSet rows) {
+      final long offset = ColumnLoader.ValueSet.toLong(value) - base;
+      if (offset >= 0 && offset <= Integer.MAX_VALUE) {
+        representation.findEqual(dataSet, (int) offset, start, count, rows);
+      }
+    }
+
+    public int size(Object dataSet) {
+      return representation.size(dataSet);
     }
 
     public String toString(Object dataSet) {
@@ -782,7 +1630,48 @@ class ArrayTable extends AbstractQueryableTable implements ScannableTable {
     }
   }
 
-  private static <E> List<E> permuteList(
+  /** Converts a {@code long} value to a value of a fixed-point primitive
+   * type, boxed. */
+  static Object box(Primitive p, long x) {
+    switch (p) {
+    case BOOLEAN:
+      return x != 0;
+    case BYTE:
+      return (byte) x;
+    case CHAR:
+      return (char) x;
+    case SHORT:
+      return (short) x;
+    case INT:
+      return (int) x;
+    case LONG:
+      return x;
+    default:
+      throw new AssertionError(p + " unexpected");
+    }
+  }
+
+  /** Decodes the values of {@code count} rows of a data set of codes,
+   * starting at row {@code start}. */
+  static int[] decodeInts(Representation representation, Object dataSet,
+      int start, int count) {
+    final int[] ints = new int[count];
+    if (representation instanceof BitSlicedPrimitiveArray) {
+      final long[] longs = new long[count];
+      ((BitSlicedPrimitiveArray) representation).decodeLongs(
+          dataSet, start, count, longs);
+      for (int i = 0; i < count; i++) {
+        ints[i] = (int) longs[i];
+      }
+    } else {
+      for (int i = 0; i < count; i++) {
+        ints[i] = representation.getInt(dataSet, start + i);
+      }
+    }
+    return ints;
+  }
+
+  static <E> List<E> permuteList(
       final List<E> list, final int[] sources) {
     if (sources == null) {
       return list;
@@ -800,15 +1689,43 @@ class ArrayTable extends AbstractQueryableTable implements ScannableTable {
 
   /** Contents of a table. */
   public static class Content {
-    private final List<Column> columns;
-    private final int size;
-    private final ImmutableList<RelCollation> collations;
+    /** Number of rows that an enumerator decodes at a time. */
+    static final int BLOCK_SIZE = 1024;
+
+    final List<Column> columns;
+    final int size;
+    final ImmutableList<RelCollation> collations;
+    private final ImmutableMap<Integer, Index> indexes;
+    private final long loadMillis;
 
     Content(List<? extends Column> columns, int size,
         Iterable<? extends RelCollation> collations) {
+      this(columns, size, collations, ImmutableBitSet.of());
+    }
+
+    /** Creates a Content, and builds an index on each of a set of
+     * columns. */
+    Content(List<? extends Column> columns, int size,
+        Iterable<? extends RelCollation> collations,
+        ImmutableBitSet indexedColumns) {
+      this(columns, size, collations, indexedColumns, -1L);
+    }
+
+    /** Creates a Content, builds an index on each of a set of columns, and
+     * records how long the columns took to load. */
+    Content(List<? extends Column> columns, int size,
+        Iterable<? extends RelCollation> collations,
+        ImmutableBitSet indexedColumns, long loadMillis) {
       this.columns = ImmutableList.copyOf(columns);
       this.size = size;
       this.collations = ImmutableList.copyOf(collations);
+      final ImmutableMap.Builder<Integer, Index> builder =
+          ImmutableMap.builder();
+      for (int i : indexedColumns) {
+        builder.put(i, Index.create(i, this.columns.get(i), size));
+      }
+      this.indexes = builder.build();
+      this.loadMillis = loadMillis;
     }
 
     @Deprecated // to be removed before 2.0
@@ -828,34 +1745,269 @@ class ArrayTable extends AbstractQueryableTable implements ScannableTable {
       }
     }
 
+    /** Returns the time, in milliseconds, that the columns took to load
+     * from the source or to read from a snapshot, or -1 if not known. */
+    public long getLoadMillis() {
+      return loadMillis;
+    }
+
     public Enumerator<Object[]> arrayEnumerator() {
       return new ArrayEnumerator(size, columns);
     }
 
+    /** Returns an enumerator over the rows whose value of an indexed
+     * column is equal to one of a list of keys. */
+    public Enumerator<Object[]> lookup(int column, List<Object> keys) {
+      final Index index = indexes.get(column);
+      if (index == null) {
+        throw new IllegalArgumentException("column " + column
+            + " has no index");
+      }
+      final List<Integer> rows = new ArrayList<>();
+      for (Object key : new LinkedHashSet<>(keys)) {
+        if (key != null) {
+          index.find(columns.get(column), (Comparable) key, rows);
+        }
+      }
+      return rowEnumerator(rows);
+    }
+
+    /** Returns an enumerator over a random sample of the rows; each row is
+     * returned with probability {@code fraction}. Rows that are not in the
+     * sample are skipped without being decoded. */
+    public Enumerator<Object[]> sampleEnumerator(double fraction,
+        Random random) {
+      final List<Integer> rows = new ArrayList<>();
+      if (fraction >= 1d) {
+        for (int i = 0; i < size; i++) {
+          rows.add(i);
+        }
+      } else if (fraction > 0d) {
+        // The gap between sampled rows is geometrically distributed.
+        final double log = Math.log(1d - fraction);
+        double row = -1d;
+        for (;;) {
+          row += 1d + Math.floor(Math.log(1d - random.nextDouble()) / log);
+          if (row >= size) {
+            break;
+          }
+          rows.add((int) row);
+        }
+      }
+      return rowEnumerator(rows);
+    }
+
+    /** Returns an enumerator over the rows with given ordinals. */
+    private Enumerator<Object[]> rowEnumerator(final List<Integer> rows) {
+      return Linq4j.enumerator(
+          new AbstractList<Object[]>() {
+            public Object[] get(int i) {
+              final int row = rows.get(i);
+              final Object[] objects = new Object[columns.size()];
+              for (int j = 0; j < objects.length; j++) {
+                final Column c = columns.get(j);
+                objects[j] = c.representation.getObject(c.dataSet, row);
+              }
+              return objects;
+            }
+
+            public int size() {
+              return rows.size();
+            }
+          });
+    }
+
+    /** Returns whether this content can evaluate a predicate; that is,
+     * whether its column has a zone map, and its value is of the same
+     * class as the column's values. */
+    boolean canEvaluate(ColumnPredicate predicate) {
+      final ZoneMap zoneMap = columns.get(predicate.ordinal).zoneMap;
+      if (zoneMap == null) {
+        return false;
+      }
+      final Class valueClass = zoneMap.valueClass();
+      return predicate.value == null
+          || valueClass == null
+          || valueClass == predicate.value.getClass();
+    }
+
+    /** Returns an enumerator over the rows that satisfy all of a list of
+     * predicates, each row an array of the values of the projected
+     * columns.
+     *
+     * <p>Skips blocks that the zone maps prove contain no matching rows,
+     * and decodes only the columns that are projected or tested.
+     *
+     * @param predicates Predicates; each must satisfy {@link #canEvaluate}
+     * @param projects Ordinals of projected columns, or null for all
+     */
+    public Enumerator<Object[]> filteredEnumerator(
+        List<ColumnPredicate> predicates, int[] projects) {
+      if (projects == null) {
+        projects = new int[columns.size()];
+        for (int i = 0; i < projects.length; i++) {
+          projects[i] = i;
+        }
+      }
+      return new FilteringEnumerator(size, columns,
+          ImmutableList.copyOf(predicates), projects);
+    }
+
+    /** Enumerator that applies predicates and projects columns, one
+     * {@link ZoneMap#BLOCK_SIZE block} of rows at a time. */
+    private static class FilteringEnumerator
+        implements Enumerator<Object[]> {
+      final int rowCount;
+      final List<Column> columns;
+      final List<ColumnPredicate> predicates;
+      final int[] projects;
+      /** Values of the current block, for those columns that have been
+       * decoded. */
+      final Object[][] blocks;
+      final BitSet decoded = new BitSet();
+      final BitSet rows = new BitSet();
+      int blockStart = -ZoneMap.BLOCK_SIZE;
+      int i = -1;
+      Object[] current;
+
+      FilteringEnumerator(int rowCount, List<Column> columns,
+          List<ColumnPredicate> predicates, int[] projects) {
+        this.rowCount = rowCount;
+        this.columns = columns;
+        this.predicates = predicates;
+        this.projects = projects;
+        this.blocks = new Object[columns.size()][];
+      }
+
+      public Object[] current() {
+        return current;
+      }
+
+      public boolean moveNext() {
+        for (;;) {
+          i = rows.nextSetBit(i + 1);
+          if (i >= 0) {
+            final Object[] objects = new Object[projects.length];
+            for (int j = 0; j < projects.length; j++) {
+              objects[j] = block(projects[j])[i - blockStart];
+            }
+            current = objects;
+            return true;
+          }
+          blockStart += ZoneMap.BLOCK_SIZE;
+          if (blockStart >= rowCount) {
+            current = null;
+            return false;
+          }
+          filterBlock();
+          i = blockStart - 1;
+        }
+      }
+
+      /** Sets in {@link #rows} the rows of the current block that satisfy
+       * all predicates. */
+      private void filterBlock() {
+        final int count = Math.min(ZoneMap.BLOCK_SIZE, rowCount - blockStart);
+        final int block = blockStart / ZoneMap.BLOCK_SIZE;
+        decoded.clear();
+        rows.clear();
+        for (ColumnPredicate predicate : predicates) {
+          if (!predicate.mayMatch(columns.get(predicate.ordinal).zoneMap,
+              block)) {
+            return;
+          }
+        }
+        rows.set(blockStart, blockStart + count);
+        for (ColumnPredicate predicate : predicates) {
+          if (rows.isEmpty()) {
+            return;
+          }
+          if (predicate.kind == SqlKind.EQUALS) {
+            final Column column = columns.get(predicate.ordinal);
+            final BitSet equal = new BitSet();
+            column.representation.findEqual(column.dataSet,
+                predicate.value, blockStart, count, equal);
+            rows.and(equal);
+          } else {
+            final Object[] values = block(predicate.ordinal);
+            for (int r = rows.nextSetBit(0); r >= 0;
+                 r = rows.nextSetBit(r + 1)) {
+              if (!predicate.test(values[r - blockStart])) {
+                rows.clear(r);
+              }
+            }
+          }
+        }
+      }
+
+      /** Returns the values of a column in the current block, decoding
+       * them if necessary. */
+      private Object[] block(int ordinal) {
+        if (!decoded.get(ordinal)) {
+          if (blocks[ordinal] == null) {
+            blocks[ordinal] =
+                new Object[Math.min(ZoneMap.BLOCK_SIZE, rowCount)];
+          }
+          final Column column = columns.get(ordinal);
+          column.representation.decode(column.dataSet, blockStart,
+              Math.min(ZoneMap.BLOCK_SIZE, rowCount - blockStart),
+              blocks[ordinal]);
+          decoded.set(ordinal);
+        }
+        return blocks[ordinal];
+      }
+
+      public void reset() {
+        blockStart = -ZoneMap.BLOCK_SIZE;
+        i = -1;
+        rows.clear();
+        decoded.clear();
+        current = null;
+      }
+
+      public void close() {
+      }
+    }
+
     /** Enumerator over a table with a single column; each element
-     * returned is an object. */
+     * returned is an object. Decodes {@link #BLOCK_SIZE} rows at a time. */
     private static class ObjectEnumerator implements Enumerator<Object> {
       final int rowCount;
       final Object dataSet;
       final Representation representation;
+      final Object[] block;
       int i = -1;
+      int blockStart = 0;
+      int blockEnd = 0;
 
       ObjectEnumerator(int rowCount, Column column) {
         this.rowCount = rowCount;
         this.dataSet = column.dataSet;
         this.representation = column.representation;
+        this.block = new Object[Math.min(BLOCK_SIZE, rowCount)];
       }
 
       public Object current() {
-        return representation.getObject(dataSet, i);
+        return block[i - blockStart];
       }
 
       public boolean moveNext() {
-        return ++i < rowCount;
+        if (++i >= rowCount) {
+          return false;
+        }
+        if (i >= blockEnd) {
+          final int count = Math.min(BLOCK_SIZE, rowCount - i);
+          representation.decode(dataSet, i, count, block);
+          blockStart = i;
+          blockEnd = i + count;
+        }
+        return true;
       }
 
       public void reset() {
         i = -1;
+        blockStart = 0;
+        blockEnd = 0;
       }
 
       public void close() {
@@ -863,32 +2015,52 @@ class ArrayTable extends AbstractQueryableTable implements ScannableTable {
     }
 
     /** Enumerator over a table with more than one column; each element
-     * returned is an array. */
+     * returned is an array. Decodes {@link #BLOCK_SIZE} rows of each
+     * column at a time. */
     private static class ArrayEnumerator implements Enumerator<Object[]> {
       final int rowCount;
       final List<Column> columns;
+      final Object[][] blocks;
       int i = -1;
+      int blockStart = 0;
+      int blockEnd = 0;
 
       ArrayEnumerator(int rowCount, List<Column> columns) {
         this.rowCount = rowCount;
         this.columns = columns;
+        this.blocks =
+            new Object[columns.size()][Math.min(BLOCK_SIZE, rowCount)];
       }
 
       public Object[] current() {
         Object[] objects = new Object[columns.size()];
         for (int j = 0; j < objects.length; j++) {
-          final Column pair = columns.get(j);
-          objects[j] = pair.representation.getObject(pair.dataSet, i);
+          objects[j] = blocks[j][i - blockStart];
         }
         return objects;
       }
 
       public boolean moveNext() {
-        return ++i < rowCount;
+        if (++i >= rowCount) {
+          return false;
+        }
+        if (i >= blockEnd) {
+          final int count = Math.min(BLOCK_SIZE, rowCount - i);
+          for (int j = 0; j < blocks.length; j++) {
+            final Column column = columns.get(j);
+            column.representation.decode(column.dataSet, i, count,
+                blocks[j]);
+          }
+          blockStart = i;
+          blockEnd = i + count;
+        }
+        return true;
       }
 
       public void reset() {
         i = -1;
+        blockStart = 0;
+        blockEnd = 0;
       }
 
       public void close() {
@@ -0,0 +1,736 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.clone;
+
+import org.apache.calcite.avatica.util.ByteString;
+import org.apache.calcite.linq4j.tree.Primitive;
+import org.apache.calcite.rel.RelCollation;
+import org.apache.calcite.rel.RelCollations;
+import org.apache.calcite.rel.RelFieldCollation;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.util.ImmutableBitSet;
+import org.apache.calcite.util.Pair;
+import org.apache.calcite.util.Util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the contents of an {@link ArrayTable} to a file, and reads it back.
+ *
+ * <p>A snapshot allows a {@link CloneSchema} to restart without reading its
+ * source again. The file starts with a magic number, a format version and
+ * the type of the rows; if any of them does not match, {@link #read} throws
+ * and the caller should load from the source instead.</p>
+ *
+ * <p>Each column is stored in the representation that {@link ColumnLoader}
+ * chose for it, followed by its zone map. The file is read through a
+ * memory-mapped buffer. The data of {@link ArrayTable.PrimitiveArray} and
+ * {@link ArrayTable.BitSlicedPrimitiveArray} columns, which hold most of
+ * the data, are not copied: they remain in the mapped file, off the heap,
+ * and the columns read them through views of the buffer. Dictionaries and
+ * other small arrays are copied. Indexes are not stored; they are rebuilt
+ * when the snapshot is read.</p>
+ *
+ * <p>A file larger than 2GB cannot be mapped, so {@link #write} refuses to
+ * create one. A file that is truncated or otherwise corrupt causes
+ * {@link #read} to throw {@link IOException}.</p>
+ *
+ * <p>The format, big-endian, is:</p>
+ *
+ * <blockquote><pre>
+ * snapshot: MAGIC VERSION rowType:string rowCount:int columnCount:int
+ *     collationCount:int collation* column*
+ * collation: fieldCount:int (fieldIndex:int direction:string
+ *     nullDirection:string)*
+ * column: cardinality:int representation data zoneMap
+ * zoneMap: present:boolean [blockCount:int value* value* int*]
+ * value: tag:byte [payload]
+ * </pre></blockquote>
+ *
+ * <p>The representation and data of a column depend on its
+ * {@link ArrayTable.RepresentationType}. Increment {@link #VERSION} if you
+ * change the format.</p>
+ */
+class ArrayTableSnapshot {
+  /** First 4 bytes of a snapshot file: "CLON". */
+  static final int MAGIC = 0x434c4f4e;
+
+  /** Version of the file format. */
+  static final int VERSION = 1;
+
+  private static final byte NULL = 0;
+  private static final byte BOOLEAN = 1;
+  private static final byte BYTE = 2;
+  private static final byte SHORT = 3;
+  private static final byte INT = 4;
+  private static final byte LONG = 5;
+  private static final byte FLOAT = 6;
+  private static final byte DOUBLE = 7;
+  private static final byte CHAR = 8;
+  private static final byte STRING = 9;
+  private static final byte DECIMAL = 10;
+  private static final byte BYTE_STRING = 11;
+
+  private ArrayTableSnapshot() {
+  }
+
+  /** Writes the contents of a table to a file.
+   *
+   * <p>Writes to a temporary file, then renames it, so that a crash does
+   * not leave a truncated snapshot. */
+  static void write(ArrayTable.Content content, RelDataType rowType,
+      File file) throws IOException {
+    final File tmp = new File(file.getPath() + ".tmp");
+    try (DataOutputStream out =
+             new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(tmp)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      writeString(out, rowType.getFullTypeString());
+      out.writeInt(content.size);
+      out.writeInt(content.columns.size());
+      out.writeInt(content.collations.size());
+      for (RelCollation collation : content.collations) {
+        out.writeInt(collation.getFieldCollations().size());
+        for (RelFieldCollation fieldCollation
+            : collation.getFieldCollations()) {
+          out.writeInt(fieldCollation.getFieldIndex());
+          writeString(out, fieldCollation.direction.name());
+          writeString(out, fieldCollation.nullDirection.name());
+        }
+      }
+      for (ArrayTable.Column column : content.columns) {
+        out.writeInt(column.cardinality);
+        writeRep(out, column.representation);
+        writeData(out, column.representation, column.dataSet);
+        writeZoneMap(out, column.zoneMap);
+      }
+    } catch (IOException | RuntimeException e) {
+      Util.discard(tmp.delete());
+      throw e;
+    }
+    if (tmp.length() > Integer.MAX_VALUE) {
+      Util.discard(tmp.delete());
+      throw new IOException("Snapshot " + file + " would be too large to "
+          + "map");
+    }
+    if (!tmp.renameTo(file)) {
+      Util.discard(file.delete());
+      if (!tmp.renameTo(file)) {
+        throw new IOException("Could not rename " + tmp + " to " + file);
+      }
+    }
+  }
+
+  /** Reads the contents of a table from a file, and builds an index on each
+   * of a set of columns.
+   *
+   * @throws IOException if the file cannot be read, is corrupt, or is not a
+   *   snapshot of the current version of a table with the given row type */
+  static ArrayTable.Content read(File file, RelDataType rowType,
+      ImmutableBitSet indexedColumns) throws IOException {
+    final long start = System.nanoTime();
+    try (FileInputStream in = new FileInputStream(file);
+         FileChannel channel = in.getChannel()) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Snapshot " + file + " is too large to map");
+      }
+      final MappedByteBuffer buffer =
+          channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.remaining() < 8
+          || buffer.getInt() != MAGIC) {
+        throw new IOException(file + " is not a snapshot");
+      }
+      final int version = buffer.getInt();
+      if (version != VERSION) {
+        throw new IOException("Snapshot " + file + " has version " + version
+            + "; expected " + VERSION);
+      }
+      final String type = readString(buffer);
+      if (!type.equals(rowType.getFullTypeString())) {
+        throw new IOException("Snapshot " + file + " has row type " + type
+            + "; expected " + rowType.getFullTypeString());
+      }
+      final int size = buffer.getInt();
+      final int columnCount = buffer.getInt();
+      if (size < 0 || columnCount != rowType.getFieldCount()) {
+        throw new IOException("Snapshot " + file + " is corrupt");
+      }
+      final int collationCount = length(buffer, 4);
+      final List<RelCollation> collations = new ArrayList<>();
+      for (int i = 0; i < collationCount; i++) {
+        final int fieldCount = length(buffer, 4);
+        final List<RelFieldCollation> fieldCollations = new ArrayList<>();
+        for (int j = 0; j < fieldCount; j++) {
+          fieldCollations.add(
+              new RelFieldCollation(buffer.getInt(),
+                  RelFieldCollation.Direction.valueOf(readString(buffer)),
+                  RelFieldCollation.NullDirection.valueOf(
+                      readString(buffer))));
+        }
+        collations.add(RelCollations.of(fieldCollations));
+      }
+      final List<ArrayTable.Column> columns = new ArrayList<>();
+      for (int i = 0; i < columnCount; i++) {
+        final int cardinality = buffer.getInt();
+        final ArrayTable.Representation representation = readRep(buffer);
+        final Object dataSet = readData(buffer, representation);
+        final ArrayTable.ZoneMap zoneMap = readZoneMap(buffer);
+        columns.add(
+            new ArrayTable.Column(representation, dataSet, cardinality,
+                zoneMap));
+      }
+      return new ArrayTable.Content(columns, size, collations,
+          indexedColumns,
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    } catch (RuntimeException e) {
+      // BufferUnderflowException, IllegalArgumentException,
+      // IndexOutOfBoundsException, ClassCastException et cetera
+      throw new IOException("Snapshot " + file + " is corrupt", e);
+    }
+  }
+
+  private static void writeRep(DataOutputStream out,
+      ArrayTable.Representation representation) throws IOException {
+    final ArrayTable.RepresentationType type = representation.getType();
+    writeString(out, type.name());
+    switch (type) {
+    case CONSTANT:
+      out.writeInt(((ArrayTable.Constant) representation).ordinal);
+      return;
+    case OBJECT_ARRAY:
+      out.writeInt(((ArrayTable.ObjectArray) representation).ordinal);
+      return;
+    case PRIMITIVE_ARRAY:
+      final ArrayTable.PrimitiveArray primitiveArray =
+          (ArrayTable.PrimitiveArray) representation;
+      out.writeInt(primitiveArray.ordinal);
+      writeString(out, primitiveArray.primitive.name());
+      writeString(out, primitiveArray.p.name());
+      return;
+    case BIT_SLICED_PRIMITIVE_ARRAY:
+      final ArrayTable.BitSlicedPrimitiveArray bitSliced =
+          (ArrayTable.BitSlicedPrimitiveArray) representation;
+      out.writeInt(bitSliced.ordinal);
+      out.writeInt(bitSliced.bitCount);
+      writeString(out, bitSliced.primitive.name());
+      out.writeBoolean(bitSliced.signed);
+      return;
+    case PRIMITIVE_DICTIONARY:
+      final ArrayTable.PrimitiveDictionary primitiveDictionary =
+          (ArrayTable.PrimitiveDictionary) representation;
+      out.writeInt(primitiveDictionary.ordinal);
+      writeString(out, primitiveDictionary.p.name());
+      writeRep(out, primitiveDictionary.representation);
+      return;
+    case OBJECT_DICTIONARY:
+      final ArrayTable.ObjectDictionary objectDictionary =
+          (ArrayTable.ObjectDictionary) representation;
+      out.writeInt(objectDictionary.ordinal);
+      writeRep(out, objectDictionary.representation);
+      return;
+    case RUN_LENGTH:
+      final ArrayTable.RunLength runLength =
+          (ArrayTable.RunLength) representation;
+      out.writeInt(runLength.ordinal);
+      writeRep(out, runLength.representation);
+      return;
+    case FRAME_OF_REFERENCE:
+      final ArrayTable.FrameOfReference frameOfReference =
+          (ArrayTable.FrameOfReference) representation;
+      out.writeInt(frameOfReference.ordinal);
+      out.writeLong(frameOfReference.base);
+      writeString(out, frameOfReference.p.name());
+      writeRep(out, frameOfReference.representation);
+      return;
+    default:
+      throw new UnsupportedOperationException(
+          "cannot write representation " + type);
+    }
+  }
+
+  private static ArrayTable.Representation readRep(ByteBuffer buffer) {
+    final ArrayTable.RepresentationType type =
+        ArrayTable.RepresentationType.valueOf(readString(buffer));
+    final int ordinal = buffer.getInt();
+    switch (type) {
+    case CONSTANT:
+      return new ArrayTable.Constant(ordinal);
+    case OBJECT_ARRAY:
+      return new ArrayTable.ObjectArray(ordinal);
+    case PRIMITIVE_ARRAY:
+      final Primitive primitive = Primitive.valueOf(readString(buffer));
+      return new ArrayTable.PrimitiveArray(ordinal, primitive,
+          Primitive.valueOf(readString(buffer)));
+    case BIT_SLICED_PRIMITIVE_ARRAY:
+      final int bitCount = buffer.getInt();
+      if (bitCount < 1 || bitCount > 64) {
+        throw new IllegalArgumentException("invalid bit count " + bitCount);
+      }
+      return new ArrayTable.BitSlicedPrimitiveArray(ordinal, bitCount,
+          Primitive.valueOf(readString(buffer)), buffer.get() != 0);
+    case PRIMITIVE_DICTIONARY:
+      final Primitive p = Primitive.valueOf(readString(buffer));
+      return new ArrayTable.PrimitiveDictionary(ordinal, p, readRep(buffer));
+    case OBJECT_DICTIONARY:
+      return new ArrayTable.ObjectDictionary(ordinal, readRep(buffer));
+    case RUN_LENGTH:
+      return new ArrayTable.RunLength(ordinal, readRep(buffer));
+    case FRAME_OF_REFERENCE:
+      final long base = buffer.getLong();
+      final Primitive p2 = Primitive.valueOf(readString(buffer));
+      return new ArrayTable.FrameOfReference(ordinal, base, p2,
+          readRep(buffer));
+    default:
+      throw new IllegalArgumentException("cannot read representation "
+          + type);
+    }
+  }
+
+  private static void writeData(DataOutputStream out,
+      ArrayTable.Representation representation, Object dataSet)
+      throws IOException {
+    final Pair<Object, Object> pair;
+    switch (representation.getType()) {
+    case CONSTANT:
+      pair = toPair(dataSet);
+      writeValue(out, pair.left);
+      out.writeInt((Integer) pair.right);
+      return;
+    case OBJECT_ARRAY:
+      writeValues(out, (Comparable[]) dataSet);
+      return;
+    case PRIMITIVE_ARRAY:
+      writeArray(out, ((ArrayTable.PrimitiveArray) representation).primitive,
+          dataSet);
+      return;
+    case BIT_SLICED_PRIMITIVE_ARRAY:
+      writeArray(out, Primitive.LONG, dataSet);
+      return;
+    case PRIMITIVE_DICTIONARY:
+      final ArrayTable.PrimitiveDictionary primitiveDictionary =
+          (ArrayTable.PrimitiveDictionary) representation;
+      pair = toPair(dataSet);
+      writeData(out, primitiveDictionary.representation, pair.left);
+      writeArray(out, primitiveDictionary.p, pair.right);
+      return;
+    case OBJECT_DICTIONARY:
+      pair = toPair(dataSet);
+      writeData(out, ((ArrayTable.ObjectDictionary) representation)
+          .representation, pair.left);
+      writeValues(out, (Comparable[]) pair.right);
+      return;
+    case RUN_LENGTH:
+      pair = toPair(dataSet);
+      writeData(out, ((ArrayTable.RunLength) representation).representation,
+          pair.left);
+      writeArray(out, Primitive.INT, pair.right);
+      return;
+    case FRAME_OF_REFERENCE:
+      writeData(out,
+          ((ArrayTable.FrameOfReference) representation).representation,
+          dataSet);
+      return;
+    default:
+      throw new AssertionError(representation.getType());
+    }
+  }
+
+  private static Object readData(ByteBuffer buffer,
+      ArrayTable.Representation representation) {
+    switch (representation.getType()) {
+    case CONSTANT:
+      final Object value = readValue(buffer);
+      return Pair.of(value, buffer.getInt());
+    case OBJECT_ARRAY:
+      return readValues(buffer);
+    case PRIMITIVE_ARRAY:
+      return readView(buffer,
+          ((ArrayTable.PrimitiveArray) representation).primitive);
+    case BIT_SLICED_PRIMITIVE_ARRAY:
+      return readView(buffer, Primitive.LONG);
+    case PRIMITIVE_DICTIONARY:
+      final ArrayTable.PrimitiveDictionary primitiveDictionary =
+          (ArrayTable.PrimitiveDictionary) representation;
+      final Object codes =
+          readData(buffer, primitiveDictionary.representation);
+      return Pair.of(codes, readArray(buffer, primitiveDictionary.p));
+    case OBJECT_DICTIONARY:
+      final Object codes2 =
+          readData(buffer,
+              ((ArrayTable.ObjectDictionary) representation).representation);
+      return Pair.of(codes2, readValues(buffer));
+    case RUN_LENGTH:
+      final Object runValues =
+          readData(buffer,
+              ((ArrayTable.RunLength) representation).representation);
+      return Pair.of(runValues, readArray(buffer, Primitive.INT));
+    case FRAME_OF_REFERENCE:
+      return readData(buffer,
+          ((ArrayTable.FrameOfReference) representation).representation);
+    default:
+      throw new AssertionError(representation.getType());
+    }
+  }
+
+  private static void writeZoneMap(DataOutputStream out,
+      ArrayTable.ZoneMap zoneMap) throws IOException {
+    out.writeBoolean(zoneMap != null);
+    if (zoneMap != null) {
+      out.writeInt(zoneMap.mins.length);
+      for (Comparable min : zoneMap.mins) {
+        writeValue(out, min);
+      }
+      for (Comparable max : zoneMap.maxes) {
+        writeValue(out, max);
+      }
+      for (int nullCount : zoneMap.nullCounts) {
+        out.writeInt(nullCount);
+      }
+    }
+  }
+
+  private static ArrayTable.ZoneMap readZoneMap(ByteBuffer buffer) {
+    if (buffer.get() == 0) {
+      return null;
+    }
+    final int blockCount = length(buffer, 1);
+    final Comparable[] mins = new Comparable[blockCount];
+    final Comparable[] maxes = new Comparable[blockCount];
+    final int[] nullCounts = new int[blockCount];
+    for (int i = 0; i < blockCount; i++) {
+      mins[i] = readValue(buffer);
+    }
+    for (int i = 0; i < blockCount; i++) {
+      maxes[i] = readValue(buffer);
+    }
+    buffer.asIntBuffer().get(nullCounts);
+    skip(buffer, blockCount, 4);
+    return new ArrayTable.ZoneMap(mins, maxes, nullCounts);
+  }
+
+  /** Writes an array of primitive values, preceded by its length. */
+  private static void writeArray(DataOutputStream out, Primitive primitive,
+      Object array) throws IOException {
+    switch (primitive) {
+    case BOOLEAN:
+      final boolean[] booleans = (boolean[]) array;
+      out.writeInt(booleans.length);
+      for (boolean v : booleans) {
+        out.writeBoolean(v);
+      }
+      return;
+    case BYTE:
+      final byte[] bytes = (byte[]) array;
+      out.writeInt(bytes.length);
+      out.write(bytes);
+      return;
+    case CHAR:
+      final char[] chars = (char[]) array;
+      out.writeInt(chars.length);
+      for (char v : chars) {
+        out.writeChar(v);
+      }
+      return;
+    case SHORT:
+      final short[] shorts = (short[]) array;
+      out.writeInt(shorts.length);
+      for (short v : shorts) {
+        out.writeShort(v);
+      }
+      return;
+    case INT:
+      final int[] ints = (int[]) array;
+      out.writeInt(ints.length);
+      for (int v : ints) {
+        out.writeInt(v);
+      }
+      return;
+    case LONG:
+      final long[] longs = (long[]) array;
+      out.writeInt(longs.length);
+      for (long v : longs) {
+        out.writeLong(v);
+      }
+      return;
+    case FLOAT:
+      final float[] floats = (float[]) array;
+      out.writeInt(floats.length);
+      for (float v : floats) {
+        out.writeFloat(v);
+      }
+      return;
+    case DOUBLE:
+      final double[] doubles = (double[]) array;
+      out.writeInt(doubles.length);
+      for (double v : doubles) {
+        out.writeDouble(v);
+      }
+      return;
+    default:
+      throw new AssertionError(primitive);
+    }
+  }
+
+  /** Reads an array of primitive values, copying them in bulk from the
+   * buffer. */
+  private static Object readArray(ByteBuffer buffer, Primitive primitive) {
+    final int length = length(buffer, width(primitive));
+    switch (primitive) {
+    case BOOLEAN:
+      final boolean[] booleans = new boolean[length];
+      for (int i = 0; i < length; i++) {
+        booleans[i] = buffer.get() != 0;
+      }
+      return booleans;
+    case BYTE:
+      final byte[] bytes = new byte[length];
+      buffer.get(bytes);
+      return bytes;
+    case CHAR:
+      final char[] chars = new char[length];
+      buffer.asCharBuffer().get(chars);
+      skip(buffer, length, 2);
+      return chars;
+    case SHORT:
+      final short[] shorts = new short[length];
+      buffer.asShortBuffer().get(shorts);
+      skip(buffer, length, 2);
+      return shorts;
+    case INT:
+      final int[] ints = new int[length];
+      buffer.asIntBuffer().get(ints);
+      skip(buffer, length, 4);
+      return ints;
+    case LONG:
+      final long[] longs = new long[length];
+      buffer.asLongBuffer().get(longs);
+      skip(buffer, length, 8);
+      return longs;
+    case FLOAT:
+      final float[] floats = new float[length];
+      buffer.asFloatBuffer().get(floats);
+      skip(buffer, length, 4);
+      return floats;
+    case DOUBLE:
+      final double[] doubles = new double[length];
+      buffer.asDoubleBuffer().get(doubles);
+      skip(buffer, length, 8);
+      return doubles;
+    default:
+      throw new AssertionError(primitive);
+    }
+  }
+
+  /** Returns a read-only view of an array of primitive values in the
+   * buffer, without copying them, and advances the buffer past them.
+   * Boolean values are copied, because there is no buffer of booleans. */
+  private static Object readView(ByteBuffer buffer, Primitive primitive) {
+    if (primitive == Primitive.BOOLEAN) {
+      return readArray(buffer, primitive);
+    }
+    final int width = width(primitive);
+    final int length = length(buffer, width);
+    final ByteBuffer slice = buffer.slice();
+    slice.limit(length * width);
+    skip(buffer, length, width);
+    switch (primitive) {
+    case BYTE:
+      return slice;
+    case CHAR:
+      return slice.asCharBuffer();
+    case SHORT:
+      return slice.asShortBuffer();
+    case INT:
+      return slice.asIntBuffer();
+    case LONG:
+      return slice.asLongBuffer();
+    case FLOAT:
+      return slice.asFloatBuffer();
+    case DOUBLE:
+      return slice.asDoubleBuffer();
+    default:
+      throw new AssertionError(primitive);
+    }
+  }
+
+  /** Returns the number of bytes in which a value of a primitive type is
+   * stored. */
+  private static int width(Primitive primitive) {
+    switch (primitive) {
+    case BOOLEAN:
+    case BYTE:
+      return 1;
+    case CHAR:
+    case SHORT:
+      return 2;
+    case INT:
+    case FLOAT:
+      return 4;
+    default:
+      return 8;
+    }
+  }
+
+  /** Reads the length of an array whose elements each occupy at least
+   * {@code width} bytes, and checks that the buffer is large enough to hold
+   * them; so that a corrupt file does not cause us to allocate a huge or
+   * negative-sized array. */
+  private static int length(ByteBuffer buffer, int width) {
+    final int length = buffer.getInt();
+    if (length < 0 || (long) length * width > buffer.remaining()) {
+      throw new IllegalArgumentException("invalid length " + length);
+    }
+    return length;
+  }
+
+  /** Advances a buffer past values that were read through a view. */
+  private static void skip(ByteBuffer buffer, int count, int width) {
+    buffer.position(buffer.position() + count * width);
+  }
+
+  private static void writeValues(DataOutputStream out, Comparable[] values)
+      throws IOException {
+    out.writeInt(values.length);
+    for (Comparable value : values) {
+      writeValue(out, value);
+    }
+  }
+
+  private static Comparable[] readValues(ByteBuffer buffer) {
+    final Comparable[] values = new Comparable[length(buffer, 1)];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = readValue(buffer);
+    }
+    return values;
+  }
+
+  private static void writeValue(DataOutputStream out, Object value)
+      throws IOException {
+    if (value == null) {
+      out.writeByte(NULL);
+    } else if (value instanceof Boolean) {
+      out.writeByte(BOOLEAN);
+      out.writeBoolean((Boolean) value);
+    } else if (value instanceof Byte) {
+      out.writeByte(BYTE);
+      out.writeByte((Byte) value);
+    } else if (value instanceof Short) {
+      out.writeByte(SHORT);
+      out.writeShort((Short) value);
+    } else if (value instanceof Integer) {
+      out.writeByte(INT);
+      out.writeInt((Integer) value);
+    } else if (value instanceof Long) {
+      out.writeByte(LONG);
+      out.writeLong((Long) value);
+    } else if (value instanceof Float) {
+      out.writeByte(FLOAT);
+      out.writeFloat((Float) value);
+    } else if (value instanceof Double) {
+      out.writeByte(DOUBLE);
+      out.writeDouble((Double) value);
+    } else if (value instanceof Character) {
+      out.writeByte(CHAR);
+      out.writeChar((Character) value);
+    } else if (value instanceof String) {
+      out.writeByte(STRING);
+      writeString(out, (String) value);
+    } else if (value instanceof BigDecimal) {
+      out.writeByte(DECIMAL);
+      writeString(out, value.toString());
+    } else if (value instanceof ByteString) {
+      out.writeByte(BYTE_STRING);
+      final byte[] bytes = ((ByteString) value).getBytes();
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    } else {
+      throw new UnsupportedOperationException("cannot write value of "
+          + value.getClass());
+    }
+  }
+
+  private static Comparable readValue(ByteBuffer buffer) {
+    final byte tag = buffer.get();
+    switch (tag) {
+    case NULL:
+      return null;
+    case BOOLEAN:
+      return buffer.get() != 0;
+    case BYTE:
+      return buffer.get();
+    case SHORT:
+      return buffer.getShort();
+    case INT:
+      return buffer.getInt();
+    case LONG:
+      return buffer.getLong();
+    case FLOAT:
+      return buffer.getFloat();
+    case DOUBLE:
+      return buffer.getDouble();
+    case CHAR:
+      return buffer.getChar();
+    case STRING:
+      return readString(buffer);
+    case DECIMAL:
+      return new BigDecimal(readString(buffer));
+    case BYTE_STRING:
+      final byte[] bytes = new byte[length(buffer, 1)];
+      buffer.get(bytes);
+      return new ByteString(bytes);
+    default:
+      throw new IllegalArgumentException("unknown value tag " + tag);
+    }
+  }
+
+  /** Writes a string as its length in bytes followed by its UTF-8 encoding.
+   * Unlike {@link DataOutputStream#writeUTF}, allows strings longer than
+   * 64KB. */
+  private static void writeString(DataOutputStream out, String s)
+      throws IOException {
+    final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    final byte[] bytes = new byte[length(buffer, 1)];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Pair<Object, Object> toPair(Object dataSet) {
+    return (Pair<Object, Object>) dataSet;
+  }
+}
+
+// End ArrayTableSnapshot.java
@@ -25,6 +25,8 @@ import org.apache.calcite.linq4j.QueryProvider;
 import org.apache.calcite.linq4j.Queryable;
 import org.apache.calcite.rel.RelCollation;
 import org.apache.calcite.rel.RelCollations;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeField;
 import org.apache.calcite.rel.type.RelProtoDataType;
 import org.apache.calcite.schema.QueryableTable;
 import org.apache.calcite.schema.Schema;
@@ -33,11 +35,18 @@ import org.apache.calcite.schema.SchemaPlus;
 import org.apache.calcite.schema.Schemas;
 import org.apache.calcite.schema.Table;
 import org.apache.calcite.schema.impl.AbstractSchema;
+import org.apache.calcite.util.ImmutableBitSet;
 
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -53,7 +62,13 @@ public class CloneSchema extends AbstractSchema {
   // TODO: implement 'source' property
   // TODO: test Factory
 
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(CloneSchema.class);
+
   private final SchemaPlus sourceSchema;
+  private final boolean filterable;
+  private final Map<String, List<String>> indexes;
+  private final File snapshotDirectory;
 
   /**
    * Creates a CloneSchema.
@@ -61,8 +76,57 @@ public class CloneSchema extends AbstractSchema {
    * @param sourceSchema JDBC data source
    */
   public CloneSchema(SchemaPlus sourceSchema) {
+    this(sourceSchema, false);
+  }
+
+  /**
+   * Creates a CloneSchema, optionally with tables that apply filters and
+   * projects while they scan.
+   *
+   * @param sourceSchema JDBC data source
+   * @param filterable Whether tables implement
+   *     {@link org.apache.calcite.schema.ProjectableFilterableTable}, and
+   *     use zone maps to skip blocks of rows that do not match filters
+   */
+  public CloneSchema(SchemaPlus sourceSchema, boolean filterable) {
+    this(sourceSchema, filterable, ImmutableMap.<String, List<String>>of());
+  }
+
+  /**
+   * Creates a CloneSchema with secondary indexes.
+   *
+   * @param sourceSchema JDBC data source
+   * @param filterable Whether tables apply filters and projects while they
+   *     scan
+   * @param indexes Map from table name to the names of the columns of that
+   *     table that have an index; see
+   *     {@link org.apache.calcite.schema.IndexableTable}
+   */
+  public CloneSchema(SchemaPlus sourceSchema, boolean filterable,
+      Map<String, List<String>> indexes) {
+    this(sourceSchema, filterable, indexes, null);
+  }
+
+  /**
+   * Creates a CloneSchema whose tables are persisted in snapshot files.
+   *
+   * @param sourceSchema JDBC data source
+   * @param filterable Whether tables apply filters and projects while they
+   *     scan
+   * @param indexes Map from table name to the names of the columns of that
+   *     table that have an index
+   * @param snapshotDirectory Directory that contains a snapshot of each
+   *     table, or null; if a table's snapshot exists, the table is read from
+   *     it instead of from the source, otherwise the snapshot is written
+   *     after the table is loaded
+   */
+  public CloneSchema(SchemaPlus sourceSchema, boolean filterable,
+      Map<String, List<String>> indexes, File snapshotDirectory) {
     super();
     this.sourceSchema = sourceSchema;
+    this.filterable = filterable;
+    this.indexes = ImmutableMap.copyOf(indexes);
+    this.snapshotDirectory = snapshotDirectory;
   }
 
   @Override protected Map<String, Table> getTableMap() {
@@ -84,8 +148,25 @@ public class CloneSchema extends AbstractSchema {
         sourceTable.asQueryable(queryProvider, sourceSchema, name);
     final JavaTypeFactory typeFactory =
         ((CalciteConnection) queryProvider).getTypeFactory();
+    final ImmutableBitSet.Builder indexedColumns = ImmutableBitSet.builder();
+    if (indexes.containsKey(name)) {
+      final RelDataType rowType = sourceTable.getRowType(typeFactory);
+      for (String columnName : indexes.get(name)) {
+        final RelDataTypeField field = rowType.getField(columnName, true,
+            false);
+        if (field == null) {
+          throw new IllegalArgumentException("table '" + name
+              + "' has no column '" + columnName + "'");
+        }
+        indexedColumns.set(field.getIndex());
+      }
+    }
     return createCloneTable(typeFactory, Schemas.proto(sourceTable),
-        ImmutableList.<RelCollation>of(), null, queryable);
+        ImmutableList.<RelCollation>of(), null, queryable, filterable,
+        indexedColumns.build(),
+        snapshotDirectory == null
+            ? null
+            : new File(snapshotDirectory, name + ".snapshot"));
   }
 
   @Deprecated // to be removed before 2.0
@@ -100,6 +181,44 @@ public class CloneSchema extends AbstractSchema {
   public static <T> Table createCloneTable(final JavaTypeFactory typeFactory,
       final RelProtoDataType protoRowType, final List<RelCollation> collations,
       final List<ColumnMetaData.Rep> repList, final Enumerable<T> source) {
+    return createCloneTable(typeFactory, protoRowType, collations, repList,
+        source, false);
+  }
+
+  /** Creates a table that contains an in-memory copy of the rows of
+   * {@code source}. If {@code filterable}, the table implements
+   * {@link org.apache.calcite.schema.ProjectableFilterableTable}. */
+  public static <T> Table createCloneTable(final JavaTypeFactory typeFactory,
+      final RelProtoDataType protoRowType, final List<RelCollation> collations,
+      final List<ColumnMetaData.Rep> repList, final Enumerable<T> source,
+      boolean filterable) {
+    return createCloneTable(typeFactory, protoRowType, collations, repList,
+        source, filterable, ImmutableBitSet.of());
+  }
+
+  /** Creates a table that contains an in-memory copy of the rows of
+   * {@code source}, with an index on each of {@code indexedColumns}. */
+  public static <T> Table createCloneTable(final JavaTypeFactory typeFactory,
+      final RelProtoDataType protoRowType, final List<RelCollation> collations,
+      final List<ColumnMetaData.Rep> repList, final Enumerable<T> source,
+      boolean filterable, final ImmutableBitSet indexedColumns) {
+    return createCloneTable(typeFactory, protoRowType, collations, repList,
+        source, filterable, indexedColumns, null);
+  }
+
+  /** Creates a table that contains an in-memory copy of the rows of
+   * {@code source}, with an index on each of {@code indexedColumns}.
+   *
+   * <p>If {@code snapshotFile} is not null and exists, the table is read
+   * from it, and {@code source} is not read. Otherwise the table is loaded
+   * from {@code source}, then written to {@code snapshotFile}. A snapshot
+   * is not refreshed if the source changes; delete the file to force a
+   * reload. */
+  public static <T> Table createCloneTable(final JavaTypeFactory typeFactory,
+      final RelProtoDataType protoRowType, final List<RelCollation> collations,
+      final List<ColumnMetaData.Rep> repList, final Enumerable<T> source,
+      boolean filterable, final ImmutableBitSet indexedColumns,
+      final File snapshotFile) {
     final Type elementType;
     if (source instanceof QueryableTable) {
       elementType = ((QueryableTable) source).getElementType();
@@ -112,12 +231,20 @@ public class CloneSchema extends AbstractSchema {
     } else {
       elementType = Object[].class;
     }
-    return new ArrayTable(
-        elementType,
-        protoRowType,
+    final Supplier<ArrayTable.Content> supplier =
         Suppliers.memoize(
             new Supplier<ArrayTable.Content>() {
               public ArrayTable.Content get() {
+                final RelDataType rowType = protoRowType.apply(typeFactory);
+                if (snapshotFile != null && snapshotFile.exists()) {
+                  try {
+                    return ArrayTableSnapshot.read(snapshotFile, rowType,
+                        indexedColumns);
+                  } catch (IOException | RuntimeException e) {
+                    LOGGER.warn("Could not read snapshot {}; loading from "
+                        + "source", snapshotFile, e);
+                  }
+                }
                 final ColumnLoader loader =
                     new ColumnLoader<>(typeFactory, source, protoRowType,
                         repList);
@@ -126,10 +253,24 @@ public class CloneSchema extends AbstractSchema {
                         && loader.sortField >= 0
                         ? RelCollations.createSingleton(loader.sortField)
                         : collations;
-                return new ArrayTable.Content(loader.representationValues,
-                    loader.size(), collation2);
+                final ArrayTable.Content content =
+                    new ArrayTable.Content(loader.representationValues,
+                        loader.size(), collation2, indexedColumns,
+                        loader.loadMillis);
+                if (snapshotFile != null) {
+                  try {
+                    ArrayTableSnapshot.write(content, rowType, snapshotFile);
+                  } catch (IOException | UnsupportedOperationException e) {
+                    LOGGER.warn("Could not write snapshot {}", snapshotFile,
+                        e);
+                  }
+                }
+                return content;
               }
-            }));
+            });
+    return filterable
+        ? new FilterableArrayTable(elementType, protoRowType, supplier)
+        : new ArrayTable(elementType, protoRowType, supplier);
   }
 
   /** Schema factory that creates a
@@ -154,6 +295,14 @@ public class CloneSchema extends AbstractSchema {
    *     }
    *   ]
    * }</pre></blockquote>
+   *
+   * <p>If the operand contains {@code filterable: true}, the tables apply
+   * filters and projects while they scan. The {@code indexes} operand, for
+   * example {@code indexes: {customer: ['customer_id', 'city']}}, creates
+   * secondary indexes. If the operand contains
+   * {@code snapshotDirectory: '/var/cache/foodmart'}, each table is
+   * persisted in that directory after it is loaded, and read from there
+   * on restart.</p>
    */
   public static class Factory implements SchemaFactory {
     public Schema create(
@@ -163,7 +312,17 @@ public class CloneSchema extends AbstractSchema {
       SchemaPlus schema =
           parentSchema.add(name,
               JdbcSchema.create(parentSchema, name + "$source", operand));
-      return new CloneSchema(schema);
+      @SuppressWarnings("unchecked")
+      final Map<String, List<String>> indexes =
+          (Map<String, List<String>>) operand.get("indexes");
+      final String snapshotDirectory =
+          (String) operand.get("snapshotDirectory");
+      return new CloneSchema(schema,
+          Boolean.TRUE.equals(operand.get("filterable")),
+          indexes == null
+              ? ImmutableMap.<String, List<String>>of()
+              : indexes,
+          snapshotDirectory == null ? null : new File(snapshotDirectory));
     }
   }
 }
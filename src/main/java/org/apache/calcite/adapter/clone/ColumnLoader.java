@@ -20,15 +20,21 @@ import org.apache.calcite.adapter.java.JavaTypeFactory;
 import org.apache.calcite.avatica.ColumnMetaData;
 import org.apache.calcite.avatica.util.DateTimeUtils;
 import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
 import org.apache.calcite.linq4j.Ord;
 import org.apache.calcite.linq4j.tree.Primitive;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeField;
 import org.apache.calcite.rel.type.RelProtoDataType;
+import org.apache.calcite.runtime.DaemonExecutors;
+import org.apache.calcite.runtime.Hook;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.lang.reflect.Type;
 import java.sql.Date;
 import java.sql.Time;
@@ -40,6 +46,12 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Column loader.
@@ -78,10 +90,27 @@ class ColumnLoader<T> {
         }
       };
 
-  public final List<T> list = new ArrayList<>();
+  /** Number of rows read from the source before their values are added to
+   * the columns. */
+  static final int CHUNK_SIZE = 65536;
+
+  /** Minimum number of values in a chunk for which we process the columns
+   * in parallel. */
+  static final int MIN_PARALLEL_VALUES = 4096;
+
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(ColumnLoader.class);
+
+  /** Pool on which columns are loaded and encoded. */
+  private static final ExecutorService POOL =
+      DaemonExecutors.newProcessorThreadPool("calcite-column-loader-%d");
+
   public final List<ArrayTable.Column> representationValues = new ArrayList<>();
   private final JavaTypeFactory typeFactory;
   public final int sortField;
+  private int size;
+  /** Time taken by the load, in milliseconds. */
+  public final long loadMillis;
 
   /** Creates a column loader, and performs the load.
    *
@@ -93,6 +122,7 @@ class ColumnLoader<T> {
       Enumerable<T> sourceTable,
       RelProtoDataType protoRowType,
       List<ColumnMetaData.Rep> repList) {
+    final long start = System.nanoTime();
     this.typeFactory = typeFactory;
     final RelDataType rowType = protoRowType.apply(typeFactory);
     if (repList == null) {
@@ -100,10 +130,19 @@ class ColumnLoader<T> {
           Collections.nCopies(rowType.getFieldCount(),
               ColumnMetaData.Rep.OBJECT);
     }
-    sourceTable.into(list);
     final int[] sorts = {-1};
-    load(rowType, repList, sorts);
+    load(sourceTable, rowType, repList, sorts, start);
     this.sortField = sorts[0];
+    this.loadMillis = elapsedMillis(start);
+    LOGGER.debug("Loaded {} rows, {} columns in {} ms", size,
+        representationValues.size(), loadMillis);
+    Hook.CLONE_LOAD.run(new Object[] {size, loadMillis, true});
+  }
+
+  /** Returns the number of milliseconds since a given value of
+   * {@link System#nanoTime()}. */
+  private static long elapsedMillis(long start) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
   }
 
   static int nextPowerOf2(int v) {
@@ -169,11 +208,19 @@ class ColumnLoader<T> {
   }
 
   public int size() {
-    return list.size();
+    return size;
   }
 
-  private void load(final RelDataType elementType,
-      List<ColumnMetaData.Rep> repList, int[] sort) {
+  /** Reads the source once, a chunk of rows at a time, adding the values of
+   * each column to a {@link ValueSet}; then freezes each value set into a
+   * column. Columns are processed in parallel. Calls
+   * {@link Hook#CLONE_LOAD} after each chunk, with the time elapsed since
+   * {@code start}.
+   *
+   * <p>If a column is unique, the rows are sorted on it, and
+   * {@code sort[0]} is set to its ordinal. */
+  private void load(Enumerable<T> sourceTable, final RelDataType elementType,
+      final List<ColumnMetaData.Rep> repList, int[] sort, long start) {
     final List<Type> types =
         new AbstractList<Type>() {
           final List<RelDataTypeField> fields =
@@ -187,67 +234,142 @@ class ColumnLoader<T> {
             return fields.size();
           }
         };
-    int[] sources = null;
-    for (final Ord<Type> pair : Ord.zip(types)) {
-      @SuppressWarnings("unchecked")
-      final List<?> sliceList =
-          types.size() == 1
-              ? list
-              : new AbstractList<Object>() {
-                final int slice = pair.i;
-
-                public Object get(int index) {
-                  return ((Object[]) list.get(index))[slice];
-                }
-
-                public int size() {
-                  return list.size();
-                }
-              };
-      final List<?> list2 =
-          wrap(
-              repList.get(pair.i),
-              sliceList,
-              elementType.getFieldList().get(pair.i).getType());
-      final Class clazz = pair.e instanceof Class
-          ? (Class) pair.e
-          : Object.class;
-      ValueSet valueSet = new ValueSet(clazz);
-      for (Object o : list2) {
-        valueSet.add((Comparable) o);
-      }
-      if (sort != null
-          && sort[0] < 0
-          && valueSet.map.keySet().size() == list.size()) {
-        // We have discovered a the first unique key in the table.
-        sort[0] = pair.i;
-        final Comparable[] values =
-            valueSet.values.toArray(new Comparable[list.size()]);
-        final Kev[] kevs = new Kev[list.size()];
-        for (int i = 0; i < kevs.length; i++) {
-          kevs[i] = new Kev(i, values[i]);
+    final List<ValueSet> valueSets = new ArrayList<>();
+    for (Type type : types) {
+      valueSets.add(
+          new ValueSet(type instanceof Class ? (Class) type : Object.class));
+    }
+    final List<T> chunk = new ArrayList<>();
+    try (Enumerator<T> enumerator = sourceTable.enumerator()) {
+      while (enumerator.moveNext()) {
+        chunk.add(enumerator.current());
+        if (chunk.size() == CHUNK_SIZE) {
+          addChunk(chunk, elementType, repList, valueSets);
+          LOGGER.debug("Loaded {} rows", size);
+          Hook.CLONE_LOAD.run(
+              new Object[] {size, elapsedMillis(start), false});
         }
-        Arrays.sort(kevs);
-        sources = new int[list.size()];
-        for (int i = 0; i < sources.length; i++) {
-          sources[i] = kevs[i].source;
+      }
+    }
+    addChunk(chunk, elementType, repList, valueSets);
+
+    int[] sources = null;
+    if (sort != null) {
+      for (Ord<ValueSet> valueSet : Ord.zip(valueSets)) {
+        if (valueSet.e.map.size() == size) {
+          // We have discovered the first unique key in the table.
+          sort[0] = valueSet.i;
+          sources = sortedSources(valueSet.e);
+          break;
         }
+      }
+    }
 
-        if (isIdentity(sources)) {
-          // Table was already sorted. Clear the permutation.
-          // We've already set sort[0], so we won't check for another
-          // sorted column.
-          sources = null;
-        } else {
-          // Re-sort all previous columns.
-          for (int i = 0; i < pair.i; i++) {
-            representationValues.set(
-                i, representationValues.get(i).permute(sources));
-          }
+    final int[] sources2 = sources;
+    final List<Callable<ArrayTable.Column>> tasks = new ArrayList<>();
+    for (int i = 0; i < valueSets.size(); i++) {
+      final int ordinal = i;
+      tasks.add(
+          new Callable<ArrayTable.Column>() {
+            public ArrayTable.Column call() {
+              final ArrayTable.Column column =
+                  valueSets.get(ordinal).freeze(ordinal, sources2);
+              // Release the value set as soon as it is frozen.
+              valueSets.set(ordinal, null);
+              return column;
+            }
+          });
+    }
+    representationValues.addAll(invokeAll(tasks, size));
+  }
+
+  /** Adds the values of a chunk of rows to the value set of each column, and
+   * clears the chunk. */
+  private void addChunk(final List<T> chunk, final RelDataType elementType,
+      final List<ColumnMetaData.Rep> repList,
+      final List<ValueSet> valueSets) {
+    final List<Callable<Void>> tasks = new ArrayList<>();
+    for (int i = 0; i < valueSets.size(); i++) {
+      final int slice = i;
+      tasks.add(
+          new Callable<Void>() {
+            public Void call() {
+              @SuppressWarnings("unchecked")
+              final List<?> sliceList =
+                  valueSets.size() == 1
+                      ? chunk
+                      : new AbstractList<Object>() {
+                        public Object get(int index) {
+                          return ((Object[]) chunk.get(index))[slice];
+                        }
+
+                        public int size() {
+                          return chunk.size();
+                        }
+                      };
+              final List<?> list2 =
+                  wrap(
+                      repList.get(slice),
+                      sliceList,
+                      elementType.getFieldList().get(slice).getType());
+              final ValueSet valueSet = valueSets.get(slice);
+              for (Object o : list2) {
+                valueSet.add((Comparable) o);
+              }
+              return null;
+            }
+          });
+    }
+    invokeAll(tasks, chunk.size());
+    size += chunk.size();
+    chunk.clear();
+  }
+
+  /** Returns the permutation that sorts the rows on a unique column, or null
+   * if they are already sorted. */
+  private static int[] sortedSources(ValueSet valueSet) {
+    final Comparable[] values =
+        valueSet.values.toArray(new Comparable[valueSet.values.size()]);
+    final Kev[] kevs = new Kev[values.length];
+    for (int i = 0; i < kevs.length; i++) {
+      kevs[i] = new Kev(i, values[i]);
+    }
+    Arrays.sort(kevs);
+    final int[] sources = new int[values.length];
+    for (int i = 0; i < sources.length; i++) {
+      sources[i] = kevs[i].source;
+    }
+    return isIdentity(sources) ? null : sources;
+  }
+
+  /** Runs a task for each column, in parallel if there are several columns
+   * and enough rows to be worth it, and returns their results in order. */
+  private static <V> List<V> invokeAll(List<Callable<V>> tasks,
+      int rowCount) {
+    final List<V> results = new ArrayList<>();
+    try {
+      if (tasks.size() < 2
+          || (long) tasks.size() * rowCount < MIN_PARALLEL_VALUES) {
+        for (Callable<V> task : tasks) {
+          results.add(task.call());
+        }
+      } else {
+        for (Future<V> future : POOL.invokeAll(tasks)) {
+          results.add(future.get());
         }
       }
-      representationValues.add(valueSet.freeze(pair.i, sources));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException("Error while loading columns",
+          e.getCause());
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new RuntimeException("Error while loading columns", e);
     }
+    return results;
   }
 
   /** Adapt for some types that we represent differently internally than their
@@ -290,6 +412,21 @@ class ColumnLoader<T> {
    * to a serializable (and more compact) form before load completes.
    */
   static class ValueSet {
+    /** Minimum number of values for which we consider run-length
+     * encoding. */
+    static final int MIN_RUN_LENGTH_SIZE = 4096;
+
+    /** Minimum average run length for which we use run-length
+     * encoding. */
+    static final int MIN_RUN_LENGTH = 8;
+
+    /** Minimum number of values for which we consider a dictionary. */
+    static final int MIN_DICTIONARY_SIZE = 2000;
+
+    /** Number of bits per value that an encoding must save, compared to
+     * the next best encoding, to be worth an extra indirection. */
+    static final int MIN_SAVED_BITS = 8;
+
     final Class clazz;
     final Map<Comparable, Comparable> map = new HashMap<>();
     final List<Comparable> values = new ArrayList<>();
@@ -326,10 +463,26 @@ class ColumnLoader<T> {
     /** Freezes the contents of this value set into a column, optionally
      * re-ordering if {@code sources} is specified. */
     ArrayTable.Column freeze(int ordinal, int[] sources) {
-      ArrayTable.Representation representation = chooseRep(ordinal);
+      ArrayTable.Representation representation =
+          chooseRep(ordinal, sources);
       final int cardinality = map.size() + (containsNull ? 1 : 0);
       final Object data = representation.freeze(this, sources);
-      return new ArrayTable.Column(representation, data, cardinality);
+      final ArrayTable.ZoneMap zoneMap =
+          ArrayTable.ZoneMap.of(ArrayTable.permuteList(values, sources));
+      return new ArrayTable.Column(representation, data, cardinality,
+          zoneMap);
+    }
+
+    /** Chooses a representation for the values in this set, in the order
+     * given by {@code sources} (or in their original order, if
+     * {@code sources} is null). */
+    ArrayTable.Representation chooseRep(int ordinal, int[] sources) {
+      final ArrayTable.Representation representation =
+          chooseRunLength(ordinal, sources);
+      if (representation != null) {
+        return representation;
+      }
+      return chooseRep(ordinal);
     }
 
     ArrayTable.Representation chooseRep(int ordinal) {
@@ -340,14 +493,19 @@ class ColumnLoader<T> {
         switch (p) {
         case FLOAT:
         case DOUBLE:
-          return new ArrayTable.PrimitiveArray(ordinal, p, p);
+          return chooseDictionary(ordinal, p,
+              new ArrayTable.PrimitiveArray(ordinal, p, p));
         case OTHER:
         case VOID:
           throw new AssertionError("wtf?!");
         }
         if (canBeLong(min) && canBeLong(max)) {
-          return chooseFixedRep(
-              ordinal, p, toLong(min), toLong(max));
+          final long minLong = toLong(min);
+          final long maxLong = toLong(max);
+          final ArrayTable.Representation representation =
+              chooseFrameOfReference(ordinal, p, minLong, maxLong,
+                  chooseFixedRep(ordinal, p, minLong, maxLong));
+          return chooseDictionary(ordinal, p, representation);
         }
       }
 
@@ -367,7 +525,83 @@ class ColumnLoader<T> {
       return new ArrayTable.ObjectArray(ordinal);
     }
 
-    private long toLong(Object o) {
+    /** Returns a run-length representation if the values, in the order
+     * given by {@code sources}, come in long runs; otherwise null. */
+    private ArrayTable.Representation chooseRunLength(int ordinal,
+        int[] sources) {
+      final int size = values.size();
+      if (size < MIN_RUN_LENGTH_SIZE
+          || map.size() + (containsNull ? 1 : 0) <= 1) {
+        return null;
+      }
+      final List<Comparable> list = ArrayTable.permuteList(values, sources);
+      final ValueSet runValueSet = new ValueSet(clazz);
+      for (int i = 0; i < size; i++) {
+        final Comparable value = list.get(i);
+        if (i == 0 || !Objects.equals(value, list.get(i - 1))) {
+          runValueSet.add(value);
+          if (runValueSet.values.size() * MIN_RUN_LENGTH > size) {
+            return null;
+          }
+        }
+      }
+      return new ArrayTable.RunLength(ordinal, runValueSet.chooseRep(-1));
+    }
+
+    /** Returns a frame-of-reference representation if the values are
+     * close together relative to their magnitude; otherwise returns
+     * {@code representation}. */
+    private ArrayTable.Representation chooseFrameOfReference(int ordinal,
+        Primitive p, long min, long max,
+        ArrayTable.Representation representation) {
+      final long range = max - min;
+      if (range < 0 || range > Integer.MAX_VALUE) {
+        return representation;
+      }
+      final ArrayTable.Representation offsetRepresentation =
+          chooseFixedRep(-1, Primitive.INT, 0, range);
+      if (bitCount(offsetRepresentation) + MIN_SAVED_BITS
+          > bitCount(representation)) {
+        return representation;
+      }
+      return new ArrayTable.FrameOfReference(ordinal, min, p,
+          offsetRepresentation);
+    }
+
+    /** Returns a dictionary representation of primitive values if the
+     * codes are significantly shorter than the values; otherwise returns
+     * {@code representation}. */
+    private ArrayTable.Representation chooseDictionary(int ordinal,
+        Primitive p, ArrayTable.Representation representation) {
+      if (values.size() <= MIN_DICTIONARY_SIZE) {
+        return representation;
+      }
+      final ArrayTable.Representation codeRepresentation =
+          chooseFixedRep(-1, Primitive.INT, 0, map.size() - 1);
+      if (bitCount(codeRepresentation) + MIN_SAVED_BITS
+          > bitCount(representation)) {
+        return representation;
+      }
+      return new ArrayTable.PrimitiveDictionary(ordinal, p,
+          codeRepresentation);
+    }
+
+    /** Returns the number of bits used to store each value in a
+     * representation of fixed-point values. */
+    private static int bitCount(ArrayTable.Representation representation) {
+      switch (representation.getType()) {
+      case CONSTANT:
+        return 0;
+      case PRIMITIVE_ARRAY:
+        return ((ArrayTable.PrimitiveArray) representation).bitCount();
+      case BIT_SLICED_PRIMITIVE_ARRAY:
+        return ((ArrayTable.BitSlicedPrimitiveArray) representation).bitCount;
+      default:
+        return 64;
+      }
+    }
+
+    static long toLong(Object o) {
       // We treat Boolean and Character as if they were subclasses of
       // Number but actually they are not.
       if (o instanceof Boolean) {
@@ -379,7 +613,7 @@ class ColumnLoader<T> {
       }
     }
 
-    private boolean canBeLong(Object o) {
+    static boolean canBeLong(Object o) {
       return o instanceof Boolean
           || o instanceof Character
           || o instanceof Number;
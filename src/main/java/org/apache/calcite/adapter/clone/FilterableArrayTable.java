@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.clone;
+
+import org.apache.calcite.DataContext;
+import org.apache.calcite.adapter.java.JavaTypeFactory;
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.tree.Primitive;
+import org.apache.calcite.plan.RelOptUtil;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelProtoDataType;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexInputRef;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.schema.ProjectableFilterableTable;
+import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.sql.type.SqlTypeName;
+
+import com.google.common.base.Supplier;
+
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * {@link ArrayTable} that can apply filters and projects while it scans.
+ *
+ * <p>Accepts filters that are conjunctions of comparisons between a column
+ * and a literal, and of IS NULL and IS NOT NULL tests. It uses each
+ * column's {@link ArrayTable.ZoneMap zone map} to skip blocks of rows that
+ * cannot match, and does not decode columns that are neither projected
+ * nor tested.
+ */
+class FilterableArrayTable extends ArrayTable
+    implements ProjectableFilterableTable {
+  /** Creates a FilterableArrayTable. */
+  FilterableArrayTable(Type elementType, RelProtoDataType protoRowType,
+      Supplier<Content> supplier) {
+    super(elementType, protoRowType, supplier);
+  }
+
+  public Enumerable<Object[]> scan(DataContext root, List<RexNode> filters,
+      final int[] projects) {
+    final Content content = supplier.get();
+    final List<ColumnPredicate> predicates = new ArrayList<>();
+    for (Iterator<RexNode> i = filters.iterator(); i.hasNext();) {
+      final RexNode filter = i.next();
+      boolean all = true;
+      for (RexNode e : RelOptUtil.conjunctions(filter)) {
+        final ColumnPredicate predicate =
+            toPredicate(root.getTypeFactory(), e);
+        if (predicate != null && content.canEvaluate(predicate)) {
+          predicates.add(predicate);
+        } else {
+          all = false;
+        }
+      }
+      if (all) {
+        // We will apply every part of this filter; the consumer need not.
+        i.remove();
+      }
+    }
+    return new AbstractEnumerable<Object[]>() {
+      public Enumerator<Object[]> enumerator() {
+        return content.filteredEnumerator(predicates, projects);
+      }
+    };
+  }
+
+  /** Converts an expression to a predicate on a single column, or returns
+   * null if it is not of a form we can evaluate. */
+  private static ColumnPredicate toPredicate(JavaTypeFactory typeFactory,
+      RexNode e) {
+    switch (e.getKind()) {
+    case IS_NULL:
+    case IS_NOT_NULL:
+      final RexNode operand = ((RexCall) e).getOperands().get(0);
+      if (operand instanceof RexInputRef) {
+        return new ColumnPredicate(((RexInputRef) operand).getIndex(),
+            e.getKind(), null);
+      }
+      return null;
+    case EQUALS:
+    case LESS_THAN:
+    case LESS_THAN_OR_EQUAL:
+    case GREATER_THAN:
+    case GREATER_THAN_OR_EQUAL:
+      final RexNode left = ((RexCall) e).getOperands().get(0);
+      final RexNode right = ((RexCall) e).getOperands().get(1);
+      if (left instanceof RexInputRef && right instanceof RexLiteral) {
+        return toPredicate(typeFactory, (RexInputRef) left, e.getKind(),
+            (RexLiteral) right);
+      }
+      if (right instanceof RexInputRef && left instanceof RexLiteral) {
+        return toPredicate(typeFactory, (RexInputRef) right,
+            e.getKind().reverse(), (RexLiteral) left);
+      }
+      return null;
+    default:
+      return null;
+    }
+  }
+
+  private static ColumnPredicate toPredicate(JavaTypeFactory typeFactory,
+      RexInputRef ref, SqlKind kind, RexLiteral literal) {
+    final Comparable value = toValue(typeFactory, ref.getType(), literal);
+    if (value == null) {
+      return null;
+    }
+    return new ColumnPredicate(ref.getIndex(), kind, value);
+  }
+
+  /** Converts a literal to a value of the same class as the values that
+   * {@link ColumnLoader} stores for a column of a given type; returns null
+   * if the conversion might change the result of a comparison. */
+  private static Comparable toValue(JavaTypeFactory typeFactory,
+      RelDataType type, RexLiteral literal) {
+    if (literal.isNull()) {
+      return null;
+    }
+    final Type clazz = Primitive.box(typeFactory.getJavaClass(type));
+    switch (type.getSqlTypeName()) {
+    case BOOLEAN:
+      if (literal.getTypeName() == SqlTypeName.BOOLEAN) {
+        return literal.getValueAs(Boolean.class);
+      }
+      return null;
+    case VARCHAR:
+      if (clazz == String.class
+          && SqlTypeName.CHAR_TYPES.contains(literal.getTypeName())) {
+        return literal.getValueAs(String.class);
+      }
+      return null;
+    case DATE:
+    case TIME:
+    case TIMESTAMP:
+      if (literal.getTypeName() != type.getSqlTypeName()) {
+        return null;
+      }
+      if (clazz == Integer.class) {
+        return literal.getValueAs(Integer.class);
+      } else if (clazz == Long.class) {
+        return literal.getValueAs(Long.class);
+      }
+      return null;
+    case TINYINT:
+    case SMALLINT:
+    case INTEGER:
+    case BIGINT:
+      if (!SqlTypeName.EXACT_TYPES.contains(literal.getTypeName())) {
+        return null;
+      }
+      final long v;
+      try {
+        v = literal.getValueAs(BigDecimal.class).longValueExact();
+      } catch (ArithmeticException e) {
+        return null; // has a fractional part, or is too large
+      }
+      if (clazz == Long.class) {
+        return v;
+      } else if (clazz == Integer.class && v == (int) v) {
+        return (int) v;
+      } else if (clazz == Short.class && v == (short) v) {
+        return (short) v;
+      } else if (clazz == Byte.class && v == (byte) v) {
+        return (byte) v;
+      }
+      return null;
+    case DOUBLE:
+    case FLOAT:
+      if (clazz == Double.class
+          && SqlTypeName.NUMERIC_TYPES.contains(literal.getTypeName())) {
+        return literal.getValueAs(Double.class);
+      }
+      return null;
+    default:
+      return null;
+    }
+  }
+}
+
+// End FilterableArrayTable.java
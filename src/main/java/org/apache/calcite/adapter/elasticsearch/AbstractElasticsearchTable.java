@@ -17,8 +17,10 @@
 package org.apache.calcite.adapter.elasticsearch;
 
 import org.apache.calcite.adapter.java.AbstractQueryableTable;
+import org.apache.calcite.linq4j.AbstractEnumerable;
 import org.apache.calcite.linq4j.Enumerable;
 import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.Linq4j;
 import org.apache.calcite.linq4j.QueryProvider;
 import org.apache.calcite.linq4j.Queryable;
 import org.apache.calcite.plan.RelOptCluster;
@@ -30,25 +32,116 @@ import org.apache.calcite.schema.SchemaPlus;
 import org.apache.calcite.schema.TranslatableTable;
 import org.apache.calcite.schema.impl.AbstractTableQueryable;
 import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.calcite.util.Util;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Table based on an Elasticsearch type.
  */
 public abstract class AbstractElasticsearchTable extends AbstractQueryableTable
     implements TranslatableTable {
+  /** Name of the composite aggregation that groups by the group keys. */
+  private static final String GROUP_BY = "groupBy";
+
+  /** Number of buckets requested per page of a composite aggregation. */
+  private static final int BUCKET_PAGE_SIZE = 1000;
+
+  /** Default number of hits requested per page of a scroll. */
+  public static final int DEFAULT_FETCH_SIZE = 1000;
+
+  /** How long Elasticsearch keeps the context of a scroll alive between
+   * pages. */
+  static final String SCROLL_KEEP_ALIVE = "1m";
+
   protected final String indexName;
   protected final String typeName;
 
+  /** Number of hits requested per page of a scroll. */
+  protected final int fetchSize;
+
+  /** Number of slices into which a scan is split, each of which is read in
+   * parallel. */
+  protected final int slices;
+
+  /** Elasticsearch type of each field, from the mapping of the type; or null
+   * if the table has a single column, "_MAP", that holds each document. */
+  protected final Map<String, String> mapping;
+
   /**
    * Creates an ElasticsearchTable.
    */
   public AbstractElasticsearchTable(String indexName, String typeName) {
+    this(indexName, typeName, DEFAULT_FETCH_SIZE, 1);
+  }
+
+  /**
+   * Creates an ElasticsearchTable with a given page size and number of
+   * slices.
+   */
+  public AbstractElasticsearchTable(String indexName, String typeName,
+      int fetchSize, int slices) {
+    this(indexName, typeName, fetchSize, slices, null);
+  }
+
+  /**
+   * Creates an ElasticsearchTable with a given page size and number of
+   * slices, and a column for each field of a mapping.
+   *
+   * @see #parseMapping(String)
+   */
+  public AbstractElasticsearchTable(String indexName, String typeName,
+      int fetchSize, int slices, Map<String, String> mapping) {
     super(Object[].class);
+    Preconditions.checkArgument(fetchSize > 0, "fetchSize must be positive");
+    Preconditions.checkArgument(slices > 0, "slices must be positive");
     this.indexName = indexName;
     this.typeName = typeName;
+    this.fetchSize = fetchSize;
+    this.slices = slices;
+    this.mapping = mapping == null ? null : ImmutableMap.copyOf(mapping);
+  }
+
+  /** Returns the type of each field of a mapping, given as JSON; for example
+   * <code>{"properties": {"city": {"type": "keyword"}}}</code>. Fields of
+   * objects are flattened into dotted names, such as "loc.lat".
+   *
+   * @param json Mapping of an Elasticsearch type
+   * @return Map from field name to Elasticsearch type
+   * @throws IOException if the JSON cannot be parsed
+   */
+  public static Map<String, String> parseMapping(String json) throws IOException {
+    final Map<String, String> mapping = new LinkedHashMap<>();
+    flatten("", map(new ObjectMapper().readValue(json, Map.class).get("properties")),
+        mapping);
+    return mapping;
+  }
+
+  private static void flatten(String prefix, Map<String, Object> properties,
+      Map<String, String> mapping) {
+    for (Map.Entry<String, Object> entry : properties.entrySet()) {
+      final Map<String, Object> property = map(entry.getValue());
+      final Object type = property.get("type");
+      if (type == null && property.containsKey("properties")) {
+        flatten(prefix + entry.getKey() + ".", map(property.get("properties")),
+            mapping);
+      } else {
+        mapping.put(prefix + entry.getKey(), type == null ? "object" : (String) type);
+      }
+    }
   }
 
   @Override public String toString() {
@@ -56,6 +149,16 @@ public abstract class AbstractElasticsearchTable extends AbstractQueryableTable
   }
 
   public RelDataType getRowType(RelDataTypeFactory relDataTypeFactory) {
+    if (mapping != null) {
+      final RelDataTypeFactory.Builder builder = relDataTypeFactory.builder();
+      for (Map.Entry<String, String> entry : mapping.entrySet()) {
+        builder.add(entry.getKey(),
+            relDataTypeFactory.createTypeWithNullability(
+                relDataTypeFactory.createSqlType(sqlType(entry.getValue())),
+                true));
+      }
+      return builder.build();
+    }
     final RelDataType mapType = relDataTypeFactory.createMapType(
         relDataTypeFactory.createSqlType(SqlTypeName.VARCHAR),
         relDataTypeFactory.createTypeWithNullability(
@@ -64,6 +167,36 @@ public abstract class AbstractElasticsearchTable extends AbstractQueryableTable
     return relDataTypeFactory.builder().add("_MAP", mapType).build();
   }
 
+  /** Returns the SQL type of a field, given its Elasticsearch type. Dates
+   * are strings, because that is how they are held in documents. */
+  private static SqlTypeName sqlType(String type) {
+    switch (type) {
+    case "keyword":
+    case "text":
+    case "ip":
+    case "date":
+      return SqlTypeName.VARCHAR;
+    case "long":
+      return SqlTypeName.BIGINT;
+    case "integer":
+      return SqlTypeName.INTEGER;
+    case "short":
+      return SqlTypeName.SMALLINT;
+    case "byte":
+      return SqlTypeName.TINYINT;
+    case "double":
+    case "scaled_float":
+      return SqlTypeName.DOUBLE;
+    case "float":
+    case "half_float":
+      return SqlTypeName.REAL;
+    case "boolean":
+      return SqlTypeName.BOOLEAN;
+    default:
+      return SqlTypeName.ANY;
+    }
+  }
+
   public <T> Queryable<T> asQueryable(QueryProvider queryProvider, SchemaPlus schema,
       String tableName) {
     return new ElasticsearchQueryable<>(queryProvider, schema, this, tableName);
@@ -77,17 +210,290 @@ public abstract class AbstractElasticsearchTable extends AbstractQueryableTable
 
   /** Executes a "find" operation on the underlying type.
    *
-   * <p>For example,
-   * <code>client.prepareSearch(index).setTypes(type)
-   * .setSource("{\"fields\" : [\"state\"]}")</code></p>
+   * <p>Hits are read page by page, {@link #fetchSize} at a time, using the
+   * scroll API, and the next page is fetched while the current one is being
+   * consumed. If the search is not sorted or limited, it is split into
+   * {@link #slices} slices that are read in parallel.</p>
+   *
+   * <p>The "from" and "size" operations (an offset and fetch) are applied
+   * while reading the scroll, because Elasticsearch does not allow "from" in
+   * a scroll request.</p>
    *
    * @param index Elasticsearch index
    * @param ops List of operations represented as Json strings.
    * @param fields List of fields to project; or null to return map
    * @return Enumerator of results
    */
-  protected abstract Enumerable<Object> find(String index, List<String> ops,
-      List<Map.Entry<String, Class>> fields);
+  protected Enumerable<Object> find(final String index, List<String> ops,
+      final List<Map.Entry<String, Class>> fields) {
+    long offset = 0;
+    long fetch = -1;
+    boolean sorted = false;
+    final List<String> items = new ArrayList<>();
+    for (String op : ops) {
+      if (op.startsWith("\"from\"")) {
+        offset = Long.parseLong(op.substring(op.indexOf(':') + 1).trim());
+      } else if (op.startsWith("\"size\"")) {
+        fetch = Long.parseLong(op.substring(op.indexOf(':') + 1).trim());
+      } else {
+        sorted |= op.startsWith("\"sort\"");
+        items.add(op);
+      }
+    }
+    if (!sorted) {
+      // Index order is the cheapest order in which to scroll.
+      items.add("\"sort\": [\"_doc\"]");
+    }
+    final long limit = fetch < 0 ? -1 : offset + fetch;
+    final int pageSize = limit < 0 ? fetchSize : (int) Math.max(1, Math.min(fetchSize, limit));
+    final int sliceCount = sorted || limit >= 0 ? 1 : slices;
+    final long offset0 = offset;
+    final long fetch0 = fetch;
+    return new AbstractEnumerable<Object>() {
+      public Enumerator<Object> enumerator() {
+        return new ElasticsearchScrollEnumerator(AbstractElasticsearchTable.this,
+            index, items, fields, pageSize, sliceCount, offset0, fetch0);
+      }
+    };
+  }
+
+  /** Executes a search request on the underlying type.
+   *
+   * @param index Elasticsearch index
+   * @param query Body of the request, as a JSON string
+   * @param scroll How long to keep the context of a scroll alive, for
+   *               example "1m"; or null if the request is not a scroll
+   * @return Body of the response, as a JSON string
+   * @throws IOException if the request fails
+   */
+  protected abstract String search(String index, String query, String scroll)
+      throws IOException;
+
+  /** Fetches the next page of a scroll.
+   *
+   * @param scrollId Id of the scroll, from the previous response
+   * @param scroll How long to keep the context of the scroll alive
+   * @return Body of the response, as a JSON string
+   * @throws IOException if the request fails
+   */
+  protected abstract String scroll(String scrollId, String scroll)
+      throws IOException;
+
+  /** Releases the context of a scroll.
+   *
+   * @param scrollId Id of the scroll
+   * @throws IOException if the request fails
+   */
+  protected abstract void clearScroll(String scrollId) throws IOException;
+
+  /** Executes an aggregation on the underlying type, and decodes the buckets
+   * of the response into rows.
+   *
+   * <p>If there are group keys, they are the sources of a composite
+   * aggregation, whose buckets are read page by page until there are none
+   * left, and the metric aggregations are nested inside it. Otherwise the
+   * metric aggregations are at the top level, and the response has a single
+   * row.</p>
+   *
+   * @param index Elasticsearch index
+   * @param ops List of operations represented as Json strings.
+   * @param fields Names and types of the output fields: the group keys,
+   *               followed by the aggregate functions
+   * @param groupBy Elasticsearch field of each group key
+   * @param aggregations For each aggregate function, its output field name
+   *                     and its metric aggregation as a Json string
+   * @return Enumerable of rows
+   */
+  protected Enumerable<Object> aggregate(String index, List<String> ops,
+      List<Map.Entry<String, Class>> fields, List<String> groupBy,
+      List<Map.Entry<String, String>> aggregations) {
+    final ObjectMapper mapper = new ObjectMapper();
+    final List<Object> rows = new ArrayList<>();
+    try {
+      String after = null;
+      do {
+        final String query =
+            aggregateQuery(mapper, ops, fields, groupBy, aggregations, after);
+        @SuppressWarnings("unchecked")
+        final Map<String, Object> response =
+            mapper.readValue(search(index, query, null), Map.class);
+        final Map<String, Object> aggs = map(response.get("aggregations"));
+        if (groupBy.isEmpty()) {
+          final Object total = map(response.get("hits")).get("total");
+          final long docCount = ((Number) (total instanceof Map
+              ? ((Map) total).get("value")
+              : total)).longValue();
+          rows.add(
+              row(mapper, fields, groupBy, aggregations, null, aggs, docCount));
+          break;
+        }
+        final Map<String, Object> composite = map(aggs.get(GROUP_BY));
+        @SuppressWarnings("unchecked")
+        final List<Object> buckets = (List<Object>) composite.get("buckets");
+        if (buckets == null || buckets.isEmpty()) {
+          break;
+        }
+        for (Object o : buckets) {
+          final Map<String, Object> bucket = map(o);
+          rows.add(
+              row(mapper, fields, groupBy, aggregations, map(bucket.get("key")),
+                  bucket, ((Number) bucket.get("doc_count")).longValue()));
+        }
+        // Versions before 6.3 do not return "after_key"; the key of the last
+        // bucket is equivalent.
+        final Object afterKey = composite.containsKey("after_key")
+            ? composite.get("after_key")
+            : map(Util.last(buckets)).get("key");
+        after = afterKey == null ? null : mapper.writeValueAsString(afterKey);
+      } while (after != null);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return Linq4j.asEnumerable(rows);
+  }
+
+  private static String aggregateQuery(ObjectMapper mapper, List<String> ops,
+      List<Map.Entry<String, Class>> fields, List<String> groupBy,
+      List<Map.Entry<String, String>> aggregations, String after)
+      throws IOException {
+    final List<String> metrics = new ArrayList<>();
+    final Set<String> countedFields = new LinkedHashSet<>();
+    for (Map.Entry<String, String> aggregation : aggregations) {
+      if (!aggregation.getValue().equals(ElasticsearchAggregate.COUNT_STAR)) {
+        metrics.add(ElasticsearchRules.quote(aggregation.getKey()) + ": "
+            + aggregation.getValue());
+        final String field = countedField(mapper, aggregation.getValue());
+        if (field != null) {
+          countedFields.add(field);
+        }
+      }
+    }
+    for (String field : countedFields) {
+      metrics.add(ElasticsearchRules.quote(countName(field))
+          + ": {\"value_count\": {\"field\": " + ElasticsearchRules.quote(field)
+          + "}}");
+    }
+    final List<String> items = new ArrayList<>();
+    for (String op : ops) {
+      // Documents are not returned, so there is nothing to project.
+      if (!op.startsWith("\"_source\"")) {
+        items.add(op);
+      }
+    }
+    items.add("\"size\": 0");
+    if (groupBy.isEmpty()) {
+      items.add("\"track_total_hits\": true");
+      if (!metrics.isEmpty()) {
+        items.add("\"aggregations\": " + Util.toString(metrics, "{", ", ", "}"));
+      }
+    } else {
+      final List<String> sources = new ArrayList<>();
+      for (int i = 0; i < groupBy.size(); i++) {
+        sources.add("{" + ElasticsearchRules.quote(fields.get(i).getKey())
+            + ": {\"terms\": {\"field\": " + ElasticsearchRules.quote(groupBy.get(i))
+            + ", \"missing_bucket\": true}}}");
+      }
+      items.add("\"aggregations\": {" + ElasticsearchRules.quote(GROUP_BY)
+          + ": {\"composite\": {\"size\": " + BUCKET_PAGE_SIZE
+          + ", \"sources\": " + Util.toString(sources, "[", ", ", "]")
+          + (after == null ? "" : ", \"after\": " + after) + "}"
+          + (metrics.isEmpty()
+              ? ""
+              : ", \"aggregations\": " + Util.toString(metrics, "{", ", ", "}"))
+          + "}}");
+    }
+    return Util.toString(items, "{", ", ", "}");
+  }
+
+  /** Returns the field whose values a metric aggregation reads, if the
+   * aggregation needs to know whether there were any; null for
+   * {@code COUNT(*)}, which uses the document count, and for
+   * {@code value_count}, which is that count. */
+  private static String countedField(ObjectMapper mapper, String aggregation)
+      throws IOException {
+    if (aggregation.equals(ElasticsearchAggregate.COUNT_STAR)) {
+      return null;
+    }
+    final Map.Entry<String, Object> metric =
+        map(mapper.readValue(aggregation, Map.class)).entrySet().iterator().next();
+    if (metric.getKey().equals("value_count")) {
+      return null;
+    }
+    return (String) map(metric.getValue()).get("field");
+  }
+
+  /** Returns the name of the "value_count" aggregation that counts the
+   * values of a field. */
+  private static String countName(String field) {
+    return "_count_" + field;
+  }
+
+  /** Converts a bucket of an aggregation response to a row. */
+  private static Object row(ObjectMapper mapper,
+      List<Map.Entry<String, Class>> fields, List<String> groupBy,
+      List<Map.Entry<String, String>> aggregations, Map<String, Object> key,
+      Map<String, Object> bucket, long docCount) throws IOException {
+    final Object[] values = new Object[fields.size()];
+    for (int i = 0; i < values.length; i++) {
+      final Map.Entry<String, Class> field = fields.get(i);
+      final Object value;
+      if (i < groupBy.size()) {
+        value = key.get(field.getKey());
+      } else {
+        final Map.Entry<String, String> aggregation =
+            aggregations.get(i - groupBy.size());
+        final String countedField = countedField(mapper, aggregation.getValue());
+        if (aggregation.getValue().equals(ElasticsearchAggregate.COUNT_STAR)) {
+          value = docCount;
+        } else if (countedField != null
+            && ((Number) map(bucket.get(countName(countedField))).get("value"))
+                .longValue() == 0) {
+          // Elasticsearch returns 0 for the sum of no values, even if the
+          // bucket has documents whose field is missing; SQL returns null,
+          // except for $SUM0, whose type is NOT NULL.
+          value = field.getValue().isPrimitive() ? 0 : null;
+        } else {
+          value = map(bucket.get(aggregation.getKey())).get("value");
+        }
+      }
+      values[i] = convert(value, field.getValue());
+    }
+    return values.length == 1 ? values[0] : values;
+  }
+
+  /** Converts a value from a JSON response to a given class. Numbers
+   * in aggregation responses are often doubles, even for integer fields. */
+  static Object convert(Object o, Class clazz) {
+    if (o == null || !(o instanceof Number)) {
+      return o;
+    }
+    final Number n = (Number) o;
+    if (clazz == int.class || clazz == Integer.class) {
+      return n.intValue();
+    } else if (clazz == long.class || clazz == Long.class) {
+      return n.longValue();
+    } else if (clazz == short.class || clazz == Short.class) {
+      return n.shortValue();
+    } else if (clazz == byte.class || clazz == Byte.class) {
+      return n.byteValue();
+    } else if (clazz == double.class || clazz == Double.class) {
+      return n.doubleValue();
+    } else if (clazz == float.class || clazz == Float.class) {
+      return n.floatValue();
+    } else if (clazz == BigDecimal.class) {
+      return new BigDecimal(n.toString());
+    } else if (clazz == String.class) {
+      return n.toString();
+    }
+    return o;
+  }
+
+  @SuppressWarnings("unchecked")
+  static Map<String, Object> map(Object o) {
+    return o == null
+        ? Collections.<String, Object>emptyMap()
+        : (Map<String, Object>) o;
+  }
 
   /**
    * Implementation of {@link Queryable} based on
@@ -122,6 +528,17 @@ public abstract class AbstractElasticsearchTable extends AbstractQueryableTable
         List<Map.Entry<String, Class>> fields) {
       return getTable().find(getIndex(), ops, fields);
     }
+
+    /** Called via code-generation.
+     *
+     * @see ElasticsearchMethod#ELASTICSEARCH_QUERYABLE_AGGREGATE
+     */
+    @SuppressWarnings("UnusedDeclaration")
+    public Enumerable<Object> aggregate(List<String> ops,
+        List<Map.Entry<String, Class>> fields, List<String> groupBy,
+        List<Map.Entry<String, String>> aggregations) {
+      return getTable().aggregate(getIndex(), ops, fields, groupBy, aggregations);
+    }
   }
 }
 
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.elasticsearch;
+
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.InvalidRelException;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.Aggregate;
+import org.apache.calcite.rel.core.AggregateCall;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.util.ImmutableBitSet;
+import org.apache.calcite.util.Pair;
+
+import java.util.List;
+
+/**
+ * Implementation of {@link org.apache.calcite.rel.core.Aggregate}
+ * relational expression in Elasticsearch.
+ *
+ * <p>Group keys become the sources of a composite aggregation, and
+ * {@code COUNT}, {@code SUM}, {@code MIN}, {@code MAX} and {@code AVG}
+ * become metric aggregations nested inside it (or at the top level, if there
+ * are no group keys). {@code COUNT(*)} uses the document count of each
+ * bucket.</p>
+ */
+public class ElasticsearchAggregate extends Aggregate implements ElasticsearchRel {
+  /** Definition of an aggregate function that is computed from the document
+   * count of each bucket rather than by a metric aggregation. */
+  static final String COUNT_STAR = "_count";
+
+  public ElasticsearchAggregate(RelOptCluster cluster, RelTraitSet traitSet, RelNode input,
+      boolean indicator, ImmutableBitSet groupSet, List<ImmutableBitSet> groupSets,
+      List<AggregateCall> aggCalls) throws InvalidRelException {
+    super(cluster, traitSet, input, indicator, groupSet, groupSets, aggCalls);
+    assert getConvention() == ElasticsearchRel.CONVENTION;
+    assert getConvention() == input.getConvention();
+
+    if (indicator) {
+      throw new InvalidRelException("indicator fields not supported");
+    }
+    if (getGroupType() != Group.SIMPLE) {
+      throw new InvalidRelException("grouping sets not supported");
+    }
+    for (AggregateCall aggCall : aggCalls) {
+      if (aggCall.isDistinct()) {
+        throw new InvalidRelException("distinct aggregation not supported");
+      }
+      if (aggCall.filterArg >= 0) {
+        throw new InvalidRelException("filtered aggregation not supported");
+      }
+      if (metric(aggCall) == null) {
+        throw new InvalidRelException("aggregation " + aggCall.getAggregation()
+            + " not supported");
+      }
+    }
+  }
+
+  @Override public Aggregate copy(RelTraitSet traitSet, RelNode input, boolean indicator,
+      ImmutableBitSet groupSet, List<ImmutableBitSet> groupSets,
+      List<AggregateCall> aggCalls) {
+    try {
+      return new ElasticsearchAggregate(getCluster(), traitSet, input, indicator,
+          groupSet, groupSets, aggCalls);
+    } catch (InvalidRelException e) {
+      // Semantic error not possible. Must be a bug. Convert to
+      // internal error.
+      throw new AssertionError(e);
+    }
+  }
+
+  @Override public RelOptCost computeSelfCost(RelOptPlanner planner, RelMetadataQuery mq) {
+    return super.computeSelfCost(planner, mq).multiplyBy(0.1);
+  }
+
+  public boolean isAggregated() {
+    return true;
+  }
+
+  public boolean isLimited() {
+    return false;
+  }
+
+  @Override public void implement(Implementor implementor) {
+    implementor.visitChild(0, getInput());
+
+    final List<String> inFields = ElasticsearchRules.documentFieldNames(getInput());
+    final List<String> outFields =
+        ElasticsearchRules.elasticsearchFieldNames(getRowType());
+    implementor.aggregate = true;
+    for (int group : groupSet) {
+      final String name = inFields.get(group);
+      if (name == null) {
+        throw new IllegalStateException("group key " + group
+            + " is not an Elasticsearch field");
+      }
+      implementor.groupBy.add(name);
+    }
+    for (Pair<AggregateCall, String> pair
+        : Pair.zip(aggCalls, outFields.subList(groupSet.cardinality(), outFields.size()))) {
+      implementor.aggregations.add(
+          Pair.of(pair.right, toElasticsearch(pair.left, inFields)));
+    }
+  }
+
+  /** Returns whether this aggregate can be computed from the fields of an
+   * input, that is, whether each group key and argument is a field of the
+   * Elasticsearch type. */
+  boolean canImplement(RelNode input) {
+    final List<String> inFields = ElasticsearchRules.documentFieldNames(input);
+    for (int group : groupSet) {
+      if (inFields.get(group) == null) {
+        return false;
+      }
+    }
+    for (AggregateCall aggCall : aggCalls) {
+      for (int arg : aggCall.getArgList()) {
+        if (inFields.get(arg) == null) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /** Returns the name of the Elasticsearch metric aggregation that implements
+   * an aggregate call, or null if there is none. */
+  static String metric(AggregateCall aggCall) {
+    switch (aggCall.getAggregation().getKind()) {
+    case COUNT:
+      return aggCall.getArgList().size() <= 1 ? "value_count" : null;
+    case SUM:
+    case SUM0:
+      return "sum";
+    case MIN:
+      return "min";
+    case MAX:
+      return "max";
+    case AVG:
+      return "avg";
+    default:
+      return null;
+    }
+  }
+
+  private static String toElasticsearch(AggregateCall aggCall, List<String> inFields) {
+    if (aggCall.getArgList().isEmpty()) {
+      return COUNT_STAR;
+    }
+    final String name = inFields.get(aggCall.getArgList().get(0));
+    if (name == null) {
+      throw new IllegalStateException("argument of " + aggCall
+          + " is not an Elasticsearch field");
+    }
+    return "{" + ElasticsearchRules.quote(metric(aggCall)) + ": {\"field\": "
+        + ElasticsearchRules.quote(name) + "}}";
+  }
+}
+
+// End ElasticsearchAggregate.java
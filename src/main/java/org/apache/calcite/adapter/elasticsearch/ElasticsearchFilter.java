@@ -23,30 +23,33 @@ import org.apache.calcite.plan.RelOptUtil;
 import org.apache.calcite.plan.RelTraitSet;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.core.Filter;
-import org.apache.calcite.rel.core.Project;
 import org.apache.calcite.rel.metadata.RelMetadataQuery;
 import org.apache.calcite.rex.RexCall;
 import org.apache.calcite.rex.RexInputRef;
 import org.apache.calcite.rex.RexLiteral;
 import org.apache.calcite.rex.RexNode;
-import org.apache.calcite.util.JsonBuilder;
-import org.apache.calcite.util.Pair;
+import org.apache.calcite.sql.SqlKind;
 
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Multimap;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
-
+import java.util.Set;
 
 /**
  * Implementation of a {@link org.apache.calcite.rel.core.Filter}
  * relational expression in Elasticsearch.
+ *
+ * <p>The condition must be translatable; see
+ * {@link #isTranslatable(RexNode, List)}. The rule that creates a filter
+ * pushes only the conjuncts of a condition that are translatable, and leaves
+ * the rest in a filter above it.</p>
  */
 public class ElasticsearchFilter extends Filter implements ElasticsearchRel {
   public ElasticsearchFilter(RelOptCluster cluster, RelTraitSet traitSet, RelNode child,
@@ -64,32 +67,45 @@ public class ElasticsearchFilter extends Filter implements ElasticsearchRel {
     return new ElasticsearchFilter(getCluster(), relTraitSet, input, condition);
   }
 
+  public boolean isAggregated() {
+    return false;
+  }
+
+  public boolean isLimited() {
+    // The rule does not create a filter on limited rows.
+    return false;
+  }
+
   @Override public void implement(Implementor implementor) {
     implementor.visitChild(0, getInput());
-    List<String> fieldNames;
-    if (input instanceof Project) {
-      final List<RexNode> projects = ((Project) input).getProjects();
-      fieldNames = new ArrayList<>(projects.size());
-      for (RexNode project : projects) {
-        String name = project.accept(MapProjectionFieldVisitor.INSTANCE);
-        fieldNames.add(name);
-      }
-    } else {
-      fieldNames = ElasticsearchRules.elasticsearchFieldNames(getRowType());
-    }
+    final List<String> fieldNames = ElasticsearchRules.searchFieldNames(getInput());
     Translator translator = new Translator(fieldNames);
     String match = translator.translateMatch(condition);
     implementor.add(match);
   }
 
+  /** Returns whether a condition can be translated to an Elasticsearch
+   * query.
+   *
+   * <p>Comparisons, {@code LIKE} and {@code IS [NOT] NULL} between a field
+   * (possibly wrapped in {@code CAST}) and a character, numeric or boolean
+   * literal are translatable, as are {@code AND} and {@code OR} of
+   * translatable conditions, and {@code NOT} of a translatable condition on
+   * a single field. {@code IN} and {@code BETWEEN} arrive as {@code OR} and
+   * {@code AND} of comparisons.
+   *
+   * @param condition Condition
+   * @param fieldNames Elasticsearch names of the input fields
+   * @return Whether the condition is translatable
+   */
+  static boolean isTranslatable(RexNode condition, List<String> fieldNames) {
+    return new Translator(fieldNames).translate(condition) != null;
+  }
+
   /**
    * Translates {@link RexNode} expressions into Elasticsearch expression strings.
    */
   static class Translator {
-    final JsonBuilder builder = new JsonBuilder();
-    final Multimap<String, Pair<String, RexLiteral>> multimap =
-        HashMultimap.create();
-    final Map<String, RexLiteral> eqMap = new LinkedHashMap<>();
     private final List<String> fieldNames;
 
     Translator(List<String> fieldNames) {
@@ -97,199 +113,398 @@ public class ElasticsearchFilter extends Filter implements ElasticsearchRel {
     }
 
     private String translateMatch(RexNode condition) {
-      // filter node
-      final Map<String, Object> filterMap = new LinkedHashMap<>();
-      filterMap.put("filter", translateOr(condition));
-
-      // constant_score node
-      final Map<String, Object> map = builder.map();
-      map.put("constant_score", filterMap);
-
-      return "\"query\" : " + builder.toJsonString(map).replaceAll("\\s+", "")
-          .toLowerCase(Locale.ROOT);
-    }
-
-    private Object translateOr(RexNode condition) {
-      final List<Object> list = new ArrayList<>();
-
-      final List<RexNode> orNodes = RelOptUtil.disjunctions(condition);
-      for (RexNode node : orNodes) {
-        List<Map<String, Object>> andNodes = translateAnd(node);
-
-        if (andNodes.size() > 0) {
-          Map<String, Object> andClause = new HashMap<>();
-          andClause.put("must", andNodes);
-
-          // boolean filters
-          LinkedHashMap<String, Object> filterEvaluator = new LinkedHashMap<>();
-          filterEvaluator.put("bool", andClause);
-          list.add(filterEvaluator);
-        } else {
-          list.add(andNodes.get(0));
-        }
+      final Object query = translate(condition);
+      if (query == null) {
+        throw new AssertionError("cannot translate " + condition);
       }
-
-      if (orNodes.size() > 1) {
-        Map<String, Object> map = builder.map();
-        map.put("should", list);
-
-        // boolean filters
-        LinkedHashMap<String, Object> filterEvaluator = new LinkedHashMap<>();
-        filterEvaluator.put("bool", map);
-        return filterEvaluator;
-      } else {
-        return list.get(0);
+      final Map<String, Object> map = new LinkedHashMap<>();
+      map.put("constant_score", Collections.singletonMap("filter", query));
+      try {
+        return "\"query\" : " + new ObjectMapper().writeValueAsString(map);
+      } catch (JsonProcessingException e) {
+        throw new RuntimeException(e);
       }
     }
 
-    private void addPredicate(Map<String, Object> map, String op, Object v) {
-      if (map.containsKey(op) && stronger(op, map.get(op), v)) {
-        return;
+    /** Translates a condition to an Elasticsearch query, or returns null if
+     * it cannot be translated. */
+    Object translate(RexNode node) {
+      switch (node.getKind()) {
+      case AND:
+        return translateAnd(node);
+      case OR:
+        return translateOr(node);
+      case NOT:
+        return translateNot((RexCall) node);
+      case EQUALS:
+      case NOT_EQUALS:
+      case LESS_THAN:
+      case LESS_THAN_OR_EQUAL:
+      case GREATER_THAN:
+      case GREATER_THAN_OR_EQUAL:
+        return translateComparison((RexCall) node);
+      case IS_NULL:
+      case IS_NOT_NULL:
+        return translateIsNull((RexCall) node);
+      case LIKE:
+        return translateLike((RexCall) node);
+      default:
+        return null;
       }
-      map.put(op, v);
     }
 
     /**
-     * Translates a condition that may be an AND of other conditions. Gathers
-     * together conditions that apply to the same field.
+     * Translates a condition that may be an AND of other conditions. Merges
+     * the range conditions on each field into a single range query.
      */
-    private List<Map<String, Object>> translateAnd(RexNode node0) {
-      eqMap.clear();
-      multimap.clear();
+    private Object translateAnd(RexNode node0) {
+      final List<Object> queries = new ArrayList<>();
+      final Map<String, Range> ranges = new LinkedHashMap<>();
       for (RexNode node : RelOptUtil.conjunctions(node0)) {
-        translateMatch2(node);
-      }
-      List<Map<String, Object>> filters = new ArrayList<>();
-      for (Map.Entry<String, RexLiteral> entry : eqMap.entrySet()) {
-        multimap.removeAll(entry.getKey());
-
-        Map<String, Object> filter = new HashMap<>();
-        filter.put(entry.getKey(), literalValue(entry.getValue()));
-
-        Map<String, Object> map = new HashMap<>();
-        map.put("term", filter);
-        filters.add(map);
-      }
-      for (Map.Entry<String, Collection<Pair<String, RexLiteral>>> entry
-          : multimap.asMap().entrySet()) {
-        Map<String, Object> map2 = builder.map();
-
-        Map<String, Object> map = new HashMap<>();
-        for (Pair<String, RexLiteral> s : entry.getValue()) {
-          if (!s.left.equals("not")) {
-            addPredicate(map2, s.left, literalValue(s.right));
-
-            Map<String, Object> filter = new HashMap<>();
-            filter.put(entry.getKey(), map2);
-
-            map.put("range", filter);
-          } else {
-            map2.put(entry.getKey(), literalValue(s.right));
-
-            Map<String, Object> termMap = new HashMap<>();
-            termMap.put("term", map2);
-
-            map.put("not", termMap);
+        final Comparison comparison = node instanceof RexCall
+            ? comparison((RexCall) node)
+            : null;
+        if (comparison != null && comparison.isRange()) {
+          Range range = ranges.get(comparison.field);
+          if (range == null) {
+            range = new Range();
+            ranges.put(comparison.field, range);
+          }
+          if (range.add(comparison.kind, comparison.value)) {
+            continue;
           }
         }
-        filters.add(map);
+        final Object query = translate(node);
+        if (query == null) {
+          return null;
+        }
+        queries.add(query);
+      }
+      for (Map.Entry<String, Range> entry : ranges.entrySet()) {
+        if (!entry.getValue().bounds.isEmpty()) {
+          queries.add(
+              query("range", entry.getKey(), entry.getValue().bounds));
+        }
       }
-      return filters;
+      return queries.size() == 1 ? queries.get(0) : bool("must", queries);
     }
 
-    private boolean stronger(String key, Object v0, Object v1) {
-      if (key.equals("lt") || key.equals("lte")) {
-        if (v0 instanceof Number && v1 instanceof Number) {
-          return ((Number) v0).doubleValue() < ((Number) v1).doubleValue();
+    /**
+     * Translates a condition that may be an OR of other conditions. Merges
+     * equality conditions on the same field, such as those that come from
+     * {@code IN}, into a terms query.
+     */
+    private Object translateOr(RexNode node0) {
+      final List<Object> queries = new ArrayList<>();
+      final Map<String, List<Object>> terms = new LinkedHashMap<>();
+      for (RexNode node : RelOptUtil.disjunctions(node0)) {
+        final Comparison comparison = node instanceof RexCall
+            ? comparison((RexCall) node)
+            : null;
+        if (comparison != null && comparison.kind == SqlKind.EQUALS) {
+          List<Object> values = terms.get(comparison.field);
+          if (values == null) {
+            values = new ArrayList<>();
+            terms.put(comparison.field, values);
+          }
+          values.add(comparison.value);
+          continue;
         }
-        if (v0 instanceof String && v1 instanceof String) {
-          return v0.toString().compareTo(v1.toString()) < 0;
+        final Object query = translate(node);
+        if (query == null) {
+          return null;
         }
+        queries.add(query);
       }
-      if (key.equals("gt") || key.equals("gte")) {
-        return stronger("lt", v1, v0);
+      for (Map.Entry<String, List<Object>> entry : terms.entrySet()) {
+        queries.add(entry.getValue().size() == 1
+            ? query("term", entry.getKey(), entry.getValue().get(0))
+            : query("terms", entry.getKey(), entry.getValue()));
       }
-      return false;
+      return queries.size() == 1 ? queries.get(0) : bool("should", queries);
     }
 
-    private static Object literalValue(RexLiteral literal) {
-      return literal.getValue2();
+    /** Translates NOT. A document that lacks the field does not match,
+     * because in SQL the negation of a condition on a null value is not
+     * true. */
+    private Object translateNot(RexCall call) {
+      final RexNode operand = call.getOperands().get(0);
+      final Set<String> fields = new LinkedHashSet<>();
+      if (!collectFields(operand, fields) || fields.size() != 1) {
+        return null;
+      }
+      final Object query = translate(operand);
+      if (query == null) {
+        return null;
+      }
+      final Map<String, Object> bool = new LinkedHashMap<>();
+      bool.put("must", exists(fields.iterator().next()));
+      bool.put("must_not", query);
+      return Collections.singletonMap("bool", bool);
     }
 
-    private Void translateMatch2(RexNode node) {
-      switch (node.getKind()) {
+    private Object translateComparison(RexCall call) {
+      final Comparison comparison = comparison(call);
+      if (comparison == null) {
+        return null;
+      }
+      switch (comparison.kind) {
       case EQUALS:
-        return translateBinary(null, null, (RexCall) node);
-      case LESS_THAN:
-        return translateBinary("lt", "gt", (RexCall) node);
-      case LESS_THAN_OR_EQUAL:
-        return translateBinary("lte", "gte", (RexCall) node);
+        return query("term", comparison.field, comparison.value);
       case NOT_EQUALS:
-        return translateBinary("not", "not", (RexCall) node);
-      case GREATER_THAN:
-        return translateBinary("gt", "lt", (RexCall) node);
-      case GREATER_THAN_OR_EQUAL:
-        return translateBinary("gte", "lte", (RexCall) node);
+        final Map<String, Object> bool = new LinkedHashMap<>();
+        bool.put("must", exists(comparison.field));
+        bool.put("must_not",
+            query("term", comparison.field, comparison.value));
+        return Collections.singletonMap("bool", bool);
       default:
-        throw new AssertionError("cannot translate " + node);
+        final Range range = new Range();
+        range.add(comparison.kind, comparison.value);
+        return query("range", comparison.field, range.bounds);
       }
     }
 
-    /**
-     * Translates a call to a binary operator, reversing arguments if
-     * necessary.
-     */
-    private Void translateBinary(String op, String rop, RexCall call) {
-      final RexNode left = call.operands.get(0);
-      final RexNode right = call.operands.get(1);
-      boolean b = translateBinary2(op, left, right);
-      if (b) {
+    private Object translateIsNull(RexCall call) {
+      final String field = fieldName(call.getOperands().get(0));
+      if (field == null) {
         return null;
       }
-      b = translateBinary2(rop, right, left);
-      if (b) {
+      return call.getKind() == SqlKind.IS_NOT_NULL
+          ? exists(field)
+          : bool("must_not", Collections.singletonList(exists(field)));
+    }
+
+    /** Translates LIKE to a term query if the pattern has no wildcards, a
+     * prefix query if its only wildcard is a trailing '%', and otherwise a
+     * wildcard query. */
+    private Object translateLike(RexCall call) {
+      if (call.getOperands().size() != 2) {
+        return null; // LIKE ... ESCAPE
+      }
+      final String field = fieldName(call.getOperands().get(0));
+      final Object pattern = literalValue(call.getOperands().get(1));
+      if (field == null || !(pattern instanceof String)) {
         return null;
       }
-      throw new AssertionError("cannot translate op " + op + " call " + call);
+      final String s = (String) pattern;
+      final StringBuilder buf = new StringBuilder();
+      int wildcards = 0;
+      for (int i = 0; i < s.length(); i++) {
+        final char c = s.charAt(i);
+        switch (c) {
+        case '%':
+          buf.append('*');
+          ++wildcards;
+          break;
+        case '_':
+          buf.append('?');
+          ++wildcards;
+          break;
+        case '*':
+        case '?':
+        case '\\':
+          buf.append('\\').append(c);
+          break;
+        default:
+          buf.append(c);
+        }
+      }
+      if (wildcards == 0) {
+        return query("term", field, s);
+      }
+      if (wildcards == 1 && s.endsWith("%")) {
+        return query("prefix", field, s.substring(0, s.length() - 1));
+      }
+      return query("wildcard", field, buf.toString());
     }
 
-    /**
-     * Translates a call to a binary operator. Returns whether successful.
-     */
-    private boolean translateBinary2(String op, RexNode left, RexNode right) {
-      switch (right.getKind()) {
-      case LITERAL:
+    /** Returns the field, operator and literal of a comparison between a
+     * field and a literal, reversing the operator if the literal is on the
+     * left; or null if the call is not such a comparison. */
+    private Comparison comparison(RexCall call) {
+      switch (call.getKind()) {
+      case EQUALS:
+      case NOT_EQUALS:
+      case LESS_THAN:
+      case LESS_THAN_OR_EQUAL:
+      case GREATER_THAN:
+      case GREATER_THAN_OR_EQUAL:
         break;
       default:
-        return false;
+        return null;
+      }
+      final RexNode left = call.getOperands().get(0);
+      final RexNode right = call.getOperands().get(1);
+      String field = fieldName(left);
+      Object value = literalValue(right);
+      if (field != null && value != null) {
+        return new Comparison(field, call.getKind(), value);
+      }
+      field = fieldName(right);
+      value = literalValue(left);
+      if (field != null && value != null) {
+        return new Comparison(field, call.getKind().reverse(), value);
       }
-      final RexLiteral rightLiteral = (RexLiteral) right;
-      switch (left.getKind()) {
+      return null;
+    }
+
+    /** Returns the Elasticsearch field that an expression reads, or null. */
+    private String fieldName(RexNode node) {
+      switch (node.getKind()) {
       case INPUT_REF:
-        final RexInputRef left1 = (RexInputRef) left;
-        String name = fieldNames.get(left1.getIndex());
-        translateOp2(op, name, rightLiteral);
-        return true;
+        return fieldNames.get(((RexInputRef) node).getIndex());
       case CAST:
-        return translateBinary2(op, ((RexCall) left).operands.get(0), right);
+        return fieldName(((RexCall) node).getOperands().get(0));
       case OTHER_FUNCTION:
-        String itemName = ElasticsearchRules.isItem((RexCall) left);
-        if (itemName != null) {
-          translateOp2(op, itemName, rightLiteral);
-          return true;
-        }
-        // fall through
+        return ElasticsearchRules.isItem((RexCall) node);
       default:
+        return null;
+      }
+    }
+
+    /** Adds the fields that a condition reads to a set, and returns whether
+     * the condition reads only fields and literals. */
+    private boolean collectFields(RexNode node, Set<String> fields) {
+      final String field = fieldName(node);
+      if (field != null) {
+        fields.add(field);
+        return true;
+      }
+      if (node instanceof RexLiteral) {
+        return true;
+      }
+      if (!(node instanceof RexCall)) {
         return false;
       }
+      for (RexNode operand : ((RexCall) node).getOperands()) {
+        if (!collectFields(operand, fields)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /** Returns the value of a character, numeric or boolean literal, possibly
+     * wrapped in CAST; or null. */
+    private static Object literalValue(RexNode node) {
+      if (node.getKind() == SqlKind.CAST) {
+        return literalValue(((RexCall) node).getOperands().get(0));
+      }
+      if (!(node instanceof RexLiteral)) {
+        return null;
+      }
+      final RexLiteral literal = (RexLiteral) node;
+      if (literal.getValue() == null) {
+        return null;
+      }
+      switch (literal.getTypeName().getFamily()) {
+      case CHARACTER:
+        return literal.getValueAs(String.class);
+      case NUMERIC:
+        return literal.getValueAs(BigDecimal.class);
+      case BOOLEAN:
+        return literal.getValueAs(Boolean.class);
+      default:
+        return null;
+      }
     }
 
-    private void translateOp2(String op, String name, RexLiteral right) {
-      if (op == null) {
-        eqMap.put(name, right);
-      } else {
-        multimap.put(name, Pair.of(op, right));
+    private static Map<String, Object> query(String type, String field,
+        Object value) {
+      return Collections.<String, Object>singletonMap(type,
+          Collections.singletonMap(field, value));
+    }
+
+    private static Map<String, Object> exists(String field) {
+      return query("exists", "field", field);
+    }
+
+    private static Map<String, Object> bool(String occur, List<Object> queries) {
+      return Collections.<String, Object>singletonMap("bool",
+          Collections.singletonMap(occur, queries));
+    }
+  }
+
+  /** Comparison between a field and a literal value. */
+  private static class Comparison {
+    final String field;
+    final SqlKind kind;
+    final Object value;
+
+    Comparison(String field, SqlKind kind, Object value) {
+      this.field = field;
+      this.kind = kind;
+      this.value = value;
+    }
+
+    boolean isRange() {
+      return kind != SqlKind.EQUALS && kind != SqlKind.NOT_EQUALS;
+    }
+  }
+
+  /** Lower and upper bounds of a range query on one field. Each bound is
+   * the strongest of those added. */
+  private static class Range {
+    final Map<String, Object> bounds = new LinkedHashMap<>();
+
+    /** Adds a bound, and returns whether it could be merged with the
+     * existing bound on the same side. */
+    boolean add(SqlKind kind, Object value) {
+      switch (kind) {
+      case LESS_THAN:
+        return add("lt", "lte", value, -1);
+      case LESS_THAN_OR_EQUAL:
+        return add("lte", "lt", value, -1);
+      case GREATER_THAN:
+        return add("gt", "gte", value, 1);
+      case GREATER_THAN_OR_EQUAL:
+        return add("gte", "gt", value, 1);
+      default:
+        throw new AssertionError(kind);
+      }
+    }
+
+    /** Adds bound {@code op}; {@code otherOp} is the operator on the same
+     * side with the opposite inclusivity, and {@code direction} is negative
+     * for an upper bound, positive for a lower bound. */
+    private boolean add(String op, String otherOp, Object value,
+        int direction) {
+      final boolean strict = op.length() == 2;
+      if (bounds.containsKey(op)) {
+        final Integer c = compare(value, bounds.get(op));
+        if (c == null) {
+          return false;
+        }
+        if (c * direction > 0) {
+          bounds.put(op, value);
+        }
+        return true;
+      }
+      if (bounds.containsKey(otherOp)) {
+        final Integer c = compare(value, bounds.get(otherOp));
+        if (c == null) {
+          return false;
+        }
+        // "x < 5" is stronger than "x <= 5"; "x <= 4" is stronger than
+        // "x < 5".
+        if (c * direction > 0 || c == 0 && strict) {
+          bounds.remove(otherOp);
+          bounds.put(op, value);
+        }
+        return true;
+      }
+      bounds.put(op, value);
+      return true;
+    }
+
+    private static Integer compare(Object v0, Object v1) {
+      if (v0 instanceof BigDecimal && v1 instanceof BigDecimal) {
+        return ((BigDecimal) v0).compareTo((BigDecimal) v1);
+      }
+      if (v0 instanceof String && v1 instanceof String) {
+        return ((String) v0).compareTo((String) v1);
       }
+      return null;
     }
   }
 }
@@ -28,7 +28,9 @@ import java.util.List;
  */
 enum ElasticsearchMethod {
   ELASTICSEARCH_QUERYABLE_FIND(AbstractElasticsearchTable.ElasticsearchQueryable.class,
-      "find", List.class, List.class);
+      "find", List.class, List.class),
+  ELASTICSEARCH_QUERYABLE_AGGREGATE(AbstractElasticsearchTable.ElasticsearchQueryable.class,
+      "aggregate", List.class, List.class, List.class, List.class);
 
   public final Method method;
 
@@ -30,6 +30,7 @@ import org.apache.calcite.util.Pair;
 import org.apache.calcite.util.Util;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -37,16 +38,41 @@ import java.util.List;
  * relational expression in Elasticsearch.
  */
 public class ElasticsearchProject extends Project implements ElasticsearchRel {
+  /** Whether the input has an offset or fetch applied. A projection does not
+   * change that, but a filter, sort or aggregation above it must not be
+   * pushed down. */
+  private final boolean limited;
+
   public ElasticsearchProject(RelOptCluster cluster, RelTraitSet traitSet, RelNode input,
       List<? extends RexNode> projects, RelDataType rowType) {
+    this(cluster, traitSet, input, projects, rowType,
+        input instanceof ElasticsearchRel && ((ElasticsearchRel) input).isLimited());
+  }
+
+  /** Creates an ElasticsearchProject whose input may be limited. Use this
+   * constructor if the input is a set of equivalent expressions, which
+   * cannot say whether they are limited. */
+  public ElasticsearchProject(RelOptCluster cluster, RelTraitSet traitSet, RelNode input,
+      List<? extends RexNode> projects, RelDataType rowType, boolean limited) {
     super(cluster, traitSet, input, projects, rowType);
+    this.limited = limited;
     assert getConvention() == ElasticsearchRel.CONVENTION;
     assert getConvention() == input.getConvention();
   }
 
   @Override public Project copy(RelTraitSet relTraitSet, RelNode input, List<RexNode> projects,
       RelDataType relDataType) {
-    return new ElasticsearchProject(getCluster(), traitSet, input, projects, relDataType);
+    return new ElasticsearchProject(getCluster(), traitSet, input, projects, relDataType,
+        limited);
+  }
+
+  public boolean isAggregated() {
+    // The rule does not create a project on aggregated rows.
+    return false;
+  }
+
+  public boolean isLimited() {
+    return limited;
   }
 
   @Override public RelOptCost computeSelfCost(RelOptPlanner planner, RelMetadataQuery mq) {
@@ -80,15 +106,20 @@ public class ElasticsearchProject extends Project implements ElasticsearchRel {
             + expr.replaceAll("\"", "") + "\"}");
       }
     }
-    final String findString = Util.toString(findItems, "", ", ", "");
+    // Always restrict "_source", so that Elasticsearch returns, and the
+    // enumerator parses, only the fields that are needed. An empty list of
+    // includes would return the whole document, so use "false".
+    final String findString = findItems.isEmpty()
+        ? "false"
+        : Util.toString(findItems, "[", ", ", "]");
     final String scriptFieldString = "\"script_fields\": {"
         + Util.toString(scriptFieldItems, "", ", ", "") + "}";
-    final String fieldString = "\"_source\" : [" + findString + "]"
+    final String fieldString = "\"_source\" : " + findString
         + ", " + scriptFieldString;
 
-    for (String opfield : implementor.list) {
-      if (opfield.startsWith("\"_source\"")) {
-        implementor.list.remove(opfield);
+    for (Iterator<String> iterator = implementor.list.iterator(); iterator.hasNext();) {
+      if (iterator.next().startsWith("\"_source\"")) {
+        iterator.remove();
       }
     }
     implementor.add(fieldString);
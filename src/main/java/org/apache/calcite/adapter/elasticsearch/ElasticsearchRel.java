@@ -22,6 +22,7 @@ import org.apache.calcite.rel.RelNode;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Relational expression that uses Elasticsearch calling convention.
@@ -29,6 +30,16 @@ import java.util.List;
 public interface ElasticsearchRel extends RelNode {
   void implement(Implementor implementor);
 
+  /** Returns whether the rows of this expression are the buckets of an
+   * aggregation rather than documents. A filter, project or sort on such
+   * rows cannot be added to the search request. */
+  boolean isAggregated();
+
+  /** Returns whether an offset or fetch has been applied to the rows of this
+   * expression. A filter, sort or aggregation in the same search request
+   * would be applied before it, not after. */
+  boolean isLimited();
+
   /**
    * Calling convention for relational operations that occur in Elasticsearch.
    */
@@ -41,6 +52,17 @@ public interface ElasticsearchRel extends RelNode {
   class Implementor {
     final List<String> list = new ArrayList<>();
 
+    /** Whether the query is an aggregation; set by
+     * {@link ElasticsearchAggregate}. */
+    boolean aggregate;
+
+    /** Elasticsearch fields to group by, one per group key. */
+    final List<String> groupBy = new ArrayList<>();
+
+    /** For each aggregate function, its output field name and its
+     * definition. */
+    final List<Map.Entry<String, String>> aggregations = new ArrayList<>();
+
     RelOptTable table;
     AbstractElasticsearchTable elasticsearchTable;
 
@@ -16,32 +16,48 @@
  */
 package org.apache.calcite.adapter.elasticsearch;
 
+import org.apache.calcite.adapter.enumerable.EnumerableLimit;
 import org.apache.calcite.adapter.enumerable.RexImpTable;
 import org.apache.calcite.adapter.enumerable.RexToLixTranslator;
 import org.apache.calcite.adapter.java.JavaTypeFactory;
 import org.apache.calcite.plan.Convention;
 import org.apache.calcite.plan.RelOptRule;
-import org.apache.calcite.plan.RelTrait;
+import org.apache.calcite.plan.RelOptRuleCall;
+import org.apache.calcite.plan.RelOptUtil;
 import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.plan.hep.HepRelVertex;
+import org.apache.calcite.plan.volcano.RelSubset;
+import org.apache.calcite.rel.InvalidRelException;
 import org.apache.calcite.rel.RelCollations;
 import org.apache.calcite.rel.RelNode;
-import org.apache.calcite.rel.convert.ConverterRule;
+import org.apache.calcite.rel.core.Filter;
+import org.apache.calcite.rel.core.Project;
 import org.apache.calcite.rel.core.Sort;
+import org.apache.calcite.rel.core.TableScan;
+import org.apache.calcite.rel.logical.LogicalAggregate;
 import org.apache.calcite.rel.logical.LogicalFilter;
 import org.apache.calcite.rel.logical.LogicalProject;
 import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rex.RexBuilder;
 import org.apache.calcite.rex.RexCall;
 import org.apache.calcite.rex.RexInputRef;
 import org.apache.calcite.rex.RexLiteral;
 import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexUtil;
 import org.apache.calcite.rex.RexVisitorImpl;
 import org.apache.calcite.sql.SqlKind;
 import org.apache.calcite.sql.fun.SqlStdOperatorTable;
 import org.apache.calcite.sql.type.SqlTypeName;
 import org.apache.calcite.sql.validate.SqlValidatorUtil;
+import org.apache.calcite.util.trace.CalciteTrace;
+
+import com.google.common.collect.ImmutableList;
+
+import org.slf4j.Logger;
 
 import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -50,10 +66,14 @@ import java.util.List;
  * calling convention.
  */
 class ElasticsearchRules {
+  protected static final Logger LOGGER = CalciteTrace.getPlannerTracer();
+
   static final RelOptRule[] RULES = {
       ElasticsearchSortRule.INSTANCE,
       ElasticsearchFilterRule.INSTANCE,
-      ElasticsearchProjectRule.INSTANCE
+      ElasticsearchProjectRule.INSTANCE,
+      ElasticsearchAggregateRule.INSTANCE,
+      ElasticsearchLimitRule.INSTANCE
   };
 
   private ElasticsearchRules() {}
@@ -96,6 +116,71 @@ class ElasticsearchRules {
     return "\"" + s + "\"";
   }
 
+  /**
+   * Returns the Elasticsearch field that each field of a relational
+   * expression reads, or null for a field that is computed by an expression
+   * or is the whole document. Looks through filters and sorts, which do not
+   * change the fields, and through projections of fields.
+   */
+  static List<String> documentFieldNames(RelNode input) {
+    final RelNode rel = unwrap(input);
+    if (rel instanceof Filter || rel instanceof Sort) {
+      return documentFieldNames(rel.getInput(0));
+    }
+    if (rel instanceof Project) {
+      final List<String> inNames = documentFieldNames(rel.getInput(0));
+      final List<String> names = new ArrayList<>();
+      for (RexNode project : ((Project) rel).getProjects()) {
+        final RexNode e = project.getKind() == SqlKind.CAST
+            ? ((RexCall) project).getOperands().get(0)
+            : project;
+        names.add(e instanceof RexInputRef
+            ? inNames.get(((RexInputRef) e).getIndex())
+            : project.accept(MapProjectionFieldVisitor.INSTANCE));
+      }
+      return names;
+    }
+    if (rel instanceof TableScan) {
+      final List<String> names = new ArrayList<>();
+      for (String name : rel.getRowType().getFieldNames()) {
+        names.add(name.equals("_MAP") ? null : name);
+      }
+      return names;
+    }
+    return Collections.<String>nCopies(input.getRowType().getFieldCount(), null);
+  }
+
+  /**
+   * Returns the names of the fields of a relational expression as they are
+   * known to Elasticsearch: the document field if there is one, otherwise
+   * the name of the field.
+   */
+  static List<String> searchFieldNames(RelNode rel) {
+    final List<String> names = new ArrayList<>(documentFieldNames(rel));
+    final List<String> rowNames = elasticsearchFieldNames(rel.getRowType());
+    for (int i = 0; i < names.size(); i++) {
+      if (names.get(i) == null) {
+        names.set(i, rowNames.get(i));
+      }
+    }
+    return names;
+  }
+
+  /**
+   * Returns the relational expression that a {@link RelSubset} or
+   * {@link HepRelVertex} stands for; otherwise the expression itself.
+   */
+  static RelNode unwrap(RelNode rel) {
+    if (rel instanceof RelSubset) {
+      final RelNode original = ((RelSubset) rel).getOriginal();
+      return original != null ? original : rel;
+    }
+    if (rel instanceof HepRelVertex) {
+      return ((HepRelVertex) rel).getCurrentRel();
+    }
+    return rel;
+  }
+
   /**
    * Translator from {@link RexNode} to strings in Elasticsearch's expression
    * language.
@@ -158,16 +243,21 @@ class ElasticsearchRules {
   }
 
   /**
-   * Base class for planner rules that convert a relational expression to
-   * Elasticsearch calling convention.
+   * Base class for planner rules that convert a logical relational expression
+   * whose input has already been converted to Elasticsearch calling
+   * convention. Matching the converted input, rather than converting whatever
+   * is in its set, lets the rule ask it whether it is aggregated or limited.
    */
-  abstract static class ElasticsearchConverterRule extends ConverterRule {
-    final Convention out;
+  abstract static class ElasticsearchConverterRule extends RelOptRule {
+    final Convention out = ElasticsearchRel.CONVENTION;
 
-    ElasticsearchConverterRule(Class<? extends RelNode> clazz, RelTrait in, Convention out,
-        String description) {
-      super(clazz, in, out, description);
-      this.out = out;
+    <R extends RelNode> ElasticsearchConverterRule(Class<R> clazz, String description) {
+      super(
+          operand(clazz, Convention.NONE,
+              some(
+                  operand(ElasticsearchRel.class, ElasticsearchRel.CONVENTION,
+                      any()))),
+          description);
     }
   }
 
@@ -180,16 +270,20 @@ class ElasticsearchRules {
         new ElasticsearchSortRule();
 
     private ElasticsearchSortRule() {
-      super(Sort.class, Convention.NONE, ElasticsearchRel.CONVENTION,
-          "ElasticsearchSortRule");
+      super(Sort.class, "ElasticsearchSortRule");
     }
 
-    @Override public RelNode convert(RelNode relNode) {
-      final Sort sort = (Sort) relNode;
+    @Override public void onMatch(RelOptRuleCall call) {
+      final Sort sort = call.rel(0);
+      final ElasticsearchRel input = call.rel(1);
+      if (input.isAggregated() || input.isLimited()) {
+        return;
+      }
       final RelTraitSet traitSet = sort.getTraitSet().replace(out).replace(sort.getCollation());
-      return new ElasticsearchSort(relNode.getCluster(), traitSet,
-        convert(sort.getInput(), traitSet.replace(RelCollations.EMPTY)), sort.getCollation(),
-        sort.offset, sort.fetch);
+      call.transformTo(
+          new ElasticsearchSort(sort.getCluster(), traitSet,
+              convert(sort.getInput(), traitSet.replace(RelCollations.EMPTY)),
+              sort.getCollation(), sort.offset, sort.fetch));
     }
   }
 
@@ -201,16 +295,43 @@ class ElasticsearchRules {
     private static final ElasticsearchFilterRule INSTANCE = new ElasticsearchFilterRule();
 
     private ElasticsearchFilterRule() {
-      super(LogicalFilter.class, Convention.NONE, ElasticsearchRel.CONVENTION,
-        "ElasticsearchFilterRule");
+      super(LogicalFilter.class, "ElasticsearchFilterRule");
     }
 
-    @Override public RelNode convert(RelNode relNode) {
-      final LogicalFilter filter = (LogicalFilter) relNode;
+    @Override public void onMatch(RelOptRuleCall call) {
+      final LogicalFilter filter = call.rel(0);
+      final ElasticsearchRel input = call.rel(1);
+      if (input.isAggregated() || input.isLimited()) {
+        return;
+      }
+      // Push the conjuncts that Elasticsearch can evaluate, and evaluate the
+      // rest in a filter above.
+      final List<String> fieldNames = searchFieldNames(input);
+      final List<RexNode> pushed = new ArrayList<>();
+      final List<RexNode> residual = new ArrayList<>();
+      for (RexNode node : RelOptUtil.conjunctions(filter.getCondition())) {
+        if (ElasticsearchFilter.isTranslatable(node, fieldNames)) {
+          pushed.add(node);
+        } else {
+          residual.add(node);
+        }
+      }
+      if (pushed.isEmpty()) {
+        return;
+      }
+      final RexBuilder rexBuilder = filter.getCluster().getRexBuilder();
       final RelTraitSet traitSet = filter.getTraitSet().replace(out);
-      return new ElasticsearchFilter(relNode.getCluster(), traitSet,
-        convert(filter.getInput(), out),
-        filter.getCondition());
+      final RelNode elasticsearchFilter =
+          new ElasticsearchFilter(filter.getCluster(), traitSet,
+              convert(filter.getInput(), out),
+              RexUtil.composeConjunction(rexBuilder, pushed, false));
+      if (residual.isEmpty()) {
+        call.transformTo(elasticsearchFilter);
+      } else {
+        call.transformTo(
+            LogicalFilter.create(elasticsearchFilter,
+                RexUtil.composeConjunction(rexBuilder, residual, false)));
+      }
     }
   }
 
@@ -222,15 +343,87 @@ class ElasticsearchRules {
     private static final ElasticsearchProjectRule INSTANCE = new ElasticsearchProjectRule();
 
     private ElasticsearchProjectRule() {
-      super(LogicalProject.class, Convention.NONE, ElasticsearchRel.CONVENTION,
-        "ElasticsearchProjectRule");
+      super(LogicalProject.class, "ElasticsearchProjectRule");
     }
 
-    @Override public RelNode convert(RelNode relNode) {
-      final LogicalProject project = (LogicalProject) relNode;
+    @Override public void onMatch(RelOptRuleCall call) {
+      final LogicalProject project = call.rel(0);
+      final ElasticsearchRel input = call.rel(1);
+      if (input.isAggregated()) {
+        return;
+      }
       final RelTraitSet traitSet = project.getTraitSet().replace(out);
-      return new ElasticsearchProject(project.getCluster(), traitSet,
-        convert(project.getInput(), out), project.getProjects(), project.getRowType());
+      call.transformTo(
+          new ElasticsearchProject(project.getCluster(), traitSet,
+              convert(project.getInput(), out), project.getProjects(),
+              project.getRowType(), input.isLimited()));
+    }
+  }
+
+  /**
+   * Rule to push an {@link EnumerableLimit} on the output of Elasticsearch
+   * into Elasticsearch, as an {@link ElasticsearchSort} with no sort keys.
+   */
+  static class ElasticsearchLimitRule extends RelOptRule {
+    private static final ElasticsearchLimitRule INSTANCE = new ElasticsearchLimitRule();
+
+    private ElasticsearchLimitRule() {
+      super(
+          operand(EnumerableLimit.class,
+              operand(ElasticsearchToEnumerableConverter.class,
+                  operand(ElasticsearchRel.class, ElasticsearchRel.CONVENTION,
+                      any()))),
+          "ElasticsearchLimitRule");
+    }
+
+    @Override public void onMatch(RelOptRuleCall call) {
+      final EnumerableLimit limit = call.rel(0);
+      final ElasticsearchToEnumerableConverter converter = call.rel(1);
+      final ElasticsearchRel input = call.rel(2);
+      if (limit.offset != null && !(limit.offset instanceof RexLiteral)
+          || limit.fetch != null && !(limit.fetch instanceof RexLiteral)
+          || input.isAggregated()
+          || input.isLimited()) {
+        return;
+      }
+      final RelNode sort = new ElasticsearchSort(limit.getCluster(),
+          input.getTraitSet().replace(RelCollations.EMPTY), converter.getInput(),
+          RelCollations.EMPTY, limit.offset, limit.fetch);
+      call.transformTo(
+          converter.copy(converter.getTraitSet(), ImmutableList.of(sort)));
+    }
+  }
+
+  /**
+   * Rule to convert a {@link org.apache.calcite.rel.logical.LogicalAggregate}
+   * to an {@link ElasticsearchAggregate}.
+   */
+  private static class ElasticsearchAggregateRule extends ElasticsearchConverterRule {
+    private static final ElasticsearchAggregateRule INSTANCE = new ElasticsearchAggregateRule();
+
+    private ElasticsearchAggregateRule() {
+      super(LogicalAggregate.class, "ElasticsearchAggregateRule");
+    }
+
+    @Override public void onMatch(RelOptRuleCall call) {
+      final LogicalAggregate aggregate = call.rel(0);
+      final ElasticsearchRel input = call.rel(1);
+      if (input.isAggregated() || input.isLimited()) {
+        return;
+      }
+      final RelTraitSet traitSet = aggregate.getTraitSet().replace(out);
+      try {
+        final ElasticsearchAggregate elasticsearchAggregate =
+            new ElasticsearchAggregate(aggregate.getCluster(), traitSet,
+                convert(aggregate.getInput(), out), aggregate.indicator,
+                aggregate.getGroupSet(), aggregate.getGroupSets(),
+                aggregate.getAggCallList());
+        if (elasticsearchAggregate.canImplement(input)) {
+          call.transformTo(elasticsearchAggregate);
+        }
+      } catch (InvalidRelException e) {
+        LOGGER.debug(e.toString());
+      }
     }
   }
 }
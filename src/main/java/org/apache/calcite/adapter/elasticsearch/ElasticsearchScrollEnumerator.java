@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.elasticsearch;
+
+import org.apache.calcite.runtime.DaemonExecutors;
+import org.apache.calcite.runtime.ProducerEnumerator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Enumerator that reads the hits of an Elasticsearch search page by page,
+ * using the scroll API.
+ *
+ * <p>Each slice of the scroll is read by a background thread, as a producer
+ * of a {@link ProducerEnumerator}, which fetches the next page while the
+ * current one is being consumed. At most a page per slice is read ahead. If
+ * there is more than one slice, rows are returned in no particular
+ * order.</p>
+ */
+class ElasticsearchScrollEnumerator extends ProducerEnumerator<Object> {
+  /** Executor that reads slices. */
+  private static final ExecutorService EXECUTOR =
+      DaemonExecutors.newCachedThreadPool("calcite-elasticsearch-scroll-%d");
+
+  private final AbstractElasticsearchTable table;
+  private final String index;
+  private final List<String> ops;
+  private final List<Map.Entry<String, Class>> fields;
+  private final int pageSize;
+  private final int sliceCount;
+  private final long offset;
+  private final long fetch;
+
+  private long skipped;
+  private long returned;
+
+  /**
+   * Creates an ElasticsearchScrollEnumerator.
+   *
+   * @param table Table
+   * @param index Elasticsearch index
+   * @param ops List of operations represented as Json strings, except "from"
+   *            and "size"
+   * @param fields List of fields to project
+   * @param pageSize Number of hits per page
+   * @param sliceCount Number of slices
+   * @param offset Number of rows to skip
+   * @param fetch Maximum number of rows to return, or -1 for no limit
+   */
+  ElasticsearchScrollEnumerator(AbstractElasticsearchTable table,
+      String index, List<String> ops, List<Map.Entry<String, Class>> fields,
+      int pageSize, int sliceCount, long offset, long fetch) {
+    super(EXECUTOR, sliceCount, sliceCount,
+        "Error while reading from Elasticsearch");
+    this.table = table;
+    this.index = index;
+    this.ops = ops;
+    this.fields = fields;
+    this.pageSize = pageSize;
+    this.sliceCount = sliceCount;
+    this.offset = offset;
+    this.fetch = fetch;
+  }
+
+  @Override public boolean moveNext() {
+    if (fetch >= 0 && returned >= fetch) {
+      return false;
+    }
+    while (super.moveNext()) {
+      if (skipped < offset) {
+        ++skipped;
+        continue;
+      }
+      ++returned;
+      return true;
+    }
+    return false;
+  }
+
+  /** Reads the pages of a slice into the queue, until there are no more
+   * hits, the rows needed have been read, or the enumerator is closed.
+   * Releases the scroll before returning, so that a consumer that has read
+   * every row has no scrolls open. */
+  @Override protected void produce(int slice) throws Exception {
+    final ObjectMapper mapper = new ObjectMapper();
+    final long limit = fetch < 0 ? -1 : offset + fetch;
+    String scrollId = null;
+    try {
+      String response = table.search(index, query(slice),
+          AbstractElasticsearchTable.SCROLL_KEEP_ALIVE);
+      long count = 0;
+      for (;;) {
+        @SuppressWarnings("unchecked")
+        final Map<String, Object> map = mapper.readValue(response, Map.class);
+        scrollId = (String) map.get("_scroll_id");
+        @SuppressWarnings("unchecked")
+        final List<Object> hits = (List<Object>) AbstractElasticsearchTable
+            .map(map.get("hits")).get("hits");
+        if (hits == null || hits.isEmpty() || isClosed()) {
+          break;
+        }
+        final List<Object> rows = new ArrayList<>(hits.size());
+        for (Object hit : hits) {
+          rows.add(row(AbstractElasticsearchTable.map(hit)));
+        }
+        put(rows);
+        count += rows.size();
+        if (limit >= 0 && count >= limit) {
+          break;
+        }
+        response = table.scroll(scrollId,
+            AbstractElasticsearchTable.SCROLL_KEEP_ALIVE);
+      }
+    } finally {
+      if (scrollId != null) {
+        try {
+          table.clearScroll(scrollId);
+        } catch (IOException e) {
+          // Elasticsearch will release the scroll when it times out.
+        }
+      }
+    }
+  }
+
+  /** Returns the body of the first search request of a slice. */
+  private String query(int slice) {
+    final List<String> items = new ArrayList<>(ops);
+    items.add("\"size\": " + pageSize);
+    if (sliceCount > 1) {
+      items.add("\"slice\": {\"id\": " + slice + ", \"max\": " + sliceCount + "}");
+    }
+    final StringBuilder buf = new StringBuilder("{");
+    for (String item : items) {
+      if (buf.length() > 1) {
+        buf.append(", ");
+      }
+      buf.append(item);
+    }
+    return buf.append("}").toString();
+  }
+
+  /** Converts a hit to a row. A row with one field is the value of the field;
+   * the "_MAP" field is the whole document. */
+  private Object row(Map<String, Object> hit) {
+    final Map<String, Object> source =
+        AbstractElasticsearchTable.map(hit.get("_source"));
+    final Map<String, Object> scriptFields =
+        AbstractElasticsearchTable.map(hit.get("fields"));
+    final Object[] values = new Object[fields.size()];
+    for (int i = 0; i < values.length; i++) {
+      final String name = fields.get(i).getKey();
+      final Object value;
+      if (name.equals("_MAP")) {
+        value = source;
+      } else if (name.equals("_id")) {
+        value = hit.get("_id");
+      } else if (sourceValue(source, name) != null) {
+        value = sourceValue(source, name);
+      } else if (scriptFields.get(name) instanceof List
+          && !((List) scriptFields.get(name)).isEmpty()) {
+        // Script fields are returned as arrays.
+        value = ((List) scriptFields.get(name)).get(0);
+      } else {
+        value = null;
+      }
+      values[i] = AbstractElasticsearchTable.convert(value, fields.get(i).getValue());
+    }
+    return values.length == 1 ? values[0] : values;
+  }
+
+  /** Returns the value of a field in a document. A dotted name, such as
+   * "loc.lat", is a field of an object if the document has no field with
+   * that name. */
+  private static Object sourceValue(Map<String, Object> source, String name) {
+    final Object value = source.get(name);
+    if (value != null) {
+      return value;
+    }
+    final int i = name.indexOf('.');
+    if (i < 0 || !(source.get(name.substring(0, i)) instanceof Map)) {
+      return null;
+    }
+    return sourceValue(
+        AbstractElasticsearchTable.map(source.get(name.substring(0, i))),
+        name.substring(i + 1));
+  }
+}
+
+// End ElasticsearchScrollEnumerator.java
@@ -23,10 +23,8 @@ import org.apache.calcite.plan.RelTraitSet;
 import org.apache.calcite.rel.RelCollation;
 import org.apache.calcite.rel.RelFieldCollation;
 import org.apache.calcite.rel.RelNode;
-import org.apache.calcite.rel.core.Project;
 import org.apache.calcite.rel.core.Sort;
 import org.apache.calcite.rel.metadata.RelMetadataQuery;
-import org.apache.calcite.rel.type.RelDataTypeField;
 import org.apache.calcite.rex.RexLiteral;
 import org.apache.calcite.rex.RexNode;
 import org.apache.calcite.util.Util;
@@ -55,25 +53,24 @@ public class ElasticsearchSort extends Sort implements ElasticsearchRel {
     return new ElasticsearchSort(getCluster(), traitSet, relNode, collation, offset, fetch);
   }
 
+  public boolean isAggregated() {
+    return false;
+  }
+
+  public boolean isLimited() {
+    // The rules do not create a sort on limited rows, so only this sort's own
+    // offset and fetch matter.
+    return offset != null || fetch != null;
+  }
+
   @Override public void implement(Implementor implementor) {
     implementor.visitChild(0, getInput());
     if (!collation.getFieldCollations().isEmpty()) {
       final List<String> keys = new ArrayList<>();
-      if (input instanceof Project) {
-        final List<RexNode> projects = ((Project) input).getProjects();
-
-        for (RelFieldCollation fieldCollation : collation.getFieldCollations()) {
-          RexNode project = projects.get(fieldCollation.getFieldIndex());
-          String name = project.accept(MapProjectionFieldVisitor.INSTANCE);
-          keys.add(ElasticsearchRules.quote(name) + ": " + direction(fieldCollation));
-        }
-      } else {
-        final List<RelDataTypeField> fields = getRowType().getFieldList();
-
-        for (RelFieldCollation fieldCollation : collation.getFieldCollations()) {
-          final String name = fields.get(fieldCollation.getFieldIndex()).getName();
-          keys.add(ElasticsearchRules.quote(name) + ": " + direction(fieldCollation));
-        }
+      final List<String> names = ElasticsearchRules.searchFieldNames(getInput());
+      for (RelFieldCollation fieldCollation : collation.getFieldCollations()) {
+        final String name = names.get(fieldCollation.getFieldIndex());
+        keys.add(ElasticsearchRules.quote(name) + ": " + direction(fieldCollation));
       }
 
       implementor.add("\"sort\": [ " + Util.toString(keys, "{", "}, {", "}") + "]");
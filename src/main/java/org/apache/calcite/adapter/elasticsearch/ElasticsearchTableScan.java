@@ -26,9 +26,12 @@ import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.core.TableScan;
 import org.apache.calcite.rel.metadata.RelMetadataQuery;
 import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.util.Util;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -74,6 +77,14 @@ public class ElasticsearchTableScan extends TableScan implements ElasticsearchRe
     return super.computeSelfCost(planner, mq).multiplyBy(.1 * f);
   }
 
+  public boolean isAggregated() {
+    return false;
+  }
+
+  public boolean isLimited() {
+    return false;
+  }
+
   @Override public void register(RelOptPlanner planner) {
     planner.addRule(ElasticsearchToEnumerableConverterRule.INSTANCE);
     for (RelOptRule rule: ElasticsearchRules.RULES) {
@@ -84,6 +95,17 @@ public class ElasticsearchTableScan extends TableScan implements ElasticsearchRe
   @Override public void implement(Implementor implementor) {
     implementor.elasticsearchTable = elasticsearchTable;
     implementor.table = table;
+
+    // If the table has typed columns, fetch only the fields of the mapping.
+    // A project, if there is one, replaces this with the fields it needs.
+    final List<String> names = getRowType().getFieldNames();
+    if (!names.equals(ImmutableList.of("_MAP"))) {
+      final List<String> items = new ArrayList<>();
+      for (String name : names) {
+        items.add(ElasticsearchRules.quote(name));
+      }
+      implementor.add("\"_source\" : " + Util.toString(items, "[", ", ", "]"));
+    }
   }
 }
 
@@ -90,9 +90,20 @@ public class ElasticsearchToEnumerableConverter extends ConverterImpl implements
             .getExpression(AbstractElasticsearchTable.ElasticsearchQueryable.class));
     List<String> opList = elasticsearchImplementor.list;
     final Expression ops = list.append("ops", constantArrayList(opList, String.class));
-    Expression enumerable = list.append("enumerable",
-        Expressions.call(table, ElasticsearchMethod.ELASTICSEARCH_QUERYABLE_FIND.method, ops,
-            fields));
+    final Expression enumerable;
+    if (elasticsearchImplementor.aggregate) {
+      final Expression groupBy = list.append("groupBy",
+          constantArrayList(elasticsearchImplementor.groupBy, String.class));
+      final Expression aggregations = list.append("aggregations",
+          constantArrayList(elasticsearchImplementor.aggregations, Pair.class));
+      enumerable = list.append("enumerable",
+          Expressions.call(table, ElasticsearchMethod.ELASTICSEARCH_QUERYABLE_AGGREGATE.method,
+              ops, fields, groupBy, aggregations));
+    } else {
+      enumerable = list.append("enumerable",
+          Expressions.call(table, ElasticsearchMethod.ELASTICSEARCH_QUERYABLE_FIND.method, ops,
+              fields));
+    }
     if (CalcitePrepareImpl.DEBUG) {
       System.out.println("Elasticsearch: " + opList);
     }
@@ -19,6 +19,7 @@ package org.apache.calcite.adapter.elasticsearch;
 import org.apache.calcite.rex.RexCall;
 import org.apache.calcite.rex.RexLiteral;
 import org.apache.calcite.rex.RexVisitorImpl;
+import org.apache.calcite.sql.SqlKind;
 import org.apache.calcite.sql.fun.SqlStdOperatorTable;
 
 /**
@@ -35,6 +36,9 @@ public class MapProjectionFieldVisitor extends RexVisitorImpl<String> {
     if (call.op == SqlStdOperatorTable.ITEM) {
       return ((RexLiteral) call.getOperands().get(1)).getValueAs(String.class);
     }
+    if (call.getKind() == SqlKind.CAST) {
+      return call.getOperands().get(0).accept(this);
+    }
     return super.visitCall(call);
   }
 }
@@ -127,7 +127,9 @@ public class EnumUtils {
     };
   }
 
-  static Expression joinSelector(JoinRelType joinType, PhysType physType,
+  /** Generates a function that combines a row from each input of a join
+   * into an output row. */
+  public static Expression joinSelector(JoinRelType joinType, PhysType physType,
       List<PhysType> inputPhysTypes) {
     // A parameter for each input.
     final List<ParameterExpression> parameters = new ArrayList<>();
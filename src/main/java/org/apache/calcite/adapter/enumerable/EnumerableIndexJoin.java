@@ -0,0 +1,356 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.enumerable;
+
+import org.apache.calcite.DataContext;
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.function.Function1;
+import org.apache.calcite.linq4j.function.Function2;
+import org.apache.calcite.linq4j.tree.BlockBuilder;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelOptTable;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.RelWriter;
+import org.apache.calcite.rel.SingleRel;
+import org.apache.calcite.rel.core.JoinRelType;
+import org.apache.calcite.rel.metadata.RelMdUtil;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeField;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.schema.IndexableTable;
+import org.apache.calcite.sql.validate.SqlValidatorUtil;
+import org.apache.calcite.util.BuiltInMethod;
+import org.apache.calcite.util.ImmutableIntList;
+import org.apache.calcite.util.Util;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Relational expression that joins an enumerable input to an
+ * {@link org.apache.calcite.schema.IndexableTable}, by reading the input
+ * first and looking up its key values in an index of the table.
+ *
+ * <p>The table is not an input of this relational expression, because it
+ * is never scanned; the row type is as if it were the right input of an
+ * inner {@link org.apache.calcite.rel.core.Join}. Only inner equi-joins are
+ * supported, and one of the right keys must be an indexed column. If there
+ * are several keys, the index is used for that column and the rows it
+ * returns are matched on all keys.</p>
+ *
+ * <p>This is much cheaper than {@link EnumerableJoin}, which reads the whole
+ * table, if the input is small and the table is large; see
+ * {@link EnumerableIndexRule#JOIN}.</p>
+ */
+public class EnumerableIndexJoin extends SingleRel implements EnumerableRel {
+  /** Table whose index is probed; the right side of the join. */
+  public final RelOptTable table;
+  public final RexNode condition;
+  public final ImmutableIntList leftKeys;
+  public final ImmutableIntList rightKeys;
+  /** Ordinal of the indexed column of {@link #table}; one of
+   * {@link #rightKeys}. */
+  public final int column;
+
+  /** Creates an EnumerableIndexJoin.
+   *
+   * <p>Use {@link #create} unless you know what you are doing. */
+  public EnumerableIndexJoin(RelOptCluster cluster, RelTraitSet traitSet,
+      RelNode input, RelOptTable table, RexNode condition,
+      ImmutableIntList leftKeys, ImmutableIntList rightKeys, int column) {
+    super(cluster, traitSet, input);
+    assert getConvention() instanceof EnumerableConvention;
+    assert leftKeys.size() == rightKeys.size();
+    assert rightKeys.contains(column);
+    this.table = table;
+    this.condition = condition;
+    this.leftKeys = leftKeys;
+    this.rightKeys = rightKeys;
+    this.column = column;
+  }
+
+  /** Creates an EnumerableIndexJoin. */
+  public static EnumerableIndexJoin create(RelNode input, RelOptTable table,
+      RexNode condition, ImmutableIntList leftKeys,
+      ImmutableIntList rightKeys, int column) {
+    final RelOptCluster cluster = input.getCluster();
+    return new EnumerableIndexJoin(cluster,
+        cluster.traitSetOf(EnumerableConvention.INSTANCE), input, table,
+        condition, leftKeys, rightKeys, column);
+  }
+
+  @Override public EnumerableIndexJoin copy(RelTraitSet traitSet,
+      List<RelNode> inputs) {
+    return new EnumerableIndexJoin(getCluster(), traitSet, sole(inputs),
+        table, condition, leftKeys, rightKeys, column);
+  }
+
+  @Override protected RelDataType deriveRowType() {
+    return SqlValidatorUtil.deriveJoinRowType(input.getRowType(),
+        table.getRowType(), JoinRelType.INNER, getCluster().getTypeFactory(),
+        null, ImmutableList.<RelDataTypeField>of());
+  }
+
+  @Override public RelWriter explainTerms(RelWriter pw) {
+    return super.explainTerms(pw)
+        .item("table", table.getQualifiedName())
+        .item("condition", condition)
+        .item("column", column);
+  }
+
+  /** {@inheritDoc}
+   *
+   * <p>Estimates the same number of rows as a join of the input to a scan
+   * of the table would. */
+  @Override public double estimateRowCount(RelMetadataQuery mq) {
+    return mq.getRowCount(input) * table.getRowCount()
+        * RelMdUtil.guessSelectivity(condition);
+  }
+
+  /** {@inheritDoc}
+   *
+   * <p>Like a hash join, costs the rows it outputs and L log L for the
+   * input; instead of reading the whole table, it costs a binary search of
+   * the index for each input row. */
+  @Override public RelOptCost computeSelfCost(RelOptPlanner planner,
+      RelMetadataQuery mq) {
+    final double leftRowCount = mq.getRowCount(input);
+    if (Double.isInfinite(leftRowCount)) {
+      return planner.getCostFactory().makeInfiniteCost();
+    }
+    final double searchCost = leftRowCount
+        * Math.log(Math.max(table.getRowCount(), 2d)) / Math.log(2d);
+    final double rowCount = mq.getRowCount(this)
+        + Util.nLogN(leftRowCount)
+        + searchCost;
+    return planner.getCostFactory().makeCost(rowCount, 0, 0);
+  }
+
+  public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
+    // Generate:
+    //   EnumerableIndexJoin.join(left, leftLookupKeySelector,
+    //       leftKeySelector, table, column, rightKeySelector,
+    //       resultSelector, root, keyCount)
+    final BlockBuilder builder = new BlockBuilder();
+    final Result leftResult =
+        implementor.visitChild(this, 0, (EnumerableRel) input, pref);
+    final Expression left_ = builder.append("left", leftResult.block);
+    final PhysType rightPhysType =
+        PhysTypeImpl.of(implementor.getTypeFactory(), table.getRowType(),
+            JavaRowFormat.ARRAY, false);
+    final PhysType physType =
+        PhysTypeImpl.of(implementor.getTypeFactory(), getRowType(),
+            pref.preferArray());
+    final int leftColumn = leftKeys.get(rightKeys.indexOf(column));
+    return implementor.result(physType,
+        builder.append(
+            Expressions.call(BuiltInMethod.ENUMERABLE_INDEX_JOIN.method,
+                left_,
+                leftResult.physType.generateAccessor(
+                    ImmutableIntList.of(leftColumn)),
+                leftResult.physType.generateAccessor(leftKeys),
+                implementor.stash(table.unwrap(IndexableTable.class),
+                    IndexableTable.class),
+                Expressions.constant(column),
+                rightPhysType.generateAccessor(rightKeys),
+                EnumUtils.joinSelector(JoinRelType.INNER, physType,
+                    ImmutableList.of(leftResult.physType, rightPhysType)),
+                implementor.getRootExpression(),
+                Expressions.constant(leftKeys.size())))
+            .toBlock());
+  }
+
+  /** Joins rows from an enumerable source to the rows of an indexed table.
+   * Called by generated code.
+   *
+   * <p>Reads all of the left rows, then looks up their distinct values of
+   * the indexed column in a single call to
+   * {@link IndexableTable#lookup}, and emits each joined row as the
+   * matching rows of the table are read.</p>
+   *
+   * @param left Rows of the enumerable input
+   * @param leftLookupKeySelector Returns the value of a left row that
+   *                              corresponds to the indexed column
+   * @param leftKeySelector Returns the key of a left row: a value if there
+   *                        is one key column, a list if there are several
+   * @param table Table
+   * @param column Ordinal of the indexed column
+   * @param rightKeySelector Returns the key of a row of the table
+   * @param resultSelector Combines a left row and a row of the table
+   * @param root Root data context
+   * @param keyCount Number of key columns
+   */
+  public static <TLeft, TKey, TResult> Enumerable<TResult> join(
+      final Enumerable<TLeft> left,
+      final Function1<TLeft, Object> leftLookupKeySelector,
+      final Function1<TLeft, TKey> leftKeySelector,
+      final IndexableTable table, final int column,
+      final Function1<Object[], TKey> rightKeySelector,
+      final Function2<TLeft, Object[], TResult> resultSelector,
+      final DataContext root, final int keyCount) {
+    return new AbstractEnumerable<TResult>() {
+      public Enumerator<TResult> enumerator() {
+        return new IndexJoinEnumerator<>(left, leftLookupKeySelector,
+            leftKeySelector, table, column, rightKeySelector, resultSelector,
+            root, keyCount);
+      }
+    };
+  }
+
+  /** Enumerator that reads the left input, looks up its keys in the index,
+   * and emits each matching pair as the rows of the table arrive.
+   *
+   * @param <TLeft> Left row type
+   * @param <TKey> Key type
+   * @param <TResult> Result row type */
+  private static class IndexJoinEnumerator<TLeft, TKey, TResult>
+      implements Enumerator<TResult> {
+    private final Enumerable<TLeft> left;
+    private final Function1<TLeft, Object> leftLookupKeySelector;
+    private final Function1<TLeft, TKey> leftKeySelector;
+    private final IndexableTable table;
+    private final int column;
+    private final Function1<Object[], TKey> rightKeySelector;
+    private final Function2<TLeft, Object[], TResult> resultSelector;
+    private final DataContext root;
+    private final int keyCount;
+
+    /** Left rows by key; null until the left input has been read. */
+    private Map<TKey, List<TLeft>> index;
+    /** Distinct values of the indexed column among the left rows. */
+    private List<Object> lookupKeys;
+    /** Whether the index has been probed since the last reset. */
+    private boolean probed;
+    /** Rows of the table that match {@link #lookupKeys}, or null if the
+     * index has not been probed or the rows are exhausted. */
+    private Enumerator<Object[]> rightEnumerator;
+    private Object[] rightRow;
+    /** Left rows that match {@link #rightRow} and have not been emitted. */
+    private Iterator<TLeft> leftRows = Collections.emptyIterator();
+    private TResult current;
+
+    IndexJoinEnumerator(Enumerable<TLeft> left,
+        Function1<TLeft, Object> leftLookupKeySelector,
+        Function1<TLeft, TKey> leftKeySelector, IndexableTable table,
+        int column, Function1<Object[], TKey> rightKeySelector,
+        Function2<TLeft, Object[], TResult> resultSelector, DataContext root,
+        int keyCount) {
+      this.left = left;
+      this.leftLookupKeySelector = leftLookupKeySelector;
+      this.leftKeySelector = leftKeySelector;
+      this.table = table;
+      this.column = column;
+      this.rightKeySelector = rightKeySelector;
+      this.resultSelector = resultSelector;
+      this.root = root;
+      this.keyCount = keyCount;
+    }
+
+    public TResult current() {
+      return current;
+    }
+
+    public boolean moveNext() {
+      if (index == null) {
+        buildIndex();
+      }
+      for (;;) {
+        if (leftRows.hasNext()) {
+          current = resultSelector.apply(leftRows.next(), rightRow);
+          return true;
+        }
+        if (rightEnumerator == null) {
+          if (probed || lookupKeys.isEmpty()) {
+            return false;
+          }
+          probed = true;
+          rightEnumerator =
+              table.lookup(root, column, lookupKeys).enumerator();
+        }
+        if (!rightEnumerator.moveNext()) {
+          closeRight();
+          return false;
+        }
+        rightRow = rightEnumerator.current();
+        final List<TLeft> rows = index.get(rightKeySelector.apply(rightRow));
+        if (rows != null) {
+          leftRows = rows.iterator();
+        }
+      }
+    }
+
+    public void reset() {
+      closeRight();
+      probed = false;
+      leftRows = Collections.emptyIterator();
+    }
+
+    public void close() {
+      closeRight();
+    }
+
+    private void closeRight() {
+      if (rightEnumerator != null) {
+        rightEnumerator.close();
+        rightEnumerator = null;
+      }
+    }
+
+    /** Indexes the left rows by key, and collects the distinct values of
+     * the indexed column. A row with a null key matches nothing. */
+    private void buildIndex() {
+      index = new LinkedHashMap<>();
+      final Set<Object> keys = new LinkedHashSet<>();
+      try (Enumerator<TLeft> enumerator = left.enumerator()) {
+        while (enumerator.moveNext()) {
+          final TLeft row = enumerator.current();
+          final TKey key = leftKeySelector.apply(row);
+          if (key == null
+              || keyCount > 1 && ((List) key).contains(null)) {
+            continue;
+          }
+          List<TLeft> rows = index.get(key);
+          if (rows == null) {
+            rows = new ArrayList<>(1);
+            index.put(key, rows);
+          }
+          rows.add(row);
+          keys.add(leftLookupKeySelector.apply(row));
+        }
+      }
+      lookupKeys = new ArrayList<>(keys);
+    }
+  }
+}
+
+// End EnumerableIndexJoin.java
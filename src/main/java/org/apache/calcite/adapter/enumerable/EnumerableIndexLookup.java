@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.enumerable;
+
+import org.apache.calcite.adapter.java.JavaTypeFactory;
+import org.apache.calcite.linq4j.tree.BlockBuilder;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelOptTable;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.RelWriter;
+import org.apache.calcite.rel.core.TableScan;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.schema.IndexableTable;
+import org.apache.calcite.util.BuiltInMethod;
+import org.apache.calcite.util.ImmutableBitSet;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Relational expression that reads the rows of an
+ * {@link org.apache.calcite.schema.IndexableTable} whose value of an indexed
+ * column is one of a list of literals, using the index rather than scanning
+ * the whole table.
+ *
+ * <p>It is equivalent to a {@link org.apache.calcite.rel.core.Filter} with
+ * condition {@code column = key0 OR column = key1 ...} on a
+ * {@link TableScan}; see {@link EnumerableIndexRule#FILTER}.</p>
+ */
+public class EnumerableIndexLookup extends TableScan implements EnumerableRel {
+  /** Ordinal of the indexed column. */
+  public final int column;
+
+  /** Values of the column to look up. */
+  public final ImmutableList<RexLiteral> keys;
+
+  /** Creates an EnumerableIndexLookup.
+   *
+   * <p>Use {@link #create} unless you know what you are doing. */
+  public EnumerableIndexLookup(RelOptCluster cluster, RelTraitSet traitSet,
+      RelOptTable table, int column, ImmutableList<RexLiteral> keys) {
+    super(cluster, traitSet, table);
+    assert getConvention() instanceof EnumerableConvention;
+    assert !keys.isEmpty();
+    this.column = column;
+    this.keys = keys;
+  }
+
+  /** Creates an EnumerableIndexLookup. */
+  public static EnumerableIndexLookup create(RelOptCluster cluster,
+      RelOptTable table, int column, List<RexLiteral> keys) {
+    return new EnumerableIndexLookup(cluster,
+        cluster.traitSetOf(EnumerableConvention.INSTANCE), table, column,
+        ImmutableList.copyOf(keys));
+  }
+
+  @Override public RelNode copy(RelTraitSet traitSet, List<RelNode> inputs) {
+    assert inputs.isEmpty();
+    return new EnumerableIndexLookup(getCluster(), traitSet, table, column,
+        keys);
+  }
+
+  @Override public RelWriter explainTerms(RelWriter pw) {
+    return super.explainTerms(pw)
+        .item("column", column)
+        .item("keys", keys);
+  }
+
+  /** {@inheritDoc}
+   *
+   * <p>If the column is a key, each key value matches at most one row;
+   * otherwise, we guess that each key value matches as many rows as an
+   * equality filter would. */
+  @Override public double estimateRowCount(RelMetadataQuery mq) {
+    final double rowCount = table.getRowCount();
+    if (table.isKey(ImmutableBitSet.of(column))) {
+      return Math.min(keys.size(), rowCount);
+    }
+    return Math.min(keys.size() * rowCount * .15d, rowCount);
+  }
+
+  /** {@inheritDoc}
+   *
+   * <p>Costs the rows it returns, plus a binary search of the index for
+   * each key value. */
+  @Override public RelOptCost computeSelfCost(RelOptPlanner planner,
+      RelMetadataQuery mq) {
+    final double rowCount = mq.getRowCount(this);
+    final double searchCost =
+        keys.size() * Math.log(Math.max(table.getRowCount(), 2d))
+            / Math.log(2d);
+    return planner.getCostFactory()
+        .makeCost(rowCount + searchCost, 0, 0);
+  }
+
+  public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
+    // Generate:
+    //   table.lookup(root, column, Arrays.asList(new Object[] {k0, k1}))
+    final JavaTypeFactory typeFactory = implementor.getTypeFactory();
+    final RelDataType keyType =
+        typeFactory.createTypeWithNullability(
+            getRowType().getFieldList().get(column).getType(), false);
+    final List<Expression> keys_ = new ArrayList<>();
+    for (RexLiteral key : keys) {
+      keys_.add(
+          Expressions.box(
+              RexToLixTranslator.translateLiteral(key, keyType, typeFactory,
+                  RexImpTable.NullAs.NOT_POSSIBLE)));
+    }
+    final PhysType physType =
+        PhysTypeImpl.of(typeFactory, getRowType(), JavaRowFormat.ARRAY, false);
+    final BlockBuilder builder = new BlockBuilder();
+    return implementor.result(physType,
+        builder.append(
+            Expressions.call(
+                implementor.stash(table.unwrap(IndexableTable.class),
+                    IndexableTable.class),
+                BuiltInMethod.INDEXABLE_TABLE_LOOKUP.method,
+                implementor.getRootExpression(),
+                Expressions.constant(column),
+                Expressions.call(BuiltInMethod.ARRAYS_AS_LIST.method,
+                    Expressions.newArrayInit(Object.class, keys_))))
+            .toBlock());
+  }
+}
+
+// End EnumerableIndexLookup.java
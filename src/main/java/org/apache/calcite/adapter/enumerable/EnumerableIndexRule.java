@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.enumerable;
+
+import org.apache.calcite.plan.RelOptRule;
+import org.apache.calcite.plan.RelOptRuleCall;
+import org.apache.calcite.plan.RelOptRuleOperand;
+import org.apache.calcite.plan.RelOptUtil;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.JoinInfo;
+import org.apache.calcite.rel.core.JoinRelType;
+import org.apache.calcite.rel.core.TableScan;
+import org.apache.calcite.rel.logical.LogicalFilter;
+import org.apache.calcite.rel.logical.LogicalJoin;
+import org.apache.calcite.rel.logical.LogicalTableScan;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexInputRef;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexUtil;
+import org.apache.calcite.runtime.PredicateImpl;
+import org.apache.calcite.schema.IndexableTable;
+import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.calcite.sql.type.SqlTypeUtil;
+import org.apache.calcite.util.ImmutableBitSet;
+
+import com.google.common.base.Predicate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Planner rules that use the indexes of an
+ * {@link org.apache.calcite.schema.IndexableTable}.
+ *
+ * <p>{@link #FILTER} converts a {@link LogicalFilter} on a
+ * {@link LogicalTableScan} to an {@link EnumerableIndexLookup} if one of the
+ * conjunctions of the condition is of the form {@code column = literal} or
+ * {@code column = literal OR column = literal ...} on an indexed column.
+ * Any other conjunctions remain in an {@link EnumerableFilter}.</p>
+ *
+ * <p>{@link #JOIN} converts an inner equi-{@link LogicalJoin} whose right
+ * input is a {@link LogicalTableScan} to an {@link EnumerableIndexJoin} if
+ * one of the right keys is an indexed column.</p>
+ *
+ * <p>The planner keeps the original plans, and chooses whichever is
+ * cheaper.</p>
+ */
+public abstract class EnumerableIndexRule extends RelOptRule {
+  public static final Predicate<TableScan> PREDICATE =
+      new PredicateImpl<TableScan>() {
+        public boolean test(TableScan scan) {
+          final IndexableTable table =
+              scan.getTable().unwrap(IndexableTable.class);
+          return table != null && !table.getIndexedColumns().isEmpty();
+        }
+      };
+
+  /** Rule that matches Filter on TableScan. */
+  public static final EnumerableIndexRule FILTER =
+      new EnumerableIndexRule(
+          operand(LogicalFilter.class,
+              operand(LogicalTableScan.class, null, PREDICATE, none())),
+          "EnumerableIndexRule:filter") {
+        public void onMatch(RelOptRuleCall call) {
+          final LogicalFilter filter = call.rel(0);
+          final LogicalTableScan scan = call.rel(1);
+          final ImmutableBitSet indexedColumns =
+              scan.getTable().unwrap(IndexableTable.class)
+                  .getIndexedColumns();
+          final RelDataTypeFactory typeFactory =
+              filter.getCluster().getTypeFactory();
+          final List<RexNode> conjunctions =
+              RelOptUtil.conjunctions(filter.getCondition());
+          for (int i = 0; i < conjunctions.size(); i++) {
+            final List<RexLiteral> keys = new ArrayList<>();
+            final int column =
+                lookupColumn(typeFactory, conjunctions.get(i), keys);
+            if (column < 0 || !indexedColumns.get(column)) {
+              continue;
+            }
+            RelNode rel =
+                EnumerableIndexLookup.create(scan.getCluster(),
+                    scan.getTable(), column, keys);
+            final List<RexNode> remaining = new ArrayList<>(conjunctions);
+            remaining.remove(i);
+            if (!remaining.isEmpty()) {
+              rel = EnumerableFilter.create(rel,
+                  RexUtil.composeConjunction(
+                      filter.getCluster().getRexBuilder(), remaining, false));
+            }
+            call.transformTo(rel);
+            return;
+          }
+        }
+      };
+
+  /** Rule that matches Join whose right input is a TableScan. */
+  public static final EnumerableIndexRule JOIN =
+      new EnumerableIndexRule(
+          operand(LogicalJoin.class,
+              operand(RelNode.class, any()),
+              operand(LogicalTableScan.class, null, PREDICATE, none())),
+          "EnumerableIndexRule:join") {
+        @Override public boolean matches(RelOptRuleCall call) {
+          final LogicalJoin join = call.rel(0);
+          return join.getJoinType() == JoinRelType.INNER
+              && join.getVariablesSet().isEmpty();
+        }
+
+        public void onMatch(RelOptRuleCall call) {
+          final LogicalJoin join = call.rel(0);
+          final LogicalTableScan scan = call.rel(2);
+          final JoinInfo joinInfo = join.analyzeCondition();
+          if (!joinInfo.isEqui() || joinInfo.leftKeys.isEmpty()) {
+            return;
+          }
+          final ImmutableBitSet indexedColumns =
+              scan.getTable().unwrap(IndexableTable.class)
+                  .getIndexedColumns();
+          final RelDataTypeFactory typeFactory =
+              join.getCluster().getTypeFactory();
+          final RelNode left = join.getLeft();
+          for (int i = 0; i < joinInfo.rightKeys.size(); i++) {
+            final int column = joinInfo.rightKeys.get(i);
+            if (!indexedColumns.get(column)) {
+              continue;
+            }
+            // Values of the left key are looked up in the index, so must
+            // have the same representation as values of the column.
+            final RelDataType leftType = left.getRowType().getFieldList()
+                .get(joinInfo.leftKeys.get(i)).getType();
+            final RelDataType rightType = scan.getRowType().getFieldList()
+                .get(column).getType();
+            if (!SqlTypeUtil.equalSansNullability(typeFactory, leftType,
+                rightType)) {
+              continue;
+            }
+            call.transformTo(
+                EnumerableIndexJoin.create(
+                    convert(left,
+                        left.getTraitSet()
+                            .replace(EnumerableConvention.INSTANCE)),
+                    scan.getTable(), join.getCondition(), joinInfo.leftKeys,
+                    joinInfo.rightKeys, column));
+            return;
+          }
+        }
+      };
+
+  //~ Constructors -----------------------------------------------------------
+
+  /** Creates an EnumerableIndexRule. */
+  protected EnumerableIndexRule(RelOptRuleOperand operand,
+      String description) {
+    super(operand, description);
+  }
+
+  //~ Methods ----------------------------------------------------------------
+
+  /** If a condition is of the form {@code column = literal} or a
+   * disjunction of such conditions on the same column, adds the literals to
+   * a list and returns the ordinal of the column; otherwise returns -1. */
+  private static int lookupColumn(RelDataTypeFactory typeFactory,
+      RexNode condition, List<RexLiteral> keys) {
+    int column = -1;
+    for (RexNode e : RelOptUtil.disjunctions(condition)) {
+      if (e.getKind() != SqlKind.EQUALS) {
+        return -1;
+      }
+      final RexNode op0 = ((RexCall) e).getOperands().get(0);
+      final RexNode op1 = ((RexCall) e).getOperands().get(1);
+      final RexInputRef ref;
+      final RexLiteral literal;
+      if (op0 instanceof RexInputRef && op1 instanceof RexLiteral) {
+        ref = (RexInputRef) op0;
+        literal = (RexLiteral) op1;
+      } else if (op1 instanceof RexInputRef && op0 instanceof RexLiteral) {
+        ref = (RexInputRef) op1;
+        literal = (RexLiteral) op0;
+      } else {
+        return -1;
+      }
+      if (column >= 0 && ref.getIndex() != column
+          || !canLookup(typeFactory, ref.getType(), literal)) {
+        return -1;
+      }
+      column = ref.getIndex();
+      keys.add(literal);
+    }
+    return column;
+  }
+
+  /** Returns whether a literal can be converted, without changing the
+   * result of the comparison, to a key of a column of a given type. */
+  private static boolean canLookup(RelDataTypeFactory typeFactory,
+      RelDataType type, RexLiteral literal) {
+    if (literal.isNull()) {
+      return false; // "x = NULL" matches nothing; leave it to the filter
+    }
+    if (SqlTypeUtil.equalSansNullability(typeFactory, type,
+        literal.getType())) {
+      return true;
+    }
+    return type.getSqlTypeName() == SqlTypeName.VARCHAR
+        && SqlTypeUtil.inCharFamily(literal.getType());
+  }
+}
+
+// End EnumerableIndexRule.java
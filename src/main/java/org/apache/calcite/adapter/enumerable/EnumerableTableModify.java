@@ -84,14 +84,21 @@ public class EnumerableTableModify extends TableModify
     assert expression != null; // TODO: user error in validator
     assert ModifiableTable.class.isAssignableFrom(
         Types.toClass(expression.getType())) : expression.getType();
+    final Expression tableParameter =
+        builder.append("table", expression);
+    // Materializations that read this table may need to know what rows
+    // have changed.
     builder.add(
         Expressions.declare(
             Modifier.FINAL,
             collectionParameter,
             Expressions.call(
-                expression,
-                BuiltInMethod.MODIFIABLE_TABLE_GET_MODIFIABLE_COLLECTION
-                    .method)));
+                BuiltInMethod.MATERIALIZATION_CAPTURE_CHANGES.method,
+                tableParameter,
+                Expressions.call(
+                    tableParameter,
+                    BuiltInMethod.MODIFIABLE_TABLE_GET_MODIFIABLE_COLLECTION
+                        .method))));
     final Expression countParameter =
         builder.append(
             "count",
@@ -145,20 +152,39 @@ public class EnumerableTableModify extends TableModify
             "updatedCount",
             Expressions.call(collectionParameter, "size"),
             false);
+    final Expression modifiedCountParameter =
+        builder.append(
+            "modifiedCount",
+            Expressions.convert_(
+                Expressions.condition(
+                    Expressions.greaterThanOrEqual(
+                        updatedCountParameter, countParameter),
+                    Expressions.subtract(
+                        updatedCountParameter, countParameter),
+                    Expressions.subtract(
+                        countParameter, updatedCountParameter)),
+                long.class),
+            false);
+    // Statistics of the table may now be stale.
+    final List<Expression> names = new ArrayList<Expression>();
+    for (String name : table.getQualifiedName()) {
+      names.add(Expressions.constant(name));
+    }
+    builder.add(
+        Expressions.statement(
+            Expressions.call(
+                BuiltInMethod.STATISTICS_RECORD_MODIFICATION.method,
+                implementor.getRootExpression(),
+                Expressions.call(
+                    BuiltInMethod.ARRAYS_AS_LIST.method,
+                    Expressions.newArrayInit(String.class, names)),
+                modifiedCountParameter)));
     builder.add(
         Expressions.return_(
             null,
             Expressions.call(
                 BuiltInMethod.SINGLETON_ENUMERABLE.method,
-                Expressions.convert_(
-                    Expressions.condition(
-                        Expressions.greaterThanOrEqual(
-                            updatedCountParameter, countParameter),
-                        Expressions.subtract(
-                            updatedCountParameter, countParameter),
-                        Expressions.subtract(
-                            countParameter, updatedCountParameter)),
-                    long.class))));
+                modifiedCountParameter)));
     final PhysType physType =
         PhysTypeImpl.of(
             implementor.getTypeFactory(),
@@ -23,15 +23,19 @@ import org.apache.calcite.linq4j.Linq4j;
 import org.apache.calcite.linq4j.QueryProvider;
 import org.apache.calcite.linq4j.Queryable;
 import org.apache.calcite.linq4j.function.Function1;
+import org.apache.calcite.linq4j.tree.BlockBuilder;
 import org.apache.calcite.linq4j.tree.Expression;
 import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.linq4j.tree.MemberDeclaration;
+import org.apache.calcite.linq4j.tree.ParameterExpression;
 import org.apache.calcite.linq4j.tree.Primitive;
 import org.apache.calcite.linq4j.tree.Types;
+import org.apache.calcite.prepare.CalcitePrepareImpl;
 import org.apache.calcite.rel.RelReferentialConstraint;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeFactory;
 import org.apache.calcite.schema.Function;
-import org.apache.calcite.schema.ScannableTable;
+import org.apache.calcite.schema.ProjectableTable;
 import org.apache.calcite.schema.Schema;
 import org.apache.calcite.schema.SchemaFactory;
 import org.apache.calcite.schema.SchemaPlus;
@@ -45,19 +49,35 @@ import org.apache.calcite.schema.impl.AbstractSchema;
 import org.apache.calcite.schema.impl.AbstractTableQueryable;
 import org.apache.calcite.schema.impl.ReflectiveFunctionBase;
 import org.apache.calcite.util.BuiltInMethod;
+import org.apache.calcite.util.ImmutableIntList;
 import org.apache.calcite.util.Util;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Multimap;
 
+import org.codehaus.commons.compiler.CompileException;
+import org.codehaus.commons.compiler.CompilerFactoryFactory;
+import org.codehaus.commons.compiler.IClassBodyEvaluator;
+import org.codehaus.commons.compiler.ICompilerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.StringReader;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -68,6 +88,9 @@ import java.util.Map;
  */
 public class ReflectiveSchema
     extends AbstractSchema {
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(ReflectiveSchema.class);
+
   private final Class clazz;
   private Object target;
   private Map<String, Table> tableMap;
@@ -222,12 +245,27 @@ public class ReflectiveSchema
         "Cannot convert " + o.getClass() + " into a Enumerable");
   }
 
-  /** Table that is implemented by reading from a Java object. */
+  /** Table that is implemented by reading from a Java object.
+   *
+   * <p>To convert an object to a row, it uses a function that is generated
+   * for the element class and the projected fields, and that reads the
+   * fields directly; see {@link #fieldSelector}. The functions are cached,
+   * so each is generated at most once per table. */
   private static class ReflectiveTable
       extends AbstractQueryableTable
-      implements Table, ScannableTable {
+      implements Table, ProjectableTable {
     private final Type elementType;
     private final Enumerable enumerable;
+    private final LoadingCache<ImmutableIntList, Function1<Object, Object[]>>
+        selectors = CacheBuilder.newBuilder()
+            .build(
+                new CacheLoader<ImmutableIntList,
+                    Function1<Object, Object[]>>() {
+                  public Function1<Object, Object[]> load(
+                      ImmutableIntList fields) {
+                    return fieldSelector((Class) elementType, fields);
+                  }
+                });
 
     ReflectiveTable(Type elementType, Enumerable enumerable) {
       super(elementType);
@@ -248,11 +286,28 @@ public class ReflectiveSchema
         //noinspection unchecked
         return enumerable;
       } else {
+        final int fieldCount = recordFields((Class) elementType).size();
+        return select(ImmutableIntList.identity(fieldCount));
+      }
+    }
+
+    public Enumerable<Object[]> scan(DataContext root, int[] projects) {
+      if (elementType == Object[].class) {
         //noinspection unchecked
-        return enumerable.select(new FieldSelector((Class) elementType));
+        return ((Enumerable<Object[]>) enumerable).select(
+            new ArrayProjector(projects));
+      } else {
+        return select(ImmutableIntList.of(projects));
       }
     }
 
+    /** Converts each element to an array of the values of the given
+     * fields. */
+    private Enumerable<Object[]> select(ImmutableIntList projects) {
+      //noinspection unchecked
+      return enumerable.select(selectors.getUnchecked(projects));
+    }
+
     public <T> Queryable<T> asQueryable(QueryProvider queryProvider,
         SchemaPlus schema, String tableName) {
       return new AbstractTableQueryable<T>(queryProvider, schema, this,
@@ -392,12 +447,120 @@ public class ReflectiveSchema
     }
   }
 
-  /** Function that returns an array of a given object's field values. */
+  /** Returns the fields of a class that are columns of a table whose
+   * element type is that class: the public, non-static fields, in the same
+   * order as the fields of the row type. */
+  private static List<Field> recordFields(Class clazz) {
+    final List<Field> list = new ArrayList<>();
+    for (Field field : clazz.getFields()) {
+      if (!Modifier.isStatic(field.getModifiers())) {
+        list.add(field);
+      }
+    }
+    return list;
+  }
+
+  /** Creates a function that returns an array of the values of some of the
+   * fields of an object.
+   *
+   * <p>Generates and compiles a class that reads the fields directly, and
+   * never touches the other fields. If the class or its fields cannot be
+   * accessed from generated code (say the class is not public, or is not
+   * visible to Calcite's class loader) uses reflection instead.
+   *
+   * @param clazz Element class
+   * @param projects Ordinals of the fields, per {@link #recordFields} */
+  @VisibleForTesting
+  public static Function1<Object, Object[]> fieldSelector(Class clazz,
+      ImmutableIntList projects) {
+    final List<Field> recordFields = recordFields(clazz);
+    final List<Field> fields = new ArrayList<>();
+    for (int project : projects) {
+      fields.add(recordFields.get(project));
+    }
+    if (!canGenerate(clazz)) {
+      LOGGER.debug("Cannot generate field accessors for {}; using "
+          + "reflection", clazz);
+      return new FieldSelector(fields);
+    }
+
+    // Generate:
+    //   public Object apply(Object o) {
+    //     final Employee row = (Employee) o;
+    //     return new Object[] {Integer.valueOf(row.empid), row.name};
+    //   }
+    final ParameterExpression o_ = Expressions.parameter(Object.class, "o");
+    final BlockBuilder builder = new BlockBuilder();
+    final Expression row_ =
+        builder.append("row", Expressions.convert_(o_, clazz));
+    final List<Expression> values = new ArrayList<>();
+    for (Field field : fields) {
+      values.add(Expressions.box(Expressions.field(row_, field)));
+    }
+    builder.add(
+        Expressions.return_(null,
+            Expressions.newArrayInit(Object.class, values)));
+    final MemberDeclaration declaration =
+        Expressions.methodDecl(Modifier.PUBLIC, Object.class,
+            BuiltInMethod.FUNCTION1_APPLY.method.getName(),
+            ImmutableList.of(o_), builder.toBlock());
+    final String s =
+        Expressions.toString(ImmutableList.of(declaration), "\n", false);
+    if (CalcitePrepareImpl.DEBUG) {
+      Util.debugCode(System.out, s);
+    }
+    try {
+      return compile(s);
+    } catch (CompileException | IOException e) {
+      LOGGER.warn("Could not compile field accessors for {}; using "
+          + "reflection", clazz, e);
+      return new FieldSelector(fields);
+    }
+  }
+
+  /** Returns whether generated code can reference a class and its public
+   * fields. */
+  private static boolean canGenerate(Class clazz) {
+    if (clazz.isPrimitive() || clazz.isArray()
+        || clazz.getCanonicalName() == null) {
+      return false;
+    }
+    for (Class c = clazz; c != null; c = c.getEnclosingClass()) {
+      if (!Modifier.isPublic(c.getModifiers())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static Function1<Object, Object[]> compile(String s)
+      throws CompileException, IOException {
+    ICompilerFactory compilerFactory;
+    try {
+      compilerFactory = CompilerFactoryFactory.getDefaultCompilerFactory();
+    } catch (Exception e) {
+      throw new IllegalStateException(
+          "Unable to instantiate java compiler", e);
+    }
+    IClassBodyEvaluator cbe = compilerFactory.newClassBodyEvaluator();
+    cbe.setImplementedInterfaces(new Class[] {Function1.class});
+    cbe.setParentClassLoader(ReflectiveSchema.class.getClassLoader());
+    if (CalcitePrepareImpl.DEBUG) {
+      // Add line numbers to the generated janino class
+      cbe.setDebuggingInformation(true, true, true);
+    }
+    //noinspection unchecked
+    return (Function1<Object, Object[]>) cbe.createInstance(
+        new StringReader(s));
+  }
+
+  /** Function that returns an array of a given object's field values,
+   * using reflection. */
   private static class FieldSelector implements Function1<Object, Object[]> {
     private final Field[] fields;
 
-    FieldSelector(Class elementType) {
-      this.fields = elementType.getFields();
+    FieldSelector(List<Field> fields) {
+      this.fields = fields.toArray(new Field[fields.size()]);
     }
 
     public Object[] apply(Object o) {
@@ -412,6 +575,23 @@ public class ReflectiveSchema
       }
     }
   }
+
+  /** Function that returns an array of some of the values of an array. */
+  private static class ArrayProjector implements Function1<Object[], Object[]> {
+    private final int[] projects;
+
+    ArrayProjector(int[] projects) {
+      this.projects = projects;
+    }
+
+    public Object[] apply(Object[] values) {
+      final Object[] objects = new Object[projects.length];
+      for (int i = 0; i < projects.length; i++) {
+        objects[i] = values[projects[i]];
+      }
+      return objects;
+    }
+  }
 }
 
 // End ReflectiveSchema.java
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.jdbc;
+
+import org.apache.calcite.adapter.enumerable.EnumerableConvention;
+import org.apache.calcite.adapter.enumerable.EnumerableRel;
+import org.apache.calcite.adapter.enumerable.EnumerableRelImplementor;
+import org.apache.calcite.adapter.enumerable.JavaRowFormat;
+import org.apache.calcite.adapter.enumerable.PhysType;
+import org.apache.calcite.adapter.enumerable.PhysTypeImpl;
+import org.apache.calcite.linq4j.tree.BlockBuilder;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelOptTable;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.prepare.Prepare;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.TableModify;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rel.type.RelDataTypeField;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.schema.Schemas;
+import org.apache.calcite.util.BuiltInMethod;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Relational expression that inserts rows into a table in a JDBC data
+ * source, the rows coming from an enumerable input.
+ *
+ * <p>Used when the rows come from outside the database, for example from
+ * another schema, so that the whole statement cannot be executed by the
+ * database (as {@link JdbcRules.JdbcTableModify} does). Rows are written in
+ * batches by {@link JdbcBatchWriter}.</p>
+ */
+public class JdbcBatchInsert extends TableModify implements EnumerableRel {
+  private final JdbcTable jdbcTable;
+
+  public JdbcBatchInsert(RelOptCluster cluster, RelTraitSet traitSet,
+      RelOptTable table, Prepare.CatalogReader catalogReader, RelNode input,
+      boolean flattened) {
+    super(cluster, traitSet, table, catalogReader, input, Operation.INSERT,
+        null, null, flattened);
+    assert input.getConvention() instanceof EnumerableConvention;
+    assert getConvention() instanceof EnumerableConvention;
+    this.jdbcTable = table.unwrap(JdbcTable.class);
+    Preconditions.checkArgument(jdbcTable != null,
+        "table %s is not a JDBC table", table.getQualifiedName());
+  }
+
+  @Override public RelNode copy(RelTraitSet traitSet, List<RelNode> inputs) {
+    return new JdbcBatchInsert(getCluster(), traitSet, getTable(),
+        getCatalogReader(), sole(inputs), isFlattened());
+  }
+
+  /** {@inheritDoc}
+   *
+   * <p>Costs more than {@link JdbcRules.JdbcTableModify}, so that if the
+   * input can be executed in the same database, the whole statement is. */
+  @Override public RelOptCost computeSelfCost(RelOptPlanner planner,
+      RelMetadataQuery mq) {
+    return super.computeSelfCost(planner, mq).multiplyBy(.5);
+  }
+
+  public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
+    // Generate:
+    //   Linq4j.singletonEnumerable(
+    //       JdbcBatchWriter.insert(schema, "INSERT INTO ... VALUES",
+    //           new int[] {...}, rows))
+    final BlockBuilder builder = new BlockBuilder();
+    final Result result =
+        implementor.visitChild(this, 0, (EnumerableRel) getInput(),
+            Prefer.ARRAY);
+    final Expression childExp = builder.append("child", result.block);
+    final PhysType arrayPhysType =
+        PhysTypeImpl.of(implementor.getTypeFactory(),
+            getInput().getRowType(), JavaRowFormat.ARRAY, false);
+    final Expression rows_ =
+        builder.append("rows",
+            result.physType.convertTo(childExp, arrayPhysType));
+    final List<String> columnNames = new ArrayList<>();
+    final List<Expression> types = new ArrayList<>();
+    for (RelDataTypeField field : table.getRowType().getFieldList()) {
+      columnNames.add(field.getName());
+      types.add(
+          Expressions.constant(
+              field.getType().getSqlTypeName().getJdbcOrdinal()));
+    }
+    final JdbcConvention convention = jdbcTable.getJdbcSchema().convention;
+    final Expression count_ =
+        builder.append("count",
+            Expressions.call(BuiltInMethod.JDBC_BATCH_WRITER_INSERT.method,
+                Schemas.unwrap(convention.expression, JdbcSchema.class),
+                Expressions.constant(jdbcTable.insertSql(columnNames)),
+                Expressions.newArrayInit(int.class, types),
+                rows_));
+    builder.add(
+        Expressions.return_(null,
+            Expressions.call(BuiltInMethod.SINGLETON_ENUMERABLE.method,
+                count_)));
+    final PhysType physType =
+        PhysTypeImpl.of(implementor.getTypeFactory(), getRowType(),
+            pref == Prefer.ARRAY ? JavaRowFormat.ARRAY : JavaRowFormat.SCALAR);
+    return implementor.result(physType, builder.toBlock());
+  }
+}
+
+// End JdbcBatchInsert.java
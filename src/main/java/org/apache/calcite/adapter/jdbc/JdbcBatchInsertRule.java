@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.jdbc;
+
+import org.apache.calcite.adapter.enumerable.EnumerableConvention;
+import org.apache.calcite.plan.Convention;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.convert.ConverterRule;
+import org.apache.calcite.rel.core.TableModify;
+import org.apache.calcite.rel.logical.LogicalTableModify;
+
+/**
+ * Rule that converts an INSERT into a JDBC table to a
+ * {@link JdbcBatchInsert}, which reads its input in
+ * {@link EnumerableConvention} and writes the rows in batches.
+ */
+public class JdbcBatchInsertRule extends ConverterRule {
+  public static final JdbcBatchInsertRule INSTANCE = new JdbcBatchInsertRule();
+
+  private JdbcBatchInsertRule() {
+    super(LogicalTableModify.class, Convention.NONE,
+        EnumerableConvention.INSTANCE, "JdbcBatchInsertRule");
+  }
+
+  @Override public RelNode convert(RelNode rel) {
+    final LogicalTableModify modify = (LogicalTableModify) rel;
+    if (modify.getOperation() != TableModify.Operation.INSERT
+        || modify.getTable().unwrap(JdbcTable.class) == null) {
+      return null;
+    }
+    final RelTraitSet traitSet =
+        modify.getTraitSet().replace(EnumerableConvention.INSTANCE);
+    return new JdbcBatchInsert(modify.getCluster(), traitSet,
+        modify.getTable(), modify.getCatalogReader(),
+        convert(modify.getInput(), traitSet), modify.isFlattened());
+  }
+}
+
+// End JdbcBatchInsertRule.java
@@ -0,0 +1,362 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.jdbc;
+
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.runtime.DaemonExecutors;
+import org.apache.calcite.runtime.ResultSetEnumerable;
+
+import com.google.common.base.Preconditions;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+
+/**
+ * Writes rows into a table of a JDBC data source, in batches.
+ *
+ * <p>Used by {@link JdbcBatchInsert} to insert rows that come from outside
+ * the database, for example from another schema. Rows are sent using
+ * {@link PreparedStatement#addBatch()} and
+ * {@link PreparedStatement#executeBatch()}; how many rows are sent at a time,
+ * how many connections write concurrently, and how often they commit, are
+ * given by the schema's {@link Config}.</p>
+ *
+ * <p>If there is more than one writer, or if writers commit periodically,
+ * a failed insert may leave some rows written.</p>
+ */
+public class JdbcBatchWriter {
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(JdbcBatchWriter.class);
+
+  /** Executor for writers. */
+  private static final ExecutorService EXECUTOR =
+      DaemonExecutors.newCachedThreadPool("calcite-jdbc-writer-%d");
+
+  /** Marks, in the queue, that there are no more batches. */
+  private static final List<Object[]> END = new ArrayList<>();
+
+  private JdbcBatchWriter() {}
+
+  /**
+   * Inserts rows into a table, and returns the number of rows inserted.
+   * Called by generated code.
+   *
+   * @param schema Schema that contains the table
+   * @param insertSql Start of an INSERT statement, up to and including the
+   *                  "VALUES" keyword
+   * @param types JDBC type of each column, per {@link Types}
+   * @param rows Rows to insert
+   * @return Number of rows inserted
+   */
+  public static long insert(JdbcSchema schema, String insertSql, int[] types,
+      Enumerable<Object[]> rows) {
+    final Config config = schema.writeConfig;
+    final long start = System.nanoTime();
+    final long count;
+    try {
+      if (config.writerCount == 1) {
+        count = insertSerial(schema.getDataSource(), insertSql, types, rows,
+            config);
+      } else {
+        count = insertParallel(schema.getDataSource(), insertSql, types, rows,
+            config);
+      }
+    } catch (SQLException e) {
+      throw new RuntimeException("while executing SQL [" + insertSql + "]", e);
+    }
+    final long millis =
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    LOGGER.info("Inserted {} rows in {} ms ({} rows/s) [{}]", count, millis,
+        millis == 0 ? count : count * 1000L / millis, insertSql);
+    return count;
+  }
+
+  private static long insertSerial(DataSource dataSource, String insertSql,
+      int[] types, Enumerable<Object[]> rows, Config config)
+      throws SQLException {
+    try (Writer writer = new Writer(dataSource, insertSql, types, config);
+         Enumerator<Object[]> enumerator = rows.enumerator()) {
+      List<Object[]> batch = new ArrayList<>(config.batchSize);
+      while (enumerator.moveNext()) {
+        batch.add(enumerator.current());
+        if (batch.size() == config.batchSize) {
+          writer.write(batch);
+          batch = new ArrayList<>(config.batchSize);
+        }
+      }
+      if (!batch.isEmpty()) {
+        writer.write(batch);
+      }
+      return writer.finish();
+    }
+  }
+
+  /** Reads rows in the current thread, and passes them in batches through a
+   * bounded queue to writers, each with its own connection. */
+  private static long insertParallel(final DataSource dataSource,
+      final String insertSql, final int[] types, Enumerable<Object[]> rows,
+      final Config config) throws SQLException {
+    final BlockingQueue<List<Object[]>> queue =
+        new ArrayBlockingQueue<>(2 * config.writerCount);
+    final List<Future<Long>> futures = new ArrayList<>();
+    try {
+      for (int i = 0; i < config.writerCount; i++) {
+        futures.add(
+            EXECUTOR.submit(
+                new Callable<Long>() {
+                  public Long call() throws Exception {
+                    try (Writer writer =
+                             new Writer(dataSource, insertSql, types, config)) {
+                      for (;;) {
+                        final List<Object[]> batch = queue.take();
+                        if (batch == END) {
+                          return writer.finish();
+                        }
+                        writer.write(batch);
+                      }
+                    }
+                  }
+                }));
+      }
+      try (Enumerator<Object[]> enumerator = rows.enumerator()) {
+        List<Object[]> batch = new ArrayList<>(config.batchSize);
+        while (enumerator.moveNext()) {
+          batch.add(enumerator.current());
+          if (batch.size() == config.batchSize) {
+            put(queue, batch, futures);
+            batch = new ArrayList<>(config.batchSize);
+          }
+        }
+        if (!batch.isEmpty()) {
+          put(queue, batch, futures);
+        }
+      }
+      for (int i = 0; i < config.writerCount; i++) {
+        put(queue, END, futures);
+      }
+      long count = 0;
+      for (Future<Long> future : futures) {
+        count += get(future);
+      }
+      return count;
+    } finally {
+      for (Future<Long> future : futures) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  /** Adds a batch to the queue, waiting if the queue is full, and throwing
+   * if a writer has failed. */
+  private static void put(BlockingQueue<List<Object[]>> queue,
+      List<Object[]> batch, List<Future<Long>> futures) throws SQLException {
+    try {
+      while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+        for (Future<Long> future : futures) {
+          if (future.isDone()) {
+            // A writer only finishes early if it has failed.
+            get(future);
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static long get(Future<Long> future) throws SQLException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof SQLException) {
+        throw (SQLException) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  /** Settings that control how rows are written. */
+  public static class Config {
+    public static final Config DEFAULT = new Config(1000, 1, 1, 0);
+
+    /** Number of rows sent to the database in each round trip. */
+    public final int batchSize;
+    /** Number of rows in each INSERT statement; greater than 1 to use
+     * multi-row VALUES, if the database supports it. */
+    public final int rowsPerInsert;
+    /** Number of connections that write concurrently. */
+    public final int writerCount;
+    /** Number of rows a writer inserts between commits, or 0 to leave the
+     * connection's auto-commit setting as it is. */
+    public final int commitInterval;
+
+    public Config(int batchSize, int rowsPerInsert, int writerCount,
+        int commitInterval) {
+      Preconditions.checkArgument(batchSize > 0);
+      Preconditions.checkArgument(rowsPerInsert > 0);
+      Preconditions.checkArgument(writerCount > 0);
+      Preconditions.checkArgument(commitInterval >= 0);
+      this.batchSize = batchSize;
+      this.rowsPerInsert = rowsPerInsert;
+      this.writerCount = writerCount;
+      this.commitInterval = commitInterval;
+    }
+
+    /** Creates a Config from the "batchSize", "rowsPerInsert", "writers"
+     * and "commitInterval" properties of a schema operand, using defaults
+     * for those not present. */
+    public static Config of(Map<String, Object> operand) {
+      return new Config(
+          intValue(operand, "batchSize", DEFAULT.batchSize),
+          intValue(operand, "rowsPerInsert", DEFAULT.rowsPerInsert),
+          intValue(operand, "writers", DEFAULT.writerCount),
+          intValue(operand, "commitInterval", DEFAULT.commitInterval));
+    }
+
+    private static int intValue(Map<String, Object> operand, String name,
+        int defaultValue) {
+      final Number value = (Number) operand.get(name);
+      return value == null ? defaultValue : value.intValue();
+    }
+  }
+
+  /** Writes batches of rows over one connection. */
+  private static class Writer implements AutoCloseable {
+    private final Connection connection;
+    private final String insertSql;
+    private final int[] types;
+    private final Config config;
+    /** Statement that inserts {@link Config#rowsPerInsert} rows; created on
+     * first use. */
+    private PreparedStatement statement;
+    private long written;
+    private long uncommitted;
+    private boolean finished;
+
+    Writer(DataSource dataSource, String insertSql, int[] types,
+        Config config) throws SQLException {
+      this.connection = dataSource.getConnection();
+      this.insertSql = insertSql;
+      this.types = types;
+      this.config = config;
+      if (config.commitInterval > 0) {
+        connection.setAutoCommit(false);
+      }
+    }
+
+    void write(List<Object[]> rows) throws SQLException {
+      final int k = config.rowsPerInsert;
+      int i = 0;
+      if (rows.size() >= k) {
+        if (statement == null) {
+          statement = connection.prepareStatement(sql(k));
+        }
+        for (; i + k <= rows.size(); i += k) {
+          bind(statement, rows.subList(i, i + k));
+          statement.addBatch();
+        }
+        statement.executeBatch();
+      }
+      if (i < rows.size()) {
+        // Fewer rows remain than an INSERT statement holds.
+        try (PreparedStatement remainder =
+                 connection.prepareStatement(sql(rows.size() - i))) {
+          bind(remainder, rows.subList(i, rows.size()));
+          remainder.executeUpdate();
+        }
+      }
+      written += rows.size();
+      uncommitted += rows.size();
+      if (config.commitInterval > 0 && uncommitted >= config.commitInterval) {
+        connection.commit();
+        uncommitted = 0;
+      }
+    }
+
+    /** Commits the rows not yet committed, and returns the number of rows
+     * written. */
+    long finish() throws SQLException {
+      if (config.commitInterval > 0 && uncommitted > 0) {
+        connection.commit();
+        uncommitted = 0;
+      }
+      finished = true;
+      return written;
+    }
+
+    public void close() throws SQLException {
+      try {
+        if (statement != null) {
+          statement.close();
+        }
+        if (!finished && config.commitInterval > 0) {
+          connection.rollback();
+        }
+      } finally {
+        connection.close();
+      }
+    }
+
+    /** Returns an INSERT statement with {@code rowCount} rows of
+     * parameters. */
+    private String sql(int rowCount) {
+      final StringBuilder buf = new StringBuilder(insertSql);
+      for (int r = 0; r < rowCount; r++) {
+        buf.append(r == 0 ? " (" : ", (");
+        for (int c = 0; c < types.length; c++) {
+          buf.append(c == 0 ? "?" : ", ?");
+        }
+        buf.append(')');
+      }
+      return buf.toString();
+    }
+
+    private void bind(PreparedStatement statement, List<Object[]> rows)
+        throws SQLException {
+      int p = 0;
+      for (Object[] row : rows) {
+        for (int c = 0; c < types.length; c++) {
+          ResultSetEnumerable.setDynamicParam(statement, ++p, row[c],
+              types[c]);
+        }
+      }
+    }
+  }
+}
+
+// End JdbcBatchWriter.java
@@ -0,0 +1,400 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.jdbc;
+
+import org.apache.calcite.DataContext;
+import org.apache.calcite.adapter.enumerable.EnumUtils;
+import org.apache.calcite.adapter.enumerable.EnumerableRel;
+import org.apache.calcite.adapter.enumerable.EnumerableRelImplementor;
+import org.apache.calcite.adapter.enumerable.PhysType;
+import org.apache.calcite.adapter.enumerable.PhysTypeImpl;
+import org.apache.calcite.adapter.java.JavaTypeFactory;
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.QueryProvider;
+import org.apache.calcite.linq4j.function.Function1;
+import org.apache.calcite.linq4j.function.Function2;
+import org.apache.calcite.linq4j.tree.BlockBuilder;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.linq4j.tree.ParameterExpression;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.CorrelationId;
+import org.apache.calcite.rel.core.EquiJoin;
+import org.apache.calcite.rel.core.JoinInfo;
+import org.apache.calcite.rel.core.JoinRelType;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexUtil;
+import org.apache.calcite.schema.SchemaPlus;
+import org.apache.calcite.sql.fun.SqlStdOperatorTable;
+import org.apache.calcite.util.BuiltInMethod;
+import org.apache.calcite.util.ImmutableIntList;
+import org.apache.calcite.util.Util;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Relational expression that joins an enumerable input to an input that is
+ * a query on a JDBC data source, by reading the enumerable input first and
+ * sending its key values to the data source.
+ *
+ * <p>The JDBC input is read in batches of {@link #BATCH_SIZE} keys, each
+ * batch a query of the form
+ *
+ * <blockquote><pre>SELECT ... FROM (query)
+ * WHERE k = ? OR k = ? OR ...</pre></blockquote>
+ *
+ * <p>with the keys bound as dynamic parameters. If a batch is not full, the
+ * last key is repeated, so that every batch executes the same SQL, and the
+ * database can re-use the prepared statement.</p>
+ *
+ * <p>This is much cheaper than {@link org.apache.calcite.adapter.enumerable.EnumerableJoin},
+ * which reads the whole JDBC input, if the enumerable input is small and
+ * the JDBC input is large, for example when joining tables in different
+ * databases. The planner chooses between them based on their row counts.
+ * Only inner equi-joins are supported.</p>
+ */
+public class JdbcBindJoin extends EquiJoin implements EnumerableRel {
+  /** Number of keys sent to the JDBC data source in each query. */
+  public static final int BATCH_SIZE = 100;
+
+  /** Cost, in rows, of each query sent to the JDBC data source. */
+  private static final double QUERY_COST = 250d;
+
+  public JdbcBindJoin(RelOptCluster cluster, RelTraitSet traitSet,
+      RelNode left, RelNode right, RexNode condition,
+      ImmutableIntList leftKeys, ImmutableIntList rightKeys,
+      Set<CorrelationId> variablesSet) {
+    super(cluster, traitSet, left, right, condition, leftKeys, rightKeys,
+        variablesSet, JoinRelType.INNER);
+    assert right.getConvention() instanceof JdbcConvention;
+  }
+
+  @Override public JdbcBindJoin copy(RelTraitSet traitSet, RexNode condition,
+      RelNode left, RelNode right, JoinRelType joinType,
+      boolean semiJoinDone) {
+    final JoinInfo joinInfo = JoinInfo.of(left, right, condition);
+    assert joinInfo.isEqui();
+    assert joinType == JoinRelType.INNER;
+    return new JdbcBindJoin(getCluster(), traitSet, left, right, condition,
+        joinInfo.leftKeys, joinInfo.rightKeys, variablesSet);
+  }
+
+  /** {@inheritDoc}
+   *
+   * <p>Like a hash join, costs the rows it outputs and L log L for the
+   * left input; instead of reading the whole right input, it costs each
+   * query it sends, which reads a tenth of the right input if the data
+   * source cannot use an index. */
+  @Override public RelOptCost computeSelfCost(RelOptPlanner planner,
+      RelMetadataQuery mq) {
+    final double leftRowCount = mq.getRowCount(left);
+    final double rightRowCount = mq.getRowCount(right);
+    if (Double.isInfinite(leftRowCount)) {
+      return planner.getCostFactory().makeInfiniteCost();
+    }
+    final double queryCount = Math.ceil(leftRowCount / BATCH_SIZE);
+    final double rowCount = mq.getRowCount(this)
+        + Util.nLogN(leftRowCount)
+        + queryCount * (QUERY_COST + rightRowCount * .1d);
+    return planner.getCostFactory().makeCost(rowCount, 0, 0);
+  }
+
+  public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
+    // Generate:
+    //   JdbcBindJoin.join(left, leftKeySelector,
+    //       new Function1<DataContext, Enumerable>() {
+    //         public Enumerable apply(DataContext context) {
+    //           ... ResultSetEnumerable.of(..., "SELECT ... WHERE k = ? ...",
+    //               ..., ResultSetEnumerable.createEnricher(..., context))
+    //         }
+    //       },
+    //       rightKeySelector, resultSelector, root, keyCount, offset)
+    final BlockBuilder builder = new BlockBuilder();
+    final Result leftResult =
+        implementor.visitChild(this, 0, (EnumerableRel) left, pref);
+    final Expression left_ = builder.append("left", leftResult.block);
+
+    // Key values are bound to dynamic parameters numbered after any that
+    // the right input already uses.
+    int offset = 0;
+    for (int index
+        : JdbcToEnumerableConverter.dynamicParamTypes(right).keySet()) {
+      offset = Math.max(offset, index + 1);
+    }
+    final RelNode filter =
+        new JdbcRules.JdbcFilter(getCluster(), right.getTraitSet(), right,
+            bindCondition(offset));
+    final JdbcToEnumerableConverter converter =
+        new JdbcToEnumerableConverter(getCluster(), getTraitSet(), filter);
+    final ParameterExpression context_ =
+        Expressions.parameter(DataContext.class, builder.newName("context"));
+    final Result rightResult = converter.implement(implementor, pref, context_);
+    final Expression right_ =
+        builder.append("right",
+            Expressions.lambda(Function1.class, rightResult.block, context_));
+
+    final PhysType physType =
+        PhysTypeImpl.of(implementor.getTypeFactory(), getRowType(),
+            pref.preferArray());
+    return implementor.result(physType,
+        builder.append(
+            Expressions.call(BuiltInMethod.JDBC_BIND_JOIN.method,
+                left_,
+                leftResult.physType.generateAccessor(leftKeys),
+                right_,
+                rightResult.physType.generateAccessor(rightKeys),
+                EnumUtils.joinSelector(joinType, physType,
+                    ImmutableList.of(leftResult.physType,
+                        rightResult.physType)),
+                implementor.getRootExpression(),
+                Expressions.constant(leftKeys.size()),
+                Expressions.constant(offset)))
+            .toBlock());
+  }
+
+  /** Returns a condition on the right input that matches any of
+   * {@link #BATCH_SIZE} key values, bound to dynamic parameters starting at
+   * {@code offset}. */
+  private RexNode bindCondition(int offset) {
+    final RexBuilder rexBuilder = getCluster().getRexBuilder();
+    final List<RelDataType> keyTypes = new ArrayList<>();
+    for (int rightKey : rightKeys) {
+      keyTypes.add(
+          right.getRowType().getFieldList().get(rightKey).getType());
+    }
+    final List<RexNode> disjunctions = new ArrayList<>();
+    int p = offset;
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      final List<RexNode> conjunctions = new ArrayList<>();
+      for (int j = 0; j < rightKeys.size(); j++) {
+        final RelDataType type = keyTypes.get(j);
+        conjunctions.add(
+            rexBuilder.makeCall(SqlStdOperatorTable.EQUALS,
+                rexBuilder.makeInputRef(type, rightKeys.get(j)),
+                rexBuilder.makeDynamicParam(
+                    getCluster().getTypeFactory()
+                        .createTypeWithNullability(type, false), p++)));
+      }
+      disjunctions.add(RexUtil.composeConjunction(rexBuilder, conjunctions,
+          false));
+    }
+    return RexUtil.composeDisjunction(rexBuilder, disjunctions, false);
+  }
+
+  /** Joins rows from an enumerable source to rows from a JDBC source, which
+   * is queried for a batch of keys at a time. Called by generated code.
+   *
+   * @param left Rows of the enumerable input
+   * @param leftKeySelector Returns the key of a left row: a value if there
+   *                        is one key column, a list if there are several
+   * @param right Returns the rows of the JDBC input that match the keys
+   *              bound in a data context
+   * @param rightKeySelector Returns the key of a right row
+   * @param resultSelector Combines a left row and a right row
+   * @param root Root data context
+   * @param keyCount Number of key columns
+   * @param offset Index of the first dynamic parameter to which keys are
+   *               bound
+   */
+  public static <TLeft, TRight, TKey, TResult> Enumerable<TResult> join(
+      final Enumerable<TLeft> left,
+      final Function1<TLeft, TKey> leftKeySelector,
+      final Function1<DataContext, Enumerable<TRight>> right,
+      final Function1<TRight, TKey> rightKeySelector,
+      final Function2<TLeft, TRight, TResult> resultSelector,
+      final DataContext root, final int keyCount, final int offset) {
+    return new AbstractEnumerable<TResult>() {
+      public Enumerator<TResult> enumerator() {
+        return new BindJoinEnumerator<>(left, leftKeySelector, right,
+            rightKeySelector, resultSelector, root, keyCount, offset);
+      }
+    };
+  }
+
+  /** Returns a data context in which the dynamic parameters starting at
+   * {@code offset} have the values of a batch of keys, the last key repeated
+   * to fill the batch. Other values come from the root context. */
+  private static DataContext bind(final DataContext root,
+      final List<?> batch, final int keyCount, final int offset) {
+    return new DataContext() {
+      public SchemaPlus getRootSchema() {
+        return root.getRootSchema();
+      }
+
+      public JavaTypeFactory getTypeFactory() {
+        return root.getTypeFactory();
+      }
+
+      public QueryProvider getQueryProvider() {
+        return root.getQueryProvider();
+      }
+
+      public Object get(String name) {
+        if (name.startsWith("?")) {
+          final int p = Integer.parseInt(name.substring(1)) - offset;
+          if (p >= 0) {
+            final Object key =
+                batch.get(Math.min(p / keyCount, batch.size() - 1));
+            return keyCount == 1 ? key : ((List) key).get(p % keyCount);
+          }
+        }
+        return root.get(name);
+      }
+    };
+  }
+
+  /** Enumerator that reads the left input into an index on its first call
+   * to {@link #moveNext()}, then queries the right input one batch of keys
+   * at a time, and emits the matching left rows as each right row
+   * arrives.
+   *
+   * @param <TLeft> Left row type
+   * @param <TRight> Right row type
+   * @param <TKey> Key type
+   * @param <TResult> Result row type */
+  private static class BindJoinEnumerator<TLeft, TRight, TKey, TResult>
+      implements Enumerator<TResult> {
+    private final Enumerable<TLeft> left;
+    private final Function1<TLeft, TKey> leftKeySelector;
+    private final Function1<DataContext, Enumerable<TRight>> right;
+    private final Function1<TRight, TKey> rightKeySelector;
+    private final Function2<TLeft, TRight, TResult> resultSelector;
+    private final DataContext root;
+    private final int keyCount;
+    private final int offset;
+
+    /** Left rows by key; null until the left input has been read. */
+    private Map<TKey, List<TLeft>> index;
+    private List<TKey> keys;
+    /** Position in {@link #keys} of the first key of the next batch. */
+    private int next;
+    /** Rows of the query for the current batch, or null if there is none. */
+    private Enumerator<TRight> rightEnumerator;
+    private TRight rightRow;
+    /** Left rows that match {@link #rightRow} and have not been emitted. */
+    private Iterator<TLeft> leftRows = Collections.emptyIterator();
+    private TResult current;
+
+    BindJoinEnumerator(Enumerable<TLeft> left,
+        Function1<TLeft, TKey> leftKeySelector,
+        Function1<DataContext, Enumerable<TRight>> right,
+        Function1<TRight, TKey> rightKeySelector,
+        Function2<TLeft, TRight, TResult> resultSelector,
+        DataContext root, int keyCount, int offset) {
+      this.left = left;
+      this.leftKeySelector = leftKeySelector;
+      this.right = right;
+      this.rightKeySelector = rightKeySelector;
+      this.resultSelector = resultSelector;
+      this.root = root;
+      this.keyCount = keyCount;
+      this.offset = offset;
+    }
+
+    public TResult current() {
+      return current;
+    }
+
+    public boolean moveNext() {
+      if (index == null) {
+        buildIndex();
+      }
+      for (;;) {
+        if (leftRows.hasNext()) {
+          current = resultSelector.apply(leftRows.next(), rightRow);
+          return true;
+        }
+        if (rightEnumerator != null && rightEnumerator.moveNext()) {
+          rightRow = rightEnumerator.current();
+          final List<TLeft> rows = index.get(rightKeySelector.apply(rightRow));
+          if (rows != null) {
+            leftRows = rows.iterator();
+          }
+          continue;
+        }
+        closeRight();
+        if (next >= keys.size()) {
+          return false;
+        }
+        final List<TKey> batch =
+            keys.subList(next, Math.min(next + BATCH_SIZE, keys.size()));
+        next += batch.size();
+        rightEnumerator =
+            right.apply(bind(root, batch, keyCount, offset)).enumerator();
+      }
+    }
+
+    public void reset() {
+      closeRight();
+      next = 0;
+      leftRows = Collections.emptyIterator();
+    }
+
+    public void close() {
+      closeRight();
+    }
+
+    private void closeRight() {
+      if (rightEnumerator != null) {
+        rightEnumerator.close();
+        rightEnumerator = null;
+      }
+    }
+
+    /** Indexes the left rows by key. A row with a null key matches
+     * nothing. */
+    private void buildIndex() {
+      index = new LinkedHashMap<>();
+      try (Enumerator<TLeft> enumerator = left.enumerator()) {
+        while (enumerator.moveNext()) {
+          final TLeft row = enumerator.current();
+          final TKey key = leftKeySelector.apply(row);
+          if (key == null
+              || keyCount > 1 && ((List) key).contains(null)) {
+            continue;
+          }
+          List<TLeft> rows = index.get(key);
+          if (rows == null) {
+            rows = new ArrayList<>(1);
+            index.put(key, rows);
+          }
+          rows.add(row);
+        }
+      }
+      keys = new ArrayList<>(index.keySet());
+    }
+  }
+}
+
+// End JdbcBindJoin.java
@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.jdbc;
+
+import org.apache.calcite.adapter.enumerable.EnumerableJoin;
+import org.apache.calcite.plan.RelOptRule;
+import org.apache.calcite.plan.RelOptRuleCall;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.JoinRelType;
+
+/**
+ * Rule that converts an {@link EnumerableJoin} whose right input is a query
+ * on a JDBC data source to a {@link JdbcBindJoin}.
+ *
+ * <p>The planner keeps whichever is cheaper, which depends on the row counts
+ * of the inputs.</p>
+ */
+public class JdbcBindJoinRule extends RelOptRule {
+  public static final JdbcBindJoinRule INSTANCE = new JdbcBindJoinRule();
+
+  private JdbcBindJoinRule() {
+    super(
+        operand(EnumerableJoin.class,
+            operand(RelNode.class, any()),
+            operand(JdbcToEnumerableConverter.class, any())),
+        "JdbcBindJoinRule");
+  }
+
+  @Override public boolean matches(RelOptRuleCall call) {
+    final EnumerableJoin join = call.rel(0);
+    return join.getJoinType() == JoinRelType.INNER
+        && !join.getLeftKeys().isEmpty()
+        && join.analyzeCondition().isEqui();
+  }
+
+  public void onMatch(RelOptRuleCall call) {
+    final EnumerableJoin join = call.rel(0);
+    final JdbcToEnumerableConverter converter = call.rel(2);
+    call.transformTo(
+        new JdbcBindJoin(join.getCluster(), join.getTraitSet(), join.getLeft(),
+            converter.getInput(), join.getCondition(), join.getLeftKeys(),
+            join.getRightKeys(), join.getVariablesSet()));
+  }
+}
+
+// End JdbcBindJoinRule.java
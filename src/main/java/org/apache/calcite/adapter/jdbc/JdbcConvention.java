@@ -66,6 +66,8 @@ public class JdbcConvention extends Convention.Impl {
     for (RelOptRule rule : JdbcRules.rules(this)) {
       planner.addRule(rule);
     }
+    planner.addRule(JdbcBatchInsertRule.INSTANCE);
+    planner.addRule(JdbcBindJoinRule.INSTANCE);
     planner.addRule(FilterSetOpTransposeRule.INSTANCE);
     planner.addRule(ProjectRemoveRule.INSTANCE);
   }
@@ -46,6 +46,7 @@ import org.apache.calcite.rel.core.Sort;
 import org.apache.calcite.rel.core.TableModify;
 import org.apache.calcite.rel.core.Union;
 import org.apache.calcite.rel.core.Values;
+import org.apache.calcite.rel.core.Window;
 import org.apache.calcite.rel.logical.LogicalAggregate;
 import org.apache.calcite.rel.logical.LogicalCalc;
 import org.apache.calcite.rel.logical.LogicalFilter;
@@ -56,6 +57,7 @@ import org.apache.calcite.rel.logical.LogicalProject;
 import org.apache.calcite.rel.logical.LogicalTableModify;
 import org.apache.calcite.rel.logical.LogicalUnion;
 import org.apache.calcite.rel.logical.LogicalValues;
+import org.apache.calcite.rel.logical.LogicalWindow;
 import org.apache.calcite.rel.metadata.RelMdUtil;
 import org.apache.calcite.rel.metadata.RelMetadataQuery;
 import org.apache.calcite.rel.rel2sql.SqlImplementor;
@@ -65,6 +67,7 @@ import org.apache.calcite.rex.RexInputRef;
 import org.apache.calcite.rex.RexLiteral;
 import org.apache.calcite.rex.RexMultisetUtil;
 import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexOver;
 import org.apache.calcite.rex.RexProgram;
 import org.apache.calcite.schema.ModifiableTable;
 import org.apache.calcite.sql.SqlAggFunction;
@@ -106,7 +109,8 @@ public class JdbcRules {
         new JdbcIntersectRule(out),
         new JdbcMinusRule(out),
         new JdbcTableModificationRule(out),
-        new JdbcValuesRule(out));
+        new JdbcValuesRule(out),
+        new JdbcWindowRule(out));
   }
 
   static final ImmutableList<SqlKind> AGG_FUNCS;
@@ -285,6 +289,10 @@ public class JdbcRules {
       if (RexMultisetUtil.containsMultiset(calc.getProgram())) {
         return null;
       }
+      if (!out.dialect.supportsWindowFunctions()
+          && RexOver.containsOver(calc.getProgram())) {
+        return null;
+      }
 
       return new JdbcCalc(rel.getCluster(), rel.getTraitSet().replace(out),
           convert(calc.getInput(), calc.getTraitSet().replace(out)),
@@ -352,6 +360,10 @@ public class JdbcRules {
 
     public RelNode convert(RelNode rel) {
       final LogicalProject project = (LogicalProject) rel;
+      if (!out.dialect.supportsWindowFunctions()
+          && RexOver.containsOver(project.getProjects(), null)) {
+        return null;
+      }
 
       return new JdbcProject(
           rel.getCluster(),
@@ -575,6 +587,61 @@ public class JdbcRules {
     }
   }
 
+  /**
+   * Rule to convert a {@link org.apache.calcite.rel.logical.LogicalWindow} to
+   * a {@link org.apache.calcite.adapter.jdbc.JdbcRules.JdbcWindow}.
+   *
+   * <p>Fires only if the dialect supports windowed aggregates. A filter on
+   * the result, such as "rn &lt;= 10" on "ROW_NUMBER() OVER (...) AS rn",
+   * is then converted to a
+   * {@link org.apache.calcite.adapter.jdbc.JdbcRules.JdbcFilter} on the
+   * window, so top-N-per-group queries return just N rows per group.
+   */
+  private static class JdbcWindowRule extends JdbcConverterRule {
+    private JdbcWindowRule(JdbcConvention out) {
+      super(LogicalWindow.class, Convention.NONE, out, "JdbcWindowRule");
+    }
+
+    public RelNode convert(RelNode rel) {
+      final LogicalWindow window = (LogicalWindow) rel;
+      if (!out.dialect.supportsWindowFunctions()) {
+        return null;
+      }
+      final RelTraitSet traitSet = window.getTraitSet().replace(out);
+      return new JdbcWindow(rel.getCluster(), traitSet,
+          convert(window.getInput(), traitSet), window.constants,
+          window.getRowType(), window.groups);
+    }
+  }
+
+  /** Window operator implemented in JDBC convention.
+   *
+   * @see org.apache.calcite.rel.core.Window */
+  public static class JdbcWindow extends Window implements JdbcRel {
+    public JdbcWindow(RelOptCluster cluster, RelTraitSet traitSet,
+        RelNode input, List<RexLiteral> constants, RelDataType rowType,
+        List<Group> groups) {
+      super(cluster, traitSet, input, constants, rowType, groups);
+      assert getConvention() instanceof JdbcConvention;
+    }
+
+    @Override public JdbcWindow copy(RelTraitSet traitSet,
+        List<RelNode> inputs) {
+      return new JdbcWindow(getCluster(), traitSet, sole(inputs), constants,
+          rowType, groups);
+    }
+
+    @Override public RelOptCost computeSelfCost(RelOptPlanner planner,
+        RelMetadataQuery mq) {
+      return super.computeSelfCost(planner, mq)
+          .multiplyBy(JdbcConvention.COST_MULTIPLIER);
+    }
+
+    public JdbcImplementor.Result implement(JdbcImplementor implementor) {
+      return implementor.implement(this);
+    }
+  }
+
   /**
    * Rule to convert an {@link org.apache.calcite.rel.logical.LogicalUnion} to a
    * {@link org.apache.calcite.adapter.jdbc.JdbcRules.JdbcUnion}.
@@ -24,6 +24,7 @@ import org.apache.calcite.rel.type.RelDataTypeFactory;
 import org.apache.calcite.rel.type.RelDataTypeImpl;
 import org.apache.calcite.rel.type.RelDataTypeSystem;
 import org.apache.calcite.rel.type.RelProtoDataType;
+import org.apache.calcite.runtime.DaemonExecutors;
 import org.apache.calcite.schema.Function;
 import org.apache.calcite.schema.Schema;
 import org.apache.calcite.schema.SchemaFactory;
@@ -34,13 +35,19 @@ import org.apache.calcite.schema.Table;
 import org.apache.calcite.sql.SqlDialect;
 import org.apache.calcite.sql.type.SqlTypeFactoryImpl;
 import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.calcite.util.Pair;
 import org.apache.calcite.util.Util;
 
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
@@ -48,9 +55,16 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import javax.sql.DataSource;
 
 /**
@@ -66,8 +80,28 @@ public class JdbcSchema implements Schema {
   final String schema;
   public final SqlDialect dialect;
   final JdbcConvention convention;
-  private ImmutableMap<String, JdbcTable> tableMap;
+  /** Tables found by the most recent listing of all tables, or null if the
+   * tables have not been listed; in a snapshot, the fixed set of tables. */
+  private volatile ImmutableMap<String, JdbcTable> tableMap;
+  /** When {@link #tableMap} was read. */
+  private volatile long tableMapMillis;
   private final boolean snapshot;
+  /** Tables that have been looked up by name, including names that were not
+   * found. Not used in a snapshot. */
+  private final LoadingCache<String, Optional<JdbcTable>> tableCache;
+  /** How long table names and row types may be re-used, including by later
+   * statements, before they are re-read from the database, in milliseconds.
+   * If 0, they are never re-read by this schema, but each statement works on
+   * a snapshot that reads them afresh. */
+  final long metadataTtlMillis;
+  private final int fetchSize;
+  final int partitionCount;
+  final ImmutableMap<String, String> partitionColumns;
+  final JdbcBatchWriter.Config writeConfig;
+
+  /** Executor that reads the metadata of schemas in the background. */
+  private static final ExecutorService PREFETCH_EXECUTOR =
+      DaemonExecutors.newCachedThreadPool("calcite-jdbc-prefetch-%d");
 
   /**
    * Creates a JDBC schema.
@@ -80,11 +114,37 @@ public class JdbcSchema implements Schema {
    */
   public JdbcSchema(DataSource dataSource, SqlDialect dialect,
       JdbcConvention convention, String catalog, String schema) {
-    this(dataSource, dialect, convention, catalog, schema, null);
+    this(dataSource, dialect, convention, catalog, schema, 0, 1,
+        ImmutableMap.<String, String>of());
+  }
+
+  /**
+   * Creates a JDBC schema that reads tables in parallel.
+   *
+   * @param dataSource Data source
+   * @param dialect SQL dialect
+   * @param convention Calling convention
+   * @param catalog Catalog name, or null
+   * @param schema Schema name pattern
+   * @param fetchSize Number of rows to fetch in each round trip, or 0 for the
+   *                  driver's default
+   * @param partitionCount Number of partitions to read a table in;
+   *                       1 to read every table in one query
+   * @param partitionColumns Map from table name to partition column name
+   */
+  public JdbcSchema(DataSource dataSource, SqlDialect dialect,
+      JdbcConvention convention, String catalog, String schema,
+      int fetchSize, int partitionCount, Map<String, String> partitionColumns) {
+    this(dataSource, dialect, convention, catalog, schema, fetchSize,
+        partitionCount, ImmutableMap.copyOf(partitionColumns),
+        JdbcBatchWriter.Config.DEFAULT, 0L, null);
   }
 
   private JdbcSchema(DataSource dataSource, SqlDialect dialect,
       JdbcConvention convention, String catalog, String schema,
+      int fetchSize, int partitionCount,
+      ImmutableMap<String, String> partitionColumns,
+      JdbcBatchWriter.Config writeConfig, long metadataTtlMillis,
       ImmutableMap<String, JdbcTable> tableMap) {
     super();
     this.dataSource = Preconditions.checkNotNull(dataSource);
@@ -92,8 +152,26 @@ public class JdbcSchema implements Schema {
     this.convention = convention;
     this.catalog = catalog;
     this.schema = schema;
+    Preconditions.checkArgument(fetchSize >= 0);
+    Preconditions.checkArgument(partitionCount >= 1);
+    this.fetchSize = fetchSize;
+    this.partitionCount = partitionCount;
+    this.partitionColumns = Preconditions.checkNotNull(partitionColumns);
+    this.writeConfig = Preconditions.checkNotNull(writeConfig);
+    Preconditions.checkArgument(metadataTtlMillis >= 0);
+    this.metadataTtlMillis = metadataTtlMillis;
     this.tableMap = tableMap;
     this.snapshot = tableMap != null;
+    final CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder();
+    if (metadataTtlMillis > 0) {
+      cacheBuilder.expireAfterWrite(metadataTtlMillis, TimeUnit.MILLISECONDS);
+    }
+    this.tableCache = cacheBuilder.build(
+        new CacheLoader<String, Optional<JdbcTable>>() {
+          public Optional<JdbcTable> load(String name) {
+            return Optional.fromNullable(lookupTable(name));
+          }
+        });
   }
 
   public static JdbcSchema create(
@@ -102,12 +180,87 @@ public class JdbcSchema implements Schema {
       DataSource dataSource,
       String catalog,
       String schema) {
+    return create(parentSchema, name, dataSource, catalog, schema, 0, 1,
+        ImmutableMap.<String, String>of());
+  }
+
+  /**
+   * Creates a JdbcSchema that reads tables in parallel.
+   *
+   * <p>A query that reads a single table, possibly filtering and projecting
+   * it, is split into {@code partitionCount} queries, each reading a range
+   * of values of a partition column, and these are executed concurrently.
+   * The partition column of a table is given in {@code partitionColumns};
+   * if the table is not listed, it is the table's primary key, provided that
+   * the key has a single column. A partition column must be of an integer,
+   * DATE or TIMESTAMP type.
+   *
+   * @param parentSchema Parent schema
+   * @param name Name
+   * @param dataSource Data source
+   * @param catalog Catalog name, or null
+   * @param schema Schema name pattern
+   * @param fetchSize Number of rows to fetch in each round trip, or 0 for the
+   *                  driver's default
+   * @param partitionCount Number of partitions to read a table in;
+   *                       1 to read every table in one query
+   * @param partitionColumns Map from table name to partition column name
+   * @return A JdbcSchema
+   */
+  public static JdbcSchema create(
+      SchemaPlus parentSchema,
+      String name,
+      DataSource dataSource,
+      String catalog,
+      String schema,
+      int fetchSize,
+      int partitionCount,
+      Map<String, String> partitionColumns) {
+    return create(parentSchema, name, dataSource, catalog, schema, fetchSize,
+        partitionCount, partitionColumns, JdbcBatchWriter.Config.DEFAULT);
+  }
+
+  /** Creates a JdbcSchema that reads tables in parallel, and writes rows
+   * that come from outside the database as described by
+   * {@code writeConfig}. */
+  public static JdbcSchema create(
+      SchemaPlus parentSchema,
+      String name,
+      DataSource dataSource,
+      String catalog,
+      String schema,
+      int fetchSize,
+      int partitionCount,
+      Map<String, String> partitionColumns,
+      JdbcBatchWriter.Config writeConfig) {
+    return create(parentSchema, name, dataSource, catalog, schema, fetchSize,
+        partitionCount, partitionColumns, writeConfig, 0L);
+  }
+
+  /** Creates a JdbcSchema that reads tables in parallel, writes rows as
+   * described by {@code writeConfig}, and shares the names and row types of
+   * tables between statements until they are older than
+   * {@code metadataTtlMillis} milliseconds (0 to read them afresh for each
+   * statement). */
+  public static JdbcSchema create(
+      SchemaPlus parentSchema,
+      String name,
+      DataSource dataSource,
+      String catalog,
+      String schema,
+      int fetchSize,
+      int partitionCount,
+      Map<String, String> partitionColumns,
+      JdbcBatchWriter.Config writeConfig,
+      long metadataTtlMillis) {
     final Expression expression =
         Schemas.subSchemaExpression(parentSchema, name, JdbcSchema.class);
     final SqlDialect dialect = createDialect(dataSource);
     final JdbcConvention convention =
         JdbcConvention.of(dialect, expression, name);
-    return new JdbcSchema(dataSource, dialect, convention, catalog, schema);
+    return new JdbcSchema(dataSource, dialect, convention, catalog, schema,
+        fetchSize, partitionCount, ImmutableMap.copyOf(partitionColumns),
+        writeConfig, metadataTtlMillis, null);
   }
 
   /**
@@ -140,8 +293,25 @@ public class JdbcSchema implements Schema {
     }
     String jdbcCatalog = (String) operand.get("jdbcCatalog");
     String jdbcSchema = (String) operand.get("jdbcSchema");
-    return JdbcSchema.create(
-        parentSchema, name, dataSource, jdbcCatalog, jdbcSchema);
+    final Number fetchSize = (Number) operand.get("fetchSize");
+    final Number partitions = (Number) operand.get("partitions");
+    @SuppressWarnings("unchecked")
+    final Map<String, String> partitionColumns =
+        (Map<String, String>) operand.get("partitionColumns");
+    final Number metadataTtl = (Number) operand.get("metadataTtl");
+    final JdbcSchema schema = JdbcSchema.create(
+        parentSchema, name, dataSource, jdbcCatalog, jdbcSchema,
+        fetchSize == null ? 0 : fetchSize.intValue(),
+        partitions == null ? 1 : partitions.intValue(),
+        partitionColumns == null
+            ? ImmutableMap.<String, String>of()
+            : partitionColumns,
+        JdbcBatchWriter.Config.of(operand),
+        metadataTtl == null ? 0L : metadataTtl.longValue());
+    if (Boolean.TRUE.equals(operand.get("prefetch"))) {
+      schema.prefetch();
+    }
+    return schema;
   }
 
   /** Returns a suitable SQL dialect for the given data source. */
@@ -165,8 +335,14 @@ public class JdbcSchema implements Schema {
   }
 
   public Schema snapshot(SchemaVersion version) {
+    if (metadataTtlMillis > 0) {
+      // Metadata is re-read when it expires, so this schema is as consistent
+      // as a snapshot would be, and shares its caches with later statements.
+      return this;
+    }
     return new JdbcSchema(dataSource, dialect, convention, catalog, schema,
-        tableMap);
+        fetchSize, partitionCount, partitionColumns, writeConfig,
+        metadataTtlMillis, tableMap);
   }
 
   // Used by generated code.
@@ -174,6 +350,12 @@ public class JdbcSchema implements Schema {
     return dataSource;
   }
 
+  /** Returns the number of rows to fetch in each round trip, or 0 for the
+   * driver's default. Used by generated code. */
+  public int getFetchSize() {
+    return fetchSize;
+  }
+
   public Expression getExpression(SchemaPlus parentSchema, String name) {
     return Schemas.subSchemaExpression(parentSchema, name, JdbcSchema.class);
   }
@@ -205,31 +387,7 @@ public class JdbcSchema implements Schema {
       final ImmutableMap.Builder<String, JdbcTable> builder =
           ImmutableMap.builder();
       while (resultSet.next()) {
-        final String tableName = resultSet.getString(3);
-        final String catalogName = resultSet.getString(1);
-        final String schemaName = resultSet.getString(2);
-        final String tableTypeName = resultSet.getString(4);
-        // Clean up table type. In particular, this ensures that 'SYSTEM TABLE',
-        // returned by Phoenix among others, maps to TableType.SYSTEM_TABLE.
-        // We know enum constants are upper-case without spaces, so we can't
-        // make things worse.
-        //
-        // PostgreSQL returns tableTypeName==null for pg_toast* tables
-        // This can happen if you start JdbcSchema off a "public" PG schema
-        // The tables are not designed to be queried by users, however we do
-        // not filter them as we keep all the other table types.
-        final String tableTypeName2 =
-            tableTypeName == null
-            ? null
-            : tableTypeName.toUpperCase(Locale.ROOT).replace(' ', '_');
-        final TableType tableType =
-            Util.enumVal(TableType.OTHER, tableTypeName2);
-        if (tableType == TableType.OTHER  && tableTypeName2 != null) {
-          System.out.println("Unknown table type: " + tableTypeName2);
-        }
-        final JdbcTable table =
-            new JdbcTable(this, catalogName, schemaName, tableName, tableType);
-        builder.put(tableName, table);
+        builder.put(resultSet.getString(3), table(resultSet));
       }
       return builder.build();
     } catch (SQLException e) {
@@ -240,16 +398,157 @@ public class JdbcSchema implements Schema {
     }
   }
 
+  /** Reads the table with a given name from the database, or returns null if
+   * there is no such table. Asks the database about that name only, rather
+   * than listing all tables. */
+  private JdbcTable lookupTable(String name) {
+    Connection connection = null;
+    ResultSet resultSet = null;
+    try {
+      connection = dataSource.getConnection();
+      DatabaseMetaData metaData = connection.getMetaData();
+      resultSet = metaData.getTables(
+          catalog,
+          schema,
+          escapePattern(name, metaData.getSearchStringEscape()),
+          null);
+      while (resultSet.next()) {
+        // Some drivers ignore the escape character; check the name.
+        if (name.equals(resultSet.getString(3))) {
+          return table(resultSet);
+        }
+      }
+      return null;
+    } catch (SQLException e) {
+      throw new RuntimeException(
+          "Exception while reading table '" + name + "'", e);
+    } finally {
+      close(connection, null, resultSet);
+    }
+  }
+
+  /** Converts a name into a pattern for {@link DatabaseMetaData} methods
+   * that matches only that name. */
+  private static String escapePattern(String name, String escape) {
+    if (escape == null || escape.isEmpty()) {
+      return name;
+    }
+    return name.replace(escape, escape + escape)
+        .replace("_", escape + "_")
+        .replace("%", escape + "%");
+  }
+
+  /** Creates a table from the current row of the result of
+   * {@link DatabaseMetaData#getTables}. */
+  private JdbcTable table(ResultSet resultSet) throws SQLException {
+    final String tableName = resultSet.getString(3);
+    final String catalogName = resultSet.getString(1);
+    final String schemaName = resultSet.getString(2);
+    final String tableTypeName = resultSet.getString(4);
+    // Clean up table type. In particular, this ensures that 'SYSTEM TABLE',
+    // returned by Phoenix among others, maps to TableType.SYSTEM_TABLE.
+    // We know enum constants are upper-case without spaces, so we can't
+    // make things worse.
+    //
+    // PostgreSQL returns tableTypeName==null for pg_toast* tables
+    // This can happen if you start JdbcSchema off a "public" PG schema
+    // The tables are not designed to be queried by users, however we do
+    // not filter them as we keep all the other table types.
+    final String tableTypeName2 =
+        tableTypeName == null
+        ? null
+        : tableTypeName.toUpperCase(Locale.ROOT).replace(' ', '_');
+    final TableType tableType =
+        Util.enumVal(TableType.OTHER, tableTypeName2);
+    if (tableType == TableType.OTHER  && tableTypeName2 != null) {
+      System.out.println("Unknown table type: " + tableTypeName2);
+    }
+    return new JdbcTable(this, catalogName, schemaName, tableName, tableType);
+  }
+
   public Table getTable(String name) {
-    return getTableMap(false).get(name);
+    if (snapshot) {
+      return tableMap.get(name);
+    }
+    try {
+      return tableCache.get(name).orNull();
+    } catch (UncheckedExecutionException | ExecutionException e) {
+      Util.throwIfUnchecked(e.getCause());
+      throw new RuntimeException(e.getCause());
+    }
   }
 
-  private synchronized ImmutableMap<String, JdbcTable> getTableMap(
-      boolean force) {
-    if (force || tableMap == null) {
-      tableMap = computeTables();
+  /** Lists all tables, and merges them into the cache of tables looked up by
+   * name. A table that is already in the cache keeps its row type; a table
+   * that is no longer in the database is removed. */
+  private ImmutableMap<String, JdbcTable> refreshTables() {
+    final ImmutableMap<String, JdbcTable> tables = computeTables();
+    final ImmutableMap.Builder<String, JdbcTable> builder =
+        ImmutableMap.builder();
+    for (Map.Entry<String, JdbcTable> entry : tables.entrySet()) {
+      final Optional<JdbcTable> cached =
+          tableCache.getIfPresent(entry.getKey());
+      if (cached != null && cached.isPresent()) {
+        builder.put(entry.getKey(), cached.get());
+      } else {
+        tableCache.put(entry.getKey(), Optional.of(entry.getValue()));
+        builder.put(entry);
+      }
+    }
+    tableCache.asMap().keySet().retainAll(tables.keySet());
+    final ImmutableMap<String, JdbcTable> map = builder.build();
+    tableMapMillis = System.currentTimeMillis();
+    tableMap = map;
+    return map;
+  }
+
+  /** Returns whether metadata read at a given time has expired. Metadata
+   * never expires if {@link #metadataTtlMillis} is 0. */
+  boolean isExpired(long millis) {
+    return metadataTtlMillis > 0
+        && System.currentTimeMillis() - millis > metadataTtlMillis;
+  }
+
+  /** Starts reading the names and row types of all tables in a background
+   * thread, so that later lookups do not need to go to the database.
+   *
+   * <p>Row types are read using one call to
+   * {@link DatabaseMetaData#getColumns} for the whole schema, which is much
+   * cheaper than one call per table.
+   *
+   * @return Future that completes when all tables have been read
+   */
+  public Future<?> prefetch() {
+    return PREFETCH_EXECUTOR.submit(
+        new Callable<Void>() {
+          public Void call() throws SQLException {
+            prefetchTables();
+            return null;
+          }
+        });
+  }
+
+  private void prefetchTables() throws SQLException {
+    final ImmutableMap<String, JdbcTable> tables = refreshTables();
+    Connection connection = null;
+    ResultSet resultSet = null;
+    try {
+      connection = dataSource.getConnection();
+      DatabaseMetaData metaData = connection.getMetaData();
+      resultSet = metaData.getColumns(catalog, schema, null, null);
+      final Map<Pair<String, String>, RelProtoDataType> rowTypes =
+          readRowTypes(resultSet);
+      for (Map.Entry<String, JdbcTable> entry : tables.entrySet()) {
+        final RelProtoDataType rowType =
+            rowTypes.get(
+                Pair.of(entry.getValue().getJdbcSchemaName(), entry.getKey()));
+        if (rowType != null) {
+          entry.getValue().setProtoRowType(rowType);
+        }
+      }
+    } finally {
+      close(connection, null, resultSet);
     }
-    return tableMap;
   }
 
   RelProtoDataType getRelDataType(String catalogName, String schemaName,
@@ -267,15 +566,48 @@ public class JdbcSchema implements Schema {
   RelProtoDataType getRelDataType(DatabaseMetaData metaData, String catalogName,
       String schemaName, String tableName) throws SQLException {
     final ResultSet resultSet =
-        metaData.getColumns(catalogName, schemaName, tableName, null);
+        metaData.getColumns(catalogName, schemaName,
+            escapePattern(tableName, metaData.getSearchStringEscape()), null);
+    final RelProtoDataType protoRowType;
+    try {
+      protoRowType =
+          readRowTypes(resultSet).get(Pair.of(schemaName, tableName));
+    } finally {
+      resultSet.close();
+    }
+    if (protoRowType == null) {
+      // The table has no columns (or has just been dropped).
+      return RelDataTypeImpl.proto(
+          new SqlTypeFactoryImpl(RelDataTypeSystem.DEFAULT).builder().build());
+    }
+    return protoRowType;
+  }
 
+  /** Reads the result of {@link DatabaseMetaData#getColumns}, which may
+   * describe the columns of several tables, and returns the row type of
+   * each table, keyed by its schema name and table name.
+   *
+   * <p>The key includes the schema name because, if this schema's
+   * {@link #schema} pattern is null or contains wildcards, tables of the same
+   * name in different database schemas would otherwise have their columns
+   * merged into one row type. */
+  private Map<Pair<String, String>, RelProtoDataType> readRowTypes(
+      ResultSet resultSet) throws SQLException {
     // Temporary type factory, just for the duration of this method. Allowable
     // because we're creating a proto-type, not a type; before being used, the
     // proto-type will be copied into a real type factory.
     final RelDataTypeFactory typeFactory =
         new SqlTypeFactoryImpl(RelDataTypeSystem.DEFAULT);
-    final RelDataTypeFactory.Builder fieldInfo = typeFactory.builder();
+    final Map<Pair<String, String>, RelDataTypeFactory.Builder> fieldInfos =
+        new LinkedHashMap<>();
     while (resultSet.next()) {
+      final Pair<String, String> key =
+          Pair.of(resultSet.getString(2), resultSet.getString(3));
+      RelDataTypeFactory.Builder fieldInfo = fieldInfos.get(key);
+      if (fieldInfo == null) {
+        fieldInfo = typeFactory.builder();
+        fieldInfos.put(key, fieldInfo);
+      }
       final String columnName = resultSet.getString(4);
       final int dataType = resultSet.getInt(5);
       final String typeString = resultSet.getString(6);
@@ -297,8 +629,14 @@ public class JdbcSchema implements Schema {
       boolean nullable = resultSet.getInt(11) != DatabaseMetaData.columnNoNulls;
       fieldInfo.add(columnName, sqlType).nullable(nullable);
     }
-    resultSet.close();
-    return RelDataTypeImpl.proto(fieldInfo.build());
+    final Map<Pair<String, String>, RelProtoDataType> rowTypes =
+        new HashMap<>();
+    for (Map.Entry<Pair<String, String>, RelDataTypeFactory.Builder> entry
+        : fieldInfos.entrySet()) {
+      rowTypes.put(entry.getKey(),
+          RelDataTypeImpl.proto(entry.getValue().build()));
+    }
+    return rowTypes;
   }
 
   private RelDataType sqlType(RelDataTypeFactory typeFactory, int dataType,
@@ -370,9 +708,17 @@ public class JdbcSchema implements Schema {
   }
 
   public Set<String> getTableNames() {
+    if (snapshot) {
+      return tableMap.keySet();
+    }
+    final ImmutableMap<String, JdbcTable> tableMap = this.tableMap;
+    if (metadataTtlMillis > 0 && tableMap != null
+        && !isExpired(tableMapMillis)) {
+      return tableMap.keySet();
+    }
     // This method is called during a cache refresh. We can take it as a signal
     // that we need to re-build our own cache.
-    return getTableMap(!snapshot).keySet();
+    return refreshTables().keySet();
   }
 
   public Schema getSubSchema(String name) {
@@ -384,7 +730,7 @@ public class JdbcSchema implements Schema {
     return ImmutableSet.of();
   }
 
-  private static void close(
+  static void close(
       Connection connection, Statement statement, ResultSet resultSet) {
     if (resultSet != null) {
       try {
@@ -428,11 +774,30 @@ public class JdbcSchema implements Schema {
    *         "jdbcDriver": "com.mysql.jdbc.Driver",
    *         "jdbcUrl": "jdbc:mysql://localhost/foodmart",
    *         "jdbcUser": "foodmart",
-   *         "jdbcPassword": "foodmart"
+   *         "jdbcPassword": "foodmart",
+   *         "fetchSize": 10000,
+   *         "partitions": 8,
+   *         "partitionColumns": {"sales_fact_1997": "time_id"},
+   *         "batchSize": 1000,
+   *         "writers": 4,
+   *         "metadataTtl": 600000,
+   *         "prefetch": true
    *       }
    *     }
    *   ]
    * }</pre></blockquote>
+   *
+   * <p>The optional "fetchSize", "partitions" and "partitionColumns"
+   * properties control how tables are read, as described in
+   * {@link JdbcSchema#create(SchemaPlus, String, DataSource, String, String, int, int, Map)}.
+   * The optional "batchSize", "rowsPerInsert", "writers" and
+   * "commitInterval" properties control how rows from outside the database
+   * are inserted; see {@link JdbcBatchWriter.Config}.
+   * The optional "metadataTtl" property is the number of milliseconds for
+   * which table names and row types are shared between statements (by
+   * default, each statement reads them afresh), and "prefetch" reads all of
+   * them in the background when the schema is created (see
+   * {@link JdbcSchema#prefetch()}).
    */
   public static class Factory implements SchemaFactory {
     public static final Factory INSTANCE = new Factory();
@@ -37,28 +37,46 @@ import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeFactory;
 import org.apache.calcite.rel.type.RelDataTypeField;
 import org.apache.calcite.rel.type.RelProtoDataType;
+import org.apache.calcite.rex.RexBuilder;
 import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexUtil;
 import org.apache.calcite.runtime.ResultSetEnumerable;
+import org.apache.calcite.runtime.SqlFunctions;
 import org.apache.calcite.schema.ModifiableTable;
+import org.apache.calcite.schema.SampleableTable;
 import org.apache.calcite.schema.ScannableTable;
 import org.apache.calcite.schema.Schema;
 import org.apache.calcite.schema.SchemaPlus;
 import org.apache.calcite.schema.TranslatableTable;
 import org.apache.calcite.schema.impl.AbstractTableQueryable;
+import org.apache.calcite.sql.SqlDialect;
 import org.apache.calcite.sql.SqlIdentifier;
+import org.apache.calcite.sql.SqlLiteral;
+import org.apache.calcite.sql.SqlNode;
 import org.apache.calcite.sql.SqlNodeList;
+import org.apache.calcite.sql.SqlSampleSpec;
 import org.apache.calcite.sql.SqlSelect;
+import org.apache.calcite.sql.fun.SqlStdOperatorTable;
 import org.apache.calcite.sql.parser.SqlParserPos;
 import org.apache.calcite.sql.pretty.SqlPrettyWriter;
+import org.apache.calcite.sql.type.SqlTypeName;
 import org.apache.calcite.sql.util.SqlString;
+import org.apache.calcite.util.DateString;
 import org.apache.calcite.util.Pair;
+import org.apache.calcite.util.TimestampString;
 import org.apache.calcite.util.Util;
 
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -75,14 +93,24 @@ import java.util.List;
  * executed efficiently on the JDBC server.</p>
  */
 class JdbcTable extends AbstractQueryableTable
-    implements TranslatableTable, ScannableTable, ModifiableTable {
-  private RelProtoDataType protoRowType;
+    implements TranslatableTable, ScannableTable, SampleableTable,
+    ModifiableTable {
+  /** Row type, read from the database's metadata; null until first needed.
+   * Re-read when it is older than the schema's metadata time-to-live. */
+  private volatile RelProtoDataType protoRowType;
+  private volatile long protoRowTypeMillis;
   private final JdbcSchema jdbcSchema;
   private final String jdbcCatalogName;
   private final String jdbcSchemaName;
   private final String jdbcTableName;
   private final Schema.TableType jdbcTableType;
 
+  /** Column by which the table is read in partitions, and its range of
+   * values; null if the table is not partitioned. Valid if
+   * {@link #partitioningComputed}. */
+  private Partitioning partitioning;
+  private boolean partitioningComputed;
+
   JdbcTable(JdbcSchema jdbcSchema, String jdbcCatalogName,
       String jdbcSchemaName, String tableName, Schema.TableType jdbcTableType) {
     super(Object[].class);
@@ -102,7 +130,8 @@ class JdbcTable extends AbstractQueryableTable
   }
 
   public RelDataType getRowType(RelDataTypeFactory typeFactory) {
-    if (protoRowType == null) {
+    RelProtoDataType protoRowType = this.protoRowType;
+    if (protoRowType == null || jdbcSchema.isExpired(protoRowTypeMillis)) {
       try {
         protoRowType =
             jdbcSchema.getRelDataType(
@@ -114,13 +143,21 @@ class JdbcTable extends AbstractQueryableTable
             "Exception while reading definition of table '" + jdbcTableName
                 + "'", e);
       }
+      setProtoRowType(protoRowType);
     }
     return protoRowType.apply(typeFactory);
   }
 
+  /** Sets the row type; called when the row type has been read, possibly
+   * in bulk with the row types of other tables. */
+  void setProtoRowType(RelProtoDataType protoRowType) {
+    this.protoRowTypeMillis = System.currentTimeMillis();
+    this.protoRowType = protoRowType;
+  }
+
   private List<Pair<ColumnMetaData.Rep, Integer>> fieldClasses(
       final JavaTypeFactory typeFactory) {
-    final RelDataType rowType = protoRowType.apply(typeFactory);
+    final RelDataType rowType = getRowType(typeFactory);
     return Lists.transform(rowType.getFieldList(),
         new Function<RelDataTypeField, Pair<ColumnMetaData.Rep, Integer>>() {
           public Pair<ColumnMetaData.Rep, Integer> apply(RelDataTypeField f) {
@@ -135,18 +172,59 @@ class JdbcTable extends AbstractQueryableTable
   }
 
   SqlString generateSql() {
+    return generateSql(tableName());
+  }
+
+  /** Generates "SELECT * FROM table TABLESAMPLE SYSTEM (percent)". */
+  private SqlString generateSampleSql(double fraction) {
+    final SqlSampleSpec sampleSpec =
+        SqlSampleSpec.createTableSample(false, (float) fraction);
+    return generateSql(
+        SqlStdOperatorTable.TABLESAMPLE.createCall(SqlParserPos.ZERO,
+            tableName(),
+            SqlLiteral.createSample(sampleSpec, SqlParserPos.ZERO)));
+  }
+
+  private SqlString generateSql(SqlNode from) {
     final SqlNodeList selectList =
         new SqlNodeList(
             Collections.singletonList(SqlIdentifier.star(SqlParserPos.ZERO)),
             SqlParserPos.ZERO);
     SqlSelect node =
         new SqlSelect(SqlParserPos.ZERO, SqlNodeList.EMPTY, selectList,
-            tableName(), null, null, null, null, null, null, null);
+            from, null, null, null, null, null, null, null);
     final SqlPrettyWriter writer = new SqlPrettyWriter(jdbcSchema.dialect);
     node.unparse(writer, 0, 0);
     return writer.toSqlString();
   }
 
+  JdbcSchema getJdbcSchema() {
+    return jdbcSchema;
+  }
+
+  /** Returns the name of the database schema that contains this table, as
+   * reported by {@link java.sql.DatabaseMetaData#getTables}; null if the
+   * database has no schemas. */
+  String getJdbcSchemaName() {
+    return jdbcSchemaName;
+  }
+
+  /** Returns the start of an INSERT statement into the given columns of this
+   * table, up to and including the "VALUES" keyword. */
+  String insertSql(List<String> columnNames) {
+    final SqlDialect dialect = jdbcSchema.dialect;
+    final StringBuilder buf = new StringBuilder("INSERT INTO ")
+        .append(tableName().toSqlString(dialect).getSql())
+        .append(" (");
+    for (int i = 0; i < columnNames.size(); i++) {
+      if (i > 0) {
+        buf.append(", ");
+      }
+      buf.append(dialect.quoteIdentifier(columnNames.get(i)));
+    }
+    return buf.append(") VALUES").toString();
+  }
+
   SqlIdentifier tableName() {
     final List<String> strings = new ArrayList<>();
     if (jdbcSchema.catalog != null) {
@@ -159,6 +237,184 @@ class JdbcTable extends AbstractQueryableTable
     return new SqlIdentifier(strings, SqlParserPos.ZERO);
   }
 
+  /**
+   * Returns conditions that divide the rows of this table into partitions
+   * that can be read concurrently, or an empty list if the table is not to be
+   * read in partitions.
+   *
+   * <p>Each condition is a range of values of the partition column. The
+   * ranges divide the column's values, between its minimum and maximum,
+   * into roughly equal parts. The first and last ranges are unbounded, and
+   * the first also includes null values, so the partitions contain each row
+   * exactly once even if the table has changed since the minimum and maximum
+   * were read.
+   *
+   * @param rexBuilder Rex builder
+   * @param rowType Row type of a scan of this table
+   * @return Conditions, one per partition
+   */
+  List<RexNode> partitionConditions(RexBuilder rexBuilder,
+      RelDataType rowType) {
+    if (jdbcSchema.partitionCount < 2) {
+      return ImmutableList.of();
+    }
+    final Partitioning partitioning = partitioning(rowType);
+    if (partitioning == null) {
+      return ImmutableList.of();
+    }
+    final RelDataTypeField field = partitioning.field;
+    final RexNode ref =
+        rexBuilder.makeInputRef(field.getType(), field.getIndex());
+    final int n = jdbcSchema.partitionCount;
+    final BigInteger min = BigInteger.valueOf(partitioning.min);
+    final BigInteger range =
+        BigInteger.valueOf(partitioning.max).subtract(min);
+    final List<Long> bounds = new ArrayList<>();
+    for (int i = 1; i < n; i++) {
+      final long bound = min.add(
+          range.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(n)))
+          .longValue();
+      if (bound > (bounds.isEmpty() ? partitioning.min : Util.last(bounds))) {
+        bounds.add(bound);
+      }
+    }
+    if (bounds.isEmpty()) {
+      return ImmutableList.of();
+    }
+    final ImmutableList.Builder<RexNode> conditions = ImmutableList.builder();
+    for (int i = 0; i <= bounds.size(); i++) {
+      final List<RexNode> nodes = new ArrayList<>();
+      if (i > 0) {
+        nodes.add(
+            rexBuilder.makeCall(SqlStdOperatorTable.GREATER_THAN_OR_EQUAL, ref,
+                literal(rexBuilder, field.getType(), bounds.get(i - 1))));
+      }
+      if (i < bounds.size()) {
+        nodes.add(
+            rexBuilder.makeCall(SqlStdOperatorTable.LESS_THAN, ref,
+                literal(rexBuilder, field.getType(), bounds.get(i))));
+      }
+      RexNode condition = RexUtil.composeConjunction(rexBuilder, nodes, false);
+      if (i == 0 && field.getType().isNullable()) {
+        condition =
+            rexBuilder.makeCall(SqlStdOperatorTable.OR, condition,
+                rexBuilder.makeCall(SqlStdOperatorTable.IS_NULL, ref));
+      }
+      conditions.add(condition);
+    }
+    return conditions.build();
+  }
+
+  private static RexNode literal(RexBuilder rexBuilder, RelDataType type,
+      long value) {
+    switch (type.getSqlTypeName()) {
+    case DATE:
+      return rexBuilder.makeDateLiteral(
+          DateString.fromDaysSinceEpoch((int) value));
+    case TIMESTAMP:
+      return rexBuilder.makeTimestampLiteral(
+          TimestampString.fromMillisSinceEpoch(value), 3);
+    default:
+      return rexBuilder.makeExactLiteral(BigDecimal.valueOf(value), type);
+    }
+  }
+
+  private synchronized Partitioning partitioning(RelDataType rowType) {
+    if (!partitioningComputed) {
+      try {
+        partitioning = computePartitioning(rowType);
+      } catch (SQLException e) {
+        throw new RuntimeException(
+            "Exception while reading partitions of table '" + jdbcTableName
+                + "'", e);
+      }
+      partitioningComputed = true;
+    }
+    return partitioning;
+  }
+
+  /** Finds the partition column, which is either given in the schema or is
+   * the table's primary key, and reads its minimum and maximum values. */
+  private Partitioning computePartitioning(RelDataType rowType)
+      throws SQLException {
+    Connection connection = null;
+    Statement statement = null;
+    ResultSet resultSet = null;
+    try {
+      connection = jdbcSchema.dataSource.getConnection();
+      String column = jdbcSchema.partitionColumns.get(jdbcTableName);
+      if (column == null) {
+        resultSet = connection.getMetaData().getPrimaryKeys(jdbcCatalogName,
+            jdbcSchemaName, jdbcTableName);
+        while (resultSet.next()) {
+          if (column != null) {
+            return null; // composite key
+          }
+          column = resultSet.getString(4); // COLUMN_NAME
+        }
+        resultSet.close();
+        resultSet = null;
+        if (column == null) {
+          return null;
+        }
+      }
+      final RelDataTypeField field = rowType.getField(column, true, false);
+      if (field == null) {
+        return null;
+      }
+      final SqlTypeName typeName = field.getType().getSqlTypeName();
+      switch (typeName) {
+      case TINYINT:
+      case SMALLINT:
+      case INTEGER:
+      case BIGINT:
+      case DATE:
+      case TIMESTAMP:
+        break;
+      default:
+        return null;
+      }
+      final SqlDialect dialect = jdbcSchema.dialect;
+      final String quotedColumn = dialect.quoteIdentifier(column);
+      final String sql = "SELECT MIN(" + quotedColumn + "), MAX("
+          + quotedColumn + ") FROM "
+          + tableName().toSqlString(dialect).getSql();
+      statement = connection.createStatement();
+      resultSet = statement.executeQuery(sql);
+      if (!resultSet.next()) {
+        return null;
+      }
+      final long min;
+      final long max;
+      switch (typeName) {
+      case DATE:
+        if (resultSet.getDate(1) == null || resultSet.getDate(2) == null) {
+          return null;
+        }
+        min = SqlFunctions.toInt(resultSet.getDate(1));
+        max = SqlFunctions.toInt(resultSet.getDate(2));
+        break;
+      case TIMESTAMP:
+        if (resultSet.getTimestamp(1) == null
+            || resultSet.getTimestamp(2) == null) {
+          return null;
+        }
+        min = SqlFunctions.toLong(resultSet.getTimestamp(1));
+        max = SqlFunctions.toLong(resultSet.getTimestamp(2));
+        break;
+      default:
+        min = resultSet.getLong(1);
+        if (resultSet.wasNull()) {
+          return null; // table is empty
+        }
+        max = resultSet.getLong(2);
+      }
+      return new Partitioning(field, min, max);
+    } finally {
+      JdbcSchema.close(connection, statement, resultSet);
+    }
+  }
+
   public RelNode toRel(RelOptTable.ToRelContext context,
       RelOptTable relOptTable) {
     return new JdbcTableScan(context.getCluster(), relOptTable, this,
@@ -177,6 +433,19 @@ class JdbcTable extends AbstractQueryableTable
         JdbcUtils.ObjectArrayRowBuilder.factory(fieldClasses(typeFactory)));
   }
 
+  /** {@inheritDoc}
+   *
+   * <p>Returns null unless the database supports {@code TABLESAMPLE}. */
+  public Enumerable<Object[]> sample(DataContext root, double fraction) {
+    if (!jdbcSchema.dialect.supportsTableSample()) {
+      return null;
+    }
+    final JavaTypeFactory typeFactory = root.getTypeFactory();
+    final SqlString sql = generateSampleSql(fraction);
+    return ResultSetEnumerable.of(jdbcSchema.getDataSource(), sql.getSql(),
+        JdbcUtils.ObjectArrayRowBuilder.factory(fieldClasses(typeFactory)));
+  }
+
   @Override public Collection getModifiableCollection() {
     return null;
   }
@@ -192,6 +461,21 @@ class JdbcTable extends AbstractQueryableTable
         sourceExpressionList, flattened);
   }
 
+  /** Column by which a table is read in partitions, and the range of its
+   * values. Values of DATE columns are days since the epoch, and values of
+   * TIMESTAMP columns are milliseconds since the epoch. */
+  private static class Partitioning {
+    final RelDataTypeField field;
+    final long min;
+    final long max;
+
+    Partitioning(RelDataTypeField field, long min, long max) {
+      this.field = field;
+      this.min = min;
+      this.max = max;
+    }
+  }
+
   /** Enumerable that returns the contents of a {@link JdbcTable} by connecting
    * to the JDBC data source.
    *
@@ -35,23 +35,35 @@ import org.apache.calcite.plan.RelOptPlanner;
 import org.apache.calcite.plan.RelTraitSet;
 import org.apache.calcite.prepare.CalcitePrepareImpl;
 import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.RelVisitor;
 import org.apache.calcite.rel.convert.ConverterImpl;
 import org.apache.calcite.rel.metadata.RelMetadataQuery;
 import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rex.RexDynamicParam;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexOver;
+import org.apache.calcite.rex.RexShuttle;
 import org.apache.calcite.runtime.Hook;
 import org.apache.calcite.runtime.SqlFunctions;
 import org.apache.calcite.schema.Schemas;
 import org.apache.calcite.sql.SqlDialect;
 import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.calcite.sql.util.SqlString;
 import org.apache.calcite.util.BuiltInMethod;
+import org.apache.calcite.util.Util;
+
+import com.google.common.collect.ImmutableList;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.TimeZone;
 
 /**
@@ -78,8 +90,26 @@ public class JdbcToEnumerableConverter
   }
 
   public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
+    return implement(implementor, pref, implementor.getRootExpression());
+  }
+
+  /** Implements this converter, taking the values of dynamic parameters from
+   * {@code dataContext_}, which is usually the root data context but may be
+   * one built for each execution (see {@link JdbcBindJoin}). */
+  Result implement(EnumerableRelImplementor implementor, Prefer pref,
+      Expression dataContext_) {
     // Generate:
-    //   ResultSetEnumerable.of(schema.getDataSource(), "select ...")
+    //   ResultSetEnumerable.of(schema.getDataSource(), "select ...",
+    //       rowBuilderFactory, schema.getFetchSize())
+    // or, if the query has dynamic parameters:
+    //   ResultSetEnumerable.of(schema.getDataSource(), "select ... ?",
+    //       rowBuilderFactory, schema.getFetchSize(),
+    //       ResultSetEnumerable.createEnricher(new int[] {0},
+    //           new int[] {Types.INTEGER}, root))
+    // or, if the table is read in partitions:
+    //   ResultSetEnumerable.ofPartitions(schema.getDataSource(),
+    //       Arrays.asList("select ...", ...), rowBuilderFactory,
+    //       schema.getFetchSize())
     final BlockBuilder builder0 = new BlockBuilder(false);
     final JdbcRel child = (JdbcRel) getInput();
     final PhysType physType =
@@ -88,13 +118,26 @@ public class JdbcToEnumerableConverter
             pref.prefer(JavaRowFormat.CUSTOM));
     final JdbcConvention jdbcConvention =
         (JdbcConvention) child.getConvention();
-    String sql = generateSql(jdbcConvention.dialect);
-    if (CalcitePrepareImpl.DEBUG) {
-      System.out.println("[" + sql + "]");
+    // A query with dynamic parameters is usually a cheap point query, and
+    // executed many times, so we do not read it in partitions.
+    final Map<Integer, Integer> dynamicParamTypes =
+        dynamicParamTypes(getInput());
+    final List<SqlString> sqls =
+        generateSqls(jdbcConvention.dialect, dynamicParamTypes.isEmpty());
+    final List<Expression> sqlConstants = new ArrayList<>();
+    for (SqlString sqlString : sqls) {
+      final String sql = sqlString.getSql();
+      if (CalcitePrepareImpl.DEBUG) {
+        System.out.println("[" + sql + "]");
+      }
+      Hook.QUERY_PLAN.run(sql);
+      sqlConstants.add(Expressions.constant(sql));
     }
-    Hook.QUERY_PLAN.run(sql);
-    final Expression sql_ =
-        builder0.append("sql", Expressions.constant(sql));
+    final Expression sql_ = sqlConstants.size() == 1
+        ? builder0.append("sql", sqlConstants.get(0))
+        : builder0.append("sqls",
+            Expressions.call(BuiltInMethod.ARRAYS_AS_LIST.method,
+                Expressions.newArrayInit(String.class, sqlConstants)));
     final int fieldCount = getRowType().getFieldCount();
     BlockBuilder builder = new BlockBuilder();
     final ParameterExpression resultSet_ =
@@ -150,17 +193,43 @@ public class JdbcToEnumerableConverter
                                                 RuntimeException.class,
                                                 e_)))))))),
                 resultSet_));
+    final Expression schema_ =
+        Schemas.unwrap(jdbcConvention.expression, JdbcSchema.class);
+    final List<Expression> arguments = new ArrayList<>();
+    arguments.add(
+        Expressions.call(schema_, BuiltInMethod.JDBC_SCHEMA_DATA_SOURCE.method));
+    arguments.add(sql_);
+    arguments.add(rowBuilderFactory_);
+    arguments.add(
+        Expressions.call(schema_, BuiltInMethod.JDBC_SCHEMA_FETCH_SIZE.method));
+    final BuiltInMethod method;
+    final List<Integer> dynamicParameters = sqls.get(0).getDynamicParameters();
+    if (sqls.size() > 1) {
+      method = BuiltInMethod.RESULT_SET_ENUMERABLE_OF_PARTITIONS;
+    } else if (dynamicParameters.isEmpty()) {
+      method = BuiltInMethod.RESULT_SET_ENUMERABLE_OF_FETCH;
+    } else {
+      // Bind the values of the dynamic parameters, in the order in which
+      // their "?" markers occur in the SQL.
+      method = BuiltInMethod.RESULT_SET_ENUMERABLE_OF_PREPARED;
+      final List<Expression> indexes = new ArrayList<>();
+      final List<Expression> types = new ArrayList<>();
+      for (int index : dynamicParameters) {
+        indexes.add(Expressions.constant(index));
+        types.add(
+            Expressions.constant(
+                Util.first(dynamicParamTypes.get(index), Types.OTHER)));
+      }
+      arguments.add(
+          builder0.append("enricher",
+              Expressions.call(BuiltInMethod.CREATE_ENRICHER.method,
+                  Expressions.newArrayInit(int.class, indexes),
+                  Expressions.newArrayInit(int.class, types),
+                  dataContext_)));
+    }
     final Expression enumerable =
-        builder0.append(
-            "enumerable",
-            Expressions.call(
-                BuiltInMethod.RESULT_SET_ENUMERABLE_OF.method,
-                Expressions.call(
-                    Schemas.unwrap(jdbcConvention.expression,
-                        JdbcSchema.class),
-                    BuiltInMethod.JDBC_SCHEMA_DATA_SOURCE.method),
-                sql_,
-                rowBuilderFactory_));
+        builder0.append("enumerable",
+            Expressions.call(method.method, arguments));
     builder0.add(
         Expressions.return_(null, enumerable));
     return implementor.result(physType, builder0.toBlock());
@@ -291,13 +360,85 @@ public class JdbcToEnumerableConverter
         : "get" + SqlFunctions.initcap(primitive.primitiveName);
   }
 
-  private String generateSql(SqlDialect dialect) {
+  /** Returns the JDBC type of each dynamic parameter in a tree of relational
+   * expressions, keyed by the index of the parameter. */
+  static Map<Integer, Integer> dynamicParamTypes(RelNode rel) {
+    final Map<Integer, Integer> types = new HashMap<>();
+    final RexShuttle shuttle = new RexShuttle() {
+      @Override public RexNode visitDynamicParam(RexDynamicParam param) {
+        types.put(param.getIndex(),
+            param.getType().getSqlTypeName().getJdbcOrdinal());
+        return param;
+      }
+    };
+    new RelVisitor() {
+      @Override public void visit(RelNode node, int ordinal, RelNode parent) {
+        node.accept(shuttle);
+        super.visit(node, ordinal, parent);
+      }
+    }.go(rel);
+    return types;
+  }
+
+  /** Generates the SQL statements that together return the rows of the
+   * input: one per partition if {@code partition} and the input reads a
+   * single partitioned table, otherwise just one. */
+  private List<SqlString> generateSqls(SqlDialect dialect, boolean partition) {
+    final JdbcTableScan scan = partition ? partitionableScan(getInput()) : null;
+    if (scan != null) {
+      final List<RexNode> conditions =
+          scan.jdbcTable.partitionConditions(getCluster().getRexBuilder(),
+              scan.getRowType());
+      if (!conditions.isEmpty()) {
+        final List<SqlString> sqls = new ArrayList<>();
+        for (RexNode condition : conditions) {
+          final RelNode filter =
+              new JdbcRules.JdbcFilter(getCluster(), scan.getTraitSet(), scan,
+                  condition);
+          sqls.add(generateSql(dialect, replace(getInput(), scan, filter)));
+        }
+        return sqls;
+      }
+    }
+    return ImmutableList.of(generateSql(dialect, getInput()));
+  }
+
+  private SqlString generateSql(SqlDialect dialect, RelNode rel) {
     final JdbcImplementor jdbcImplementor =
         new JdbcImplementor(dialect,
             (JavaTypeFactory) getCluster().getTypeFactory());
     final JdbcImplementor.Result result =
-        jdbcImplementor.visitChild(0, getInput());
-    return result.asStatement().toSqlString(dialect).getSql();
+        jdbcImplementor.visitChild(0, rel);
+    return result.asStatement().toSqlString(dialect);
+  }
+
+  /** Returns the table scan at the bottom of a tree of filters and projects,
+   * or null if the tree contains anything else. Such a tree can be evaluated
+   * on each partition of the table, and the results combined in any
+   * order. */
+  private static JdbcTableScan partitionableScan(RelNode rel) {
+    for (;;) {
+      if (rel instanceof JdbcTableScan) {
+        return (JdbcTableScan) rel;
+      } else if (rel instanceof JdbcRules.JdbcFilter) {
+        rel = ((JdbcRules.JdbcFilter) rel).getInput();
+      } else if (rel instanceof JdbcRules.JdbcProject
+          && !RexOver.containsOver(((JdbcRules.JdbcProject) rel).getProjects(),
+              null)) {
+        rel = ((JdbcRules.JdbcProject) rel).getInput();
+      } else {
+        return null;
+      }
+    }
+  }
+
+  /** Returns a copy of a tree in which one node is replaced. */
+  private static RelNode replace(RelNode rel, RelNode find, RelNode replace) {
+    if (rel == find) {
+      return replace;
+    }
+    return rel.copy(rel.getTraitSet(),
+        ImmutableList.of(replace(rel.getInput(0), find, replace)));
   }
 
   /** Whether this JDBC driver needs you to pass a Calendar object to methods
@@ -202,6 +202,10 @@ final class JdbcUtils {
   static class DataSourcePool {
     public static final DataSourcePool INSTANCE = new DataSourcePool();
 
+    /** Maximum number of prepared statements that each pooled connection
+     * keeps open. */
+    private static final int MAX_OPEN_PREPARED_STATEMENTS = 100;
+
     private final LoadingCache<List<String>, BasicDataSource> cache =
         CacheBuilder.newBuilder().softValues().build(
             new CacheLoader<List<String>, BasicDataSource>() {
@@ -211,6 +215,11 @@ final class JdbcUtils {
                 dataSource.setUsername(key.get(1));
                 dataSource.setPassword(key.get(2));
                 dataSource.setDriverClassName(key.get(3));
+                // Keep prepared statements open, per connection, so that a
+                // query that is executed repeatedly is prepared only once.
+                dataSource.setPoolPreparedStatements(true);
+                dataSource.setMaxOpenPreparedStatements(
+                    MAX_OPEN_PREPARED_STATEMENTS);
                 return dataSource;
               }
             });
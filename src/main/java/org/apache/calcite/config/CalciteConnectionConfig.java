@@ -62,6 +62,14 @@ public interface CalciteConnectionConfig extends ConnectionConfig {
   JsonSchema.Type schemaType();
   /** @see CalciteConnectionProperty#SPARK */
   boolean spark();
+  /** @see CalciteConnectionProperty#PLANNER_PROFILE */
+  boolean plannerProfile();
+  /** @see CalciteConnectionProperty#METADATA_CACHE_SIZE */
+  long metadataCacheSize();
+  /** @see CalciteConnectionProperty#RESULT_CACHE */
+  boolean resultCache();
+  /** @see CalciteConnectionProperty#RESULT_CACHE_TTL */
+  long resultCacheTtl();
   /** @see CalciteConnectionProperty#FORCE_DECORRELATE */
   boolean forceDecorrelate();
   /** @see CalciteConnectionProperty#TYPE_SYSTEM */
@@ -156,6 +156,26 @@ public class CalciteConnectionConfigImpl extends ConnectionConfigImpl
     return CalciteConnectionProperty.SPARK.wrap(properties).getBoolean();
   }
 
+  public boolean plannerProfile() {
+    return CalciteConnectionProperty.PLANNER_PROFILE.wrap(properties)
+        .getBoolean();
+  }
+
+  public long metadataCacheSize() {
+    return CalciteConnectionProperty.METADATA_CACHE_SIZE.wrap(properties)
+        .getLong();
+  }
+
+  public boolean resultCache() {
+    return CalciteConnectionProperty.RESULT_CACHE.wrap(properties)
+        .getBoolean();
+  }
+
+  public long resultCacheTtl() {
+    return CalciteConnectionProperty.RESULT_CACHE_TTL.wrap(properties)
+        .getLong();
+  }
+
   public boolean forceDecorrelate() {
     return CalciteConnectionProperty.FORCE_DECORRELATE.wrap(properties)
         .getBoolean();
@@ -123,6 +123,27 @@ public enum CalciteConnectionProperty implements ConnectionProperty {
    * generates code that implements the Enumerable interface. */
   SPARK("spark", Type.BOOLEAN, false, false),
 
+  /** Whether to profile the planner. If true, each statement's planner
+   * records per-rule and per-metadata statistics in a
+   * {@link org.apache.calcite.plan.RelOptProfiler}. Default false. */
+  PLANNER_PROFILE("plannerProfile", Type.BOOLEAN, false, false),
+
+  /** Maximum number of metadata results to cache for re-use between the
+   * statements of a connection; see
+   * {@link org.apache.calcite.rel.metadata.RelMetadataCache}. Default 0,
+   * which disables the cache. */
+  METADATA_CACHE_SIZE("metadataCacheSize", Type.NUMBER, 0, false),
+
+  /** Whether to cache the results of queries. If true, the results of a
+   * query that reads only tables that implement
+   * {@link org.apache.calcite.schema.VersionedTable} are stored in a
+   * {@link org.apache.calcite.prepare.QueryResultCache}. Default false. */
+  RESULT_CACHE("resultCache", Type.BOOLEAN, false, false),
+
+  /** How long, in milliseconds, cached query results remain valid. Default
+   * 60,000 (one minute). */
+  RESULT_CACHE_TTL("resultCacheTtl", Type.NUMBER, 60000, false),
+
   /** Time zone, for example 'gmt-3'. Default is the JVM's time zone. */
   TIME_ZONE("timeZone", Type.STRING, null, false),
 
@@ -84,7 +84,8 @@ public class Interpreter extends AbstractEnumerable<Object[]>
         .addRuleInstance(FilterTableScanRule.INSTANCE)
         .addRuleInstance(FilterTableScanRule.INTERPRETER)
         .addRuleInstance(ProjectTableScanRule.INSTANCE)
-        .addRuleInstance(ProjectTableScanRule.INTERPRETER).build();
+        .addRuleInstance(ProjectTableScanRule.INTERPRETER)
+        .addRuleInstance(ProjectTableScanRule.PROJECTABLE).build();
     final HepPlanner planner = new HepPlanner(hepProgram);
     planner.setRoot(rootRel);
     rootRel = planner.findBestExp();
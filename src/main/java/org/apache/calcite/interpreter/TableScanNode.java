@@ -32,6 +32,7 @@ import org.apache.calcite.rex.RexUtil;
 import org.apache.calcite.runtime.Enumerables;
 import org.apache.calcite.schema.FilterableTable;
 import org.apache.calcite.schema.ProjectableFilterableTable;
+import org.apache.calcite.schema.ProjectableTable;
 import org.apache.calcite.schema.QueryableTable;
 import org.apache.calcite.schema.ScannableTable;
 import org.apache.calcite.schema.SchemaPlus;
@@ -88,6 +89,12 @@ public class TableScanNode implements Node {
       return createFilterable(interpreter, rel, filters, projects,
           filterableTable);
     }
+    final ProjectableTable projectableTable =
+        relOptTable.unwrap(ProjectableTable.class);
+    if (projectableTable != null) {
+      return createProjectable(interpreter, rel, filters, projects,
+          projectableTable);
+    }
     final ScannableTable scannableTable =
         relOptTable.unwrap(ScannableTable.class);
     if (scannableTable != null) {
@@ -119,6 +126,35 @@ public class TableScanNode implements Node {
         projects);
   }
 
+  private static TableScanNode createProjectable(Interpreter interpreter,
+      TableScan rel, ImmutableList<RexNode> filters, ImmutableIntList projects,
+      ProjectableTable projectableTable) {
+    if (projects == null
+        || projects.equals(TableScan.identity(rel.getTable()))) {
+      return createScannable(interpreter, rel, filters, projects,
+          projectableTable);
+    }
+    // Also read the fields used in filters; they are applied after the scan.
+    // If we read extra fields, project the leading fields afterwards.
+    final List<Integer> acceptedProjects = Lists.newArrayList(projects);
+    for (int usedField : RelOptUtil.InputFinder.bits(filters, null)) {
+      if (!acceptedProjects.contains(usedField)) {
+        acceptedProjects.add(usedField);
+      }
+    }
+    final ImmutableIntList accepted = ImmutableIntList.copyOf(acceptedProjects);
+    final Enumerable<Row> rowEnumerable =
+        Enumerables.toRow(
+            projectableTable.scan(interpreter.getDataContext(),
+                accepted.toIntArray()));
+    final ImmutableIntList rejectedProjects =
+        accepted.size() == projects.size()
+            ? null
+            : ImmutableIntList.identity(projects.size());
+    return createEnumerable(interpreter, rel, rowEnumerable, accepted,
+        filters, rejectedProjects);
+  }
+
   private static TableScanNode createQueryable(Interpreter interpreter,
       TableScan rel, ImmutableList<RexNode> filters, ImmutableIntList projects,
       QueryableTable queryableTable) {
@@ -171,6 +171,12 @@ public abstract class CalciteSchema {
     return entry;
   }
 
+  /** Removes a table that was explicitly defined in this schema. Returns
+   * whether the table was found. */
+  public boolean removeTable(String tableName) {
+    return tableMap.remove(tableName) != null;
+  }
+
   private FunctionEntry add(String name, Function function) {
     final FunctionEntryImpl entry =
         new FunctionEntryImpl(this, name, function);
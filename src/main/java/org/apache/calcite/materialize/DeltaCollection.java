@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.materialize;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Collection that wraps the modifiable collection of a table, and tells the
+ * {@link MaterializationService} about each row that is added or removed.
+ *
+ * @see MaterializationService#captureChanges(Object, Collection)
+ */
+class DeltaCollection extends AbstractCollection<Object> {
+  private final MaterializationService service;
+  private final Object table;
+  private final Collection<Object> collection;
+
+  DeltaCollection(MaterializationService service, Object table,
+      Collection<Object> collection) {
+    this.service = service;
+    this.table = table;
+    this.collection = collection;
+  }
+
+  public Iterator<Object> iterator() {
+    final Iterator<Object> iterator = collection.iterator();
+    return new Iterator<Object>() {
+      Object current;
+
+      public boolean hasNext() {
+        return iterator.hasNext();
+      }
+
+      public Object next() {
+        return current = iterator.next();
+      }
+
+      public void remove() {
+        iterator.remove();
+        service.recordChange(table, current, false);
+      }
+    };
+  }
+
+  public int size() {
+    return collection.size();
+  }
+
+  @Override public boolean add(Object o) {
+    if (collection.add(o)) {
+      service.recordChange(table, o, true);
+      return true;
+    }
+    return false;
+  }
+
+  @Override public boolean remove(Object o) {
+    if (collection.remove(o)) {
+      service.recordChange(table, o, false);
+      return true;
+    }
+    return false;
+  }
+
+  @Override public boolean removeAll(Collection<?> c) {
+    // Remove row by row, so that we know which rows were removed. Like
+    // Collection.removeAll, removes every occurrence of each row.
+    boolean changed = false;
+    for (Object o : c) {
+      while (remove(o)) {
+        changed = true;
+      }
+    }
+    return changed;
+  }
+
+  @Override public void clear() {
+    for (Object o : collection) {
+      service.recordChange(table, o, false);
+    }
+    collection.clear();
+  }
+}
+
+// End DeltaCollection.java
@@ -0,0 +1,541 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.materialize;
+
+import org.apache.calcite.jdbc.CalciteSchema;
+import org.apache.calcite.runtime.DaemonExecutors;
+import org.apache.calcite.util.ImmutableBitSet;
+import org.apache.calcite.util.Pair;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chooses which tiles of a lattice to materialize, based on the queries that
+ * use the lattice.
+ *
+ * <p>{@link org.apache.calcite.rel.rules.AggregateStarTableRule} calls
+ * {@link #recordQuery} each time it asks for a tile, so the advisor knows
+ * which grouping sets and measures queries actually need, how often, and
+ * how recently. {@link #suggest} estimates the benefit of materializing each
+ * candidate tile &mdash; the grouping sets that queries used, and unions of
+ * pairs of them &mdash; as the number of rows that queries would no longer
+ * need to read, weighted by the number of queries. It greedily chooses the
+ * tiles with the greatest benefit per byte, until the memory budget is
+ * used.</p>
+ *
+ * <p>{@link #tune} builds the suggested tiles in a background executor, and
+ * evicts tiles that it built earlier but that queries have not used for
+ * {@link #setMaxIdleMillis(long) a while}, or that no longer fit in the
+ * budget. Tiles defined in a model, or created on demand because a lattice
+ * is {@link Lattice#auto auto}, are never evicted.</p>
+ *
+ * <p>If the memory budget is positive, the advisor tunes a lattice
+ * automatically every {@link #setTuneInterval(int) few} queries; by default
+ * the budget is zero, and the advisor only records queries.</p>
+ */
+public class LatticeAdvisor {
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(LatticeAdvisor.class);
+
+  /** Default time after which a tile that no query has used is evicted. */
+  public static final long DEFAULT_MAX_IDLE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+  /** Default number of queries between automatic tunings of a lattice. */
+  public static final int DEFAULT_TUNE_INTERVAL = 100;
+
+  /** Estimated size of each value in a tile, in bytes. */
+  static final int BYTES_PER_VALUE = 8;
+
+  /** Maximum number of grouping sets whose pairwise unions are considered as
+   * candidate tiles. */
+  private static final int MAX_UNION_GROUPING_SETS = 32;
+
+  /** Executor used if none is specified. A single thread, so that tiles are
+   * built one at a time. */
+  private static final ExecutorService DEFAULT_EXECUTOR =
+      DaemonExecutors.newSingleThreadExecutor("calcite-lattice-advisor-%d");
+
+  private final MaterializationService service;
+  private volatile ExecutorService executor = DEFAULT_EXECUTOR;
+  private volatile long memoryBudget;
+  private volatile long maxIdleMillis = DEFAULT_MAX_IDLE_MILLIS;
+  private volatile int tuneInterval = DEFAULT_TUNE_INTERVAL;
+
+  /** Workload of each lattice that has been queried. */
+  private final Map<Lattice, Workload> workloads = new IdentityHashMap<>();
+
+  LatticeAdvisor(MaterializationService service) {
+    this.service = Preconditions.checkNotNull(service);
+  }
+
+  /** Returns the number of bytes that tiles built by the advisor may occupy,
+   * per lattice. */
+  public long getMemoryBudget() {
+    return memoryBudget;
+  }
+
+  /** Sets the number of bytes that tiles built by the advisor may occupy, per
+   * lattice. If zero (the default), the advisor does not tune lattices
+   * automatically. */
+  public void setMemoryBudget(long memoryBudget) {
+    Preconditions.checkArgument(memoryBudget >= 0);
+    this.memoryBudget = memoryBudget;
+  }
+
+  /** Sets the time after which a tile built by the advisor is evicted if
+   * no query has used it, and after which a query no longer counts towards
+   * the benefit of a tile. */
+  public void setMaxIdleMillis(long maxIdleMillis) {
+    Preconditions.checkArgument(maxIdleMillis > 0);
+    this.maxIdleMillis = maxIdleMillis;
+  }
+
+  /** Sets the number of queries between automatic tunings of a lattice. */
+  public void setTuneInterval(int tuneInterval) {
+    Preconditions.checkArgument(tuneInterval > 0);
+    this.tuneInterval = tuneInterval;
+  }
+
+  /** Sets the executor in which tiles are built. */
+  public void setExecutor(ExecutorService executor) {
+    this.executor = Preconditions.checkNotNull(executor);
+  }
+
+  /** Records that a query on a lattice needs a tile.
+   *
+   * @param lattice Lattice
+   * @param schema Schema in which tiles of the lattice are created
+   * @param groupSet Grouping key of the query
+   * @param measureList Aggregate functions that the query computes
+   * @param tileKey Tile used to answer the query, or null if none was found
+   */
+  public void recordQuery(Lattice lattice, CalciteSchema schema,
+      ImmutableBitSet groupSet, List<Lattice.Measure> measureList,
+      TileKey tileKey) {
+    final long now = System.currentTimeMillis();
+    final boolean tune;
+    synchronized (this) {
+      Workload workload = workloads.get(lattice);
+      if (workload == null) {
+        workload = new Workload(schema);
+        workloads.put(lattice, workload);
+      }
+      GroupingSetStats stats = workload.groupingSets.get(groupSet);
+      if (stats == null) {
+        stats = new GroupingSetStats(groupSet);
+        workload.groupingSets.put(groupSet, stats);
+      }
+      ++stats.count;
+      stats.lastUsed = now;
+      stats.measures.addAll(measureList);
+      if (tileKey != null) {
+        final BuiltTile builtTile = workload.builtTiles.get(tileKey);
+        if (builtTile != null) {
+          builtTile.lastUsed = now;
+        }
+      }
+      tune = memoryBudget > 0
+          && ++workload.queriesSinceTune >= tuneInterval
+          && !workload.tuning;
+    }
+    if (tune) {
+      tune(lattice);
+    }
+  }
+
+  /** Returns the number of times queries have needed each grouping set of a
+   * lattice. */
+  public synchronized Map<ImmutableBitSet, Long> getGroupingSetCounts(
+      Lattice lattice) {
+    final Map<ImmutableBitSet, Long> map = new HashMap<>();
+    final Workload workload = workloads.get(lattice);
+    if (workload != null) {
+      for (GroupingSetStats stats : workload.groupingSets.values()) {
+        map.put(stats.groupSet, stats.count);
+      }
+    }
+    return map;
+  }
+
+  /** Returns the tiles that the advisor has built for a lattice and not yet
+   * evicted. */
+  public synchronized List<TileKey> getBuiltTiles(Lattice lattice) {
+    final Workload workload = workloads.get(lattice);
+    return workload == null
+        ? ImmutableList.<TileKey>of()
+        : ImmutableList.copyOf(workload.builtTiles.keySet());
+  }
+
+  /** Tunes every lattice that has been queried. */
+  public List<Future<?>> tune() {
+    final List<Lattice> lattices;
+    synchronized (this) {
+      lattices = ImmutableList.copyOf(workloads.keySet());
+    }
+    final List<Future<?>> futures = new ArrayList<>();
+    for (Lattice lattice : lattices) {
+      futures.add(tune(lattice));
+    }
+    return futures;
+  }
+
+  /** Submits a task that builds the suggested tiles of a lattice and evicts
+   * tiles that are no longer suggested and are cold or do not fit in the
+   * memory budget. */
+  public Future<?> tune(final Lattice lattice) {
+    synchronized (this) {
+      final Workload workload = workloads.get(lattice);
+      if (workload == null || workload.tuning) {
+        return Futures.immediateFuture(null);
+      }
+      workload.tuning = true;
+      workload.queriesSinceTune = 0;
+    }
+    return executor.submit(
+        new Runnable() {
+          public void run() {
+            try {
+              tuneNow(lattice);
+            } catch (RuntimeException e) {
+              LOGGER.warn("Failed to tune lattice", e);
+              throw e;
+            } finally {
+              synchronized (LatticeAdvisor.this) {
+                final Workload workload = workloads.get(lattice);
+                if (workload != null) {
+                  workload.tuning = false;
+                }
+              }
+            }
+          }
+        });
+  }
+
+  private void tuneNow(Lattice lattice) {
+    final long budget = memoryBudget;
+    final List<Suggestion> suggestions = suggest(lattice, budget);
+    final CalciteSchema schema;
+    final List<BuiltTile> evict = new ArrayList<>();
+    synchronized (this) {
+      final Workload workload = workloads.get(lattice);
+      if (workload == null) {
+        return;
+      }
+      schema = workload.schema;
+
+      // Evict tiles that are not suggested, if they are cold, or if the
+      // suggested tiles need their space. Coldest first.
+      long bytes = 0;
+      final Set<ImmutableBitSet> suggested = new LinkedHashSet<>();
+      for (Suggestion suggestion : suggestions) {
+        suggested.add(suggestion.tileKey.dimensions);
+        bytes += suggestion.bytes;
+      }
+      final List<BuiltTile> unsuggested = new ArrayList<>();
+      for (BuiltTile builtTile : workload.builtTiles.values()) {
+        if (suggested.contains(builtTile.tileKey.dimensions)) {
+          suggested.remove(builtTile.tileKey.dimensions);
+        } else {
+          unsuggested.add(builtTile);
+          bytes += builtTile.bytes;
+        }
+      }
+      final long now = System.currentTimeMillis();
+      for (BuiltTile builtTile : coldestFirst(unsuggested)) {
+        if (bytes > budget || now - builtTile.lastUsed > maxIdleMillis) {
+          evict.add(builtTile);
+          bytes -= builtTile.bytes;
+        }
+      }
+      for (BuiltTile builtTile : evict) {
+        workload.builtTiles.remove(builtTile.tileKey);
+      }
+    }
+    for (BuiltTile builtTile : evict) {
+      LOGGER.debug("Evicting tile {}", builtTile.tileKey);
+      service.removeTile(builtTile.tileKey);
+    }
+
+    for (Suggestion suggestion : suggestions) {
+      synchronized (this) {
+        final Workload workload = workloads.get(lattice);
+        if (workload == null) {
+          return;
+        }
+        if (isBuilt(workload, suggestion.tileKey)) {
+          continue;
+        }
+      }
+      if (service.defineTile(lattice, suggestion.tileKey.dimensions,
+          suggestion.tileKey.measures, schema, false, true) != null) {
+        continue; // a suitable tile exists, say one defined in the model
+      }
+      final Pair<CalciteSchema.TableEntry, TileKey> pair =
+          service.defineTile(lattice, suggestion.tileKey.dimensions,
+              suggestion.tileKey.measures, schema, true, true);
+      if (pair == null) {
+        continue;
+      }
+      // Populate the table now, rather than when the first query reads it.
+      pair.left.getTable().getStatistic();
+      LOGGER.debug("Built tile {}", pair.right);
+      synchronized (this) {
+        final Workload workload = workloads.get(lattice);
+        if (workload != null) {
+          // The new tile replaces any narrower tile of the same
+          // dimensionality.
+          final Iterator<TileKey> iterator =
+              workload.builtTiles.keySet().iterator();
+          while (iterator.hasNext()) {
+            if (iterator.next().dimensions.equals(pair.right.dimensions)) {
+              iterator.remove();
+            }
+          }
+          workload.builtTiles.put(pair.right,
+              new BuiltTile(pair.right, suggestion.bytes));
+        }
+      }
+    }
+  }
+
+  /** Returns whether the advisor has built a tile with the given dimensions
+   * and all of the given measures. */
+  private static boolean isBuilt(Workload workload, TileKey tileKey) {
+    for (TileKey builtTileKey : workload.builtTiles.keySet()) {
+      if (builtTileKey.dimensions.equals(tileKey.dimensions)
+          && builtTileKey.measures.containsAll(tileKey.measures)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static List<BuiltTile> coldestFirst(List<BuiltTile> builtTiles) {
+    final List<BuiltTile> list = new ArrayList<>(builtTiles);
+    Collections.sort(list,
+        new Comparator<BuiltTile>() {
+          public int compare(BuiltTile o1, BuiltTile o2) {
+            return Long.compare(o1.lastUsed, o2.lastUsed);
+          }
+        });
+    return list;
+  }
+
+  /** Suggests which tiles of a lattice to materialize, the most valuable
+   * first, such that their total estimated size is at most
+   * {@code memoryBudget} bytes.
+   *
+   * <p>Only queries that have occurred within the
+   * {@link #setMaxIdleMillis(long) maximum idle time} are considered. */
+  public List<Suggestion> suggest(Lattice lattice, long memoryBudget) {
+    final List<GroupingSetStats> queries = new ArrayList<>();
+    synchronized (this) {
+      final Workload workload = workloads.get(lattice);
+      if (workload == null) {
+        return ImmutableList.of();
+      }
+      final long now = System.currentTimeMillis();
+      for (GroupingSetStats stats : workload.groupingSets.values()) {
+        if (now - stats.lastUsed <= maxIdleMillis) {
+          queries.add(stats.copy());
+        }
+      }
+    }
+
+    // Candidates are the grouping sets that queries used, and the unions of
+    // pairs of them, so that one tile can serve several kinds of query.
+    final Set<ImmutableBitSet> candidates = new LinkedHashSet<>();
+    for (GroupingSetStats query : queries) {
+      candidates.add(query.groupSet);
+    }
+    if (queries.size() <= MAX_UNION_GROUPING_SETS) {
+      for (int i = 0; i < queries.size(); i++) {
+        for (int j = i + 1; j < queries.size(); j++) {
+          candidates.add(
+              queries.get(i).groupSet.union(queries.get(j).groupSet));
+        }
+      }
+    }
+
+    // Estimate the size of each candidate.
+    final double factRowCount = lattice.getFactRowCount();
+    final Map<ImmutableBitSet, Suggestion> candidateMap = new HashMap<>();
+    for (ImmutableBitSet groupSet : candidates) {
+      final List<Lattice.Column> columns = new ArrayList<>();
+      for (int i : groupSet) {
+        columns.add(lattice.columns.get(i));
+      }
+      final double rowCount = lattice.getRowCount(columns);
+      if (rowCount >= factRowCount) {
+        continue; // the tile would be as big as the star
+      }
+      final Set<Lattice.Measure> measures =
+          new LinkedHashSet<>(lattice.defaultMeasures);
+      for (GroupingSetStats query : queries) {
+        if (groupSet.contains(query.groupSet)) {
+          measures.addAll(query.measures);
+        }
+      }
+      final long bytes = (long) Math.ceil(rowCount
+          * (groupSet.cardinality() + measures.size()) * BYTES_PER_VALUE);
+      candidateMap.put(groupSet,
+          new Suggestion(
+              new TileKey(lattice, groupSet, ImmutableList.copyOf(measures)),
+              rowCount, bytes));
+    }
+
+    // Greedy algorithm of Harinarayan, Rajaraman and Ullman: repeatedly choose
+    // the candidate with the greatest benefit per byte. The cost of a query is
+    // the number of rows it reads: the fact row count, or the row count of the
+    // smallest chosen tile that can answer it.
+    final double[] costs = new double[queries.size()];
+    Arrays.fill(costs, factRowCount);
+    final List<Suggestion> suggestions = new ArrayList<>();
+    long remaining = memoryBudget;
+    for (;;) {
+      Suggestion best = null;
+      double bestScore = 0d;
+      for (Suggestion candidate : candidateMap.values()) {
+        if (candidate.bytes > remaining) {
+          continue;
+        }
+        double benefit = 0d;
+        for (int i = 0; i < queries.size(); i++) {
+          if (candidate.tileKey.dimensions.contains(queries.get(i).groupSet)) {
+            benefit += queries.get(i).count
+                * Math.max(0d, costs[i] - candidate.rowCount);
+          }
+        }
+        final double score = benefit / Math.max(1L, candidate.bytes);
+        if (score > bestScore) {
+          best = candidate;
+          bestScore = score;
+          best.benefit = benefit;
+        }
+      }
+      if (best == null) {
+        return suggestions;
+      }
+      candidateMap.remove(best.tileKey.dimensions);
+      suggestions.add(best);
+      remaining -= best.bytes;
+      for (int i = 0; i < queries.size(); i++) {
+        if (best.tileKey.dimensions.contains(queries.get(i).groupSet)) {
+          costs[i] = Math.min(costs[i], best.rowCount);
+        }
+      }
+    }
+  }
+
+  /** Forgets all workloads and built tiles. Called by
+   * {@link MaterializationService#clear()}. */
+  synchronized void clear() {
+    workloads.clear();
+  }
+
+  /** A tile that the advisor suggests to materialize. */
+  public static class Suggestion {
+    public final TileKey tileKey;
+    /** Estimated number of rows. */
+    public final double rowCount;
+    /** Estimated size, in bytes. */
+    public final long bytes;
+    /** Estimated number of rows that queries would no longer need to read,
+     * given the tiles suggested before this one. */
+    public double benefit;
+
+    Suggestion(TileKey tileKey, double rowCount, long bytes) {
+      this.tileKey = tileKey;
+      this.rowCount = rowCount;
+      this.bytes = bytes;
+    }
+
+    @Override public String toString() {
+      return tileKey + ", rowCount: " + rowCount + ", bytes: " + bytes
+          + ", benefit: " + benefit;
+    }
+  }
+
+  /** Queries on a lattice, and tiles that the advisor has built for it. */
+  private static class Workload {
+    final CalciteSchema schema;
+    final Map<ImmutableBitSet, GroupingSetStats> groupingSets =
+        new HashMap<>();
+    final Map<TileKey, BuiltTile> builtTiles = new HashMap<>();
+    int queriesSinceTune;
+    boolean tuning;
+
+    Workload(CalciteSchema schema) {
+      this.schema = schema;
+    }
+  }
+
+  /** Use of a grouping set by queries. */
+  private static class GroupingSetStats {
+    final ImmutableBitSet groupSet;
+    final Set<Lattice.Measure> measures = new LinkedHashSet<>();
+    long count;
+    long lastUsed;
+
+    GroupingSetStats(ImmutableBitSet groupSet) {
+      this.groupSet = groupSet;
+    }
+
+    GroupingSetStats copy() {
+      final GroupingSetStats stats = new GroupingSetStats(groupSet);
+      stats.measures.addAll(measures);
+      stats.count = count;
+      stats.lastUsed = lastUsed;
+      return stats;
+    }
+  }
+
+  /** Tile built by the advisor. */
+  private static class BuiltTile {
+    final TileKey tileKey;
+    final long bytes;
+    long lastUsed;
+
+    BuiltTile(TileKey tileKey, long bytes) {
+      this.tileKey = tileKey;
+      this.bytes = bytes;
+      this.lastUsed = System.currentTimeMillis();
+    }
+  }
+}
+
+// End LatticeAdvisor.java
@@ -30,6 +30,11 @@ public class Lattices {
   public static final LatticeStatisticProvider CACHED_SQL =
       cache(SqlLatticeStatisticProvider.INSTANCE);
 
+  /** Statistics provider that estimates cardinalities using parallel scans
+   * into HyperLogLog sketches, then caches the results. */
+  public static final LatticeStatisticProvider HLL =
+      HllLatticeStatisticProvider.INSTANCE;
+
   /** Wraps a statistic provider in a cache. */
   public static LatticeStatisticProvider cache(
       LatticeStatisticProvider provider) {
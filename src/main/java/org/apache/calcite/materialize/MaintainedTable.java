@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.materialize;
+
+import org.apache.calcite.DataContext;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.rel.type.RelDataTypeImpl;
+import org.apache.calcite.rel.type.RelProtoDataType;
+import org.apache.calcite.schema.ScannableTable;
+import org.apache.calcite.schema.impl.AbstractTable;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Table that holds the contents of a materialization that is maintained
+ * incrementally.
+ *
+ * <p>{@link MaterializationMaintainer} applies each change in place, so the
+ * cost of a refresh is proportional to the size of the change, not the size
+ * of the table. Rows are located by key: for an aggregate query, the group
+ * key; otherwise, all columns.</p>
+ *
+ * <p>A row is never modified once it has been added; to change a row, the
+ * maintainer removes it and adds a new one. Each scan reads the rows as of
+ * when it started, so a scan that overlaps a refresh sees either all or none
+ * of the refresh's changes.</p>
+ */
+class MaintainedTable extends AbstractTable implements ScannableTable {
+  private final RelProtoDataType protoRowType;
+
+  /** Number of leading columns that form the key of a row. */
+  private final int keyCount;
+
+  private final List<Object[]> rows = new ArrayList<>();
+
+  /** For each key, the positions in {@link #rows} of the rows that have
+   * it. */
+  private final Map<List<Object>, List<Integer>> positions = new HashMap<>();
+
+  MaintainedTable(RelDataType rowType, int keyCount, Iterable<Object[]> rows) {
+    this.protoRowType = RelDataTypeImpl.proto(rowType);
+    this.keyCount = keyCount;
+    for (Object[] row : rows) {
+      add(row);
+    }
+  }
+
+  public RelDataType getRowType(RelDataTypeFactory typeFactory) {
+    return protoRowType.apply(typeFactory);
+  }
+
+  public synchronized Enumerable<Object[]> scan(DataContext root) {
+    return Linq4j.asEnumerable(ImmutableList.copyOf(rows));
+  }
+
+  /** Returns the key of a row. */
+  List<Object> key(Object[] row) {
+    return Arrays.asList(row).subList(0, keyCount);
+  }
+
+  /** Returns the number of rows that have a given key. */
+  synchronized int count(List<Object> key) {
+    final List<Integer> list = positions.get(key);
+    return list == null ? 0 : list.size();
+  }
+
+  /** Returns a row that has a given key, or null. */
+  synchronized Object[] get(List<Object> key) {
+    final List<Integer> list = positions.get(key);
+    return list == null ? null : rows.get(list.get(0));
+  }
+
+  /** Removes one row for each of the given keys, then adds rows.
+   *
+   * <p>The caller must have checked that each key is present (as often as it
+   * occurs in {@code removedKeys}); this method changes nothing if one is
+   * not. */
+  synchronized void apply(List<List<Object>> removedKeys,
+      List<Object[]> addedRows) {
+    final Map<List<Object>, int[]> removals = new HashMap<>();
+    for (List<Object> key : removedKeys) {
+      int[] count = removals.get(key);
+      if (count == null) {
+        removals.put(key, count = new int[1]);
+      }
+      if (++count[0] > count(key)) {
+        throw new IllegalArgumentException("key not found: " + key);
+      }
+    }
+    for (List<Object> key : removedKeys) {
+      remove(key);
+    }
+    for (Object[] row : addedRows) {
+      add(row);
+    }
+  }
+
+  private void add(Object[] row) {
+    final List<Object> key = key(row);
+    List<Integer> list = positions.get(key);
+    if (list == null) {
+      list = new ArrayList<>(1);
+      positions.put(key, list);
+    }
+    list.add(rows.size());
+    rows.add(row);
+  }
+
+  /** Removes a row with a given key. To avoid shifting the other rows, moves
+   * the last row into its place. */
+  private void remove(List<Object> key) {
+    final List<Integer> list = positions.get(key);
+    final int i = list.remove(list.size() - 1);
+    if (list.isEmpty()) {
+      positions.remove(key);
+    }
+    final int last = rows.size() - 1;
+    final Object[] lastRow = rows.remove(last);
+    if (i < last) {
+      rows.set(i, lastRow);
+      final List<Integer> lastList = positions.get(key(lastRow));
+      lastList.set(lastList.indexOf(last), i);
+    }
+  }
+}
+
+// End MaintainedTable.java
@@ -18,15 +18,19 @@ package org.apache.calcite.materialize;
 
 import org.apache.calcite.jdbc.CalciteSchema;
 import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.schema.Table;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.MapMaker;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Actor that manages the state of materializations in the system.
@@ -41,6 +45,17 @@ class MaterializationActor {
 
   final Map<TileKey, MaterializationKey> keyByTile = Maps.newHashMap();
 
+  /** Materializations by the path of the table that stores their data. */
+  final Map<List<String>, MaterializationKey> keyByTable = Maps.newHashMap();
+
+  /** For each table whose changes are captured, the materializations that
+   * read it. Keyed by identity (as are all maps with weak keys), because the
+   * code that modifies a table knows the table object but not its name.
+   * Concurrent, so that DML statements can look up a table without locking
+   * the service; each list is a copy-on-write list. */
+  final ConcurrentMap<Table, List<Materialization>> materializationsBySource =
+      new MapMaker().weakKeys().makeMap();
+
   /** Tiles grouped by dimensionality. We use a
    *  {@link TileKey} with no measures to represent a
    *  dimensionality. */
@@ -48,7 +63,12 @@ class MaterializationActor {
       HashMultimap.create();
 
   /** A query materialized in a table, so that reading from the table gives the
-   * same results as executing the query. */
+   * same results as executing the query.
+   *
+   * <p>The fields that describe its maintenance ({@link #materializedTable},
+   * {@link #deltas}, {@link #version} and {@link #refresher}) are guarded by
+   * the materialization's own monitor, not the service's, so that recording
+   * a change or refreshing one materialization does not block others. */
   static class Materialization {
     final MaterializationKey key;
     final CalciteSchema rootSchema;
@@ -57,6 +77,26 @@ class MaterializationActor {
     final RelDataType rowType;
     final List<String> viewSchemaPath;
 
+    /** Factory that created the materialized table, and can create it again;
+     * null if the table existed before the materialization was defined, in
+     * which case the materialization is not maintained. */
+    MaterializationService.TableFactory tableFactory;
+
+    /** For each table read by the query whose changes are captured, its
+     * qualified name. */
+    final Map<Table, List<String>> sources = new IdentityHashMap<>();
+
+    /** Changes to each source table since the materialized table was last
+     * refreshed, or since the current refresh started. If not empty, the
+     * materialization is stale. */
+    final Map<Table, TableDelta> deltas = new IdentityHashMap<>();
+
+    /** Number of times the materialized table has been refreshed. */
+    long version;
+
+    /** Thread that is refreshing the materialization, or null. */
+    Thread refresher;
+
     /** Creates a materialization.
      *
      * @param key  Unique identifier of this materialization
@@ -82,6 +122,53 @@ class MaterializationActor {
       this.rowType = rowType;
       this.viewSchemaPath = viewSchemaPath;
     }
+
+    /** Returns whether a source table has changed since the materialized
+     * table was last refreshed, or a refresh is in progress. */
+    synchronized boolean isStale() {
+      return refresher != null || !deltas.isEmpty();
+    }
+
+    /** Records that a row has been inserted into or deleted from a source
+     * table. */
+    synchronized void recordChange(Table table, Object row, boolean insert) {
+      TableDelta delta = deltas.get(table);
+      if (delta == null) {
+        delta = new TableDelta();
+        deltas.put(table, delta);
+      }
+      delta.add(row, insert);
+    }
+
+    /** Starts a refresh by the current thread, and returns the changes that
+     * it must apply. Changes recorded from now on will be applied by the next
+     * refresh. */
+    Map<Table, TableDelta> startRefresh() {
+      assert Thread.holdsLock(this);
+      assert refresher == null;
+      final Map<Table, TableDelta> changes = new IdentityHashMap<>(deltas);
+      deltas.clear();
+      refresher = Thread.currentThread();
+      return changes;
+    }
+
+    /** Ends a refresh. If it failed, puts back the changes that it was
+     * applying, so that the materialization remains stale. */
+    void endRefresh(Map<Table, TableDelta> failedChanges) {
+      assert Thread.holdsLock(this);
+      if (failedChanges != null) {
+        for (Map.Entry<Table, TableDelta> entry : failedChanges.entrySet()) {
+          TableDelta delta = deltas.get(entry.getKey());
+          if (delta == null) {
+            delta = new TableDelta();
+            deltas.put(entry.getKey(), delta);
+          }
+          delta.addAll(entry.getValue());
+        }
+      }
+      refresher = null;
+      notifyAll();
+    }
   }
 
   /** A materialization can be re-used if it is the same SQL, on the same
@@ -0,0 +1,523 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.materialize;
+
+import org.apache.calcite.DataContext;
+import org.apache.calcite.config.CalciteConnectionProperty;
+import org.apache.calcite.jdbc.CalciteConnection;
+import org.apache.calcite.jdbc.CalciteMetaImpl;
+import org.apache.calcite.jdbc.CalcitePrepare;
+import org.apache.calcite.jdbc.CalciteSchema;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.linq4j.Ord;
+import org.apache.calcite.plan.RelOptTable;
+import org.apache.calcite.prepare.RelOptTableImpl;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.RelRoot;
+import org.apache.calcite.rel.RelShuttleImpl;
+import org.apache.calcite.rel.core.Aggregate;
+import org.apache.calcite.rel.core.AggregateCall;
+import org.apache.calcite.rel.core.Filter;
+import org.apache.calcite.rel.core.Join;
+import org.apache.calcite.rel.core.JoinRelType;
+import org.apache.calcite.rel.core.Project;
+import org.apache.calcite.rel.core.TableScan;
+import org.apache.calcite.rel.logical.LogicalTableScan;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.rel.type.RelDataTypeImpl;
+import org.apache.calcite.rel.type.RelProtoDataType;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexUtil;
+import org.apache.calcite.schema.ScannableTable;
+import org.apache.calcite.schema.Schemas;
+import org.apache.calcite.schema.Table;
+import org.apache.calcite.schema.impl.AbstractTable;
+import org.apache.calcite.sql.SqlKind;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Brings a materialization up to date after changes to the tables that its
+ * query reads.
+ *
+ * <p>If possible, the maintainer works incrementally. It computes the change
+ * in the query's result by executing a <em>delta plan</em> &mdash; the query
+ * with the scan of the changed table replaced by a scan of the rows that were
+ * inserted into (or deleted from) that table &mdash; and applies the result
+ * in place to the materialized table, touching only the affected rows (see
+ * {@link MaintainedTable}). (A delta plan is what you get if you push a
+ * {@link org.apache.calcite.rel.stream.Delta} through each relational
+ * operator down to the changed table.) If the query is an
+ * aggregate, each row of the delta is combined with the existing row that has
+ * the same group key.</p>
+ *
+ * <p>Incremental maintenance is possible if:</p>
+ *
+ * <ul>
+ *   <li>the materialized table was created by a
+ *   {@link MaterializationService.DefaultTableFactory};</li>
+ *   <li>only one source table has changed, and the query reads it once;</li>
+ *   <li>the query consists of table scans, deterministic projects and filters
+ *   and inner joins, optionally with an {@link Aggregate} on top whose
+ *   aggregate functions are non-distinct {@code COUNT}, {@code SUM},
+ *   {@code MIN} and {@code MAX};</li>
+ *   <li>if rows have been deleted, the aggregate (if any) has a
+ *   {@code COUNT(*)}, no {@code MIN} or {@code MAX}, and {@code SUM} only of
+ *   columns that are not nullable.</li>
+ * </ul>
+ *
+ * <p>Otherwise, or if the contents of the materialized table turn out to be
+ * inconsistent with the change (for example, a deleted row is not present),
+ * the maintainer re-executes the whole query.</p>
+ */
+class MaterializationMaintainer {
+  private final MaterializationActor.Materialization materialization;
+  private final Map<Table, TableDelta> deltas;
+  private final CalciteSchema schema;
+  private final CalciteConnection connection;
+
+  MaterializationMaintainer(
+      MaterializationActor.Materialization materialization,
+      Map<Table, TableDelta> deltas) {
+    this.materialization = materialization;
+    this.deltas = deltas;
+    this.schema = materialization.materializedTable.schema;
+    this.connection = CalciteMetaImpl.connect(schema.root(), null);
+  }
+
+  /** Returns a table that contains the current result of the query. */
+  Table refresh() {
+    if (materialization.tableFactory
+        instanceof MaterializationService.DefaultTableFactory
+        && deltas.size() == 1) {
+      final Map.Entry<Table, TableDelta> entry =
+          Iterables.getOnlyElement(deltas.entrySet());
+      final Table table =
+          refreshIncrementally(materialization.sources.get(entry.getKey()),
+              entry.getValue());
+      if (table != null) {
+        return table;
+      }
+    }
+    return materialization.tableFactory.createTable(schema,
+        materialization.sql, materialization.viewSchemaPath);
+  }
+
+  /** Applies the changes to one table to the materialized table, and returns
+   * a table with the new contents; or returns null if the changes cannot be
+   * applied incrementally. */
+  private Table refreshIncrementally(List<String> tableName,
+      TableDelta delta) {
+    final Table currentTable = materialization.materializedTable.getTable();
+    if (!(currentTable instanceof ScannableTable)) {
+      return null;
+    }
+    if (delta.isEmpty()) {
+      return currentTable;
+    }
+    final CalcitePrepare.ConvertResult convert =
+        Schemas.convert(connection, schema, materialization.viewSchemaPath,
+            materialization.sql);
+    final RelRoot root = convert.root;
+    if (!root.isRefTrivial()) {
+      return null;
+    }
+    RelNode input = root.rel;
+    final Aggregate aggregate;
+    if (input instanceof Aggregate) {
+      aggregate = (Aggregate) input;
+      if (!isMergeable(aggregate, !delta.deleted.isEmpty())) {
+        return null;
+      }
+      input = aggregate.getInput();
+    } else {
+      aggregate = null;
+    }
+    final List<TableScan> scans = new ArrayList<>();
+    if (!isLinear(input, tableName, scans) || scans.size() != 1) {
+      return null;
+    }
+    final TableScan scan = scans.get(0);
+    final int fieldCount = scan.getRowType().getFieldCount();
+    final List<Object[]> insertedRows = toRows(delta.inserted, fieldCount);
+    final List<Object[]> deletedRows = toRows(delta.deleted, fieldCount);
+    if (insertedRows == null || deletedRows == null) {
+      return null;
+    }
+
+    // Execute the delta plans.
+    final List<Object[]> inserted = execute(root.rel, scan, insertedRows);
+    final List<Object[]> deleted = execute(root.rel, scan, deletedRows);
+
+    // Apply their results to the current contents. The first time, copy the
+    // contents into a table that can be changed in place; later refreshes
+    // change that table, and touch only the rows in the delta.
+    final MaintainedTable table;
+    if (currentTable instanceof MaintainedTable) {
+      table = (MaintainedTable) currentTable;
+    } else {
+      final RelDataType rowType =
+          currentTable.getRowType(connection.getTypeFactory());
+      final DataContext dataContext =
+          Schemas.createDataContext(connection, schema.root().plus());
+      table = new MaintainedTable(rowType,
+          aggregate == null
+              ? rowType.getFieldCount()
+              : aggregate.getGroupCount(),
+          ((ScannableTable) currentTable).scan(dataContext));
+    }
+    final boolean applied = aggregate == null
+        ? merge(table, inserted, deleted)
+        : mergeAggregate(aggregate, table, inserted, deleted);
+    return applied ? table : null;
+  }
+
+  /** Returns whether the deltas of an aggregate can be merged into its
+   * existing rows. */
+  private static boolean isMergeable(Aggregate aggregate, boolean deletes) {
+    if (aggregate.getGroupType() != Aggregate.Group.SIMPLE
+        || aggregate.indicator) {
+      return false;
+    }
+    boolean countStar = false;
+    for (AggregateCall call : aggregate.getAggCallList()) {
+      if (call.isDistinct() || call.hasFilter()) {
+        return false;
+      }
+      switch (call.getAggregation().getKind()) {
+      case COUNT:
+        countStar |= call.getArgList().isEmpty();
+        break;
+      case SUM:
+      case SUM0:
+        // If a column is nullable, deleting rows may leave a group whose
+        // values are all null, and whose SUM is therefore null.
+        if (deletes
+            && aggregate.getInput().getRowType().getFieldList()
+                .get(call.getArgList().get(0)).getType().isNullable()) {
+          return false;
+        }
+        break;
+      case MIN:
+      case MAX:
+        if (deletes) {
+          return false;
+        }
+        break;
+      default:
+        return false;
+      }
+    }
+    // Without COUNT(*) we could not tell when a group becomes empty.
+    return !deletes || countStar;
+  }
+
+  /** Returns whether a relational expression consists only of operators
+   * through which a delta can be pushed, and collects the scans of a given
+   * table. */
+  private static boolean isLinear(RelNode rel, List<String> tableName,
+      List<TableScan> scans) {
+    if (rel instanceof TableScan) {
+      if (rel.getTable().getQualifiedName().equals(tableName)) {
+        scans.add((TableScan) rel);
+      }
+      return true;
+    } else if (rel instanceof Project) {
+      for (RexNode e : ((Project) rel).getProjects()) {
+        if (!RexUtil.isDeterministic(e)) {
+          return false;
+        }
+      }
+      if (RexUtil.SubQueryFinder.PROJECT_PREDICATE.apply((Project) rel)) {
+        return false;
+      }
+    } else if (rel instanceof Filter) {
+      if (!RexUtil.isDeterministic(((Filter) rel).getCondition())
+          || RexUtil.SubQueryFinder.FILTER_PREDICATE.apply((Filter) rel)) {
+        return false;
+      }
+    } else if (rel instanceof Join) {
+      if (((Join) rel).getJoinType() != JoinRelType.INNER
+          || !RexUtil.isDeterministic(((Join) rel).getCondition())
+          || RexUtil.SubQueryFinder.JOIN_PREDICATE.apply((Join) rel)) {
+        return false;
+      }
+    } else {
+      return false;
+    }
+    for (RelNode input : rel.getInputs()) {
+      if (!isLinear(input, tableName, scans)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Converts captured rows to arrays, or returns null if they are objects
+   * whose fields we cannot access. */
+  private static List<Object[]> toRows(List<Object> elements,
+      int fieldCount) {
+    final List<Object[]> rows = new ArrayList<>(elements.size());
+    for (Object element : elements) {
+      if (element instanceof Object[]) {
+        rows.add((Object[]) element);
+      } else if (fieldCount == 1) {
+        rows.add(new Object[] {element});
+      } else {
+        return null;
+      }
+    }
+    return rows;
+  }
+
+  /** Executes the query with a given scan replaced by a scan of some
+   * rows. */
+  private List<Object[]> execute(RelNode rel, final TableScan scan,
+      List<Object[]> rows) {
+    final List<Object[]> result = new ArrayList<>();
+    if (rows.isEmpty()) {
+      return result;
+    }
+    // Register the rows as a temporary table, so that generated code can
+    // find them.
+    final String name = Schemas.uniqueTableName(schema, "$delta");
+    final CalciteSchema.TableEntry entry =
+        schema.add(name, new DeltaTable(scan.getRowType(), rows));
+    try {
+      final RelOptTable deltaTable =
+          RelOptTableImpl.create(scan.getTable().getRelOptSchema(),
+              scan.getRowType(), entry, (double) rows.size());
+      final RelNode deltaRel = rel.accept(
+          new RelShuttleImpl() {
+            @Override public RelNode visit(TableScan scan2) {
+              return scan2 == scan
+                  ? LogicalTableScan.create(scan.getCluster(), deltaTable)
+                  : scan2;
+            }
+          });
+      final CalcitePrepare.CalciteSignature<Object> signature =
+          Schemas.prepare(connection, schema, materialization.viewSchemaPath,
+              deltaRel, ImmutableMap.<CalciteConnectionProperty, String>of());
+      final DataContext dataContext =
+          Schemas.createDataContext(connection, schema.root().plus());
+      for (Object o : signature.enumerable(dataContext)) {
+        result.add(o instanceof Object[] ? (Object[]) o : new Object[] {o});
+      }
+      return result;
+    } finally {
+      schema.removeTable(name);
+    }
+  }
+
+  /** Merges the delta of a query without aggregation: adds inserted rows,
+   * and removes one occurrence of each deleted row. A deleted row that was
+   * also inserted cancels out. Returns false, and changes nothing, if a
+   * deleted row is not found. */
+  private static boolean merge(MaintainedTable table,
+      List<Object[]> inserted, List<Object[]> deleted) {
+    final Map<List<Object>, List<Object[]>> insertedByKey = new HashMap<>();
+    for (Object[] row : inserted) {
+      final List<Object> key = table.key(row);
+      List<Object[]> list = insertedByKey.get(key);
+      if (list == null) {
+        insertedByKey.put(key, list = new ArrayList<>());
+      }
+      list.add(row);
+    }
+    final Map<List<Object>, int[]> removals = new HashMap<>();
+    final List<List<Object>> removedKeys = new ArrayList<>();
+    for (Object[] row : deleted) {
+      final List<Object> key = table.key(row);
+      final List<Object[]> list = insertedByKey.get(key);
+      if (list != null && !list.isEmpty()) {
+        list.remove(list.size() - 1);
+        continue;
+      }
+      int[] count = removals.get(key);
+      if (count == null) {
+        removals.put(key, count = new int[1]);
+      }
+      if (++count[0] > table.count(key)) {
+        return false;
+      }
+      removedKeys.add(key);
+    }
+    final List<Object[]> addedRows = new ArrayList<>(inserted.size());
+    for (List<Object[]> list : insertedByKey.values()) {
+      addedRows.addAll(list);
+    }
+    table.apply(removedKeys, addedRows);
+    return true;
+  }
+
+  /** Merges the delta of an aggregate query, combining each delta row with
+   * the existing row that has the same group key. Returns false, and changes
+   * nothing, if a deleted row's group is not found. */
+  private static boolean mergeAggregate(Aggregate aggregate,
+      MaintainedTable table, List<Object[]> inserted, List<Object[]> deleted) {
+    // New values of the groups that have changed
+    final Map<List<Object>, Object[]> changed = new LinkedHashMap<>();
+    if (!combine(aggregate, table, changed, inserted, 1)
+        || !combine(aggregate, table, changed, deleted, -1)) {
+      return false;
+    }
+
+    // Remove groups that have become empty. An aggregate without GROUP BY
+    // always returns one row, but SUM of no rows is null.
+    final int groupCount = aggregate.getGroupCount();
+    int countOrdinal = -1;
+    if (!deleted.isEmpty()) {
+      for (Ord<AggregateCall> call : Ord.zip(aggregate.getAggCallList())) {
+        if (call.e.getAggregation().getKind() == SqlKind.COUNT
+            && call.e.getArgList().isEmpty()) {
+          countOrdinal = groupCount + call.i;
+          break;
+        }
+      }
+    }
+    final List<List<Object>> removedKeys = new ArrayList<>();
+    final List<Object[]> addedRows = new ArrayList<>();
+    for (Map.Entry<List<Object>, Object[]> entry : changed.entrySet()) {
+      if (table.count(entry.getKey()) > 0) {
+        removedKeys.add(entry.getKey());
+      }
+      final Object[] row = entry.getValue();
+      if (countOrdinal >= 0
+          && ((Number) row[countOrdinal]).longValue() == 0) {
+        if (groupCount > 0) {
+          continue;
+        }
+        for (Ord<AggregateCall> call : Ord.zip(aggregate.getAggCallList())) {
+          if (call.e.getAggregation().getKind() == SqlKind.SUM) {
+            row[groupCount + call.i] = null;
+          }
+        }
+      }
+      addedRows.add(row);
+    }
+    table.apply(removedKeys, addedRows);
+    return true;
+  }
+
+  /** Combines delta rows into the new values of their groups. The first time
+   * a group is changed, copies its current row, so that the table's rows are
+   * not modified. */
+  private static boolean combine(Aggregate aggregate, MaintainedTable table,
+      Map<List<Object>, Object[]> changed, List<Object[]> deltaRows,
+      int sign) {
+    final int groupCount = aggregate.getGroupCount();
+    for (Object[] deltaRow : deltaRows) {
+      final List<Object> key = table.key(deltaRow);
+      Object[] row = changed.get(key);
+      if (row == null) {
+        final Object[] current = table.get(key);
+        if (current == null) {
+          if (sign < 0) {
+            return false;
+          }
+          changed.put(key, deltaRow);
+          continue;
+        }
+        row = current.clone();
+        changed.put(key, row);
+      }
+      for (Ord<AggregateCall> call : Ord.zip(aggregate.getAggCallList())) {
+        final int i = groupCount + call.i;
+        row[i] = combine(call.e.getAggregation().getKind(), row[i],
+            deltaRow[i], sign);
+      }
+    }
+    return true;
+  }
+
+  /** Combines the current value of an aggregate with the value of the same
+   * aggregate over inserted ({@code sign} = 1) or deleted ({@code sign} = -1)
+   * rows. */
+  private static Object combine(SqlKind kind, Object value, Object delta,
+      int sign) {
+    if (delta == null) {
+      return value;
+    }
+    switch (kind) {
+    case MIN:
+    case MAX:
+      if (value == null) {
+        return delta;
+      }
+      //noinspection unchecked
+      final int c = ((Comparable) value).compareTo(delta);
+      return (kind == SqlKind.MIN) == (c <= 0) ? value : delta;
+    default:
+      // COUNT, SUM, SUM0
+      final Number v = value == null ? 0 : (Number) value;
+      final Number d = (Number) delta;
+      if (d instanceof BigDecimal) {
+        final BigDecimal v2 = v instanceof BigDecimal
+            ? (BigDecimal) v
+            : BigDecimal.valueOf(v.longValue());
+        return sign > 0 ? v2.add((BigDecimal) d) : v2.subtract((BigDecimal) d);
+      } else if (d instanceof Double) {
+        return v.doubleValue() + sign * d.doubleValue();
+      } else if (d instanceof Float) {
+        return v.floatValue() + sign * d.floatValue();
+      } else if (d instanceof Long) {
+        return v.longValue() + sign * d.longValue();
+      } else if (d instanceof Integer) {
+        return v.intValue() + sign * d.intValue();
+      } else if (d instanceof Short) {
+        return (short) (v.shortValue() + sign * d.shortValue());
+      } else if (d instanceof Byte) {
+        return (byte) (v.byteValue() + sign * d.byteValue());
+      }
+      throw new AssertionError("unexpected value " + delta + " of "
+          + delta.getClass());
+    }
+  }
+
+  /** Table that contains rows that were inserted into or deleted from a
+   * source table. */
+  private static class DeltaTable extends AbstractTable
+      implements ScannableTable {
+    private final RelProtoDataType protoRowType;
+    private final List<Object[]> rows;
+
+    DeltaTable(RelDataType rowType, List<Object[]> rows) {
+      this.protoRowType = RelDataTypeImpl.proto(rowType);
+      this.rows = rows;
+    }
+
+    public RelDataType getRowType(RelDataTypeFactory typeFactory) {
+      return protoRowType.apply(typeFactory);
+    }
+
+    public Enumerable<Object[]> scan(DataContext root) {
+      return Linq4j.asEnumerable(rows);
+    }
+  }
+}
+
+// End MaterializationMaintainer.java
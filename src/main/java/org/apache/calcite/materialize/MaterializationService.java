@@ -28,10 +28,13 @@ import org.apache.calcite.linq4j.AbstractQueryable;
 import org.apache.calcite.linq4j.Enumerator;
 import org.apache.calcite.linq4j.QueryProvider;
 import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.plan.RelOptTable;
+import org.apache.calcite.plan.RelOptUtil;
 import org.apache.calcite.prepare.Prepare;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeImpl;
 import org.apache.calcite.runtime.Hook;
+import org.apache.calcite.schema.ModifiableTable;
 import org.apache.calcite.schema.Schemas;
 import org.apache.calcite.schema.Table;
 import org.apache.calcite.util.ImmutableBitSet;
@@ -44,20 +47,38 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Manages the collection of materialized tables known to the system,
  * and the process by which they become valid and invalid.
+ *
+ * <p>If the service creates the table for a materialization, and the
+ * materialization's query reads {@link ModifiableTable}s, the service captures
+ * the rows that DML statements insert into and delete from those tables. Such
+ * changes make the materialization <em>stale</em>. A stale materialization is
+ * refreshed, incrementally if possible (see
+ * {@link MaterializationMaintainer}), the next time it is needed or when
+ * {@link #refresh(MaterializationKey)} is called; until it is refreshed, the
+ * planner does not use it. Each refresh increments the materialization's
+ * {@link #getVersion(MaterializationKey) version}.</p>
  */
 public class MaterializationService {
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(MaterializationService.class);
+
   private static final MaterializationService INSTANCE =
       new MaterializationService();
 
@@ -88,6 +109,7 @@ public class MaterializationService {
 
   private final MaterializationActor actor = new MaterializationActor();
   private final DefaultTableFactory tableFactory = new DefaultTableFactory();
+  private final LatticeAdvisor latticeAdvisor = new LatticeAdvisor(this);
 
   private MaterializationService() {
   }
@@ -101,9 +123,10 @@ public class MaterializationService {
   }
 
   /** Defines a new materialization. Returns its key. */
-  public MaterializationKey defineMaterialization(final CalciteSchema schema,
-      TileKey tileKey, String viewSql, List<String> viewSchemaPath,
-      String suggestedTableName, TableFactory tableFactory, boolean create,
+  public synchronized MaterializationKey defineMaterialization(
+      final CalciteSchema schema, TileKey tileKey, String viewSql,
+      List<String> viewSchemaPath, String suggestedTableName,
+      TableFactory tableFactory, boolean create,
       boolean existing) {
     final MaterializationActor.QueryKey queryKey =
         new MaterializationActor.QueryKey(viewSql, schema, viewSchemaPath);
@@ -133,6 +156,7 @@ public class MaterializationService {
     }
 
     RelDataType rowType = null;
+    boolean created = false;
     if (tableEntry == null) {
       Table table = tableFactory.createTable(schema, viewSql, viewSchemaPath);
       final String tableName = Schemas.uniqueTableName(schema,
@@ -140,6 +164,7 @@ public class MaterializationService {
       tableEntry = schema.add(tableName, table, ImmutableList.of(viewSql));
       Hook.CREATE_MATERIALIZATION.run(tableName);
       rowType = table.getRowType(connection.getTypeFactory());
+      created = true;
     }
 
     if (rowType == null) {
@@ -154,23 +179,222 @@ public class MaterializationService {
             tableEntry, viewSql, rowType, viewSchemaPath);
     actor.keyMap.put(materialization.key, materialization);
     actor.keyBySql.put(queryKey, materialization.key);
+    actor.keyByTable.put(tableEntry.path(), materialization.key);
     if (tileKey != null) {
       actor.keyByTile.put(tileKey, materialization.key);
     }
+    if (created) {
+      // We created the table, so we can maintain it. Capture changes to the
+      // tables that the query reads.
+      materialization.tableFactory = tableFactory;
+      final CalcitePrepare.ConvertResult convert =
+          Schemas.convert(connection, schema, viewSchemaPath, viewSql);
+      for (RelOptTable relOptTable : RelOptUtil.findTables(convert.root.rel)) {
+        final ModifiableTable table =
+            relOptTable.unwrap(ModifiableTable.class);
+        if (table != null) {
+          track(materialization, table, relOptTable.getQualifiedName());
+        }
+      }
+    }
     return key;
   }
 
-  /** Checks whether a materialization is valid, and if so, returns the table
-   * where the data are stored. */
-  public CalciteSchema.TableEntry checkValid(MaterializationKey key) {
+  private void track(MaterializationActor.Materialization materialization,
+      Table table, List<String> qualifiedName) {
+    assert Thread.holdsLock(this);
+    materialization.sources.put(table, qualifiedName);
+    List<MaterializationActor.Materialization> list =
+        actor.materializationsBySource.get(table);
+    if (list == null) {
+      list = new CopyOnWriteArrayList<>();
+      actor.materializationsBySource.put(table, list);
+    }
+    list.add(materialization);
+  }
+
+  /** Returns the materialization with a given key; throws if there is
+   * none. */
+  private synchronized MaterializationActor.Materialization materialization(
+      MaterializationKey key) {
     final MaterializationActor.Materialization materialization =
         actor.keyMap.get(key);
-    if (materialization != null) {
-      return materialization.materializedTable;
+    if (materialization == null) {
+      throw new IllegalArgumentException("unknown materialization " + key);
+    }
+    return materialization;
+  }
+
+  /** Checks whether a materialization is valid, and if so, returns the table
+   * where the data are stored.
+   *
+   * <p>If the materialization is stale, refreshes it first; if it cannot be
+   * refreshed, it is not valid. */
+  public CalciteSchema.TableEntry checkValid(MaterializationKey key) {
+    final MaterializationActor.Materialization materialization;
+    synchronized (this) {
+      materialization = actor.keyMap.get(key);
+    }
+    if (materialization != null && ensureFresh(materialization)) {
+      synchronized (materialization) {
+        return materialization.materializedTable;
+      }
     }
     return null;
   }
 
+  /** Returns whether a materialization is stale; that is, whether a table
+   * that its query reads has changed since it was last refreshed. */
+  public boolean isStale(MaterializationKey key) {
+    final MaterializationActor.Materialization materialization;
+    synchronized (this) {
+      materialization = actor.keyMap.get(key);
+    }
+    return materialization != null && materialization.isStale();
+  }
+
+  /** Returns whether the materialization whose data are stored in a given
+   * table is stale. Returns false if the table does not belong to a
+   * materialization known to this service.
+   *
+   * <p>Rules that rewrite queries to use materializations call this method,
+   * because a materialization may become stale after the list of
+   * materializations was given to the planner. */
+  public boolean isStale(List<String> tablePath) {
+    final MaterializationKey key;
+    synchronized (this) {
+      key = actor.keyByTable.get(tablePath);
+    }
+    return key != null && isStale(key);
+  }
+
+  /** Returns the version of a materialization: the number of times it has
+   * been refreshed. */
+  public long getVersion(MaterializationKey key) {
+    final MaterializationActor.Materialization materialization =
+        materialization(key);
+    synchronized (materialization) {
+      return materialization.version;
+    }
+  }
+
+  /** Brings a materialization up to date with the tables its query reads.
+   * Does nothing if the materialization is not stale. If another thread is
+   * refreshing the materialization, waits for it to finish first. */
+  public void refresh(MaterializationKey key) {
+    final MaterializationActor.Materialization materialization =
+        materialization(key);
+    final Map<Table, TableDelta> deltas;
+    synchronized (materialization) {
+      while (materialization.refresher != null
+          && materialization.refresher != Thread.currentThread()) {
+        try {
+          materialization.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new RuntimeException(e);
+        }
+      }
+      if (materialization.refresher != null
+          || materialization.deltas.isEmpty()) {
+        return;
+      }
+      deltas = materialization.startRefresh();
+    }
+    refresh(materialization, deltas);
+  }
+
+  /** Applies changes to a materialization. The caller must have started the
+   * refresh; this method ends it.
+   *
+   * <p>Holds no lock while the maintainer executes queries, so that other
+   * statements can use the service (and other materializations) meanwhile.
+   * The materialization remains stale until the refresh ends. */
+  private void refresh(MaterializationActor.Materialization materialization,
+      Map<Table, TableDelta> deltas) {
+    assert !Thread.holdsLock(materialization);
+    final Table table;
+    try {
+      table = new MaterializationMaintainer(materialization, deltas).refresh();
+    } catch (RuntimeException | Error e) {
+      synchronized (materialization) {
+        materialization.endRefresh(deltas);
+      }
+      throw e;
+    }
+    synchronized (materialization) {
+      final CalciteSchema.TableEntry tableEntry =
+          materialization.materializedTable;
+      if (table != tableEntry.getTable()) {
+        materialization.materializedTable =
+            tableEntry.schema.add(tableEntry.name, table,
+                ImmutableList.of(materialization.sql));
+      }
+      ++materialization.version;
+      materialization.endRefresh(null);
+    }
+  }
+
+  /** Refreshes a materialization if it is stale. Returns whether it is now
+   * fresh. Returns false if another refresh is in progress. */
+  private boolean ensureFresh(
+      MaterializationActor.Materialization materialization) {
+    final Map<Table, TableDelta> deltas;
+    synchronized (materialization) {
+      if (!materialization.isStale()) {
+        return true;
+      }
+      if (materialization.refresher != null
+          || materialization.tableFactory == null) {
+        return false;
+      }
+      deltas = materialization.startRefresh();
+    }
+    try {
+      refresh(materialization, deltas);
+      return true;
+    } catch (RuntimeException e) {
+      LOGGER.warn("Failed to refresh materialization {}",
+          materialization.materializedTable.path(), e);
+      return false;
+    }
+  }
+
+  /** Wraps the modifiable collection of a table so that the service captures
+   * the rows added and removed, if the table is read by a materialization
+   * that the service maintains; otherwise returns the collection unchanged.
+   *
+   * <p>Called by code generated for
+   * {@link org.apache.calcite.adapter.enumerable.EnumerableTableModify}. */
+  public static Collection captureChanges(Object table,
+      Collection collection) {
+    return instance().capture(table, collection);
+  }
+
+  private Collection capture(Object table, Collection collection) {
+    if (!actor.materializationsBySource.containsKey(table)) {
+      return collection;
+    }
+    //noinspection unchecked
+    return new DeltaCollection(this, table, (Collection<Object>) collection);
+  }
+
+  /** Records that a row has been inserted into or deleted from a table, and
+   * marks each materialization that reads the table as stale.
+   *
+   * <p>Locks only the materializations that read the table, and each only
+   * briefly; in particular, it does not wait for a refresh to finish. */
+  void recordChange(Object table, Object row, boolean insert) {
+    final List<MaterializationActor.Materialization> list =
+        actor.materializationsBySource.get(table);
+    if (list == null) {
+      return;
+    }
+    for (MaterializationActor.Materialization materialization : list) {
+      materialization.recordChange((Table) table, row, insert);
+    }
+  }
+
   /**
    * Defines a tile.
    *
@@ -186,10 +410,10 @@ public class MaterializationService {
         "m" + groupSet, tableFactory);
   }
 
-  public Pair<CalciteSchema.TableEntry, TileKey> defineTile(Lattice lattice,
-      ImmutableBitSet groupSet, List<Lattice.Measure> measureList,
-      CalciteSchema schema, boolean create, boolean exact,
-      String suggestedTableName, TableFactory tableFactory) {
+  public synchronized Pair<CalciteSchema.TableEntry, TileKey> defineTile(
+      Lattice lattice, ImmutableBitSet groupSet,
+      List<Lattice.Measure> measureList, CalciteSchema schema, boolean create,
+      boolean exact, String suggestedTableName, TableFactory tableFactory) {
     MaterializationKey materializationKey;
     final TileKey tileKey =
         new TileKey(lattice, groupSet, ImmutableList.copyOf(measureList));
@@ -299,6 +523,44 @@ public class MaterializationService {
     return null;
   }
 
+  /** Removes a tile, de-registers the materialization that stores it, and
+   * removes its table from its schema. Does nothing if the tile is not
+   * known. Called by {@link LatticeAdvisor} to evict cold tiles. */
+  synchronized void removeTile(TileKey tileKey) {
+    final TileKey tileKey0 = new TileKey(tileKey.lattice, tileKey.dimensions,
+        ImmutableList.<Lattice.Measure>of());
+    actor.tilesByDimensionality.remove(tileKey0, tileKey);
+    final MaterializationKey key = actor.keyByTile.remove(tileKey);
+    if (key == null) {
+      return;
+    }
+    final MaterializationActor.Materialization materialization =
+        actor.keyMap.remove(key);
+    actor.keyBySql.values().remove(key);
+    if (materialization == null) {
+      return;
+    }
+    final CalciteSchema.TableEntry tableEntry =
+        materialization.materializedTable;
+    actor.keyByTable.remove(tableEntry.path());
+    final Iterator<List<MaterializationActor.Materialization>> iterator =
+        actor.materializationsBySource.values().iterator();
+    while (iterator.hasNext()) {
+      final List<MaterializationActor.Materialization> list = iterator.next();
+      list.remove(materialization);
+      if (list.isEmpty()) {
+        iterator.remove();
+      }
+    }
+    tableEntry.schema.removeTable(tableEntry.name);
+  }
+
+  /** Returns the advisor that chooses which tiles of lattices to
+   * materialize. */
+  public LatticeAdvisor getLatticeAdvisor() {
+    return latticeAdvisor;
+  }
+
   private boolean allSatisfiable(List<Lattice.Measure> measureList,
       TileKey tileKey) {
     // A measure can be satisfied if it is contained in the measure list, or,
@@ -317,22 +579,36 @@ public class MaterializationService {
    * with the current schema. Especially in a test run, the contents of two
    * root schemas may look similar.) */
   public List<Prepare.Materialization> query(CalciteSchema rootSchema) {
+    final List<MaterializationActor.Materialization> materializations;
+    synchronized (this) {
+      // Copy, and release the lock, because refreshing a materialization
+      // executes queries, which may define materializations.
+      materializations = ImmutableList.copyOf(actor.keyMap.values());
+    }
     final List<Prepare.Materialization> list = new ArrayList<>();
     for (MaterializationActor.Materialization materialization
-        : actor.keyMap.values()) {
+        : materializations) {
       if (materialization.rootSchema.schema == rootSchema.schema
-          && materialization.materializedTable != null) {
+          && materialization.materializedTable != null
+          && ensureFresh(materialization)) {
+        final CalciteSchema.TableEntry tableEntry;
+        synchronized (materialization) {
+          tableEntry = materialization.materializedTable;
+        }
         list.add(
-            new Prepare.Materialization(materialization.materializedTable,
-                materialization.sql, materialization.viewSchemaPath));
+            new Prepare.Materialization(tableEntry, materialization.sql,
+                materialization.viewSchemaPath));
       }
     }
     return list;
   }
 
   /** De-registers all materialized tables in the system. */
-  public void clear() {
+  public synchronized void clear() {
     actor.keyMap.clear();
+    actor.keyByTable.clear();
+    actor.materializationsBySource.clear();
+    latticeAdvisor.clear();
   }
 
   /** Used by tests, to ensure that they see their own service. */
@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.materialize;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rows that have been inserted into and deleted from a table since a
+ * materialization that reads the table was last refreshed.
+ *
+ * <p>Rows are in the table's internal format; usually an {@code Object[]},
+ * or a scalar if the table has a single column.
+ */
+class TableDelta {
+  final List<Object> inserted = new ArrayList<>();
+  final List<Object> deleted = new ArrayList<>();
+
+  void add(Object row, boolean insert) {
+    if (insert) {
+      inserted.add(row);
+    } else {
+      deleted.add(row);
+    }
+  }
+
+  void addAll(TableDelta delta) {
+    inserted.addAll(delta.inserted);
+    deleted.addAll(delta.deleted);
+  }
+
+  boolean isEmpty() {
+    return inserted.isEmpty() && deleted.isEmpty();
+  }
+}
+
+// End TableDelta.java
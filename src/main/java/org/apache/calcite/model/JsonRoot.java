@@ -64,6 +64,15 @@ public class JsonRoot {
    * <p>The list may be empty.
    */
   public final List<JsonSchema> schemas = new ArrayList<>();
+
+  /** Name of a file in which to store table statistics.
+   *
+   * <p>Optional. If specified, statistics collected for schemas whose
+   * {@link JsonSchema#analyze analyze} attribute is true are written to this
+   * file, and read from it when the model is next loaded, so that they do not
+   * need to be collected again.
+   */
+  public String statistics;
 }
 
 // End JsonRoot.java
@@ -88,6 +88,17 @@ public abstract class JsonSchema {
    */
   public Boolean cache;
 
+  /** Whether to collect statistics for the tables of this schema when the
+   * model is loaded. Default value is {@code false}.
+   *
+   * <p>If {@code true}, Calcite samples each table whose statistics are
+   * missing or stale (see
+   * {@link org.apache.calcite.statistic.StatisticsService#analyzeSchema}) and
+   * uses the row counts and column statistics it finds when planning
+   * queries.</p>
+   */
+  public Boolean analyze;
+
   public abstract void accept(ModelHandler handler);
 
   public void visitChildren(ModelHandler modelHandler) {
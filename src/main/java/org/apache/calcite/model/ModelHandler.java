@@ -26,6 +26,7 @@ import org.apache.calcite.schema.ScalarFunction;
 import org.apache.calcite.schema.Schema;
 import org.apache.calcite.schema.SchemaFactory;
 import org.apache.calcite.schema.SchemaPlus;
+import org.apache.calcite.schema.Schemas;
 import org.apache.calcite.schema.Table;
 import org.apache.calcite.schema.TableFactory;
 import org.apache.calcite.schema.TableFunction;
@@ -37,6 +38,8 @@ import org.apache.calcite.schema.impl.ScalarFunctionImpl;
 import org.apache.calcite.schema.impl.TableFunctionImpl;
 import org.apache.calcite.schema.impl.TableMacroImpl;
 import org.apache.calcite.schema.impl.ViewTable;
+import org.apache.calcite.statistic.FileStatisticsStore;
+import org.apache.calcite.statistic.StatisticsService;
 import org.apache.calcite.util.Pair;
 import org.apache.calcite.util.Util;
 
@@ -188,6 +191,10 @@ public class ModelHandler {
 
   public void visit(JsonRoot jsonRoot) {
     checkRequiredAttributes(jsonRoot, "version");
+    if (jsonRoot.statistics != null) {
+      StatisticsService.instance(connection.getRootSchema()).setStore(
+          new FileStatisticsStore(new File(jsonRoot.statistics)));
+    }
     final Pair<String, SchemaPlus> pair =
         Pair.of(null, connection.getRootSchema());
     schemaStack.push(pair);
@@ -256,6 +263,12 @@ public class ModelHandler {
     jsonSchema.visitChildren(this);
     final Pair<String, SchemaPlus> p = schemaStack.pop();
     assert p == pair;
+    if (jsonSchema.analyze != null && jsonSchema.analyze) {
+      StatisticsService.instance(schema).analyzeSchema(
+          Schemas.createDataContext(connection, connection.getRootSchema()),
+          schema, StatisticsService.DEFAULT_MAX_AGE_MILLIS,
+          StatisticsService.DEFAULT_MAX_MODIFIED_FRACTION);
+    }
   }
 
   public void visit(JsonCustomSchema jsonSchema) {
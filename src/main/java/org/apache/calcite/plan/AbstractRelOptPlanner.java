@@ -60,6 +60,8 @@ public abstract class AbstractRelOptPlanner implements RelOptPlanner {
 
   private MulticastRelOptListener listener;
 
+  private RelOptProfiler profiler;
+
   private Pattern ruleDescExclusionFilter;
 
   private final AtomicBoolean cancelFlag;
@@ -257,6 +259,23 @@ public abstract class AbstractRelOptPlanner implements RelOptPlanner {
     listener.addListener(newListener);
   }
 
+  /**
+   * Sets the profiler that records the work done by this planner, and adds
+   * it as a listener. A planner can have only one profiler.
+   *
+   * @param profiler Profiler
+   */
+  public void setProfiler(RelOptProfiler profiler) {
+    assert this.profiler == null : "planner already has a profiler";
+    this.profiler = profiler;
+    addListener(profiler);
+  }
+
+  /** Returns the profiler, or null if this planner is not being profiled. */
+  public RelOptProfiler getProfiler() {
+    return profiler;
+  }
+
   public void registerMetadataProviders(List<RelMetadataProvider> list) {
   }
 
@@ -21,6 +21,7 @@ import org.apache.calcite.rel.core.CorrelationId;
 import org.apache.calcite.rel.metadata.DefaultRelMetadataProvider;
 import org.apache.calcite.rel.metadata.MetadataFactory;
 import org.apache.calcite.rel.metadata.MetadataFactoryImpl;
+import org.apache.calcite.rel.metadata.RelMetadataCache;
 import org.apache.calcite.rel.metadata.RelMetadataProvider;
 import org.apache.calcite.rel.metadata.RelMetadataQuery;
 import org.apache.calcite.rel.type.RelDataTypeFactory;
@@ -147,10 +148,16 @@ public class RelOptCluster {
    * <p>This method might be changed or moved in future.
    * If you have a {@link RelOptRuleCall} available,
    * for example if you are in a {@link RelOptRule#onMatch(RelOptRuleCall)}
-   * method, then use {@link RelOptRuleCall#getMetadataQuery()} instead. */
+   * method, then use {@link RelOptRuleCall#getMetadataQuery()} instead.
+   *
+   * <p>If the planner's context contains a {@link RelMetadataCache}, the
+   * query shares results through it. */
   public RelMetadataQuery getMetadataQuery() {
     if (mq == null) {
-      mq = RelMetadataQuery.instance();
+      mq = RelMetadataQuery.instance(
+          planner == null
+              ? null
+              : planner.getContext().unwrap(RelMetadataCache.class));
     }
     return mq;
   }
@@ -60,6 +60,10 @@ public class RelOptLattice {
    * <p>The current implementation creates a materialization and populates it,
    * provided that {@link Lattice#auto} is true.
    *
+   * <p>Records the request with the service's
+   * {@link org.apache.calcite.materialize.LatticeAdvisor}, which may build
+   * tiles in the background for future queries.
+   *
    * <p>Future implementations might return materializations at a different
    * level of aggregation, from which the desired result can be obtained by
    * rolling up.
@@ -80,8 +84,16 @@ public class RelOptLattice {
     final MaterializationService service = MaterializationService.instance();
     boolean create = lattice.auto && config.createMaterializations();
     final CalciteSchema schema = starRelOptTable.unwrap(CalciteSchema.class);
-    return service.defineTile(lattice, groupSet, measureList, schema, create,
-        false);
+    final Pair<CalciteSchema.TableEntry, TileKey> pair =
+        service.defineTile(lattice, groupSet, measureList, schema, create,
+            false);
+    if (config.createMaterializations()) {
+      // Tell the advisor which tile this query needed. (Queries that populate
+      // tiles do not create materializations, and are not recorded.)
+      service.getLatticeAdvisor().recordQuery(lattice, schema, groupSet,
+          measureList, pair == null ? null : pair.right);
+    }
+    return pair;
   }
 }
 
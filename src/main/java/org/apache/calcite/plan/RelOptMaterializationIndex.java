@@ -0,0 +1,264 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.plan;
+
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.Aggregate;
+import org.apache.calcite.rel.core.Project;
+import org.apache.calcite.util.graph.DefaultDirectedGraph;
+import org.apache.calcite.util.graph.DefaultEdge;
+import org.apache.calcite.util.graph.DirectedGraph;
+import org.apache.calcite.util.graph.TopologicalOrderIterator;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Ordering;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of materializations by the tables they read, used to find the
+ * materializations that might be able to rewrite a query quickly.
+ *
+ * <p>Without an index, finding candidate materializations for a relational
+ * expression requires building a graph of all materializations and the
+ * tables they use, and computing paths in it. The index does that work once;
+ * finding candidates for an expression then costs time proportional to the
+ * number of tables it reads and the number of candidates found.</p>
+ *
+ * <p>Materializations of a tile in a lattice (those that have a
+ * {@link RelOptMaterialization#starTable}) are not indexed; lattices are
+ * handled separately.</p>
+ */
+public class RelOptMaterializationIndex {
+  /** Indexed materializations, in topological order; a materialization that
+   * is defined in terms of another comes after it. */
+  private final ImmutableList<Entry> entries;
+
+  /** For each table, the materializations that read it, directly or
+   * via other materializations. A materialization is also listed under its
+   * own table. */
+  private final ImmutableSetMultimap<List<String>, Entry> byUsedTable;
+
+  /** For each table, the materializations whose query reads it directly. */
+  private final ImmutableSetMultimap<List<String>, Entry> byTable;
+
+  private static final Ordering<Entry> ORDINAL_ORDERING =
+      new Ordering<Entry>() {
+        public int compare(Entry left, Entry right) {
+          return Integer.compare(left.ordinal, right.ordinal);
+        }
+      };
+
+  private RelOptMaterializationIndex(ImmutableList<Entry> entries,
+      ImmutableSetMultimap<List<String>, Entry> byUsedTable,
+      ImmutableSetMultimap<List<String>, Entry> byTable) {
+    this.entries = entries;
+    this.byUsedTable = byUsedTable;
+    this.byTable = byTable;
+  }
+
+  /** Creates an index of a list of materializations. */
+  public static RelOptMaterializationIndex of(
+      List<RelOptMaterialization> materializations) {
+    final DirectedGraph<List<String>, DefaultEdge> usesGraph =
+        DefaultDirectedGraph.create();
+    final Map<List<String>, RelOptMaterialization> qnameMap = new HashMap<>();
+    final Map<List<String>, Set<List<String>>> tablesMap = new HashMap<>();
+    for (RelOptMaterialization materialization : materializations) {
+      // If materialization is a tile in a lattice, it is not indexed.
+      if (materialization.qualifiedTableName != null
+          && materialization.starTable == null) {
+        final List<String> qname = materialization.qualifiedTableName;
+        qnameMap.put(qname, materialization);
+        final Set<List<String>> tables = new LinkedHashSet<>();
+        for (RelOptTable usedTable
+            : RelOptUtil.findTables(materialization.queryRel)) {
+          tables.add(usedTable.getQualifiedName());
+          usesGraph.addVertex(qname);
+          usesGraph.addVertex(usedTable.getQualifiedName());
+          usesGraph.addEdge(usedTable.getQualifiedName(), qname);
+        }
+        tablesMap.put(qname, tables);
+      }
+    }
+
+    // Number the materializations in topological order. For example, given
+    //   T = Emps Join Depts
+    //   T2 = T Group by C1
+    // T comes before T2.
+    final ImmutableList.Builder<Entry> entries = ImmutableList.builder();
+    final Map<List<String>, Entry> entryMap = new HashMap<>();
+    for (List<String> qname : TopologicalOrderIterator.of(usesGraph)) {
+      final RelOptMaterialization materialization = qnameMap.get(qname);
+      if (materialization != null) {
+        final Entry entry = new Entry(materialization, entryMap.size(),
+            ImmutableSet.copyOf(tablesMap.get(qname)),
+            isAggregate(materialization.queryRel));
+        entryMap.put(qname, entry);
+        entries.add(entry);
+      }
+    }
+
+    // T2 uses T, and therefore also Emps and Depts.
+    final ImmutableSetMultimap.Builder<List<String>, Entry> byUsedTable =
+        ImmutableSetMultimap.builder();
+    final ImmutableSetMultimap.Builder<List<String>, Entry> byTable =
+        ImmutableSetMultimap.builder();
+    final Map<List<String>, Set<List<String>>> usedTablesMap = new HashMap<>();
+    for (Map.Entry<List<String>, Entry> e : entryMap.entrySet()) {
+      byUsedTable.put(e.getKey(), e.getValue());
+      for (List<String> table
+          : usedTables(e.getKey(), tablesMap, usedTablesMap)) {
+        byUsedTable.put(table, e.getValue());
+      }
+      for (List<String> table : e.getValue().tables) {
+        byTable.put(table, e.getValue());
+      }
+    }
+    return new RelOptMaterializationIndex(entries.build(),
+        byUsedTable.build(), byTable.build());
+  }
+
+  /** Returns the tables that a materialization reads directly or via other
+   * materializations. */
+  private static Set<List<String>> usedTables(List<String> qname,
+      Map<List<String>, Set<List<String>>> tablesMap,
+      Map<List<String>, Set<List<String>>> usedTablesMap) {
+    Set<List<String>> usedTables = usedTablesMap.get(qname);
+    if (usedTables == null) {
+      // Put an empty set first, in case a materialization uses itself.
+      usedTablesMap.put(qname, ImmutableSet.<List<String>>of());
+      final Set<List<String>> set = new HashSet<>();
+      for (List<String> table : tablesMap.get(qname)) {
+        set.add(table);
+        if (tablesMap.containsKey(table)) {
+          set.addAll(usedTables(table, tablesMap, usedTablesMap));
+        }
+      }
+      usedTables = ImmutableSet.copyOf(set);
+      usedTablesMap.put(qname, usedTables);
+    }
+    return usedTables;
+  }
+
+  /** Returns whether the query of a materialization, ignoring any
+   * {@link Project} on top, is an {@link Aggregate}. */
+  private static boolean isAggregate(RelNode queryRel) {
+    final RelNode node = queryRel instanceof Project
+        ? ((Project) queryRel).getInput()
+        : queryRel;
+    return node instanceof Aggregate;
+  }
+
+  /** Returns the number of indexed materializations. */
+  public int size() {
+    return entries.size();
+  }
+
+  /** Returns the materializations that use at least one of the tables used by
+   * a relational expression, in topological order.
+   *
+   * <p>This is a simple rule that includes some materializations we won't
+   * actually use, and has the same result as
+   * {@link RelOptMaterializations#getApplicableMaterializations}. */
+  public List<RelOptMaterialization> getApplicable(RelNode rel) {
+    final Set<Entry> found = new HashSet<>();
+    for (RelOptTable table : RelOptUtil.findTables(rel)) {
+      found.addAll(byUsedTable.get(table.getQualifiedName()));
+    }
+    return toMaterializations(found);
+  }
+
+  /** Returns the materializations that might be able to rewrite a relational
+   * expression that consists of joins, filters and projects, or of an
+   * aggregate of such.
+   *
+   * <p>A materialization is a candidate if its query reads a subset or a
+   * superset of the tables read by the expression, and if its query is an
+   * aggregate (ignoring any project on top) if and only if
+   * {@code aggregate}.
+   *
+   * @param rel Relational expression
+   * @param aggregate Whether candidates must be aggregates
+   * @return Candidate materializations, in topological order
+   */
+  public List<RelOptMaterialization> getCandidates(RelNode rel,
+      boolean aggregate) {
+    final Set<List<String>> queryTables = new HashSet<>();
+    for (RelOptTable table : RelOptUtil.findTables(rel)) {
+      queryTables.add(table.getQualifiedName());
+    }
+    // For each materialization, count the query's tables that it reads.
+    final Map<Entry, int[]> counts = new HashMap<>();
+    for (List<String> table : queryTables) {
+      for (Entry entry : byTable.get(table)) {
+        if (entry.aggregate == aggregate) {
+          int[] count = counts.get(entry);
+          if (count == null) {
+            counts.put(entry, count = new int[1]);
+          }
+          ++count[0];
+        }
+      }
+    }
+    final List<Entry> found = new ArrayList<>();
+    for (Map.Entry<Entry, int[]> e : counts.entrySet()) {
+      final int count = e.getValue()[0];
+      if (count == e.getKey().tables.size()   // view tables within query's
+          || count == queryTables.size()) {   // query tables within view's
+        found.add(e.getKey());
+      }
+    }
+    return toMaterializations(found);
+  }
+
+  private static List<RelOptMaterialization> toMaterializations(
+      Iterable<Entry> entries) {
+    final ImmutableList.Builder<RelOptMaterialization> list =
+        ImmutableList.builder();
+    for (Entry entry : ORDINAL_ORDERING.sortedCopy(entries)) {
+      list.add(entry.materialization);
+    }
+    return list.build();
+  }
+
+  /** Indexed materialization. */
+  private static class Entry {
+    final RelOptMaterialization materialization;
+    final int ordinal;
+    final ImmutableSet<List<String>> tables;
+    final boolean aggregate;
+
+    Entry(RelOptMaterialization materialization, int ordinal,
+        ImmutableSet<List<String>> tables, boolean aggregate) {
+      this.materialization = materialization;
+      this.ordinal = ordinal;
+      this.tables = tables;
+      this.aggregate = aggregate;
+    }
+  }
+}
+
+// End RelOptMaterializationIndex.java
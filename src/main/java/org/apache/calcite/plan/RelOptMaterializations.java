@@ -25,11 +25,6 @@ import org.apache.calcite.rel.rules.FilterProjectTransposeRule;
 import org.apache.calcite.rel.rules.ProjectMergeRule;
 import org.apache.calcite.rel.rules.ProjectRemoveRule;
 import org.apache.calcite.util.Pair;
-import org.apache.calcite.util.graph.DefaultDirectedGraph;
-import org.apache.calcite.util.graph.DefaultEdge;
-import org.apache.calcite.util.graph.DirectedGraph;
-import org.apache.calcite.util.graph.Graphs;
-import org.apache.calcite.util.graph.TopologicalOrderIterator;
 
 import com.google.common.base.Function;
 import com.google.common.base.Supplier;
@@ -40,9 +35,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 /**
@@ -62,8 +55,22 @@ public abstract class RelOptMaterializations {
    */
   public static List<Pair<RelNode, List<RelOptMaterialization>>> useMaterializedViews(
       final RelNode rel, List<RelOptMaterialization> materializations) {
+    return useMaterializedViews(rel,
+        RelOptMaterializationIndex.of(materializations));
+  }
+
+  /**
+   * Returns a list of RelNode transformed from all possible combination of
+   * materialized view uses, using an index of the materialized views.
+   * @param rel               the original RelNode
+   * @param index             index of the materialized views
+   * @return the list of transformed RelNode together with their corresponding
+   *         materialized views used in the transformation.
+   */
+  public static List<Pair<RelNode, List<RelOptMaterialization>>> useMaterializedViews(
+      final RelNode rel, RelOptMaterializationIndex index) {
     final List<RelOptMaterialization> applicableMaterializations =
-        getApplicableMaterializations(rel, materializations);
+        index.getApplicable(rel);
     final List<Pair<RelNode, List<RelOptMaterialization>>> applied =
         new ArrayList<>();
     applied.add(
@@ -133,45 +140,7 @@ public abstract class RelOptMaterializations {
    */
   public static List<RelOptMaterialization> getApplicableMaterializations(
       RelNode rel, List<RelOptMaterialization> materializations) {
-    DirectedGraph<List<String>, DefaultEdge> usesGraph =
-        DefaultDirectedGraph.create();
-    final Map<List<String>, RelOptMaterialization> qnameMap = new HashMap<>();
-    for (RelOptMaterialization materialization : materializations) {
-      // If materialization is a tile in a lattice, we will deal with it shortly.
-      if (materialization.qualifiedTableName != null
-          && materialization.starTable == null) {
-        final List<String> qname = materialization.qualifiedTableName;
-        qnameMap.put(qname, materialization);
-        for (RelOptTable usedTable
-            : RelOptUtil.findTables(materialization.queryRel)) {
-          usesGraph.addVertex(qname);
-          usesGraph.addVertex(usedTable.getQualifiedName());
-          usesGraph.addEdge(usedTable.getQualifiedName(), qname);
-        }
-      }
-    }
-
-    // Use a materialization if uses at least one of the tables are used by
-    // the query. (Simple rule that includes some materializations we won't
-    // actually use.)
-    // For example, given materializations:
-    //   T = Emps Join Depts
-    //   T2 = T Group by C1
-    // the graph will contain
-    //   (T, Emps), (T, Depts), (T2, T)
-    // and therefore we can deduce T2 uses Emps.
-    final Graphs.FrozenGraph<List<String>, DefaultEdge> frozenGraph =
-        Graphs.makeImmutable(usesGraph);
-    final Set<RelOptTable> queryTablesUsed = RelOptUtil.findTables(rel);
-    final List<RelOptMaterialization> applicableMaterializations = Lists.newArrayList();
-    for (List<String> qname : TopologicalOrderIterator.of(usesGraph)) {
-      RelOptMaterialization materialization = qnameMap.get(qname);
-      if (materialization != null
-          && usesTable(materialization.qualifiedTableName, queryTablesUsed, frozenGraph)) {
-        applicableMaterializations.add(materialization);
-      }
-    }
-    return applicableMaterializations;
+    return RelOptMaterializationIndex.of(materializations).getApplicable(rel);
   }
 
   private static final Function<RelOptTable, List<String>> GET_QUALIFIED_NAME =
@@ -212,23 +181,6 @@ public abstract class RelOptMaterializations {
     return new MaterializedViewSubstitutionVisitor(target, root)
             .go(materialization.tableRel);
   }
-
-  /**
-   * Returns whether {@code table} uses one or more of the tables in
-   * {@code usedTables}.
-   */
-  private static boolean usesTable(
-      List<String> qualifiedName,
-      Set<RelOptTable> usedTables,
-      Graphs.FrozenGraph<List<String>, DefaultEdge> usesGraph) {
-    for (RelOptTable queryTable : usedTables) {
-      if (usesGraph.getShortestPath(queryTable.getQualifiedName(), qualifiedName)
-          != null) {
-        return true;
-      }
-    }
-    return false;
-  }
 }
 
 // End RelOptMaterializations.java
@@ -0,0 +1,367 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.plan;
+
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.metadata.JaninoRelMetadataProvider;
+import org.apache.calcite.rel.metadata.MetadataDef;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.runtime.Hook;
+import org.apache.calcite.util.JsonBuilder;
+
+import com.google.common.collect.Ordering;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records how much work a planner does, and which rules are responsible.
+ *
+ * <p>For each rule, the profiler records the number of matches created
+ * (that is, the number of times the rule's operands matched), the number of
+ * matches fired, the time spent in {@link RelOptRule#onMatch}, the number of
+ * relational expressions produced, and the number of those that were chosen
+ * for the final plan.</p>
+ *
+ * <p>For each kind of metadata, it records the number of calls and the time
+ * spent computing it. Time spent computing one kind of metadata inside
+ * another (say row count inside cumulative cost) counts only towards the
+ * inner kind. Metadata time is included in the time of the rule that asked
+ * for the metadata, if any.</p>
+ *
+ * <p>To profile a planner, call
+ * {@link AbstractRelOptPlanner#setProfiler(RelOptProfiler)} before planning.
+ * To profile every statement of a connection, set the connection property
+ * {@link org.apache.calcite.config.CalciteConnectionProperty#PLANNER_PROFILE};
+ * a handler for {@link Hook#PLANNER} can then retrieve the profiler via
+ * {@link AbstractRelOptPlanner#getProfiler()}.</p>
+ *
+ * <p>A profiler is not thread-safe; it can be shared by planners that run
+ * one after another, for example the phases of a
+ * {@link org.apache.calcite.tools.Program}.</p>
+ */
+public class RelOptProfiler implements RelOptListener {
+  /** Profiler of the planner that is running in the current thread. Used to
+   * time metadata calls, which do not know their planner. */
+  private static final ThreadLocal<RelOptProfiler> THREAD_PROFILER =
+      new ThreadLocal<>();
+
+  private final Map<RelOptRule, RuleStats> ruleStats = new LinkedHashMap<>();
+  private final Map<String, MetadataStats> metadataStats =
+      new LinkedHashMap<>();
+
+  /** For each relational expression seen, the rule that produced it, or null
+   * if it was not produced by a rule. */
+  private final Map<RelNode, RelOptRule> producers = new IdentityHashMap<>();
+
+  /** Rule whose output is being registered, or null. */
+  private RelOptRule producingRule;
+
+  /** Start times of the rule calls that are in progress. */
+  private final Deque<long[]> ruleStarts = new ArrayDeque<>();
+
+  /** Time spent in nested metadata calls, for each metadata call that is in
+   * progress. */
+  private final Deque<long[]> metadataNanos = new ArrayDeque<>();
+
+  /** Returns the profiler of the planner running in the current thread, or
+   * null. */
+  public static RelOptProfiler current() {
+    return THREAD_PROFILER.get();
+  }
+
+  /** Makes a profiler current for this thread, until the returned object is
+   * closed. Does nothing if {@code profiler} is null.
+   *
+   * <p>Also installs, as this thread's metadata provider, a provider whose
+   * handlers record their time in the profiler, and discards the cluster's
+   * current metadata query; so metadata is timed even if its handlers were
+   * generated before profiling started. When the returned object is closed,
+   * the previous provider is restored, and the cluster's metadata query is
+   * discarded again, so that later queries are not timed. */
+  public static Hook.Closeable enter(RelOptProfiler profiler,
+      final RelOptCluster cluster) {
+    if (profiler == null) {
+      return Hook.Closeable.EMPTY;
+    }
+    final RelOptProfiler previous = THREAD_PROFILER.get();
+    final JaninoRelMetadataProvider previousProvider =
+        RelMetadataQuery.THREAD_PROVIDERS.get();
+    THREAD_PROFILER.set(profiler);
+    RelMetadataQuery.THREAD_PROVIDERS.set(previousProvider.profiled(profiler));
+    cluster.invalidateMetadataQuery();
+    return new Hook.Closeable() {
+      public void close() {
+        THREAD_PROFILER.set(previous);
+        RelMetadataQuery.THREAD_PROVIDERS.set(previousProvider);
+        cluster.invalidateMetadataQuery();
+      }
+    };
+  }
+
+  private RuleStats ruleStats(RelOptRule rule) {
+    RuleStats stats = ruleStats.get(rule);
+    if (stats == null) {
+      stats = new RuleStats(rule);
+      ruleStats.put(rule, stats);
+    }
+    return stats;
+  }
+
+  private MetadataStats metadataStats(String name) {
+    MetadataStats stats = metadataStats.get(name);
+    if (stats == null) {
+      stats = new MetadataStats(name);
+      metadataStats.put(name, stats);
+    }
+    return stats;
+  }
+
+  /** Called by a planner when a rule's operands have matched, before it
+   * decides whether to fire the rule. */
+  public void matchCreated(RelOptRule rule) {
+    ++ruleStats(rule).matchesCreated;
+  }
+
+  public void relEquivalenceFound(RelEquivalenceEvent event) {
+    final RelNode rel = event.getRel();
+    if (!producers.containsKey(rel)) {
+      // A relational expression registered while a rule's output is being
+      // registered is one of its outputs (or a copy of one).
+      producers.put(rel, producingRule);
+    }
+  }
+
+  public void ruleAttempted(RuleAttemptedEvent event) {
+    final RelOptRule rule = event.getRuleCall().getRule();
+    if (event.isBefore()) {
+      ++ruleStats(rule).matchesFired;
+      ruleStarts.push(new long[] {System.nanoTime()});
+    } else if (!ruleStarts.isEmpty()) {
+      ruleStats(rule).onMatchNanos +=
+          System.nanoTime() - ruleStarts.pop()[0];
+    }
+  }
+
+  public void ruleProductionSucceeded(RuleProductionEvent event) {
+    final RelOptRule rule = event.getRuleCall().getRule();
+    if (event.isBefore()) {
+      ++ruleStats(rule).relsProduced;
+      producingRule = rule;
+      if (!producers.containsKey(event.getRel())) {
+        producers.put(event.getRel(), rule);
+      }
+    } else {
+      producingRule = null;
+    }
+  }
+
+  public void relDiscarded(RelDiscardedEvent event) {
+  }
+
+  public void relChosen(RelChosenEvent event) {
+    if (event.getRel() == null) {
+      return;
+    }
+    final RelOptRule rule = producers.get(event.getRel());
+    if (rule != null) {
+      ++ruleStats(rule).relsChosen;
+    }
+  }
+
+  /** Wraps a metadata handler so that the time spent in each call is
+   * recorded. */
+  public <H> H wrap(MetadataDef<?> def, final H handler) {
+    final MetadataStats stats =
+        metadataStats(def.metadataClass.getSimpleName());
+    final Object proxy =
+        Proxy.newProxyInstance(def.handlerClass.getClassLoader(),
+            new Class[] {def.handlerClass},
+            new InvocationHandler() {
+              public Object invoke(Object proxy, Method method, Object[] args)
+                  throws Throwable {
+                final long start = System.nanoTime();
+                final long[] nested = {0L};
+                metadataNanos.push(nested);
+                try {
+                  return method.invoke(handler, args);
+                } catch (InvocationTargetException e) {
+                  throw e.getCause();
+                } finally {
+                  metadataNanos.pop();
+                  final long elapsed = System.nanoTime() - start;
+                  if (!metadataNanos.isEmpty()) {
+                    metadataNanos.peek()[0] += elapsed;
+                  }
+                  ++stats.calls;
+                  stats.nanos += elapsed - nested[0];
+                }
+              }
+            });
+    //noinspection unchecked
+    return (H) proxy;
+  }
+
+  /** Returns the statistics of each rule that has matched, the most
+   * expensive first. */
+  public List<RuleStats> getRuleStats() {
+    return new Ordering<RuleStats>() {
+      public int compare(RuleStats left, RuleStats right) {
+        return Long.compare(right.onMatchNanos, left.onMatchNanos);
+      }
+    }.immutableSortedCopy(ruleStats.values());
+  }
+
+  /** Returns the statistics of each kind of metadata that has been
+   * computed, the most expensive first. */
+  public List<MetadataStats> getMetadataStats() {
+    return new Ordering<MetadataStats>() {
+      public int compare(MetadataStats left, MetadataStats right) {
+        return Long.compare(right.nanos, left.nanos);
+      }
+    }.immutableSortedCopy(metadataStats.values());
+  }
+
+  /** Clears all statistics. */
+  public void reset() {
+    ruleStats.clear();
+    metadataStats.clear();
+    producers.clear();
+    producingRule = null;
+    ruleStarts.clear();
+    metadataNanos.clear();
+  }
+
+  /** Returns the statistics as a JSON string. Times are in milliseconds. */
+  public String toJson() {
+    final JsonBuilder json = new JsonBuilder();
+    final List<Object> rules = json.list();
+    for (RuleStats stats : getRuleStats()) {
+      final Map<String, Object> map = json.map();
+      json.put(map, "rule", stats.rule.toString());
+      json.put(map, "matchesCreated", stats.matchesCreated);
+      json.put(map, "matchesFired", stats.matchesFired);
+      json.put(map, "onMatchMillis", millis(stats.onMatchNanos));
+      json.put(map, "relsProduced", stats.relsProduced);
+      json.put(map, "relsChosen", stats.relsChosen);
+      rules.add(map);
+    }
+    final List<Object> metadata = json.list();
+    for (MetadataStats stats : getMetadataStats()) {
+      final Map<String, Object> map = json.map();
+      json.put(map, "metadata", stats.name);
+      json.put(map, "calls", stats.calls);
+      json.put(map, "millis", millis(stats.nanos));
+      metadata.add(map);
+    }
+    final Map<String, Object> root = json.map();
+    json.put(root, "rules", rules);
+    json.put(root, "metadata", metadata);
+    return json.toJsonString(root);
+  }
+
+  private static double millis(long nanos) {
+    return nanos / 1000000d;
+  }
+
+  @Override public String toString() {
+    return toJson();
+  }
+
+  /** Statistics about one rule. */
+  public static class RuleStats {
+    public final RelOptRule rule;
+    long matchesCreated;
+    long matchesFired;
+    long onMatchNanos;
+    long relsProduced;
+    long relsChosen;
+
+    RuleStats(RelOptRule rule) {
+      this.rule = rule;
+    }
+
+    /** Returns the number of times the rule's operands matched. */
+    public long getMatchesCreated() {
+      return matchesCreated;
+    }
+
+    /** Returns the number of times the rule was fired. */
+    public long getMatchesFired() {
+      return matchesFired;
+    }
+
+    /** Returns the time spent in {@link RelOptRule#onMatch}, in
+     * nanoseconds. */
+    public long getOnMatchNanos() {
+      return onMatchNanos;
+    }
+
+    /** Returns the number of relational expressions the rule produced. */
+    public long getRelsProduced() {
+      return relsProduced;
+    }
+
+    /** Returns the number of relational expressions produced by the rule
+     * that are in the final plan. */
+    public long getRelsChosen() {
+      return relsChosen;
+    }
+
+    @Override public String toString() {
+      return rule + ": created " + matchesCreated + ", fired " + matchesFired
+          + ", " + millis(onMatchNanos) + " ms, produced " + relsProduced
+          + ", chosen " + relsChosen;
+    }
+  }
+
+  /** Statistics about one kind of metadata. */
+  public static class MetadataStats {
+    public final String name;
+    long calls;
+    long nanos;
+
+    MetadataStats(String name) {
+      this.name = name;
+    }
+
+    /** Returns the number of calls. */
+    public long getCalls() {
+      return calls;
+    }
+
+    /** Returns the time spent in calls, excluding nested calls for other
+     * metadata, in nanoseconds. */
+    public long getNanos() {
+      return nanos;
+    }
+
+    @Override public String toString() {
+      return name + ": " + calls + " calls, " + millis(nanos) + " ms";
+    }
+  }
+}
+
+// End RelOptProfiler.java
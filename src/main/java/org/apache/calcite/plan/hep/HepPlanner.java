@@ -25,6 +25,7 @@ import org.apache.calcite.plan.RelOptCost;
 import org.apache.calcite.plan.RelOptCostFactory;
 import org.apache.calcite.plan.RelOptCostImpl;
 import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelOptProfiler;
 import org.apache.calcite.plan.RelOptRule;
 import org.apache.calcite.plan.RelOptRuleOperand;
 import org.apache.calcite.plan.RelTrait;
@@ -35,6 +36,7 @@ import org.apache.calcite.rel.convert.ConverterRule;
 import org.apache.calcite.rel.convert.TraitMatchingRule;
 import org.apache.calcite.rel.metadata.RelMetadataProvider;
 import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.runtime.Hook;
 import org.apache.calcite.util.Pair;
 import org.apache.calcite.util.Util;
 import org.apache.calcite.util.graph.BreadthFirstIterator;
@@ -47,6 +49,7 @@ import org.apache.calcite.util.graph.Graphs;
 import org.apache.calcite.util.graph.TopologicalOrderIterator;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -54,6 +57,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -95,6 +99,12 @@ public class HepPlanner extends AbstractRelOptPlanner {
 
   private final Function2<RelNode, RelNode, Void> onCopyHook;
 
+  /**
+   * For each rule, the number of times it has been tried on a vertex
+   * (element 0) and the number of times it has transformed one (element 1).
+   */
+  private final Map<RelOptRule, long[]> ruleCounts = new LinkedHashMap<>();
+
   //~ Constructors -----------------------------------------------------------
 
   /**
@@ -173,6 +183,7 @@ public class HepPlanner extends AbstractRelOptPlanner {
     for (RelOptRule rule : ImmutableList.copyOf(allRules)) {
       removeRule(rule);
     }
+    ruleCounts.clear();
   }
 
   public boolean removeRule(RelOptRule rule) {
@@ -194,14 +205,59 @@ public class HepPlanner extends AbstractRelOptPlanner {
   public RelNode findBestExp() {
     assert root != null;
 
-    executeProgram(mainProgram);
+    try (Hook.Closeable ignore = RelOptProfiler.enter(getProfiler(),
+        root.getCluster())) {
+      executeProgram(mainProgram);
+    }
 
     // Get rid of everything except what's in the final plan.
     collectGarbage();
 
+    if (LOGGER.isDebugEnabled()) {
+      for (Map.Entry<RelOptRule, long[]> entry : ruleCounts.entrySet()) {
+        LOGGER.debug("Rule {} attempted {} times, succeeded {} times",
+            entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+      }
+    }
+
     return buildFinalPlan(root);
   }
 
+  /**
+   * Returns the number of times each rule has been tried on a vertex; that
+   * is, the number of times the planner has tried to match its operands.
+   * Rules that have never been tried are not included.
+   */
+  public Map<RelOptRule, Long> getRuleAttemptCounts() {
+    return ruleCounts(0);
+  }
+
+  /**
+   * Returns the number of times each rule has transformed a vertex.
+   * Rules that have never been tried are not included.
+   */
+  public Map<RelOptRule, Long> getRuleSuccessCounts() {
+    return ruleCounts(1);
+  }
+
+  private Map<RelOptRule, Long> ruleCounts(int i) {
+    final ImmutableMap.Builder<RelOptRule, Long> builder =
+        ImmutableMap.builder();
+    for (Map.Entry<RelOptRule, long[]> entry : ruleCounts.entrySet()) {
+      builder.put(entry.getKey(), entry.getValue()[i]);
+    }
+    return builder.build();
+  }
+
+  private long[] ruleCount(RelOptRule rule) {
+    long[] counts = ruleCounts.get(rule);
+    if (counts == null) {
+      counts = new long[2];
+      ruleCounts.put(rule, counts);
+    }
+    return counts;
+  }
+
   private void executeProgram(HepProgram program) {
     HepProgram savedProgram = currentProgram;
     currentProgram = program;
@@ -374,12 +430,27 @@ public class HepPlanner extends AbstractRelOptPlanner {
 
     int nMatches = 0;
 
+    // Vertices on which every rule has been tried without success. A rule
+    // matches a vertex based on the vertex and its descendants, so it cannot
+    // fire on such a vertex until a transformation changes the vertex or one
+    // of its descendants; until then, later passes skip it. Null if the rules
+    // also look at a vertex's parents.
+    final Set<HepRelVertex> unproductiveVertices =
+        canSkipUnproductiveVertices(rules)
+            ? new HashSet<HepRelVertex>()
+            : null;
+
     boolean fixpoint;
     do {
       Iterator<HepRelVertex> iter = getGraphIterator(root);
       fixpoint = true;
       while (iter.hasNext()) {
         HepRelVertex vertex = iter.next();
+        if (unproductiveVertices != null
+            && unproductiveVertices.contains(vertex)) {
+          continue;
+        }
+        boolean fired = false;
         for (RelOptRule rule : rules) {
           HepRelVertex newVertex =
               applyRule(rule, vertex, forceConversions);
@@ -388,6 +459,10 @@ public class HepPlanner extends AbstractRelOptPlanner {
             if (nMatches >= currentProgram.matchLimit) {
               return;
             }
+            if (unproductiveVertices != null) {
+              removeWithAncestors(unproductiveVertices, newVertex);
+            }
+            fired = true;
             if (fullRestartAfterTransformation) {
               iter = getGraphIterator(root);
             } else {
@@ -403,10 +478,45 @@ public class HepPlanner extends AbstractRelOptPlanner {
             break;
           }
         }
+        if (!fired && unproductiveVertices != null) {
+          unproductiveVertices.add(vertex);
+        }
       }
     } while (!fixpoint);
   }
 
+  /** Returns whether a rule can only match a vertex based on the vertex and
+   * its descendants. Converter rules and common sub-expression rules also look
+   * at the parents of the vertex. */
+  private static boolean canSkipUnproductiveVertices(
+      Collection<RelOptRule> rules) {
+    for (RelOptRule rule : rules) {
+      if (rule instanceof ConverterRule
+          || rule instanceof TraitMatchingRule
+          || rule instanceof CommonRelSubExprRule) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Removes a vertex that has just been created or changed by a
+   * transformation, and all vertices that (directly or indirectly) use it as
+   * input, from a set of vertices. */
+  private void removeWithAncestors(Set<HepRelVertex> vertices,
+      HepRelVertex vertex) {
+    final Set<HepRelVertex> visited = new HashSet<>();
+    final List<HepRelVertex> stack = new ArrayList<>();
+    stack.add(vertex);
+    while (!stack.isEmpty()) {
+      final HepRelVertex v = stack.remove(stack.size() - 1);
+      if (visited.add(v)) {
+        vertices.remove(v);
+        stack.addAll(Graphs.predecessorListOf(graph, v));
+      }
+    }
+  }
+
   private Iterator<HepRelVertex> getGraphIterator(HepRelVertex start) {
     // Make sure there's no garbage, because topological sort
     // doesn't start from a specific root, and rules can't
@@ -477,6 +587,9 @@ public class HepPlanner extends AbstractRelOptPlanner {
       }
     }
 
+    final long[] counts = ruleCount(rule);
+    ++counts[0];
+
     final List<RelNode> bindings = new ArrayList<>();
     final Map<RelNode, List<RelNode>> nodeChildren = new HashMap<>();
     boolean match =
@@ -489,6 +602,9 @@ public class HepPlanner extends AbstractRelOptPlanner {
     if (!match) {
       return null;
     }
+    if (getProfiler() != null) {
+      getProfiler().matchCreated(rule);
+    }
 
     HepRuleCall call =
         new HepRuleCall(
@@ -506,6 +622,7 @@ public class HepPlanner extends AbstractRelOptPlanner {
     fireRule(call);
 
     if (!call.getResults().isEmpty()) {
+      ++counts[1];
       return applyTransformationResults(
           vertex,
           call,
@@ -23,13 +23,16 @@ import org.apache.calcite.plan.AbstractRelOptPlanner;
 import org.apache.calcite.plan.Context;
 import org.apache.calcite.plan.Convention;
 import org.apache.calcite.plan.ConventionTraitDef;
+import org.apache.calcite.plan.MulticastRelOptListener;
 import org.apache.calcite.plan.RelOptCost;
 import org.apache.calcite.plan.RelOptCostFactory;
 import org.apache.calcite.plan.RelOptLattice;
 import org.apache.calcite.plan.RelOptListener;
 import org.apache.calcite.plan.RelOptMaterialization;
+import org.apache.calcite.plan.RelOptMaterializationIndex;
 import org.apache.calcite.plan.RelOptMaterializations;
 import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelOptProfiler;
 import org.apache.calcite.plan.RelOptRule;
 import org.apache.calcite.plan.RelOptRuleCall;
 import org.apache.calcite.plan.RelOptRuleOperand;
@@ -232,6 +235,9 @@ public class VolcanoPlanner extends AbstractRelOptPlanner {
   private final List<RelOptMaterialization> materializations =
       Lists.newArrayList();
 
+  /** Index of {@link #materializations}; null until it is needed. */
+  private RelOptMaterializationIndex materializationIndex;
+
   /** Map of lattices by the qualified name of their star table. */
   private final Map<List<String>, RelOptLattice> latticeByName =
       Maps.newLinkedHashMap();
@@ -325,9 +331,19 @@ public class VolcanoPlanner extends AbstractRelOptPlanner {
     return ImmutableList.copyOf(materializations);
   }
 
+  /** Returns an index of the materializations, with which rules can quickly
+   * find the materializations that might rewrite an expression. */
+  public RelOptMaterializationIndex getMaterializationIndex() {
+    if (materializationIndex == null) {
+      materializationIndex = RelOptMaterializationIndex.of(materializations);
+    }
+    return materializationIndex;
+  }
+
   @Override public void addMaterialization(
       RelOptMaterialization materialization) {
     materializations.add(materialization);
+    materializationIndex = null;
   }
 
   @Override public void addLattice(RelOptLattice lattice) {
@@ -348,7 +364,8 @@ public class VolcanoPlanner extends AbstractRelOptPlanner {
 
     // Register rels using materialized views.
     final List<Pair<RelNode, List<RelOptMaterialization>>> materializationUses =
-        RelOptMaterializations.useMaterializedViews(originalRoot, materializations);
+        RelOptMaterializations.useMaterializedViews(originalRoot,
+            getMaterializationIndex());
     for (Pair<RelNode, List<RelOptMaterialization>> use : materializationUses) {
       RelNode rel = use.left;
       Hook.SUB.run(rel);
@@ -358,9 +375,7 @@ public class VolcanoPlanner extends AbstractRelOptPlanner {
     // Register table rels of materialized views that cannot find a substitution
     // in root rel transformation but can potentially be useful.
     final Set<RelOptMaterialization> applicableMaterializations =
-        new HashSet<>(
-            RelOptMaterializations.getApplicableMaterializations(
-                originalRoot, materializations));
+        new HashSet<>(getMaterializationIndex().getApplicable(originalRoot));
     for (Pair<RelNode, List<RelOptMaterialization>> use : materializationUses) {
       applicableMaterializations.removeAll(use.right);
     }
@@ -440,6 +455,7 @@ public class VolcanoPlanner extends AbstractRelOptPlanner {
     this.ruleQueue.clear();
     this.ruleNames.clear();
     this.materializations.clear();
+    this.materializationIndex = null;
     this.latticeByName.clear();
   }
 
@@ -588,6 +604,13 @@ public class VolcanoPlanner extends AbstractRelOptPlanner {
    * query
    */
   public RelNode findBestExp() {
+    try (Hook.Closeable ignore = RelOptProfiler.enter(getProfiler(),
+        root.getCluster())) {
+      return findBestExp_();
+    }
+  }
+
+  private RelNode findBestExp_() {
     ensureRootConverters();
     registerMaterializations();
     int cumulativeTicks = 0;
@@ -1671,12 +1694,17 @@ public class VolcanoPlanner extends AbstractRelOptPlanner {
 
   // implement RelOptPlanner
   public void addListener(RelOptListener newListener) {
-    // TODO jvs 6-Apr-2006:  new superclass AbstractRelOptPlanner
-    // now defines a multicast listener; just need to hook it in
-    if (listener != null) {
-      throw Util.needToImplement("multiple VolcanoPlanner listeners");
+    if (listener == null) {
+      listener = newListener;
+    } else if (listener instanceof MulticastRelOptListener) {
+      ((MulticastRelOptListener) listener).addListener(newListener);
+    } else {
+      final MulticastRelOptListener multicastListener =
+          new MulticastRelOptListener();
+      multicastListener.addListener(listener);
+      multicastListener.addListener(newListener);
+      listener = multicastListener;
     }
-    listener = newListener;
   }
 
   // implement RelOptPlanner
@@ -1792,6 +1820,9 @@ public class VolcanoPlanner extends AbstractRelOptPlanner {
               getOperand0(),
               rels,
               nodeInputs);
+      if (volcanoPlanner.getProfiler() != null) {
+        volcanoPlanner.getProfiler().matchCreated(getRule());
+      }
       volcanoPlanner.ruleQueue.addMatch(match);
     }
   }
@@ -20,6 +20,7 @@ import org.apache.calcite.DataContext;
 import org.apache.calcite.adapter.enumerable.EnumerableBindable;
 import org.apache.calcite.adapter.enumerable.EnumerableCalc;
 import org.apache.calcite.adapter.enumerable.EnumerableConvention;
+import org.apache.calcite.adapter.enumerable.EnumerableIndexRule;
 import org.apache.calcite.adapter.enumerable.EnumerableInterpretable;
 import org.apache.calcite.adapter.enumerable.EnumerableInterpreterRule;
 import org.apache.calcite.adapter.enumerable.EnumerableRel;
@@ -58,6 +59,7 @@ import org.apache.calcite.plan.ConventionTraitDef;
 import org.apache.calcite.plan.RelOptCluster;
 import org.apache.calcite.plan.RelOptCostFactory;
 import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelOptProfiler;
 import org.apache.calcite.plan.RelOptRule;
 import org.apache.calcite.plan.RelOptTable;
 import org.apache.calcite.plan.RelOptUtil;
@@ -73,6 +75,7 @@ import org.apache.calcite.rel.core.Filter;
 import org.apache.calcite.rel.core.Project;
 import org.apache.calcite.rel.core.Sort;
 import org.apache.calcite.rel.core.TableScan;
+import org.apache.calcite.rel.metadata.RelMetadataCache;
 import org.apache.calcite.rel.rules.AbstractMaterializedViewRule;
 import org.apache.calcite.rel.rules.AggregateExpandDistinctAggregatesRule;
 import org.apache.calcite.rel.rules.AggregateReduceFunctionsRule;
@@ -108,6 +111,7 @@ import org.apache.calcite.rex.RexProgram;
 import org.apache.calcite.runtime.Bindable;
 import org.apache.calcite.runtime.Hook;
 import org.apache.calcite.runtime.Typed;
+import org.apache.calcite.schema.Schema;
 import org.apache.calcite.schema.Schemas;
 import org.apache.calcite.schema.Table;
 import org.apache.calcite.server.CalciteServerStatement;
@@ -153,6 +157,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 
 import static org.apache.calcite.util.Static.RESOURCE;
 
@@ -186,6 +191,13 @@ public class CalcitePrepareImpl implements CalcitePrepare {
   /** Whether the streaming is enabled. */
   public static final boolean ENABLE_STREAM = true;
 
+  /** Metadata caches, one per connection. Keyed by the underlying schema of
+   * the connection's root schema, which the snapshots that statements plan
+   * against share. Weak keys, so that a cache is discarded when its
+   * connection is. */
+  private static final Map<Schema, RelMetadataCache> METADATA_CACHES =
+      new WeakHashMap<>();
+
   private static final Set<String> SIMPLE_SQLS =
       ImmutableSet.of(
           "SELECT 1",
@@ -215,7 +227,9 @@ public class CalcitePrepareImpl implements CalcitePrepare {
           EnumerableRules.ENUMERABLE_VALUES_RULE,
           EnumerableRules.ENUMERABLE_WINDOW_RULE,
           EnumerableRules.ENUMERABLE_TABLE_SCAN_RULE,
-          EnumerableRules.ENUMERABLE_TABLE_FUNCTION_SCAN_RULE);
+          EnumerableRules.ENUMERABLE_TABLE_FUNCTION_SCAN_RULE,
+          EnumerableIndexRule.FILTER,
+          EnumerableIndexRule.JOIN);
 
   private static final List<RelOptRule> DEFAULT_RULES =
       ImmutableList.of(
@@ -513,6 +527,26 @@ public class CalcitePrepareImpl implements CalcitePrepare {
     return createPlanner(prepareContext, null, null);
   }
 
+  /** Returns the metadata cache of the connection that is preparing a
+   * statement, creating it if necessary; or null if the connection does not
+   * cache metadata. */
+  private static RelMetadataCache metadataCache(
+      CalcitePrepare.Context prepareContext) {
+    final long size = prepareContext.config().metadataCacheSize();
+    if (size <= 0) {
+      return null;
+    }
+    final Schema root = prepareContext.getRootSchema().root().schema;
+    synchronized (METADATA_CACHES) {
+      RelMetadataCache cache = METADATA_CACHES.get(root);
+      if (cache == null) {
+        cache = new RelMetadataCache(size);
+        METADATA_CACHES.put(root, cache);
+      }
+      return cache;
+    }
+  }
+
   /** Creates a query planner and initializes it with a default set of
    * rules. */
   protected RelOptPlanner createPlanner(
@@ -520,7 +554,8 @@ public class CalcitePrepareImpl implements CalcitePrepare {
       org.apache.calcite.plan.Context externalContext,
       RelOptCostFactory costFactory) {
     if (externalContext == null) {
-      externalContext = Contexts.of(prepareContext.config());
+      externalContext = Contexts.of(prepareContext.config(),
+          metadataCache(prepareContext));
     }
     final VolcanoPlanner planner =
         new VolcanoPlanner(costFactory, externalContext);
@@ -590,6 +625,10 @@ public class CalcitePrepareImpl implements CalcitePrepare {
         });
     }
 
+    if (prepareContext.config().plannerProfile()) {
+      planner.setProfiler(new RelOptProfiler());
+    }
+
     Hook.PLANNER.run(planner); // allow test to add or remove rules
 
     return planner;
@@ -836,7 +875,14 @@ public class CalcitePrepareImpl implements CalcitePrepare {
             ? Meta.CursorFactory.ARRAY
             : Meta.CursorFactory.deduce(columns, resultClazz);
     //noinspection unchecked
-    final Bindable<T> bindable = preparedResult.getBindable(cursorFactory);
+    Bindable<T> bindable = preparedResult.getBindable(cursorFactory);
+    if (context.config().resultCache()
+        && !preparedResult.isDml()
+        && preparedResult instanceof Prepare.PreparedResultImpl) {
+      bindable = QueryResultCache.wrap(bindable,
+          ((Prepare.PreparedResultImpl) preparedResult).getRootRel(),
+          cursorFactory, parameters.size(), context.config().resultCacheTtl());
+    }
     return new CalciteSignature<>(
         query.sql,
         parameters,
@@ -1241,6 +1287,9 @@ public class CalcitePrepareImpl implements CalcitePrepare {
     @Override protected PreparedResult implement(RelRoot root) {
       RelDataType resultType = root.rel.getRowType();
       boolean isDml = root.kind.belongsTo(SqlKind.DML);
+      // The expression that is executed, including any projection that
+      // removes fields the query does not return.
+      RelNode rel = root.rel;
       final Bindable bindable;
       if (resultConvention == BindableConvention.INSTANCE) {
         bindable = Interpreters.bindable(root.rel);
@@ -1255,6 +1304,7 @@ public class CalcitePrepareImpl implements CalcitePrepare {
           RexProgram program = RexProgram.create(enumerable.getRowType(),
               projects, null, root.validatedRowType, rexBuilder);
           enumerable = EnumerableCalc.create(enumerable, program);
+          rel = enumerable;
         }
 
         try {
@@ -1281,7 +1331,7 @@ public class CalcitePrepareImpl implements CalcitePrepare {
           root.collation.getFieldCollations().isEmpty()
               ? ImmutableList.<RelCollation>of()
               : ImmutableList.of(root.collation),
-          root.rel,
+          rel,
           mapTableModOp(isDml, root.kind),
           isDml) {
         public String getCode() {
@@ -22,6 +22,7 @@ import org.apache.calcite.avatica.Meta;
 import org.apache.calcite.jdbc.CalcitePrepare;
 import org.apache.calcite.jdbc.CalciteSchema;
 import org.apache.calcite.jdbc.CalciteSchema.LatticeEntry;
+import org.apache.calcite.plan.AbstractRelOptPlanner;
 import org.apache.calcite.plan.Convention;
 import org.apache.calcite.plan.RelOptCluster;
 import org.apache.calcite.plan.RelOptLattice;
@@ -190,6 +191,11 @@ public abstract class Prepare {
     if (LOGGER.isDebugEnabled()) {
       LOGGER.debug("Plan after physical tweaks: {}",
           RelOptUtil.toString(rootRel4, SqlExplainLevel.ALL_ATTRIBUTES));
+      if (planner instanceof AbstractRelOptPlanner
+          && ((AbstractRelOptPlanner) planner).getProfiler() != null) {
+        LOGGER.debug("Planner profile: {}",
+            ((AbstractRelOptPlanner) planner).getProfiler().toJson());
+      }
     }
 
     return root.withRel(rootRel4);
@@ -0,0 +1,453 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.prepare;
+
+import org.apache.calcite.DataContext;
+import org.apache.calcite.avatica.Meta;
+import org.apache.calcite.avatica.util.ByteString;
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.plan.RelOptTable;
+import org.apache.calcite.plan.RelOptUtil;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.RelVisitor;
+import org.apache.calcite.rel.core.Aggregate;
+import org.apache.calcite.rel.core.AggregateCall;
+import org.apache.calcite.rel.core.TableFunctionScan;
+import org.apache.calcite.rel.core.TableModify;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexShuttle;
+import org.apache.calcite.runtime.Bindable;
+import org.apache.calcite.schema.VersionedTable;
+import org.apache.calcite.sql.SqlExplainLevel;
+import org.apache.calcite.sql.SqlOperator;
+import org.apache.calcite.util.Util;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Cache of the results of queries.
+ *
+ * <p>If the connection property
+ * {@link org.apache.calcite.config.CalciteConnectionProperty#RESULT_CACHE} is
+ * true, {@link CalcitePrepareImpl} {@link #wrap wraps} the executable form of
+ * each cacheable query so that its results are read from the cache, or are
+ * stored in the cache after they have been computed. A query is cacheable if
+ * it is not DML; if every table it reads implements {@link VersionedTable};
+ * and if it calls no non-deterministic or dynamic functions (such as
+ * {@code RAND} and {@code CURRENT_TIMESTAMP}) and no table functions.</p>
+ *
+ * <p>Results are keyed by the digest of the optimized plan, the values of
+ * the bound parameters, and the identity and version of each table that the
+ * plan reads (found using {@link RelOptUtil#findTables(RelNode)}). When a
+ * table's contents change, its version changes, and results computed from
+ * the old contents are no longer found.</p>
+ *
+ * <p>Results are stored only if the whole result was read. The cache is
+ * bounded by the estimated size of the results it holds; when it is full, it
+ * evicts the least recently used results. A result also expires after the
+ * time specified by
+ * {@link org.apache.calcite.config.CalciteConnectionProperty#RESULT_CACHE_TTL}
+ * when it was stored.</p>
+ *
+ * <p>The cache is safe for concurrent use.</p>
+ */
+public class QueryResultCache {
+  /** Default maximum total size of cached results, in bytes. */
+  public static final long DEFAULT_MAXIMUM_BYTES = 64L << 20;
+
+  private static volatile QueryResultCache instance =
+      new QueryResultCache(DEFAULT_MAXIMUM_BYTES);
+
+  /** For testing. */
+  private static final ThreadLocal<QueryResultCache> THREAD_INSTANCE =
+      new ThreadLocal<>();
+
+  private final long maximumBytes;
+  private final Cache<Key, Entry> cache;
+
+  /** Creates a cache that holds results whose estimated size is at most
+   * {@code maximumBytes} bytes in total. */
+  public QueryResultCache(long maximumBytes) {
+    Preconditions.checkArgument(maximumBytes > 0);
+    this.maximumBytes = maximumBytes;
+    this.cache = CacheBuilder.newBuilder()
+        .maximumWeight(maximumBytes)
+        .weigher(
+            new Weigher<Key, Entry>() {
+              public int weigh(Key key, Entry entry) {
+                return (int) Math.min(Integer.MAX_VALUE, entry.bytes);
+              }
+            })
+        .recordStats()
+        .build();
+  }
+
+  /** Returns the instance of the cache. Usually the global one, but returns a
+   * thread-local one during testing (when {@link #setThreadLocal()} has been
+   * called by the current thread). */
+  public static QueryResultCache instance() {
+    final QueryResultCache cache = THREAD_INSTANCE.get();
+    if (cache != null) {
+      return cache;
+    }
+    return instance;
+  }
+
+  /** Replaces the global instance, for example with one of a different
+   * size. */
+  public static void setInstance(QueryResultCache cache) {
+    instance = Preconditions.checkNotNull(cache);
+  }
+
+  /** Gives the current thread a private, empty instance of the cache. For
+   * tests. */
+  public static void setThreadLocal() {
+    THREAD_INSTANCE.set(new QueryResultCache(DEFAULT_MAXIMUM_BYTES));
+  }
+
+  /** Returns the maximum total size of cached results, in bytes. */
+  public long getMaximumBytes() {
+    return maximumBytes;
+  }
+
+  /** Returns the number of cached results. */
+  public long size() {
+    return cache.size();
+  }
+
+  /** Returns statistics about hits, misses and evictions. */
+  public CacheStats stats() {
+    return cache.stats();
+  }
+
+  /** Removes all cached results. */
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  /** Returns the rows stored for a key, or null if there are none or they
+   * have expired. */
+  private List<Object> get(Key key) {
+    final Entry entry = cache.getIfPresent(key);
+    if (entry == null) {
+      return null;
+    }
+    if (System.currentTimeMillis() >= entry.expiryMillis) {
+      cache.invalidate(key);
+      return null;
+    }
+    return entry.rows;
+  }
+
+  private void put(Key key, List<Object> rows, long bytes, long ttlMillis) {
+    cache.put(key,
+        new Entry(Collections.unmodifiableList(rows), bytes,
+            System.currentTimeMillis() + ttlMillis));
+  }
+
+  /** Wraps the executable form of a query so that its results are cached,
+   * if the query is cacheable; otherwise returns it unchanged.
+   *
+   * @param bindable Executable form of the query
+   * @param rel Optimized plan
+   * @param cursorFactory Format of the rows that the query returns
+   * @param parameterCount Number of bound parameters
+   * @param ttlMillis How long results remain valid, in milliseconds
+   */
+  public static <T> Bindable<T> wrap(Bindable<T> bindable, RelNode rel,
+      Meta.CursorFactory cursorFactory, int parameterCount, long ttlMillis) {
+    if (ttlMillis <= 0 || !isDeterministic(rel)) {
+      return bindable;
+    }
+    final ImmutableList.Builder<VersionedTable> tables =
+        ImmutableList.builder();
+    for (RelOptTable relOptTable : RelOptUtil.findTables(rel)) {
+      final VersionedTable table = relOptTable.unwrap(VersionedTable.class);
+      if (table == null) {
+        return bindable;
+      }
+      tables.add(table);
+    }
+    // Two queries with the same plan may return rows in different formats
+    // (say, arrays or objects), so the format is part of the digest.
+    final String digest =
+        RelOptUtil.toString(rel, SqlExplainLevel.DIGEST_ATTRIBUTES)
+            + rel.getRowType().getFullTypeString() + "\n"
+            + cursorFactory.style + ":" + cursorFactory.clazz;
+    return new CachingBindable<>(bindable, digest, tables.build(),
+        parameterCount, ttlMillis);
+  }
+
+  /** Returns whether a plan gives the same result each time it is executed
+   * against tables whose contents have not changed. */
+  static boolean isDeterministic(RelNode rel) {
+    final RexShuttle shuttle = new RexShuttle() {
+      @Override public RexNode visitCall(RexCall call) {
+        if (!isDeterministic(call.getOperator())) {
+          throw Util.FoundOne.NULL;
+        }
+        return super.visitCall(call);
+      }
+    };
+    try {
+      new RelVisitor() {
+        @Override public void visit(RelNode node, int ordinal,
+            RelNode parent) {
+          if (node instanceof TableModify
+              || node instanceof TableFunctionScan) {
+            throw Util.FoundOne.NULL;
+          }
+          if (node instanceof Aggregate) {
+            for (AggregateCall aggCall
+                : ((Aggregate) node).getAggCallList()) {
+              if (!isDeterministic(aggCall.getAggregation())) {
+                throw Util.FoundOne.NULL;
+              }
+            }
+          }
+          node.accept(shuttle);
+          super.visit(node, ordinal, parent);
+        }
+      }.go(rel);
+      return true;
+    } catch (Util.FoundOne e) {
+      Util.swallow(e, null);
+      return false;
+    }
+  }
+
+  private static boolean isDeterministic(SqlOperator operator) {
+    return operator.isDeterministic() && !operator.isDynamicFunction();
+  }
+
+  /** Estimates the number of bytes of memory used by a value. */
+  static long estimateSize(Object o) {
+    if (o == null) {
+      return 8L;
+    }
+    if (o instanceof Object[]) {
+      long size = 16L;
+      for (Object e : (Object[]) o) {
+        size += 8L + estimateSize(e);
+      }
+      return size;
+    }
+    if (o instanceof String) {
+      return 40L + 2L * ((String) o).length();
+    }
+    if (o instanceof ByteString) {
+      return 32L + ((ByteString) o).length();
+    }
+    if (o instanceof byte[]) {
+      return 16L + ((byte[]) o).length;
+    }
+    if (o instanceof List) {
+      long size = 40L;
+      for (Object e : (List) o) {
+        size += 8L + estimateSize(e);
+      }
+      return size;
+    }
+    // Boxed primitives, dates, and other small objects.
+    return 24L;
+  }
+
+  /** Key of a cached result. */
+  private static class Key {
+    final String digest;
+    final List<Object> parameters;
+    final List<TableVersion> tableVersions;
+
+    Key(String digest, List<Object> parameters,
+        List<TableVersion> tableVersions) {
+      this.digest = digest;
+      this.parameters = parameters;
+      this.tableVersions = tableVersions;
+    }
+
+    @Override public int hashCode() {
+      return Objects.hash(digest, parameters, tableVersions);
+    }
+
+    @Override public boolean equals(Object obj) {
+      return obj == this
+          || obj instanceof Key
+          && digest.equals(((Key) obj).digest)
+          && parameters.equals(((Key) obj).parameters)
+          && tableVersions.equals(((Key) obj).tableVersions);
+    }
+  }
+
+  /** A table and the version of its contents. Tables are compared by
+   * identity, so that identically named tables in different connections
+   * are distinct. */
+  private static class TableVersion {
+    final VersionedTable table;
+    final long version;
+
+    TableVersion(VersionedTable table, long version) {
+      this.table = table;
+      this.version = version;
+    }
+
+    @Override public int hashCode() {
+      return System.identityHashCode(table) * 31
+          + (int) (version ^ (version >>> 32));
+    }
+
+    @Override public boolean equals(Object obj) {
+      return obj == this
+          || obj instanceof TableVersion
+          && table == ((TableVersion) obj).table
+          && version == ((TableVersion) obj).version;
+    }
+  }
+
+  /** Cached result. */
+  private static class Entry {
+    final List<Object> rows;
+    final long bytes;
+    final long expiryMillis;
+
+    Entry(List<Object> rows, long bytes, long expiryMillis) {
+      this.rows = rows;
+      this.bytes = bytes;
+      this.expiryMillis = expiryMillis;
+    }
+  }
+
+  /** Executable form of a query that reads its results from the cache if
+   * possible, and otherwise stores them in the cache as they are read. */
+  private static class CachingBindable<T> implements Bindable<T> {
+    private final Bindable<T> bindable;
+    private final String digest;
+    private final ImmutableList<VersionedTable> tables;
+    private final int parameterCount;
+    private final long ttlMillis;
+
+    CachingBindable(Bindable<T> bindable, String digest,
+        ImmutableList<VersionedTable> tables, int parameterCount,
+        long ttlMillis) {
+      this.bindable = bindable;
+      this.digest = digest;
+      this.tables = tables;
+      this.parameterCount = parameterCount;
+      this.ttlMillis = ttlMillis;
+    }
+
+    public Enumerable<T> bind(DataContext dataContext) {
+      final List<Object> parameters = new ArrayList<>();
+      for (int i = 0; i < parameterCount; i++) {
+        Object value = dataContext.get("?" + i);
+        if (value instanceof byte[]) {
+          // Arrays do not implement equals; byte strings do.
+          value = new ByteString((byte[]) value);
+        }
+        parameters.add(value);
+      }
+      // Read the versions before executing the query. If a table changes
+      // while the query runs, the result is stored under the old version,
+      // and will not be found.
+      final List<TableVersion> tableVersions = new ArrayList<>();
+      for (VersionedTable table : tables) {
+        tableVersions.add(new TableVersion(table, table.getVersion()));
+      }
+      final Key key = new Key(digest, parameters, tableVersions);
+      final QueryResultCache cache = instance();
+      final List<Object> rows = cache.get(key);
+      if (rows != null) {
+        //noinspection unchecked
+        return Linq4j.asEnumerable((List<T>) (List) rows);
+      }
+      return new AbstractEnumerable<T>() {
+        public Enumerator<T> enumerator() {
+          return new CachingEnumerator<>(
+              bindable.bind(dataContext).enumerator(), cache, key, ttlMillis);
+        }
+      };
+    }
+  }
+
+  /** Enumerator that stores the rows that it reads in the cache, if it reads
+   * all of them and they fit. */
+  private static class CachingEnumerator<T> implements Enumerator<T> {
+    private final Enumerator<T> enumerator;
+    private final QueryResultCache cache;
+    private final Key key;
+    private final long ttlMillis;
+    /** Rows read so far, or null if the rows will not be stored. */
+    private List<Object> rows = new ArrayList<>();
+    private long bytes;
+
+    CachingEnumerator(Enumerator<T> enumerator, QueryResultCache cache,
+        Key key, long ttlMillis) {
+      this.enumerator = enumerator;
+      this.cache = cache;
+      this.key = key;
+      this.ttlMillis = ttlMillis;
+    }
+
+    public T current() {
+      return enumerator.current();
+    }
+
+    public boolean moveNext() {
+      if (enumerator.moveNext()) {
+        if (rows != null) {
+          final T row = enumerator.current();
+          rows.add(row);
+          bytes += 8L + estimateSize(row);
+          if (bytes > cache.maximumBytes) {
+            rows = null; // too big to cache
+          }
+        }
+        return true;
+      }
+      if (rows != null) {
+        cache.put(key, rows, bytes, ttlMillis);
+        rows = null;
+      }
+      return false;
+    }
+
+    public void reset() {
+      enumerator.reset();
+      rows = new ArrayList<>();
+      bytes = 0L;
+    }
+
+    public void close() {
+      enumerator.close();
+    }
+  }
+}
+
+// End QueryResultCache.java
@@ -43,12 +43,15 @@ import org.apache.calcite.schema.Schema;
 import org.apache.calcite.schema.SchemaPlus;
 import org.apache.calcite.schema.SchemaVersion;
 import org.apache.calcite.schema.Schemas;
+import org.apache.calcite.schema.Statistic;
 import org.apache.calcite.schema.StreamableTable;
 import org.apache.calcite.schema.Table;
 import org.apache.calcite.schema.TranslatableTable;
 import org.apache.calcite.sql.SqlAccessType;
 import org.apache.calcite.sql.validate.SqlModality;
 import org.apache.calcite.sql.validate.SqlMonotonicity;
+import org.apache.calcite.statistic.StatisticsService;
+import org.apache.calcite.statistic.TableStatistic;
 import org.apache.calcite.util.ImmutableBitSet;
 import org.apache.calcite.util.Pair;
 import org.apache.calcite.util.Util;
@@ -185,6 +188,12 @@ public class RelOptTableImpl extends Prepare.AbstractPreparingTable {
     if (clazz.isInstance(table)) {
       return clazz.cast(table);
     }
+    if (clazz == TableStatistic.class) {
+      final StatisticsService service = statisticsService();
+      return service == null
+          ? null
+          : clazz.cast(service.getStore().get(names));
+    }
     if (clazz == CalciteSchema.class) {
       return clazz.cast(
           Schemas.subSchema(((CalciteCatalogReader) schema).rootSchema,
@@ -222,7 +231,7 @@ public class RelOptTableImpl extends Prepare.AbstractPreparingTable {
       return rowCount;
     }
     if (table != null) {
-      final Double rowCount = table.getStatistic().getRowCount();
+      final Double rowCount = statistic().getRowCount();
       if (rowCount != null) {
         return rowCount;
       }
@@ -230,6 +239,26 @@ public class RelOptTableImpl extends Prepare.AbstractPreparingTable {
     return 100d;
   }
 
+  /** Returns the statistic of the table, preferring statistics that have
+   * been collected by {@link StatisticsService}. Table must not be null. */
+  private Statistic statistic() {
+    final StatisticsService service = statisticsService();
+    if (service == null) {
+      return table.getStatistic();
+    }
+    return service.getStatistic(names, table);
+  }
+
+  /** Returns the statistics service of the connection, or null if this
+   * table does not belong to a connection's schema. */
+  private StatisticsService statisticsService() {
+    if (schema instanceof CalciteCatalogReader) {
+      return StatisticsService.instance(
+          ((CalciteCatalogReader) schema).rootSchema);
+    }
+    return null;
+  }
+
   public RelOptSchema getRelOptSchema() {
     return schema;
   }
@@ -267,28 +296,28 @@ public class RelOptTableImpl extends Prepare.AbstractPreparingTable {
 
   public List<RelCollation> getCollationList() {
     if (table != null) {
-      return table.getStatistic().getCollations();
+      return statistic().getCollations();
     }
     return ImmutableList.of();
   }
 
   public RelDistribution getDistribution() {
     if (table != null) {
-      return table.getStatistic().getDistribution();
+      return statistic().getDistribution();
     }
     return RelDistributionTraitDef.INSTANCE.getDefault();
   }
 
   public boolean isKey(ImmutableBitSet columns) {
     if (table != null) {
-      return table.getStatistic().isKey(columns);
+      return statistic().isKey(columns);
     }
     return false;
   }
 
   public List<RelReferentialConstraint> getReferentialConstraints() {
     if (table != null) {
-      return table.getStatistic().getReferentialConstraints();
+      return statistic().getReferentialConstraints();
     }
     return ImmutableList.of();
   }
@@ -313,7 +342,7 @@ public class RelOptTableImpl extends Prepare.AbstractPreparingTable {
   public SqlMonotonicity getMonotonicity(String columnName) {
     final int i = rowType.getFieldNames().indexOf(columnName);
     if (i >= 0) {
-      for (RelCollation collation : table.getStatistic().getCollations()) {
+      for (RelCollation collation : statistic().getCollations()) {
         final RelFieldCollation fieldCollation =
             collation.getFieldCollations().get(0);
         if (fieldCollation.getFieldIndex() == i) {
@@ -26,6 +26,7 @@ import org.apache.calcite.linq4j.Ord;
 import org.apache.calcite.linq4j.tree.ClassDeclaration;
 import org.apache.calcite.linq4j.tree.MemberDeclaration;
 import org.apache.calcite.linq4j.tree.Primitive;
+import org.apache.calcite.plan.RelOptProfiler;
 import org.apache.calcite.plan.hep.HepRelVertex;
 import org.apache.calcite.plan.volcano.AbstractConverter;
 import org.apache.calcite.plan.volcano.RelSubset;
@@ -52,6 +53,7 @@ import org.apache.calcite.rel.logical.LogicalWindow;
 import org.apache.calcite.rel.stream.LogicalChi;
 import org.apache.calcite.rel.stream.LogicalDelta;
 import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.runtime.DaemonExecutors;
 import org.apache.calcite.util.ControlFlowException;
 import org.apache.calcite.util.Pair;
 import org.apache.calcite.util.Util;
@@ -69,13 +71,20 @@ import org.codehaus.commons.compiler.CompileException;
 import org.codehaus.commons.compiler.CompilerFactoryFactory;
 import org.codehaus.commons.compiler.IClassBodyEvaluator;
 import org.codehaus.commons.compiler.ICompilerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.StringReader;
 import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -83,8 +92,12 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.annotation.Nonnull;
 
 /**
@@ -94,6 +107,9 @@ import javax.annotation.Nonnull;
 public class JaninoRelMetadataProvider implements RelMetadataProvider {
   private final RelMetadataProvider provider;
 
+  /** Profiler that records the time spent in each handler, or null. */
+  private final RelOptProfiler profiler;
+
   // Constants and static fields
 
   public static final JaninoRelMetadataProvider DEFAULT =
@@ -115,6 +131,28 @@ public class JaninoRelMetadataProvider implements RelMetadataProvider {
             }
           });
 
+  /** Name of a file in which {@link #DEFAULT} records the classes of
+   * relational expression for which it has generated handlers, or null.
+   *
+   * <p>Set using the system property "calcite.metadata.profile". The next
+   * time the JVM starts, those classes are registered before any handler is
+   * generated, so that each handler is compiled once rather than once per
+   * newly-seen class. */
+  private static final String PROFILE =
+      System.getProperty("calcite.metadata.profile");
+
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(JaninoRelMetadataProvider.class);
+
+  /** Whether classes have been registered since {@link #PROFILE} was last
+   * written. */
+  private static final AtomicBoolean PROFILE_DIRTY = new AtomicBoolean();
+
+  /** Executor that writes {@link #PROFILE}, so that planning does not wait
+   * for the file system. */
+  private static final ExecutorService PROFILE_WRITER =
+      DaemonExecutors.newSingleThreadExecutor("calcite-metadata-profile-%d");
+
   // Pre-register the most common relational operators, to reduce the number of
   // times we re-generate.
   static {
@@ -150,11 +188,41 @@ public class JaninoRelMetadataProvider implements RelMetadataProvider {
             EnumerableProject.class,
             EnumerableJoin.class,
             EnumerableTableScan.class));
+    if (PROFILE != null) {
+      DEFAULT.register(loadProfile(new File(PROFILE)));
+      // The writer's thread is a daemon, so write any pending changes when
+      // the JVM shuts down.
+      Runtime.getRuntime().addShutdownHook(
+          new Thread("calcite-metadata-profile-flush") {
+            @Override public void run() {
+              flushProfile();
+            }
+          });
+    }
+    if (Util.getBooleanProperty("calcite.metadata.warmUp")) {
+      // Generate handlers in the background, so that they are likely to be
+      // ready by the time the first query is planned.
+      DaemonExecutors.newThread("calcite-metadata-warm-up",
+          new Runnable() {
+            public void run() {
+              final ExecutorService executor =
+                  DaemonExecutors.newProcessorThreadPool(
+                      "calcite-metadata-warm-up-%d");
+              try {
+                DEFAULT.generateAll(executor);
+              } finally {
+                executor.shutdown();
+              }
+            }
+          }).start();
+    }
   }
 
   /** Private constructor; use {@link #of}. */
-  private JaninoRelMetadataProvider(RelMetadataProvider provider) {
+  private JaninoRelMetadataProvider(RelMetadataProvider provider,
+      RelOptProfiler profiler) {
     this.provider = provider;
+    this.profiler = profiler;
   }
 
   /** Creates a JaninoRelMetadataProvider.
@@ -165,13 +233,32 @@ public class JaninoRelMetadataProvider implements RelMetadataProvider {
     if (provider instanceof JaninoRelMetadataProvider) {
       return (JaninoRelMetadataProvider) provider;
     }
-    return new JaninoRelMetadataProvider(provider);
+    return new JaninoRelMetadataProvider(provider, null);
+  }
+
+  /** Returns the provider whose handlers this provider calls. */
+  RelMetadataProvider underlyingProvider() {
+    return provider;
+  }
+
+  /** Returns a provider that uses the same handlers as this one, wrapped so
+   * that a profiler records the time spent in each call.
+   *
+   * <p>Handlers are generated, or found in the cache, exactly as for this
+   * provider; only the wrapper is new. If {@code profiler} is null, returns
+   * a provider that does not profile. */
+  public JaninoRelMetadataProvider profiled(RelOptProfiler profiler) {
+    if (profiler == this.profiler) {
+      return this;
+    }
+    return new JaninoRelMetadataProvider(provider, profiler);
   }
 
   @Override public boolean equals(Object obj) {
     return obj == this
         || obj instanceof JaninoRelMetadataProvider
-        && ((JaninoRelMetadataProvider) obj).provider.equals(provider);
+        && ((JaninoRelMetadataProvider) obj).provider.equals(provider)
+        && ((JaninoRelMetadataProvider) obj).profiler == profiler;
   }
 
   @Override public int hashCode() {
@@ -283,6 +370,18 @@ public class JaninoRelMetadataProvider implements RelMetadataProvider {
           .append(method.e.getReturnType().getName())
           .append(") v;\n")
           .append("    }\n")
+          .append("    final java.util.List sharedKey = mq.sharedKey(key);\n")
+          .append("    if (sharedKey != null) {\n")
+          .append("      final Object s = mq.getShared(sharedKey);\n")
+          .append("      if (s != null) {\n")
+          .append("        mq.map.put(key, s);\n")
+          .append("        return s == ")
+          .append(NullSentinel.class.getName())
+          .append(".INSTANCE ? null : (")
+          .append(method.e.getReturnType().getName())
+          .append(") s;\n")
+          .append("      }\n")
+          .append("    }\n")
           .append("    mq.map.put(key,")
           .append(NullSentinel.class.getName())
           .append(".ACTIVE);\n")
@@ -297,6 +396,9 @@ public class JaninoRelMetadataProvider implements RelMetadataProvider {
           .append("      mq.map.put(key, ")
           .append(NullSentinel.class.getName())
           .append(".mask(x));\n")
+          .append("      if (sharedKey != null) {\n")
+          .append("        mq.putShared(sharedKey, x);\n")
+          .append("      }\n")
           .append("      return x;\n")
           .append("    } catch (")
           .append(Exception.class.getName())
@@ -461,7 +563,8 @@ public class JaninoRelMetadataProvider implements RelMetadataProvider {
       final Key key = new Key((MetadataDef) def, provider,
           ImmutableList.copyOf(ALL_RELS));
       //noinspection unchecked
-      return (H) HANDLERS.get(key);
+      final H handler = (H) HANDLERS.get(key);
+      return profiler == null ? handler : profiler.wrap(def, handler);
     } catch (UncheckedExecutionException | ExecutionException e) {
       Util.throwIfUnchecked(e.getCause());
       throw new RuntimeException(e.getCause());
@@ -472,6 +575,9 @@ public class JaninoRelMetadataProvider implements RelMetadataProvider {
       Class<? extends RelNode> rClass, MetadataDef<M> def) {
     if (ALL_RELS.add(rClass)) {
       HANDLERS.invalidateAll();
+      if (PROFILE != null && provider == DEFAULT.provider) {
+        profileChanged();
+      }
     }
     //noinspection unchecked
     return (H) create(def);
@@ -499,6 +605,131 @@ public class JaninoRelMetadataProvider implements RelMetadataProvider {
     }
   }
 
+  /** Generates, in parallel, the handlers for every kind of built-in
+   * metadata, for all relational expression classes registered so far, and
+   * waits until they are ready.
+   *
+   * <p>Each handler is a class compiled by Janino; compiling them ahead of
+   * the first query moves that cost off the critical path. Handlers that have
+   * already been generated are not generated again.
+   *
+   * @return Handlers, one per kind of metadata */
+  public List<MetadataHandler> generateAll(ExecutorService executor) {
+    final ImmutableList<Class<? extends RelNode>> relClasses =
+        ImmutableList.copyOf(ALL_RELS);
+    final List<Future<MetadataHandler>> futures = new ArrayList<>();
+    for (final MetadataDef def : builtInDefs()) {
+      futures.add(
+          executor.submit(
+              new Callable<MetadataHandler>() {
+                public MetadataHandler call() throws Exception {
+                  return HANDLERS.get(new Key(def, provider, relClasses));
+                }
+              }));
+    }
+    final List<MetadataHandler> handlers = new ArrayList<>();
+    for (Future<MetadataHandler> future : futures) {
+      try {
+        handlers.add(future.get());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        Util.throwIfUnchecked(e.getCause());
+        throw new RuntimeException(e.getCause());
+      }
+    }
+    return handlers;
+  }
+
+  /** Returns the definitions of all kinds of metadata declared in
+   * {@link BuiltInMetadata}. */
+  static List<MetadataDef> builtInDefs() {
+    final List<MetadataDef> defs = new ArrayList<>();
+    for (Class<?> c : BuiltInMetadata.class.getClasses()) {
+      try {
+        final Field field = c.getField("DEF");
+        if (MetadataDef.class.isAssignableFrom(field.getType())
+            && Modifier.isStatic(field.getModifiers())) {
+          defs.add((MetadataDef) field.get(null));
+        }
+      } catch (NoSuchFieldException e) {
+        // not a kind of metadata
+      } catch (IllegalAccessException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    return defs;
+  }
+
+  /** Reads the names of relational expression classes from a profile file.
+   * Classes that cannot be loaded are ignored. */
+  static List<Class<? extends RelNode>> loadProfile(File file) {
+    final List<Class<? extends RelNode>> list = new ArrayList<>();
+    if (!file.exists()) {
+      return list;
+    }
+    try {
+      for (String line : Files.readAllLines(file.toPath(),
+          StandardCharsets.UTF_8)) {
+        final String name = line.trim();
+        if (name.isEmpty()) {
+          continue;
+        }
+        try {
+          final Class<?> c = Class.forName(name, false,
+              JaninoRelMetadataProvider.class.getClassLoader());
+          if (RelNode.class.isAssignableFrom(c)) {
+            //noinspection unchecked
+            list.add((Class<? extends RelNode>) c);
+          }
+        } catch (ClassNotFoundException e) {
+          // Class has been removed since the profile was written; ignore.
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Error while reading metadata profile "
+          + file, e);
+    }
+    return list;
+  }
+
+  /** Schedules a write of {@link #PROFILE} in the background, unless one is
+   * already pending. */
+  private static void profileChanged() {
+    if (PROFILE_DIRTY.compareAndSet(false, true)) {
+      PROFILE_WRITER.execute(
+          new Runnable() {
+            public void run() {
+              flushProfile();
+            }
+          });
+    }
+  }
+
+  /** Writes {@link #PROFILE} if classes have been registered since it was
+   * last written. */
+  private static void flushProfile() {
+    if (PROFILE_DIRTY.compareAndSet(true, false)) {
+      saveProfile(new File(PROFILE));
+    }
+  }
+
+  /** Writes the names of all registered relational expression classes to a
+   * profile file. The profile only makes planning faster, so if it cannot be
+   * written, logs a warning rather than failing. */
+  static void saveProfile(File file) {
+    final List<String> names = new ArrayList<>();
+    for (Class<? extends RelNode> c : ALL_RELS) {
+      names.add(c.getName());
+    }
+    try {
+      Files.write(file.toPath(), names, StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      LOGGER.warn("Error while writing metadata profile {}", file, e);
+    }
+  }
+
   /** Exception that indicates there there should be a handler for
    * this class but there is not. The action is probably to
    * re-generate the handler class. */
@@ -17,19 +17,24 @@
 package org.apache.calcite.rel.metadata;
 
 import org.apache.calcite.plan.RelOptUtil;
+import org.apache.calcite.plan.volcano.RelSubset;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.core.Aggregate;
 import org.apache.calcite.rel.core.Filter;
 import org.apache.calcite.rel.core.Project;
 import org.apache.calcite.rel.core.SemiJoin;
 import org.apache.calcite.rel.core.Sort;
+import org.apache.calcite.rel.core.TableScan;
 import org.apache.calcite.rel.core.Union;
 import org.apache.calcite.rex.RexBuilder;
 import org.apache.calcite.rex.RexNode;
 import org.apache.calcite.rex.RexUtil;
 import org.apache.calcite.sql.fun.SqlStdOperatorTable;
+import org.apache.calcite.statistic.ColumnStatistic;
+import org.apache.calcite.statistic.TableStatistic;
 import org.apache.calcite.util.BuiltInMethod;
 import org.apache.calcite.util.ImmutableBitSet;
+import org.apache.calcite.util.Util;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -182,6 +187,39 @@ public class RelMdSelectivity
     }
   }
 
+  /** Uses collected statistics, if the table has any, to estimate the
+   * selectivity of each conjunction of the predicate; guesses the
+   * selectivity of conjunctions that the statistics cannot estimate. */
+  public Double getSelectivity(TableScan rel, RelMetadataQuery mq,
+      RexNode predicate) {
+    final TableStatistic statistic =
+        rel.getTable().unwrap(TableStatistic.class);
+    if (statistic == null || predicate == null
+        || !rel.getRowType().getFieldNames().equals(columnNames(statistic))) {
+      return RelMdUtil.guessSelectivity(predicate);
+    }
+    double selectivity = 1d;
+    for (RexNode conjunction : RelOptUtil.conjunctions(predicate)) {
+      final Double s = statistic.selectivity(conjunction);
+      selectivity *= s != null ? s : RelMdUtil.guessSelectivity(conjunction);
+    }
+    return selectivity;
+  }
+
+  private static List<String> columnNames(TableStatistic statistic) {
+    final List<String> names = new ArrayList<>();
+    for (ColumnStatistic column : statistic.columns) {
+      names.add(column.name);
+    }
+    return names;
+  }
+
+  public Double getSelectivity(RelSubset rel, RelMetadataQuery mq,
+      RexNode predicate) {
+    return mq.getSelectivity(Util.first(rel.getBest(), rel.getOriginal()),
+        predicate);
+  }
+
   // Catch-all rule when none of the others apply.
   public Double getSelectivity(RelNode rel, RelMetadataQuery mq,
       RexNode predicate) {
@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.rel.metadata;
+
+import org.apache.calcite.plan.RelOptTable;
+import org.apache.calcite.plan.RelTrait;
+import org.apache.calcite.plan.hep.HepRelVertex;
+import org.apache.calcite.plan.volcano.RelSubset;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.RelWriter;
+import org.apache.calcite.schema.VersionedTable;
+import org.apache.calcite.sql.SqlExplainLevel;
+import org.apache.calcite.statistic.TableStatistic;
+import org.apache.calcite.util.Holder;
+import org.apache.calcite.util.Pair;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableSet;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cache of metadata results that is shared between
+ * {@link RelMetadataQuery} instances, and therefore between queries.
+ *
+ * <p>A {@link RelMetadataQuery} caches results only for as long as it lives,
+ * and results are keyed on the identity of relational expressions. This cache
+ * is keyed on a structural digest of the whole relational expression tree
+ * (see {@link #digest(RelNode)}), so a result computed for a sub-tree in one
+ * query can be re-used for a structurally identical sub-tree in another.
+ * The digest includes the {@link VersionedTable#getVersion() version} of
+ * every table that is read, and the time at which its statistics were
+ * collected, if any; so if a table's contents or statistics change, its
+ * entries are no longer found. Expressions that read a table that is not
+ * versioned are not cached. The key also contains the
+ * {@link RelMetadataProvider} that computed the result, because a cluster
+ * may use a provider other than the default.</p>
+ *
+ * <p>Expressions that contain a {@link RelSubset} are not cached, because the
+ * metadata of a subset changes as the Volcano planner adds expressions to it.
+ * Expressions inside a {@link HepRelVertex} are cached based on the vertex's
+ * current expression.</p>
+ *
+ * <p>Every kind of metadata is cached, except those whose results depend on
+ * the planner (such as cost) or refer to the objects of a particular query
+ * (such as column origins); see {@link #isShared(Object)}.</p>
+ *
+ * <p>The cache is bounded, and is safe for concurrent use. A cache is not
+ * global; a planner uses the cache in its
+ * {@link org.apache.calcite.plan.RelOptPlanner#getContext() context}, and a
+ * Calcite connection whose
+ * {@link org.apache.calcite.config.CalciteConnectionProperty#METADATA_CACHE_SIZE
+ * metadataCacheSize} property is positive has its own cache, which is
+ * shared by the planners of that connection's statements.</p>
+ */
+public class RelMetadataCache {
+  /** Kinds of metadata that are not cached. */
+  private static final ImmutableSet<Class<? extends Metadata>> NOT_SHARED =
+      ImmutableSet.of(
+          BuiltInMetadata.AllPredicates.class,
+          BuiltInMetadata.ColumnOrigin.class,
+          BuiltInMetadata.CumulativeCost.class,
+          BuiltInMetadata.ExpressionLineage.class,
+          BuiltInMetadata.NodeTypes.class,
+          BuiltInMetadata.NonCumulativeCost.class,
+          BuiltInMetadata.TableReferences.class);
+
+  private final Cache<List<Object>, Object> cache;
+
+  /** Creates a cache that holds at most {@code maximumSize} results. */
+  public RelMetadataCache(long maximumSize) {
+    Preconditions.checkArgument(maximumSize > 0);
+    this.cache = CacheBuilder.newBuilder()
+        .maximumSize(maximumSize)
+        .recordStats()
+        .build();
+  }
+
+  /** Returns the cached value for a key, or null if not present. A cached
+   * null value is returned as {@link NullSentinel#INSTANCE}. */
+  public Object get(List<Object> key) {
+    return cache.getIfPresent(key);
+  }
+
+  /** Stores a value, which may be null. */
+  public void put(List<Object> key, Object value) {
+    cache.put(key, NullSentinel.mask(value));
+  }
+
+  /** Removes all entries. */
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  /** Returns the number of entries. */
+  public long size() {
+    return cache.size();
+  }
+
+  /** Returns statistics about hits, misses and evictions, from which the
+   * savings in planning effort can be estimated. */
+  public CacheStats stats() {
+    return cache.stats();
+  }
+
+  /** Returns whether results of a kind of metadata may be cached.
+   *
+   * @param def Metadata definition, or method of a metadata interface; the
+   *            first element of a key in {@link RelMetadataQuery#map}
+   */
+  public static boolean isShared(Object def) {
+    final Class<?> metadataClass;
+    if (def instanceof MetadataDef) {
+      metadataClass = ((MetadataDef) def).metadataClass;
+    } else if (def instanceof Method) {
+      metadataClass = ((Method) def).getDeclaringClass();
+    } else {
+      return false;
+    }
+    return !NOT_SHARED.contains(metadataClass);
+  }
+
+  /** Computes a digest that identifies a relational expression and all of its
+   * inputs, recursively, or returns null if the expression cannot be cached.
+   *
+   * <p>Unlike {@link RelNode#getDigest()}, the digest refers to inputs by
+   * their own digests, not by their ids, and so is the same for structurally
+   * identical expressions built by different queries. */
+  public static String digest(RelNode rel) {
+    return digest(rel, Holder.of(true));
+  }
+
+  /** Computes a digest, and sets {@code stable} to false if the digest may
+   * change; that is, if the expression reads through a {@link HepRelVertex},
+   * whose current expression the planner may replace. A caller may memoize
+   * a stable digest for as long as the expression lives. */
+  public static String digest(RelNode rel, Holder<Boolean> stable) {
+    final StringBuilder buf = new StringBuilder();
+    if (!digest(rel, buf, stable)) {
+      return null;
+    }
+    buf.append(':').append(rel.getRowType().getFullTypeString());
+    return buf.toString();
+  }
+
+  private static boolean digest(RelNode rel, StringBuilder buf,
+      Holder<Boolean> stable) {
+    if (rel instanceof HepRelVertex) {
+      rel = ((HepRelVertex) rel).getCurrentRel();
+      stable.set(false);
+    }
+    if (rel instanceof RelSubset) {
+      return false;
+    }
+    final TermWriter writer = new TermWriter();
+    rel.explain(writer);
+    buf.append(rel.getRelTypeName());
+    for (RelTrait trait : rel.getTraitSet()) {
+      buf.append('.').append(trait);
+    }
+    buf.append('(');
+    int j = 0;
+    for (Pair<String, Object> value : writer.values) {
+      if (j++ > 0) {
+        buf.append(',');
+      }
+      buf.append(value.left).append('=');
+      if (value.right instanceof RelNode) {
+        if (!digest((RelNode) value.right, buf, stable)) {
+          return false;
+        }
+      } else {
+        buf.append(value.right);
+      }
+    }
+    final RelOptTable table = rel.getTable();
+    if (table != null) {
+      final VersionedTable versionedTable =
+          table.unwrap(VersionedTable.class);
+      if (versionedTable == null) {
+        return false;
+      }
+      buf.append(",version=").append(versionedTable.getVersion());
+      final TableStatistic statistic = table.unwrap(TableStatistic.class);
+      if (statistic != null) {
+        buf.append(",statistics=").append(statistic.timestamp);
+      }
+    }
+    buf.append(')');
+    return true;
+  }
+
+  /** Writer that collects the terms of a relational expression, without
+   * recursing into its inputs. */
+  private static class TermWriter implements RelWriter {
+    final List<Pair<String, Object>> values = new ArrayList<>();
+
+    public void explain(RelNode rel, List<Pair<String, Object>> valueList) {
+      values.addAll(valueList);
+    }
+
+    public SqlExplainLevel getDetailLevel() {
+      return SqlExplainLevel.DIGEST_ATTRIBUTES;
+    }
+
+    public RelWriter input(String term, RelNode input) {
+      values.add(Pair.of(term, (Object) input));
+      return this;
+    }
+
+    public RelWriter item(String term, Object value) {
+      values.add(Pair.of(term, value));
+      return this;
+    }
+
+    public RelWriter itemIf(String term, Object value, boolean condition) {
+      if (condition) {
+        item(term, value);
+      }
+      return this;
+    }
+
+    public RelWriter done(RelNode node) {
+      return this;
+    }
+
+    public boolean nest() {
+      return false;
+    }
+  }
+}
+
+// End RelMetadataCache.java
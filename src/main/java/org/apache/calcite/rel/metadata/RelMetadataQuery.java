@@ -25,6 +25,7 @@ import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rex.RexNode;
 import org.apache.calcite.rex.RexTableInputRef.RelTableRef;
 import org.apache.calcite.sql.SqlExplainLevel;
+import org.apache.calcite.util.Holder;
 import org.apache.calcite.util.ImmutableBitSet;
 
 import com.google.common.base.Preconditions;
@@ -35,8 +36,10 @@ import com.google.common.collect.Multimap;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -82,6 +85,14 @@ public class RelMetadataQuery {
 
   public final JaninoRelMetadataProvider metadataProvider;
 
+  /** Cache of results shared with other queries, or null. */
+  private RelMetadataCache sharedCache;
+
+  /** Digests of relational expressions for {@link #sharedCache}. Contains
+   * only digests that cannot change; a null value means that the expression
+   * cannot be cached. */
+  private final Map<RelNode, String> digests = new IdentityHashMap<>();
+
   protected static final RelMetadataQuery EMPTY = new RelMetadataQuery(false);
 
   private BuiltInMetadata.Collation.Handler collationHandler;
@@ -166,6 +177,15 @@ public class RelMetadataQuery {
     return new RelMetadataQuery(THREAD_PROVIDERS.get(), EMPTY);
   }
 
+  /** Returns an instance of RelMetadataQuery that shares results with
+   * other instances via a given cache. If the cache is null, the same as
+   * {@link #instance()}. */
+  public static RelMetadataQuery instance(RelMetadataCache sharedCache) {
+    final RelMetadataQuery mq = instance();
+    mq.sharedCache = sharedCache;
+    return mq;
+  }
+
   /** Creates and initializes the instance that will serve as a prototype for
    * all other instances. */
   private RelMetadataQuery(boolean dummy) {
@@ -203,6 +223,47 @@ public class RelMetadataQuery {
     return metadataProvider.revise(class_, def);
   }
 
+  /** Converts a key of {@link #map} to a key of the shared cache, or returns
+   * null if there is no shared cache or the result cannot be shared.
+   * Called from generated handlers. */
+  public List<Object> sharedKey(List key) {
+    if (sharedCache == null || !RelMetadataCache.isShared(key.get(0))) {
+      return null;
+    }
+    final RelNode rel = (RelNode) key.get(1);
+    String digest = digests.get(rel);
+    if (digest == null && !digests.containsKey(rel)) {
+      final Holder<Boolean> stable = Holder.of(true);
+      digest = RelMetadataCache.digest(rel, stable);
+      if (stable.get()) {
+        digests.put(rel, digest);
+      }
+    }
+    if (digest == null) {
+      return null;
+    }
+    // Queries with different providers may compute different results for
+    // the same expression, so the provider is part of the key.
+    final List<Object> sharedKey = new ArrayList<Object>(key.size() + 1);
+    sharedKey.add(metadataProvider.underlyingProvider());
+    sharedKey.addAll(key);
+    sharedKey.set(2, digest);
+    return sharedKey;
+  }
+
+  /** Returns a result from the shared cache, or null if not present. A cached
+   * null value is returned as {@link NullSentinel#INSTANCE}. Called from
+   * generated handlers. */
+  public Object getShared(List<Object> sharedKey) {
+    return sharedCache.get(sharedKey);
+  }
+
+  /** Stores a result, which may be null, in the shared cache. Called from
+   * generated handlers. */
+  public void putShared(List<Object> sharedKey, Object value) {
+    sharedCache.put(sharedKey, value);
+  }
+
   /**
    * Returns the
    * {@link BuiltInMetadata.NodeTypes#getNodeTypes()}
@@ -35,14 +35,21 @@ import org.apache.calcite.rel.core.TableModify;
 import org.apache.calcite.rel.core.TableScan;
 import org.apache.calcite.rel.core.Union;
 import org.apache.calcite.rel.core.Values;
+import org.apache.calcite.rel.core.Window;
 import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rex.RexBuilder;
 import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexFieldCollation;
+import org.apache.calcite.rex.RexInputRef;
 import org.apache.calcite.rex.RexLiteral;
 import org.apache.calcite.rex.RexLocalRef;
 import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexOver;
 import org.apache.calcite.rex.RexProgram;
+import org.apache.calcite.rex.RexShuttle;
 import org.apache.calcite.sql.JoinConditionType;
 import org.apache.calcite.sql.JoinType;
+import org.apache.calcite.sql.SqlAggFunction;
 import org.apache.calcite.sql.SqlCall;
 import org.apache.calcite.sql.SqlDelete;
 import org.apache.calcite.sql.SqlDialect;
@@ -50,6 +57,7 @@ import org.apache.calcite.sql.SqlIdentifier;
 import org.apache.calcite.sql.SqlInsert;
 import org.apache.calcite.sql.SqlIntervalLiteral;
 import org.apache.calcite.sql.SqlJoin;
+import org.apache.calcite.sql.SqlKind;
 import org.apache.calcite.sql.SqlLiteral;
 import org.apache.calcite.sql.SqlMatchRecognize;
 import org.apache.calcite.sql.SqlNode;
@@ -60,9 +68,11 @@ import org.apache.calcite.sql.fun.SqlRowOperator;
 import org.apache.calcite.sql.fun.SqlSingleValueAggFunction;
 import org.apache.calcite.sql.fun.SqlStdOperatorTable;
 import org.apache.calcite.sql.parser.SqlParserPos;
+import org.apache.calcite.sql.util.SqlBasicVisitor;
 import org.apache.calcite.sql.validate.SqlValidatorUtil;
 import org.apache.calcite.util.ReflectUtil;
 import org.apache.calcite.util.ReflectiveVisitor;
+import org.apache.calcite.util.Util;
 
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
@@ -70,9 +80,11 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
 
 /**
@@ -265,6 +277,112 @@ public class RelToSqlConverter extends SqlImplementor
     return builder.result();
   }
 
+  /** @see #dispatch */
+  public Result visit(Window e) {
+    // "select a, b, row_number() over (partition by a order by b) from ..."
+    final Result x = visitChild(0, e.getInput());
+    final Builder builder;
+    if (containsOver(x.node)) {
+      // Windowed aggregates cannot be nested, so read the input's windowed
+      // aggregates from a sub-query. (FROM forces a new SELECT.)
+      builder = x.builder(e, Clause.FROM, Clause.SELECT);
+    } else {
+      builder = x.builder(e, Clause.SELECT);
+    }
+    final List<SqlNode> selectList = new ArrayList<>();
+    final int fieldCount = e.getInput().getRowType().getFieldCount();
+    for (int i = 0; i < fieldCount; i++) {
+      addSelect(selectList, builder.context.field(i), e.getRowType());
+    }
+    for (RexNode over : toOvers(e)) {
+      addSelect(selectList, builder.context.toSql(null, over),
+          e.getRowType());
+    }
+    builder.setSelect(new SqlNodeList(selectList, POS));
+    return builder.result();
+  }
+
+  /** Converts the aggregate calls of a {@link Window} to {@link RexOver}
+   * expressions over the window's input. References to the window's
+   * constants are replaced by the constants. */
+  private static List<RexNode> toOvers(final Window e) {
+    final RexBuilder rexBuilder = e.getCluster().getRexBuilder();
+    final RelNode input = e.getInput();
+    final int fieldCount = input.getRowType().getFieldCount();
+    final RexShuttle shuttle = new RexShuttle() {
+      @Override public RexNode visitInputRef(RexInputRef inputRef) {
+        final int index = inputRef.getIndex();
+        return index < fieldCount
+            ? inputRef
+            : e.constants.get(index - fieldCount);
+      }
+    };
+    final List<RexNode> overs = new ArrayList<>();
+    for (Window.Group group : e.groups) {
+      final List<RexNode> partitionKeys = new ArrayList<>();
+      for (int key : group.keys) {
+        partitionKeys.add(rexBuilder.makeInputRef(input, key));
+      }
+      final ImmutableList.Builder<RexFieldCollation> orderKeyBuilder =
+          ImmutableList.builder();
+      for (RelFieldCollation field : group.orderKeys.getFieldCollations()) {
+        final Set<SqlKind> flags = EnumSet.noneOf(SqlKind.class);
+        if (field.getDirection().isDescending()) {
+          flags.add(SqlKind.DESCENDING);
+        }
+        switch (field.nullDirection) {
+        case FIRST:
+          flags.add(SqlKind.NULLS_FIRST);
+          break;
+        case LAST:
+          flags.add(SqlKind.NULLS_LAST);
+          break;
+        default:
+          break;
+        }
+        orderKeyBuilder.add(
+            new RexFieldCollation(
+                rexBuilder.makeInputRef(input, field.getFieldIndex()),
+                flags));
+      }
+      final ImmutableList<RexFieldCollation> orderKeys =
+          orderKeyBuilder.build();
+      for (Window.RexWinAggCall aggCall : group.aggCalls) {
+        overs.add(
+            rexBuilder.makeOver(aggCall.getType(),
+                (SqlAggFunction) aggCall.getOperator(),
+                shuttle.apply(aggCall.getOperands()), partitionKeys,
+                orderKeys, group.lowerBound.accept(shuttle),
+                group.upperBound.accept(shuttle), group.isRows, true, false,
+                aggCall.distinct));
+      }
+    }
+    return overs;
+  }
+
+  /** Returns whether the SELECT clause of a query contains a windowed
+   * aggregate. */
+  private static boolean containsOver(SqlNode node) {
+    if (!(node instanceof SqlSelect)
+        || ((SqlSelect) node).getSelectList() == null) {
+      return false;
+    }
+    try {
+      ((SqlSelect) node).getSelectList().accept(
+          new SqlBasicVisitor<Void>() {
+            @Override public Void visit(SqlCall call) {
+              if (call.getKind() == SqlKind.OVER) {
+                throw Util.FoundOne.NULL;
+              }
+              return super.visit(call);
+            }
+          });
+      return false;
+    } catch (Util.FoundOne e) {
+      return true;
+    }
+  }
+
   /** @see #dispatch */
   public Result visit(Values e) {
     final List<Clause> clauses = ImmutableList.of(Clause.SELECT);
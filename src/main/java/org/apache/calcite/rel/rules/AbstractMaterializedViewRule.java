@@ -16,8 +16,9 @@
  */
 package org.apache.calcite.rel.rules;
 
+import org.apache.calcite.materialize.MaterializationService;
 import org.apache.calcite.plan.RelOptMaterialization;
-import org.apache.calcite.plan.RelOptMaterializations;
+import org.apache.calcite.plan.RelOptMaterializationIndex;
 import org.apache.calcite.plan.RelOptPlanner;
 import org.apache.calcite.plan.RelOptPredicateList;
 import org.apache.calcite.plan.RelOptRule;
@@ -180,24 +181,23 @@ public abstract class AbstractMaterializedViewRule extends RelOptRule {
         new RexSimplify(rexBuilder, true,
             planner.getExecutor() != null ? planner.getExecutor() : RexUtil.EXECUTOR);
 
-    final List<RelOptMaterialization> materializations =
+    final RelOptMaterializationIndex materializationIndex =
         (planner instanceof VolcanoPlanner)
-            ? ((VolcanoPlanner) planner).getMaterializations()
-            : ImmutableList.<RelOptMaterialization>of();
+            ? ((VolcanoPlanner) planner).getMaterializationIndex()
+            : null;
 
-    if (!materializations.isEmpty()) {
+    if (materializationIndex != null && materializationIndex.size() > 0) {
       // 1. Explore query plan to recognize whether preconditions to
       // try to generate a rewriting are met
       if (!isValidPlan(topProject, node, mq)) {
         return;
       }
 
-      // Obtain applicable (filtered) materializations
-      // TODO: Filtering of relevant materializations needs to be
-      // improved so we gather only materializations that might
-      // actually generate a valid rewriting.
+      // Obtain applicable (filtered) materializations: those whose tables
+      // are a subset or superset of the query's tables, and that are
+      // aggregates if and only if the query is
       final List<RelOptMaterialization> applicableMaterializations =
-          RelOptMaterializations.getApplicableMaterializations(node, materializations);
+          materializationIndex.getCandidates(node, node instanceof Aggregate);
 
       if (!applicableMaterializations.isEmpty()) {
         // 2. Initialize all query related auxiliary data structures
@@ -235,7 +235,15 @@ public abstract class AbstractMaterializedViewRule extends RelOptRule {
 
         // 3. We iterate through all applicable materializations trying to
         // rewrite the given query
+        final MaterializationService materializationService =
+            MaterializationService.instance();
         for (RelOptMaterialization materialization : applicableMaterializations) {
+          if (materializationService.isStale(
+              materialization.qualifiedTableName)) {
+            // A table that the view reads has changed since the view was
+            // given to the planner
+            continue;
+          }
           RelNode view = materialization.tableRel;
           Project topViewProject;
           RelNode viewNode;
@@ -18,7 +18,7 @@ package org.apache.calcite.rel.rules;
 
 import org.apache.calcite.plan.MaterializedViewSubstitutionVisitor;
 import org.apache.calcite.plan.RelOptMaterialization;
-import org.apache.calcite.plan.RelOptMaterializations;
+import org.apache.calcite.plan.RelOptMaterializationIndex;
 import org.apache.calcite.plan.RelOptPlanner;
 import org.apache.calcite.plan.RelOptRule;
 import org.apache.calcite.plan.RelOptRuleCall;
@@ -33,8 +33,6 @@ import org.apache.calcite.rel.core.RelFactories;
 import org.apache.calcite.rel.core.TableScan;
 import org.apache.calcite.tools.RelBuilderFactory;
 
-import com.google.common.collect.ImmutableList;
-
 import java.util.Collections;
 import java.util.List;
 
@@ -71,15 +69,15 @@ public class MaterializedViewFilterScanRule extends RelOptRule {
 
   protected void apply(RelOptRuleCall call, Filter filter, TableScan scan) {
     RelOptPlanner planner = call.getPlanner();
-    List<RelOptMaterialization> materializations =
+    RelOptMaterializationIndex materializationIndex =
         (planner instanceof VolcanoPlanner)
-            ? ((VolcanoPlanner) planner).getMaterializations()
-            : ImmutableList.<RelOptMaterialization>of();
-    if (!materializations.isEmpty()) {
+            ? ((VolcanoPlanner) planner).getMaterializationIndex()
+            : null;
+    if (materializationIndex != null && materializationIndex.size() > 0) {
       RelNode root = filter.copy(filter.getTraitSet(),
           Collections.singletonList((RelNode) scan));
       List<RelOptMaterialization> applicableMaterializations =
-          RelOptMaterializations.getApplicableMaterializations(root, materializations);
+          materializationIndex.getApplicable(root);
       for (RelOptMaterialization materialization : applicableMaterializations) {
         if (RelOptUtil.areRowTypesEqual(scan.getRowType(),
             materialization.queryRel.getRowType(), false)) {
@@ -27,6 +27,7 @@ import org.apache.calcite.rel.core.TableScan;
 import org.apache.calcite.rex.RexNode;
 import org.apache.calcite.runtime.PredicateImpl;
 import org.apache.calcite.schema.ProjectableFilterableTable;
+import org.apache.calcite.schema.ProjectableTable;
 import org.apache.calcite.util.ImmutableIntList;
 import org.apache.calcite.util.mapping.Mapping;
 import org.apache.calcite.util.mapping.Mappings;
@@ -45,6 +46,10 @@ import java.util.List;
  * <p>The {@link #INTERPRETER} variant allows an intervening
  * {@link org.apache.calcite.adapter.enumerable.EnumerableInterpreter}.
  *
+ * <p>The {@link #PROJECTABLE} variant matches a scan of a
+ * {@link org.apache.calcite.schema.ProjectableTable}, and is only used by the
+ * {@link org.apache.calcite.interpreter.Interpreter}.
+ *
  * @see FilterTableScanRule
  */
 public abstract class ProjectTableScanRule extends RelOptRule {
@@ -57,6 +62,15 @@ public abstract class ProjectTableScanRule extends RelOptRule {
         }
       };
 
+  public static final Predicate<TableScan> PROJECTABLE_PREDICATE =
+      new PredicateImpl<TableScan>() {
+        public boolean test(TableScan scan) {
+          final RelOptTable table = scan.getTable();
+          return table.unwrap(ProjectableFilterableTable.class) == null
+              && table.unwrap(ProjectableTable.class) != null;
+        }
+      };
+
   /** Rule that matches Project on TableScan. */
   public static final ProjectTableScanRule INSTANCE =
       new ProjectTableScanRule(
@@ -84,6 +98,23 @@ public abstract class ProjectTableScanRule extends RelOptRule {
         }
       };
 
+  /** Rule that matches Project on TableScan of a
+   * {@link org.apache.calcite.schema.ProjectableTable}.
+   *
+   * <p>The planner does not use it, so it does not change plans; the
+   * interpreter uses it to scan only the fields that are projected. */
+  public static final ProjectTableScanRule PROJECTABLE =
+      new ProjectTableScanRule(
+          operand(Project.class,
+              operand(TableScan.class, null, PROJECTABLE_PREDICATE, none())),
+          "ProjectScanRule:projectable") {
+        @Override public void onMatch(RelOptRuleCall call) {
+          final Project project = call.rel(0);
+          final TableScan scan = call.rel(1);
+          apply(call, project, scan);
+        }
+      };
+
   //~ Constructors -----------------------------------------------------------
 
   /** Creates a ProjectScanRule. */
@@ -95,7 +126,8 @@ public abstract class ProjectTableScanRule extends RelOptRule {
 
   protected void apply(RelOptRuleCall call, Project project, TableScan scan) {
     final RelOptTable table = scan.getTable();
-    assert table.unwrap(ProjectableFilterableTable.class) != null;
+    assert table.unwrap(ProjectableFilterableTable.class) != null
+        || table.unwrap(ProjectableTable.class) != null;
 
     final Mappings.TargetMapping mapping = project.getMapping();
     if (mapping == null
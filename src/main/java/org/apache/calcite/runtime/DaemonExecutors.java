@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.runtime;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates the executors on which Calcite runs background work.
+ *
+ * <p>Threads are daemons, so that pending work does not prevent the JVM from
+ * exiting. Each executor names its threads after a pattern such as
+ * "calcite-statistics-%d", where "%d" is replaced by a sequence number,
+ * so that they can be told apart in a thread dump.</p>
+ */
+public class DaemonExecutors {
+  private DaemonExecutors() {}
+
+  /** Returns a factory of daemon threads.
+   *
+   * @param nameFormat Pattern for the names of threads, containing "%d"
+   */
+  public static ThreadFactory threadFactory(String nameFormat) {
+    return new ThreadFactoryBuilder().setDaemon(true)
+        .setNameFormat(nameFormat)
+        .build();
+  }
+
+  /** Creates a daemon thread, which is not started. */
+  public static Thread newThread(String name, Runnable runnable) {
+    final Thread thread = new Thread(runnable, name);
+    thread.setDaemon(true);
+    return thread;
+  }
+
+  /** Creates an executor that creates daemon threads as needed and reuses
+   * idle ones; for tasks that spend most of their time waiting, such as
+   * reading from a remote system. */
+  public static ExecutorService newCachedThreadPool(String nameFormat) {
+    return Executors.newCachedThreadPool(threadFactory(nameFormat));
+  }
+
+  /** Creates an executor with a fixed number of daemon threads. */
+  public static ExecutorService newFixedThreadPool(String nameFormat,
+      int threadCount) {
+    return Executors.newFixedThreadPool(threadCount,
+        threadFactory(nameFormat));
+  }
+
+  /** Creates an executor with one daemon thread per processor; for tasks
+   * that use the CPU. */
+  public static ExecutorService newProcessorThreadPool(String nameFormat) {
+    return newFixedThreadPool(nameFormat,
+        Runtime.getRuntime().availableProcessors());
+  }
+
+  /** Creates an executor with a single daemon thread, which runs tasks one
+   * at a time, in the order they are submitted. */
+  public static ExecutorService newSingleThreadExecutor(String nameFormat) {
+    return Executors.newSingleThreadExecutor(threadFactory(nameFormat));
+  }
+}
+
+// End DaemonExecutors.java
@@ -83,6 +83,12 @@ public enum Hook {
   /** Called when materialization is created. */
   CREATE_MATERIALIZATION,
 
+  /** Called while a cloned table is being loaded, after each chunk of rows
+   * and when the load is complete, with an array of the number of rows
+   * loaded so far, the elapsed time in milliseconds, and whether the load
+   * is complete. */
+  CLONE_LOAD,
+
   /** Called with a query that has been generated to send to a back-end system.
    * The query might be a SQL string (for the JDBC adapter), a list of Mongo
    * pipeline expressions (for the MongoDB adapter), et cetera. */
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.runtime;
+
+import org.apache.calcite.linq4j.function.Function0;
+import org.apache.calcite.linq4j.function.Function1;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import javax.sql.DataSource;
+
+/**
+ * Enumerator that executes several SQL statements concurrently, each on its
+ * own connection, and returns the union of their results.
+ *
+ * <p>Each statement is read by a background thread, as a producer of a
+ * {@link ProducerEnumerator}. Rows are returned in no particular order.</p>
+ *
+ * @param <T> Element type
+ */
+class PartitionedResultSetEnumerator<T> extends ProducerEnumerator<T> {
+  /** Executor that reads statements. */
+  private static final ExecutorService EXECUTOR =
+      DaemonExecutors.newCachedThreadPool("calcite-jdbc-partition-%d");
+
+  /** Maximum number of rows in a batch. */
+  private static final int BATCH_SIZE = 256;
+
+  private final DataSource dataSource;
+  private final List<String> sqls;
+  private final Function1<ResultSet, Function0<T>> rowBuilderFactory;
+  private final int fetchSize;
+  private final List<Statement> statements = new CopyOnWriteArrayList<>();
+
+  /**
+   * Creates a PartitionedResultSetEnumerator.
+   *
+   * @param dataSource Data source
+   * @param sqls SQL statements, one per partition
+   * @param rowBuilderFactory Converts a result set row into an element
+   * @param fetchSize Number of rows to fetch in each round trip, or 0 for the
+   *                  driver's default
+   */
+  PartitionedResultSetEnumerator(DataSource dataSource, List<String> sqls,
+      Function1<ResultSet, Function0<T>> rowBuilderFactory, int fetchSize) {
+    super(EXECUTOR, sqls.size(), 2 * sqls.size(),
+        "while executing SQL " + sqls);
+    this.dataSource = dataSource;
+    this.sqls = sqls;
+    this.rowBuilderFactory = rowBuilderFactory;
+    this.fetchSize = fetchSize;
+  }
+
+  @Override public void close() {
+    super.close();
+    for (Statement statement : statements) {
+      try {
+        statement.cancel();
+      } catch (SQLException e) {
+        // ignore
+      }
+    }
+  }
+
+  /** Executes a statement and reads its rows into the queue, until there
+   * are no more rows or the enumerator is closed. */
+  @Override protected void produce(int producer) throws Exception {
+    final String sql = sqls.get(producer);
+    Connection connection = null;
+    Statement statement = null;
+    ResultSet resultSet = null;
+    try {
+      connection = dataSource.getConnection();
+      statement = connection.createStatement();
+      statements.add(statement);
+      ResultSetEnumerable.configure(statement, fetchSize);
+      resultSet = statement.executeQuery(sql);
+      final Function0<T> rowBuilder = rowBuilderFactory.apply(resultSet);
+      List<T> rows = new ArrayList<>(BATCH_SIZE);
+      while (!isClosed() && resultSet.next()) {
+        rows.add(rowBuilder.apply());
+        if (rows.size() == BATCH_SIZE) {
+          put(rows);
+          rows = new ArrayList<>(BATCH_SIZE);
+        }
+      }
+      if (!rows.isEmpty()) {
+        put(rows);
+      }
+    } finally {
+      statements.remove(statement);
+      close(connection, statement, resultSet);
+    }
+  }
+
+  private static void close(Connection connection, Statement statement,
+      ResultSet resultSet) {
+    if (resultSet != null) {
+      try {
+        resultSet.close();
+      } catch (SQLException e) {
+        // ignore
+      }
+    }
+    if (statement != null) {
+      try {
+        statement.close();
+      } catch (SQLException e) {
+        // ignore
+      }
+    }
+    if (connection != null) {
+      try {
+        connection.close();
+      } catch (SQLException e) {
+        // ignore
+      }
+    }
+  }
+}
+
+// End PartitionedResultSetEnumerator.java
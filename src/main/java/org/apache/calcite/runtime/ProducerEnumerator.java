@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.runtime;
+
+import org.apache.calcite.linq4j.Enumerator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Enumerator whose rows are produced by background threads.
+ *
+ * <p>Each producer runs as a task on an executor, and passes rows to the
+ * consumer in batches, through a bounded queue, so that a slow consumer
+ * stops the producers rather than letting them buffer whole results. If
+ * there is more than one producer, rows are returned in no particular
+ * order.</p>
+ *
+ * <p>Producers start when {@link #moveNext()} is first called. If a
+ * producer throws, the enumerator is closed and the consumer receives the
+ * exception. Closing the enumerator interrupts the producers; a producer
+ * should also stop when {@link #isClosed()} becomes true, and release its
+ * resources before returning.</p>
+ *
+ * @param <T> Element type
+ */
+public abstract class ProducerEnumerator<T> implements Enumerator<T> {
+  /** Marks, in the queue, the end of a producer's rows. */
+  private static final Object END = new Object();
+
+  private final ExecutorService executor;
+  private final int producerCount;
+  private final String errorMessage;
+
+  /** Batches of rows, {@link #END} markers and exceptions, from the
+   * producers. */
+  private final BlockingQueue<Object> queue;
+  private final List<Future<?>> futures = new ArrayList<>();
+  private volatile boolean closed;
+
+  /** Number of producers that have not yet reached their end. */
+  private int running = -1;
+  private Iterator<T> batch = Collections.emptyIterator();
+  private T current;
+
+  /**
+   * Creates a ProducerEnumerator.
+   *
+   * @param executor Executor on which producers run
+   * @param producerCount Number of producers
+   * @param capacity Number of batches that may wait in the queue
+   * @param errorMessage Message of the exception thrown to the consumer if a
+   *                     producer fails
+   */
+  protected ProducerEnumerator(ExecutorService executor, int producerCount,
+      int capacity, String errorMessage) {
+    this.executor = executor;
+    this.producerCount = producerCount;
+    this.errorMessage = errorMessage;
+    this.queue = new ArrayBlockingQueue<>(capacity);
+  }
+
+  /** Produces the rows of a producer, by calling {@link #put(List)}, until
+   * there are no more or the enumerator is closed. Called in a background
+   * thread.
+   *
+   * @param producer Ordinal of the producer, from 0 to the number of
+   *                 producers minus 1
+   */
+  protected abstract void produce(int producer) throws Exception;
+
+  /** Passes a batch of rows to the consumer, waiting while the queue is
+   * full. Called by a producer. */
+  protected final void put(List<T> rows) throws InterruptedException {
+    queue.put(rows);
+  }
+
+  /** Returns whether the enumerator has been closed; if so, producers
+   * should stop. */
+  protected final boolean isClosed() {
+    return closed;
+  }
+
+  public T current() {
+    return current;
+  }
+
+  public boolean moveNext() {
+    if (running < 0) {
+      start();
+    }
+    for (;;) {
+      if (batch.hasNext()) {
+        current = batch.next();
+        return true;
+      }
+      if (running == 0) {
+        return false;
+      }
+      final Object o = take();
+      if (o == END) {
+        --running;
+      } else if (o instanceof Throwable) {
+        close();
+        throw new RuntimeException(errorMessage, (Throwable) o);
+      } else {
+        //noinspection unchecked
+        batch = ((List<T>) o).iterator();
+      }
+    }
+  }
+
+  public void reset() {
+    throw new UnsupportedOperationException();
+  }
+
+  public void close() {
+    closed = true;
+    for (Future<?> future : futures) {
+      future.cancel(true);
+    }
+    queue.clear();
+  }
+
+  private void start() {
+    running = producerCount;
+    for (int i = 0; i < producerCount; i++) {
+      final int producer = i;
+      futures.add(
+          executor.submit(
+              new Runnable() {
+                public void run() {
+                  runProducer(producer);
+                }
+              }));
+    }
+  }
+
+  private Object take() {
+    try {
+      return queue.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** Runs a producer, then reports its end, or its exception, to the
+   * consumer. */
+  private void runProducer(int producer) {
+    Object last = END;
+    try {
+      produce(producer);
+    } catch (InterruptedException e) {
+      // The enumerator was closed.
+      Thread.currentThread().interrupt();
+      return;
+    } catch (Throwable e) {
+      last = e;
+    }
+    if (!closed) {
+      try {
+        queue.put(last);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
+
+// End ProducerEnumerator.java
@@ -16,6 +16,7 @@
  */
 package org.apache.calcite.runtime;
 
+import org.apache.calcite.DataContext;
 import org.apache.calcite.linq4j.AbstractEnumerable;
 import org.apache.calcite.linq4j.Enumerable;
 import org.apache.calcite.linq4j.Enumerator;
@@ -28,6 +29,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -47,6 +49,8 @@ public class ResultSetEnumerable<T> extends AbstractEnumerable<T> {
   private final DataSource dataSource;
   private final String sql;
   private final Function1<ResultSet, Function0<T>> rowBuilderFactory;
+  private final int fetchSize;
+  private final PreparedStatementEnricher preparedStatementEnricher;
   private static final Logger LOGGER = LoggerFactory.getLogger(
       ResultSetEnumerable.class);
 
@@ -102,10 +106,14 @@ public class ResultSetEnumerable<T> extends AbstractEnumerable<T> {
   private ResultSetEnumerable(
       DataSource dataSource,
       String sql,
-      Function1<ResultSet, Function0<T>> rowBuilderFactory) {
+      Function1<ResultSet, Function0<T>> rowBuilderFactory,
+      int fetchSize,
+      PreparedStatementEnricher preparedStatementEnricher) {
     this.dataSource = dataSource;
     this.sql = sql;
     this.rowBuilderFactory = rowBuilderFactory;
+    this.fetchSize = fetchSize;
+    this.preparedStatementEnricher = preparedStatementEnricher;
   }
 
   /** Creates an ResultSetEnumerable. */
@@ -126,21 +134,140 @@ public class ResultSetEnumerable<T> extends AbstractEnumerable<T> {
       DataSource dataSource,
       String sql,
       Function1<ResultSet, Function0<T>> rowBuilderFactory) {
-    return new ResultSetEnumerable<T>(dataSource, sql, rowBuilderFactory);
+    return new ResultSetEnumerable<T>(dataSource, sql, rowBuilderFactory, 0,
+        null);
+  }
+
+  /** Executes a SQL query and returns the results as an enumerator, using a
+   * row builder to convert JDBC column values into rows, and fetching
+   * {@code fetchSize} rows in each round trip (0 for the driver's
+   * default). */
+  public static <T> Enumerable<T> of(
+      DataSource dataSource,
+      String sql,
+      Function1<ResultSet, Function0<T>> rowBuilderFactory,
+      int fetchSize) {
+    return new ResultSetEnumerable<T>(dataSource, sql, rowBuilderFactory,
+        fetchSize, null);
+  }
+
+  /** Executes a SQL query that contains dynamic parameters, binding their
+   * values using {@code preparedStatementEnricher}, and returns the results
+   * as an enumerator. */
+  public static <T> Enumerable<T> of(
+      DataSource dataSource,
+      String sql,
+      Function1<ResultSet, Function0<T>> rowBuilderFactory,
+      int fetchSize,
+      PreparedStatementEnricher preparedStatementEnricher) {
+    return new ResultSetEnumerable<T>(dataSource, sql, rowBuilderFactory,
+        fetchSize, preparedStatementEnricher);
+  }
+
+  /** Creates an enricher that binds the values of dynamic parameters, taken
+   * from a data context, to the parameters of a statement. Called by
+   * generated code.
+   *
+   * @param indexes Index of the dynamic parameter bound to each statement
+   *                parameter
+   * @param types JDBC type of each statement parameter
+   * @param context Data context that holds the values of dynamic parameters
+   */
+  public static PreparedStatementEnricher createEnricher(final int[] indexes,
+      final int[] types, final DataContext context) {
+    return new PreparedStatementEnricher() {
+      public void enrich(PreparedStatement statement) throws SQLException {
+        for (int i = 0; i < indexes.length; i++) {
+          setDynamicParam(statement, i + 1, context.get("?" + indexes[i]),
+              types[i]);
+        }
+      }
+    };
+  }
+
+  /** Binds a value to a parameter of a statement, converting it from
+   * Calcite's internal representation, in which dates and times are
+   * numbers, to the one JDBC expects. */
+  public static void setDynamicParam(PreparedStatement statement, int i,
+      Object value, int type) throws SQLException {
+    if (value == null) {
+      statement.setNull(i, type);
+      return;
+    }
+    switch (type) {
+    case Types.DATE:
+      if (value instanceof Integer) {
+        value = SqlFunctions.internalToDate((Integer) value);
+      }
+      break;
+    case Types.TIME:
+      if (value instanceof Integer) {
+        value = SqlFunctions.internalToTime((Integer) value);
+      }
+      break;
+    case Types.TIMESTAMP:
+      if (value instanceof Long) {
+        value = SqlFunctions.internalToTimestamp((Long) value);
+      }
+      break;
+    default:
+      break;
+    }
+    statement.setObject(i, value);
+  }
+
+  /** Executes several SQL queries, each returning a partition of the
+   * result, and returns the union of their results.
+   *
+   * <p>The queries are executed concurrently, each on its own connection,
+   * and rows are returned in no particular order.
+   *
+   * @param dataSource Data source
+   * @param sqls SQL queries
+   * @param rowBuilderFactory Converts a result set row into an element
+   * @param fetchSize Number of rows to fetch in each round trip, or 0 for the
+   *                  driver's default
+   */
+  public static <T> Enumerable<T> ofPartitions(
+      final DataSource dataSource,
+      final List<String> sqls,
+      final Function1<ResultSet, Function0<T>> rowBuilderFactory,
+      final int fetchSize) {
+    return new AbstractEnumerable<T>() {
+      public Enumerator<T> enumerator() {
+        return new PartitionedResultSetEnumerator<T>(dataSource, sqls,
+            rowBuilderFactory, fetchSize);
+      }
+    };
+  }
+
+  /** Sets the query timeout and fetch size of a statement. */
+  static void configure(Statement statement, int fetchSize)
+      throws SQLException {
+    try {
+      statement.setQueryTimeout(10);
+    } catch (SQLFeatureNotSupportedException e) {
+      LOGGER.debug("Failed to set query timeout.");
+    }
+    if (fetchSize > 0) {
+      statement.setFetchSize(fetchSize);
+    }
   }
 
   public Enumerator<T> enumerator() {
     Connection connection = null;
-    Statement statement = null;
+    PreparedStatement statement = null;
     try {
       connection = dataSource.getConnection();
-      statement = connection.createStatement();
-      try {
-        statement.setQueryTimeout(10);
-      } catch (SQLFeatureNotSupportedException e) {
-        LOGGER.debug("Failed to set query timeout.");
+      // Prepare rather than execute directly, so that if the data source
+      // pools prepared statements, a query that is executed repeatedly (with
+      // different parameter values) is parsed and planned only once.
+      statement = connection.prepareStatement(sql);
+      configure(statement, fetchSize);
+      if (preparedStatementEnricher != null) {
+        preparedStatementEnricher.enrich(statement);
       }
-      if (statement.execute(sql)) {
+      if (statement.execute()) {
         final ResultSet resultSet = statement.getResultSet();
         statement = null;
         connection = null;
@@ -169,6 +296,12 @@ public class ResultSetEnumerable<T> extends AbstractEnumerable<T> {
     }
   }
 
+  /** Sets the values of the parameters of a prepared statement before it is
+   * executed. */
+  public interface PreparedStatementEnricher {
+    void enrich(PreparedStatement statement) throws SQLException;
+  }
+
   /** Implementation of {@link Enumerator} that reads from a
    * {@link ResultSet}.
    *
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.schema;
+
+import org.apache.calcite.DataContext;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.util.ImmutableBitSet;
+
+import java.util.List;
+
+/**
+ * Table that has indexes on some of its columns, and can return the rows
+ * that have given values of an indexed column without scanning the whole
+ * table.
+ *
+ * <p>The planner uses the indexes to evaluate filters of the form
+ * {@code column = literal}, and to probe the table from the other side of
+ * an equi-join; see
+ * {@link org.apache.calcite.adapter.enumerable.EnumerableIndexRule}.</p>
+ *
+ * @see ScannableTable
+ */
+public interface IndexableTable extends Table {
+  /** Returns the ordinals of the columns that have an index. */
+  ImmutableBitSet getIndexedColumns();
+
+  /** Returns the rows whose value of an indexed column is equal to one of a
+   * list of keys.
+   *
+   * <p>Each row is represented as an array of its column values. Each key
+   * is of the same class as the values of the column in a row; null keys
+   * match nothing.</p>
+   *
+   * @param root Execution context
+   * @param column Ordinal of an indexed column
+   * @param keys Key values
+   * @return Enumerable over the matching rows
+   */
+  Enumerable<Object[]> lookup(DataContext root, int column, List<Object> keys);
+}
+
+// End IndexableTable.java
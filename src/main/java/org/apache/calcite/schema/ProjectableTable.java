@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.schema;
+
+import org.apache.calcite.DataContext;
+import org.apache.calcite.linq4j.Enumerable;
+
+/**
+ * Table that can be scanned, projecting a given list of columns, without
+ * creating an intermediate relational expression.
+ *
+ * <p>Unlike {@link ProjectableFilterableTable}, planner rules do not push
+ * projects into this kind of table, and plans are unchanged; the
+ * interpreter passes the projects when it scans the table, so that the
+ * table does not need to read columns that are not used.</p>
+ *
+ * @see ScannableTable
+ * @see ProjectableFilterableTable
+ */
+public interface ProjectableTable extends ScannableTable {
+  /** Returns an enumerable over the rows in this Table.
+   *
+   * <p>Each row is represented as an array of the values of the projected
+   * columns.
+   *
+   * @param root Execution context
+   * @param projects List of projects. Each is the 0-based ordinal of the column
+   *                 to project.
+   * @return Enumerable over all rows, returning for each row an array of
+   * column values, one value for each ordinal in {@code projects}
+   */
+  Enumerable<Object[]> scan(DataContext root, int[] projects);
+}
+
+// End ProjectableTable.java
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.schema;
+
+import org.apache.calcite.DataContext;
+import org.apache.calcite.linq4j.Enumerable;
+
+/**
+ * Table that can return a random sample of its rows more cheaply than by
+ * reading all of them.
+ *
+ * <p>Used by {@link org.apache.calcite.statistic.StatisticsCollector} to
+ * collect statistics for large tables.</p>
+ *
+ * @see ScannableTable
+ */
+public interface SampleableTable extends Table {
+  /** Returns a random sample of the rows in this table, or null if the table
+   * cannot sample itself more cheaply than by a full scan (say because its
+   * data source does not support sampling).
+   *
+   * <p>Each row is represented as an array of its column values. Each row
+   * is returned with probability approximately {@code fraction}; a table
+   * may sample whole blocks of rows rather than individual rows.</p>
+   *
+   * @param root Execution context
+   * @param fraction Fraction of rows to return, greater than 0 and less
+   *                 than 1
+   * @return Enumerable over a sample of the rows, or null
+   */
+  Enumerable<Object[]> sample(DataContext root, double fraction);
+}
+
+// End SampleableTable.java
@@ -32,6 +32,7 @@ import org.apache.calcite.linq4j.tree.Expressions;
 import org.apache.calcite.linq4j.tree.MethodCallExpression;
 import org.apache.calcite.linq4j.tree.Types;
 import org.apache.calcite.materialize.Lattice;
+import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeFactory;
 import org.apache.calcite.rel.type.RelProtoDataType;
@@ -338,13 +339,30 @@ public final class Schemas {
       final CalciteConnection connection, final CalciteSchema schema,
       final List<String> schemaPath, final String sql,
       final ImmutableMap<CalciteConnectionProperty, String> map) {
+    return prepare(connection, schema, schemaPath,
+        CalcitePrepare.Query.<Object>of(sql), map);
+  }
+
+  /** Prepares a relational expression for execution. For use within Calcite
+   * only. */
+  public static CalcitePrepare.CalciteSignature<Object> prepare(
+      final CalciteConnection connection, final CalciteSchema schema,
+      final List<String> schemaPath, final RelNode rel,
+      final ImmutableMap<CalciteConnectionProperty, String> map) {
+    return prepare(connection, schema, schemaPath,
+        CalcitePrepare.Query.<Object>of(rel), map);
+  }
+
+  private static CalcitePrepare.CalciteSignature<Object> prepare(
+      final CalciteConnection connection, final CalciteSchema schema,
+      final List<String> schemaPath, final CalcitePrepare.Query<Object> query,
+      final ImmutableMap<CalciteConnectionProperty, String> map) {
     final CalcitePrepare prepare = CalcitePrepare.DEFAULT_FACTORY.apply();
     final CalcitePrepare.Context context =
         makeContext(connection, schema, schemaPath, null, map);
     CalcitePrepare.Dummy.push(context);
     try {
-      return prepare.prepareSql(context, CalcitePrepare.Query.of(sql),
-          Object[].class, -1);
+      return prepare.prepareSql(context, query, Object[].class, -1);
     } finally {
       CalcitePrepare.Dummy.pop(context);
     }
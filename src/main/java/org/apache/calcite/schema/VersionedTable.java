@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.schema;
+
+/**
+ * Table whose contents are identified by a version number.
+ *
+ * <p>The version must change whenever the contents of the table change;
+ * if two calls to {@link #getVersion()} return the same value, the table had
+ * the same contents at both times. A table whose contents never change may
+ * always return the same value.</p>
+ *
+ * <p>Caches, such as
+ * {@link org.apache.calcite.rel.metadata.RelMetadataCache} and
+ * {@link org.apache.calcite.prepare.QueryResultCache}, use the version to
+ * decide whether results computed from the table are still valid. They do
+ * not cache results computed from tables that do not implement this
+ * interface.</p>
+ */
+public interface VersionedTable extends Table {
+  /** Returns the current version of this table's contents. */
+  long getVersion();
+}
+
+// End VersionedTable.java
@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.sql;
+
+/**
+ * Abstract implementation of {@link SqlWriter}.
+ *
+ * <p>Methods that are added to the writer's contract after its first
+ * release are declared here, with a default implementation, rather than in
+ * {@link SqlWriter}, so that existing implementations of the interface
+ * continue to compile.</p>
+ */
+public abstract class SqlAbstractWriter implements SqlWriter {
+  /**
+   * Prints a dynamic parameter ("?"), and records its index so that a value
+   * can be bound to it when the SQL is executed.
+   *
+   * <p>The default implementation prints "?" but does not record the
+   * index.</p>
+   *
+   * @see org.apache.calcite.sql.util.SqlString#getDynamicParameters()
+   */
+  public void dynamicParam(int index) {
+    print("?");
+    setNeedWhitespace(false);
+  }
+}
+
+// End SqlAbstractWriter.java
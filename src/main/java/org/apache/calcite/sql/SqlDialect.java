@@ -554,6 +554,46 @@ public class SqlDialect {
     }
   }
 
+  /**
+   * Returns whether the dialect supports windowed aggregate functions, for
+   * instance {@code ROW_NUMBER() OVER (PARTITION BY deptno ORDER BY sal)}.
+   * If false, the JDBC adapter evaluates windowed aggregates itself.
+   */
+  public boolean supportsWindowFunctions() {
+    switch (databaseProduct) {
+    case CALCITE:
+    case DB2:
+    case HIVE:
+    case MSSQL:
+    case NETEZZA:
+    case ORACLE:
+    case PARACCEL:
+    case POSTGRESQL:
+    case REDSHIFT:
+    case TERADATA:
+    case VERTICA:
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  /**
+   * Returns whether the dialect supports sampling a table by the
+   * {@code TABLESAMPLE SYSTEM (percent)} clause, for instance
+   * {@code SELECT * FROM emp TABLESAMPLE SYSTEM (10)}.
+   */
+  public boolean supportsTableSample() {
+    switch (databaseProduct) {
+    case CALCITE:
+    case DB2:
+    case POSTGRESQL:
+      return true;
+    default:
+      return false;
+    }
+  }
+
   /** Returns how NULL values are sorted if an ORDER BY item does not contain
    * NULLS ASCENDING or NULLS DESCENDING. */
   public NullCollation getNullCollation() {
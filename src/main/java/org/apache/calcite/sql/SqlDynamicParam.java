@@ -61,8 +61,12 @@ public class SqlDynamicParam extends SqlNode {
       SqlWriter writer,
       int leftPrec,
       int rightPrec) {
-    writer.print("?");
-    writer.setNeedWhitespace(false);
+    if (writer instanceof SqlAbstractWriter) {
+      ((SqlAbstractWriter) writer).dynamicParam(index);
+    } else {
+      writer.print("?");
+      writer.setNeedWhitespace(false);
+    }
   }
 
   public void validate(SqlValidator validator, SqlValidatorScope scope) {
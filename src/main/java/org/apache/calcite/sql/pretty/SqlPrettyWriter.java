@@ -17,16 +17,17 @@
 package org.apache.calcite.sql.pretty;
 
 import org.apache.calcite.avatica.util.Spaces;
+import org.apache.calcite.sql.SqlAbstractWriter;
 import org.apache.calcite.sql.SqlDialect;
 import org.apache.calcite.sql.SqlNode;
 import org.apache.calcite.sql.SqlWriter;
-import org.apache.calcite.sql.util.SqlBuilder;
 import org.apache.calcite.sql.util.SqlString;
 import org.apache.calcite.util.Unsafe;
 import org.apache.calcite.util.Util;
 import org.apache.calcite.util.trace.CalciteLogger;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 
 import org.slf4j.LoggerFactory;
 
@@ -35,9 +36,11 @@ import java.io.StringWriter;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
@@ -120,7 +123,7 @@ import java.util.Set;
  * </tr>
  * </table>
  */
-public class SqlPrettyWriter implements SqlWriter {
+public class SqlPrettyWriter extends SqlAbstractWriter {
   //~ Static fields/initializers ---------------------------------------------
 
   protected static final CalciteLogger LOGGER =
@@ -161,6 +164,7 @@ public class SqlPrettyWriter implements SqlWriter {
   private boolean caseClausesOnNewLines;
   private int lineLength;
   private int charCount;
+  private final List<Integer> dynamicParameters = new ArrayList<>();
 
   //~ Constructors -----------------------------------------------------------
 
@@ -280,6 +284,7 @@ public class SqlPrettyWriter implements SqlWriter {
     Unsafe.clear(sw);
     setNeedWhitespace(false);
     nextWhitespace = " ";
+    dynamicParameters.clear();
   }
 
   /**
@@ -809,13 +814,20 @@ public class SqlPrettyWriter implements SqlWriter {
   }
 
   public SqlString toSqlString() {
-    return new SqlBuilder(dialect, toString()).toSqlString();
+    return new SqlString(dialect, toString(),
+        ImmutableList.copyOf(dynamicParameters));
   }
 
   public SqlDialect getDialect() {
     return dialect;
   }
 
+  @Override public void dynamicParam(int index) {
+    dynamicParameters.add(index);
+    print("?");
+    setNeedWhitespace(false);
+  }
+
   public void literal(String s) {
     print(s);
     setNeedWhitespace(true);
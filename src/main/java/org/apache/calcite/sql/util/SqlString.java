@@ -18,6 +18,8 @@ package org.apache.calcite.sql.util;
 
 import org.apache.calcite.sql.SqlDialect;
 
+import com.google.common.collect.ImmutableList;
+
 /**
  * String that represents a kocher SQL statement, expression, or fragment.
  *
@@ -30,6 +32,7 @@ import org.apache.calcite.sql.SqlDialect;
 public class SqlString {
   private final String s;
   private SqlDialect dialect;
+  private final ImmutableList<Integer> dynamicParameters;
 
   /**
    * Creates a SqlString.
@@ -37,10 +40,24 @@ public class SqlString {
    * @param s Contents of string
    */
   public SqlString(SqlDialect dialect, String s) {
+    this(dialect, s, ImmutableList.<Integer>of());
+  }
+
+  /**
+   * Creates a SqlString that contains dynamic parameters.
+   *
+   * @param s Contents of string
+   * @param dynamicParameters Indexes of the dynamic parameters, in the order
+   *                          that their "?" markers occur in the string
+   */
+  public SqlString(SqlDialect dialect, String s,
+      ImmutableList<Integer> dynamicParameters) {
     this.dialect = dialect;
     this.s = s;
+    this.dynamicParameters = dynamicParameters;
     assert s != null;
     assert dialect != null;
+    assert dynamicParameters != null;
   }
 
   @Override public int hashCode() {
@@ -80,6 +97,15 @@ public class SqlString {
   public SqlDialect getDialect() {
     return dialect;
   }
+
+  /**
+   * Returns the indexes of the dynamic parameters, in the order that their
+   * "?" markers occur in the SQL string; the same index occurs more than once
+   * if a parameter is used more than once. Empty if there are none.
+   */
+  public ImmutableList<Integer> getDynamicParameters() {
+    return dynamicParameters;
+  }
 }
 
 // End SqlString.java
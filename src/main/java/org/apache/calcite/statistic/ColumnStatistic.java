@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.statistic;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Statistics about one column of a table, as computed by
+ * {@link StatisticsCollector}.
+ */
+public class ColumnStatistic {
+  public final String name;
+  /** Estimated number of distinct non-null values. */
+  public final double distinctCount;
+  /** Estimated fraction of values that are null, between 0 and 1. */
+  public final double nullFraction;
+  /** Histogram of non-null values, or null if the column's values are not
+   * comparable or are all null. */
+  public final Histogram histogram;
+
+  public ColumnStatistic(String name, double distinctCount,
+      double nullFraction, Histogram histogram) {
+    this.name = Preconditions.checkNotNull(name);
+    this.distinctCount = distinctCount;
+    this.nullFraction = nullFraction;
+    this.histogram = histogram; // may be null
+  }
+
+  /** Returns the lowest value, or null if not known. */
+  public Comparable min() {
+    return histogram == null ? null : histogram.min;
+  }
+
+  /** Returns the highest value, or null if not known. */
+  public Comparable max() {
+    return histogram == null ? null : histogram.max();
+  }
+
+  @Override public String toString() {
+    return "ColumnStatistic(name: " + name
+        + ", distinctCount: " + distinctCount
+        + ", nullFraction: " + nullFraction
+        + ", histogram: " + histogram + ")";
+  }
+}
+
+// End ColumnStatistic.java
@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.statistic;
+
+import org.apache.calcite.util.JsonBuilder;
+import org.apache.calcite.util.Util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Implementation of {@link StatisticsStore} that keeps statistics in memory
+ * and writes them to a JSON file each time they change.
+ *
+ * <p>The file is read when the store is created, so statistics survive a
+ * restart. Modification counts are not persisted.</p>
+ *
+ * <p>Histogram bounds are stored as strings, along with the name of their
+ * class, so that they are read back as values of the same type. A histogram
+ * whose bounds are of a type that cannot be read back is not loaded.</p>
+ */
+public class FileStatisticsStore extends MapStatisticsStore {
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(FileStatisticsStore.class);
+
+  private final File file;
+
+  public FileStatisticsStore(File file) {
+    this.file = file;
+    if (file.exists()) {
+      load();
+    }
+  }
+
+  private void load() {
+    final Map<String, Object> root;
+    try {
+      //noinspection unchecked
+      root = new ObjectMapper().readValue(file, Map.class);
+    } catch (IOException e) {
+      throw new RuntimeException("Error while reading statistics from "
+          + file, e);
+    }
+    //noinspection unchecked
+    final List<Map<String, Object>> tables =
+        (List<Map<String, Object>>) root.get("tables");
+    for (Map<String, Object> table : tables) {
+      //noinspection unchecked
+      final List<String> name = (List<String>) table.get("name");
+      final List<ColumnStatistic> columns = new ArrayList<>();
+      //noinspection unchecked
+      for (Map<String, Object> column
+          : (List<Map<String, Object>>) table.get("columns")) {
+        Histogram histogram = null;
+        if (column.containsKey("min")) {
+          //noinspection unchecked
+          histogram = histogram((String) column.get("type"),
+              column.get("min"), (List<Object>) column.get("bounds"));
+        }
+        columns.add(
+            new ColumnStatistic((String) column.get("name"),
+                ((Number) column.get("distinctCount")).doubleValue(),
+                ((Number) column.get("nullFraction")).doubleValue(),
+                histogram));
+      }
+      map.put(ImmutableList.copyOf(name),
+          new TableStatistic(((Number) table.get("rowCount")).doubleValue(),
+              ((Number) table.get("sampleSize")).longValue(),
+              columns,
+              ((Number) table.get("timestamp")).longValue()));
+    }
+  }
+
+  @Override protected synchronized void onChange() {
+    final JsonBuilder json = new JsonBuilder();
+    final List<Object> tables = json.list();
+    for (Map.Entry<List<String>, TableStatistic> entry : map.entrySet()) {
+      final TableStatistic statistic = entry.getValue();
+      final Map<String, Object> table = json.map();
+      json.put(table, "name", new ArrayList<Object>(entry.getKey()));
+      json.put(table, "rowCount", statistic.rowCount);
+      json.put(table, "sampleSize", statistic.sampleSize);
+      json.put(table, "timestamp", statistic.timestamp);
+      final List<Object> columns = json.list();
+      for (ColumnStatistic column : statistic.columns) {
+        final Map<String, Object> c = json.map();
+        json.put(c, "name", column.name);
+        json.put(c, "distinctCount", column.distinctCount);
+        json.put(c, "nullFraction", column.nullFraction);
+        if (column.histogram != null) {
+          json.put(c, "type", column.histogram.min.getClass().getName());
+          json.put(c, "min", column.histogram.min.toString());
+          final List<Object> bounds = json.list();
+          for (Comparable bound : column.histogram.bounds) {
+            bounds.add(bound.toString());
+          }
+          json.put(c, "bounds", bounds);
+        }
+        columns.add(c);
+      }
+      json.put(table, "columns", columns);
+      tables.add(table);
+    }
+    final Map<String, Object> root = json.map();
+    json.put(root, "tables", tables);
+
+    // Write to a temporary file, then rename, so that a crash does not leave
+    // a truncated file.
+    final File tmp = new File(file.getPath() + ".tmp");
+    try (Writer w = new OutputStreamWriter(new FileOutputStream(tmp),
+        StandardCharsets.UTF_8)) {
+      w.write(json.toJsonString(root));
+    } catch (IOException e) {
+      throw new RuntimeException("Error while writing statistics to "
+          + file, e);
+    }
+    if (!tmp.renameTo(file)) {
+      Util.discard(file.delete());
+      if (!tmp.renameTo(file)) {
+        throw new RuntimeException("Could not rename " + tmp + " to " + file);
+      }
+    }
+  }
+
+  /** Creates a histogram from values read from the file, or returns null if
+   * the values cannot be converted back to their original type.
+   *
+   * <p>If {@code type} is null, the file was written before types were
+   * recorded, and values are used as parsed. */
+  private Histogram histogram(String type, Object min, List<Object> bounds) {
+    final Comparable min2 = parse(type, min);
+    if (min2 == null) {
+      LOGGER.warn("Ignoring histogram of type {} in {}", type, file);
+      return null;
+    }
+    final List<Comparable> bounds2 = new ArrayList<>();
+    for (Object bound : bounds) {
+      bounds2.add(parse(type, bound));
+    }
+    return new Histogram(min2, bounds2);
+  }
+
+  /** Converts a value read from the file to a value of a given class. Returns
+   * null if the class is not supported. */
+  private static Comparable parse(String type, Object value) {
+    if (type == null) {
+      return (Comparable) value;
+    }
+    final String s = value.toString();
+    switch (type) {
+    case "java.lang.String":
+      return s;
+    case "java.lang.Boolean":
+      return Boolean.valueOf(s);
+    case "java.lang.Character":
+      return s.charAt(0);
+    case "java.lang.Byte":
+      return Byte.valueOf(s);
+    case "java.lang.Short":
+      return Short.valueOf(s);
+    case "java.lang.Integer":
+      return Integer.valueOf(s);
+    case "java.lang.Long":
+      return Long.valueOf(s);
+    case "java.lang.Float":
+      return Float.valueOf(s);
+    case "java.lang.Double":
+      return Double.valueOf(s);
+    case "java.math.BigDecimal":
+      return new BigDecimal(s);
+    case "java.sql.Date":
+      return Date.valueOf(s);
+    case "java.sql.Time":
+      return Time.valueOf(s);
+    case "java.sql.Timestamp":
+      return Timestamp.valueOf(s);
+    default:
+      return null;
+    }
+  }
+}
+
+// End FileStatisticsStore.java
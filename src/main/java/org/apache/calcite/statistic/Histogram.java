@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.statistic;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Equi-depth histogram over the non-null values of a column.
+ *
+ * <p>Each bucket holds approximately the same number of values; the
+ * histogram records the upper bound of each bucket. The lower bound of the
+ * first bucket is the minimum value.</p>
+ */
+public class Histogram {
+  /** Lowest value; lower bound of the first bucket. */
+  public final Comparable min;
+
+  /** Upper bound (inclusive) of each bucket, in ascending order. */
+  public final ImmutableList<Comparable> bounds;
+
+  public Histogram(Comparable min, List<Comparable> bounds) {
+    this.min = Preconditions.checkNotNull(min);
+    this.bounds = ImmutableList.copyOf(bounds);
+    Preconditions.checkArgument(!this.bounds.isEmpty());
+  }
+
+  /** Creates a histogram with at most {@code bucketCount} buckets from a
+   * list of values. Null values are ignored. Returns null if there are no
+   * non-null values. */
+  public static Histogram of(List<? extends Comparable> values,
+      int bucketCount) {
+    Preconditions.checkArgument(bucketCount > 0);
+    final List<Comparable> sorted = new ArrayList<>(values.size());
+    for (Comparable value : values) {
+      if (value != null) {
+        sorted.add(value);
+      }
+    }
+    if (sorted.isEmpty()) {
+      return null;
+    }
+    //noinspection unchecked
+    Collections.sort((List) sorted);
+    final int n = sorted.size();
+    final int buckets = Math.min(bucketCount, n);
+    final List<Comparable> bounds = new ArrayList<>(buckets);
+    for (int i = 1; i <= buckets; i++) {
+      final Comparable bound = sorted.get((int) ((long) i * n / buckets) - 1);
+      // A heavily repeated value may end several buckets; keep one.
+      if (bounds.isEmpty() || !bounds.get(bounds.size() - 1).equals(bound)) {
+        bounds.add(bound);
+      }
+    }
+    return new Histogram(sorted.get(0), bounds);
+  }
+
+  /** Returns the number of buckets. */
+  public int bucketCount() {
+    return bounds.size();
+  }
+
+  /** Returns the maximum value; upper bound of the last bucket. */
+  public Comparable max() {
+    return bounds.get(bounds.size() - 1);
+  }
+
+  /** Estimates the fraction of non-null values that are less than or equal
+   * to {@code value}.
+   *
+   * <p>Assumes that values are uniformly spread within each bucket; for
+   * non-numeric values, assumes that half of a bucket qualifies. */
+  public double fractionLessThanOrEqual(Comparable value) {
+    if (compare(value, min) < 0) {
+      return 0d;
+    }
+    final int n = bounds.size();
+    for (int i = 0; i < n; i++) {
+      final Comparable upper = bounds.get(i);
+      final int c = compare(value, upper);
+      if (c == 0) {
+        return (double) (i + 1) / n;
+      }
+      if (c < 0) {
+        final Comparable lower = i == 0 ? min : bounds.get(i - 1);
+        return (i + interpolate(lower, upper, value)) / n;
+      }
+    }
+    return 1d;
+  }
+
+  /** Compares two values. Numbers of different classes (say an
+   * {@link Integer} read from a statistics file and a {@link Long} literal
+   * from a query) are compared by value. */
+  static int compare(Comparable v0, Comparable v1) {
+    if (v0 instanceof Number
+        && v1 instanceof Number
+        && v0.getClass() != v1.getClass()) {
+      return Double.compare(((Number) v0).doubleValue(),
+          ((Number) v1).doubleValue());
+    }
+    //noinspection unchecked
+    return v0.compareTo(v1);
+  }
+
+  private static double interpolate(Comparable lower, Comparable upper,
+      Comparable value) {
+    if (lower instanceof Number
+        && upper instanceof Number
+        && value instanceof Number) {
+      final double lo = ((Number) lower).doubleValue();
+      final double hi = ((Number) upper).doubleValue();
+      if (hi > lo) {
+        final double v = ((Number) value).doubleValue();
+        return Math.max(0d, Math.min(1d, (v - lo) / (hi - lo)));
+      }
+    }
+    return 0.5d;
+  }
+
+  /** Estimates the fraction of non-null values that lie within a range.
+   * Either bound may be null, meaning unbounded. */
+  public double fractionBetween(Comparable lower, Comparable upper) {
+    final double hi = upper == null ? 1d : fractionLessThanOrEqual(upper);
+    final double lo = lower == null ? 0d : fractionLessThanOrEqual(lower);
+    return Math.max(0d, hi - lo);
+  }
+
+  @Override public String toString() {
+    return "Histogram(min: " + min + ", bounds: " + bounds + ")";
+  }
+}
+
+// End Histogram.java
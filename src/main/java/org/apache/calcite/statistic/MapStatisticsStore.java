@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.statistic;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Implementation of {@link StatisticsStore} that keeps statistics in
+ * memory.
+ */
+public class MapStatisticsStore implements StatisticsStore {
+  protected final ConcurrentMap<List<String>, TableStatistic> map =
+      new ConcurrentHashMap<>();
+  private final ConcurrentMap<List<String>, AtomicLong> modifications =
+      new ConcurrentHashMap<>();
+
+  public TableStatistic get(List<String> qualifiedName) {
+    return map.get(qualifiedName);
+  }
+
+  public void put(List<String> qualifiedName, TableStatistic statistic) {
+    final ImmutableList<String> key = ImmutableList.copyOf(qualifiedName);
+    map.put(key, statistic);
+    modifications.remove(key);
+    onChange();
+  }
+
+  public void remove(List<String> qualifiedName) {
+    map.remove(qualifiedName);
+    modifications.remove(qualifiedName);
+    onChange();
+  }
+
+  public void recordModification(List<String> qualifiedName, long rowCount) {
+    AtomicLong count = modifications.get(qualifiedName);
+    if (count == null) {
+      final AtomicLong count2 = new AtomicLong();
+      count = modifications.putIfAbsent(ImmutableList.copyOf(qualifiedName),
+          count2);
+      if (count == null) {
+        count = count2;
+      }
+    }
+    count.addAndGet(rowCount);
+  }
+
+  public boolean isStale(List<String> qualifiedName, long maxAgeMillis,
+      double maxModifiedFraction) {
+    final TableStatistic statistic = map.get(qualifiedName);
+    if (statistic == null) {
+      return true;
+    }
+    if (System.currentTimeMillis() - statistic.timestamp > maxAgeMillis) {
+      return true;
+    }
+    final AtomicLong count = modifications.get(qualifiedName);
+    if (count == null) {
+      return false;
+    }
+    return count.get() > maxModifiedFraction * Math.max(1d, statistic.rowCount);
+  }
+
+  /** Returns a snapshot of the contents of this store. */
+  public Map<List<String>, TableStatistic> asMap() {
+    return ImmutableMap.copyOf(map);
+  }
+
+  /** Called after the statistics for a table have been added or removed.
+   * Sub-classes may override to persist the change. */
+  protected void onChange() {
+  }
+}
+
+// End MapStatisticsStore.java
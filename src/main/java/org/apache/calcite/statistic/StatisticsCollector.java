@@ -0,0 +1,305 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.statistic;
+
+import org.apache.calcite.DataContext;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.function.Function1;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.runtime.DaemonExecutors;
+import org.apache.calcite.schema.QueryableTable;
+import org.apache.calcite.schema.SampleableTable;
+import org.apache.calcite.schema.ScannableTable;
+import org.apache.calcite.schema.SchemaPlus;
+import org.apache.calcite.schema.Table;
+
+import com.google.common.base.Preconditions;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Computes {@link TableStatistic statistics} for a table by scanning it.
+ *
+ * <p>The collector reads the table once, counting its rows and keeping a
+ * uniform random sample of at most {@link #sampleSize} rows (reservoir
+ * sampling). It then computes the statistics of each column from the sample,
+ * one task per column, on an executor.</p>
+ *
+ * <p>If the table is a {@link SampleableTable} and its row count is known
+ * (from the table's own statistic or from statistics collected earlier) and
+ * is much larger than the sample size, the collector asks the table for a
+ * sample of about twice the sample size, rather than reading every row, and
+ * estimates the row count from the size of that sample.</p>
+ *
+ * <p>The number of distinct values of a column is estimated from the sample
+ * using the Guaranteed-Error Estimator (GEE) of Charikar et al., which is
+ * exact if the whole table fits in the sample.</p>
+ *
+ * <p>Supports tables that implement {@link ScannableTable} (including JDBC
+ * tables) or {@link QueryableTable}.</p>
+ */
+public class StatisticsCollector {
+  public static final int DEFAULT_SAMPLE_SIZE = 10000;
+  public static final int DEFAULT_BUCKET_COUNT = 32;
+
+  /** Ratio of the number of rows requested from a {@link SampleableTable}
+   * to the sample size. Greater than 1 so that the sample is rarely smaller
+   * than required. */
+  private static final double OVERSAMPLE = 2d;
+
+  /** Executor used if none is specified. */
+  private static final ExecutorService DEFAULT_EXECUTOR =
+      DaemonExecutors.newProcessorThreadPool("calcite-statistics-%d");
+
+  private final ExecutorService executor;
+  private final int sampleSize;
+  private final int bucketCount;
+  private final Random random;
+
+  public StatisticsCollector(ExecutorService executor, int sampleSize,
+      int bucketCount, Random random) {
+    Preconditions.checkArgument(sampleSize > 0);
+    Preconditions.checkArgument(bucketCount > 0);
+    this.executor = Preconditions.checkNotNull(executor);
+    this.sampleSize = sampleSize;
+    this.bucketCount = bucketCount;
+    this.random = Preconditions.checkNotNull(random);
+  }
+
+  /** Creates a collector with default settings. */
+  public static StatisticsCollector create() {
+    return new StatisticsCollector(DEFAULT_EXECUTOR, DEFAULT_SAMPLE_SIZE,
+        DEFAULT_BUCKET_COUNT, new Random());
+  }
+
+  /** Returns whether statistics can be collected for a table; that is,
+   * whether it is scannable or queryable. */
+  public static boolean canCollect(Table table) {
+    return table instanceof ScannableTable
+        || table instanceof QueryableTable;
+  }
+
+  /** Collects statistics for a table in a schema. */
+  public TableStatistic collect(DataContext dataContext, SchemaPlus schema,
+      String tableName) {
+    return collect(dataContext, schema, tableName, null);
+  }
+
+  /** Collects statistics for a table in a schema, given an estimate of its
+   * row count (say from statistics that were collected earlier).
+   *
+   * @param dataContext Data context
+   * @param schema Schema
+   * @param tableName Name of table
+   * @param rowCountEstimate Estimated number of rows, or null to use the
+   *                         table's own statistic
+   */
+  public TableStatistic collect(DataContext dataContext, SchemaPlus schema,
+      String tableName, Double rowCountEstimate) {
+    final Table table = schema.getTable(tableName);
+    if (table == null) {
+      throw new IllegalArgumentException("Table '" + tableName
+          + "' not found");
+    }
+    final RelDataType rowType = table.getRowType(dataContext.getTypeFactory());
+    final List<String> fieldNames = rowType.getFieldNames();
+    if (rowCountEstimate == null) {
+      rowCountEstimate = table.getStatistic().getRowCount();
+    }
+    if (table instanceof SampleableTable
+        && rowCountEstimate != null
+        && rowCountEstimate > OVERSAMPLE * sampleSize) {
+      final double fraction = OVERSAMPLE * sampleSize / rowCountEstimate;
+      final Enumerable<Object[]> sample =
+          ((SampleableTable) table).sample(dataContext, fraction);
+      if (sample != null) {
+        return collect(sample, fieldNames, fraction);
+      }
+    }
+    final Enumerable<Object[]> rows;
+    if (table instanceof ScannableTable) {
+      rows = ((ScannableTable) table).scan(dataContext);
+    } else if (table instanceof QueryableTable) {
+      rows = rows(
+          ((QueryableTable) table).asQueryable(dataContext.getQueryProvider(),
+              schema, tableName),
+          fieldNames);
+    } else {
+      throw new UnsupportedOperationException("Cannot collect statistics for "
+          + "table '" + tableName + "'; it is not scannable or queryable");
+    }
+    return collect(rows, fieldNames);
+  }
+
+  /** Collects statistics from an enumerable of rows. */
+  public TableStatistic collect(Enumerable<Object[]> rows,
+      List<String> fieldNames) {
+    return collect(rows, fieldNames, 1d);
+  }
+
+  /** Collects statistics from an enumerable that contains a given fraction
+   * of the rows of a table.
+   *
+   * @param rows Rows; all rows of the table, or a random sample
+   * @param fieldNames Names of fields
+   * @param fraction Fraction of the table's rows that {@code rows}
+   *                 contains; 1 if it contains every row
+   */
+  public TableStatistic collect(Enumerable<Object[]> rows,
+      final List<String> fieldNames, double fraction) {
+    Preconditions.checkArgument(fraction > 0d && fraction <= 1d);
+    final List<Object[]> sample = new ArrayList<>();
+    long readCount = 0;
+    try (Enumerator<Object[]> enumerator = rows.enumerator()) {
+      while (enumerator.moveNext()) {
+        final Object[] row = enumerator.current();
+        if (readCount < sampleSize) {
+          sample.add(row);
+        } else {
+          // Reservoir sampling: keep this row with probability
+          // sampleSize / (readCount + 1).
+          final long j = (long) (random.nextDouble() * (readCount + 1));
+          if (j < sampleSize) {
+            sample.set((int) j, row);
+          }
+        }
+        ++readCount;
+      }
+    }
+    final double rowCount =
+        fraction == 1d ? readCount : Math.rint(readCount / fraction);
+
+    final List<Future<ColumnStatistic>> futures = new ArrayList<>();
+    for (int i = 0; i < fieldNames.size(); i++) {
+      final int ordinal = i;
+      futures.add(
+          executor.submit(
+              new Callable<ColumnStatistic>() {
+                public ColumnStatistic call() {
+                  return column(fieldNames.get(ordinal), ordinal, sample,
+                      rowCount);
+                }
+              }));
+    }
+    final List<ColumnStatistic> columns = new ArrayList<>();
+    for (Future<ColumnStatistic> future : futures) {
+      try {
+        columns.add(future.get());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        throw new RuntimeException("Error while collecting statistics",
+            e.getCause());
+      }
+    }
+    return new TableStatistic(rowCount, sample.size(), columns,
+        System.currentTimeMillis());
+  }
+
+  /** Computes the statistics of one column from a sample. */
+  private ColumnStatistic column(String name, int ordinal, List<Object[]> sample,
+      double rowCount) {
+    final Map<Object, int[]> counts = new HashMap<>();
+    final List<Comparable> values = new ArrayList<>();
+    boolean comparable = true;
+    int nullCount = 0;
+    for (Object[] row : sample) {
+      final Object value = row[ordinal];
+      if (value == null) {
+        ++nullCount;
+        continue;
+      }
+      int[] count = counts.get(value);
+      if (count == null) {
+        counts.put(value, count = new int[1]);
+      }
+      ++count[0];
+      if (comparable) {
+        if (value instanceof Comparable) {
+          values.add((Comparable) value);
+        } else {
+          comparable = false;
+        }
+      }
+    }
+    final int n = sample.size();
+    if (n == 0) {
+      return new ColumnStatistic(name, 0d, 0d, null);
+    }
+    // GEE: sqrt(N / n) * f1 + sum_{j >= 2} fj, where fj is the number of
+    // values that occur exactly j times in the sample.
+    int f1 = 0;
+    int fRest = 0;
+    for (int[] count : counts.values()) {
+      if (count[0] == 1) {
+        ++f1;
+      } else {
+        ++fRest;
+      }
+    }
+    final double distinctCount =
+        Math.sqrt(rowCount / n) * f1 + fRest;
+    final Histogram histogram =
+        comparable ? Histogram.of(values, bucketCount) : null;
+    return new ColumnStatistic(name, distinctCount, (double) nullCount / n,
+        histogram);
+  }
+
+  /** Converts an enumerable of arbitrary objects (say the elements of a
+   * {@link QueryableTable}) to an enumerable of rows. */
+  private static Enumerable<Object[]> rows(Enumerable<?> enumerable,
+      final List<String> fieldNames) {
+    //noinspection unchecked
+    return ((Enumerable<Object>) enumerable).select(
+        new Function1<Object, Object[]>() {
+          public Object[] apply(Object o) {
+            if (o instanceof Object[]) {
+              return (Object[]) o;
+            }
+            if (fieldNames.size() == 1) {
+              return new Object[] {o};
+            }
+            // A Java object, say from ReflectiveSchema; read its public
+            // fields.
+            final Object[] row = new Object[fieldNames.size()];
+            for (int i = 0; i < row.length; i++) {
+              try {
+                final Field field = o.getClass().getField(fieldNames.get(i));
+                row[i] = field.get(o);
+              } catch (NoSuchFieldException | IllegalAccessException e) {
+                throw new RuntimeException("Cannot read field '"
+                    + fieldNames.get(i) + "' of " + o.getClass(), e);
+              }
+            }
+            return row;
+          }
+        });
+  }
+}
+
+// End StatisticsCollector.java
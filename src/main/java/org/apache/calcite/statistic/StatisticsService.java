@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.statistic;
+
+import org.apache.calcite.DataContext;
+import org.apache.calcite.jdbc.CalciteSchema;
+import org.apache.calcite.runtime.DaemonExecutors;
+import org.apache.calcite.schema.Schema;
+import org.apache.calcite.schema.SchemaPlus;
+import org.apache.calcite.schema.Statistic;
+import org.apache.calcite.schema.Table;
+import org.apache.calcite.util.Util;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Manages the statistics that have been collected for tables, and the
+ * process by which they are collected and refreshed.
+ *
+ * <p>Each root schema, and therefore each connection, has its own service
+ * and its own store; see {@link #instance(SchemaPlus)}.</p>
+ *
+ * <p>The planner calls {@link #getStatistic(List, Table)} when it needs the
+ * statistics of a table; if statistics have been collected, they override
+ * the row count reported by the table itself.</p>
+ *
+ * <p>Statements that modify a table call
+ * {@link #recordModification(DataContext, List, long)}. When enough rows of
+ * a table have been modified that its statistics are stale, the service
+ * collects them again in the background.</p>
+ */
+public class StatisticsService {
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(StatisticsService.class);
+
+  /** Services, one per root schema. Keyed by the root's underlying
+   * {@link Schema}, which is shared by the snapshots that statements plan
+   * against. Weak keys, so that a service is discarded when its root schema
+   * is. */
+  private static final Map<Schema, StatisticsService> INSTANCES =
+      new WeakHashMap<>();
+
+  /** Executor that refreshes stale statistics. Single-threaded, because
+   * collecting statistics for one table uses all of the collector's
+   * threads. */
+  private static final ExecutorService REFRESH_EXECUTOR =
+      DaemonExecutors.newSingleThreadExecutor("calcite-statistics-refresh-%d");
+
+  /** Default maximum age of statistics before they are considered stale. */
+  public static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+  /** Default fraction of rows that may be modified before statistics are
+   * considered stale. */
+  public static final double DEFAULT_MAX_MODIFIED_FRACTION = 0.1d;
+
+  private volatile StatisticsStore store = new MapStatisticsStore();
+  private volatile StatisticsCollector collector = StatisticsCollector.create();
+
+  /** Tables whose statistics are being refreshed in the background. */
+  private final Set<List<String>> refreshing =
+      Collections.newSetFromMap(new ConcurrentHashMap<List<String>, Boolean>());
+
+  private StatisticsService() {
+  }
+
+  /** Returns the statistics service of the root schema of a given schema,
+   * creating it if necessary. */
+  public static StatisticsService instance(SchemaPlus schema) {
+    return instance(CalciteSchema.from(schema));
+  }
+
+  /** Returns the statistics service of the root schema of a given schema,
+   * creating it if necessary. */
+  public static StatisticsService instance(CalciteSchema schema) {
+    final Schema root = schema.root().schema;
+    synchronized (INSTANCES) {
+      StatisticsService service = INSTANCES.get(root);
+      if (service == null) {
+        service = new StatisticsService();
+        INSTANCES.put(root, service);
+      }
+      return service;
+    }
+  }
+
+  public StatisticsStore getStore() {
+    return store;
+  }
+
+  /** Sets the store, for example to a {@link FileStatisticsStore} so that
+   * statistics survive a restart. */
+  public void setStore(StatisticsStore store) {
+    this.store = Preconditions.checkNotNull(store);
+  }
+
+  public void setCollector(StatisticsCollector collector) {
+    this.collector = Preconditions.checkNotNull(collector);
+  }
+
+  /** Returns the statistic of a table; the collected statistics if there are
+   * any, otherwise the table's own statistic. */
+  public Statistic getStatistic(List<String> qualifiedName, Table table) {
+    final Statistic statistic = table.getStatistic();
+    final TableStatistic tableStatistic = store.get(qualifiedName);
+    if (tableStatistic == null) {
+      return statistic;
+    }
+    return tableStatistic.toStatistic(statistic);
+  }
+
+  /** Collects statistics for a table and stores them.
+   *
+   * <p>If statistics were collected earlier, uses their row count to decide
+   * whether the table can be sampled rather than read in full. */
+  public TableStatistic analyze(DataContext dataContext, SchemaPlus schema,
+      String tableName) {
+    final List<String> qualifiedName =
+        CalciteSchema.from(schema).path(tableName);
+    final TableStatistic previous = store.get(qualifiedName);
+    final TableStatistic statistic =
+        collector.collect(dataContext, schema, tableName,
+            previous == null ? null : previous.rowCount);
+    store.put(qualifiedName, statistic);
+    return statistic;
+  }
+
+  /** Collects statistics for each table in a schema whose statistics are
+   * missing or stale, and returns the number of tables analyzed.
+   *
+   * <p>Skips, with a warning, tables that are neither scannable nor
+   * queryable. */
+  public int analyzeSchema(DataContext dataContext, SchemaPlus schema,
+      long maxAgeMillis, double maxModifiedFraction) {
+    final CalciteSchema calciteSchema = CalciteSchema.from(schema);
+    int n = 0;
+    for (String tableName : schema.getTableNames()) {
+      final List<String> qualifiedName = calciteSchema.path(tableName);
+      if (!StatisticsCollector.canCollect(schema.getTable(tableName))) {
+        LOGGER.warn("Cannot collect statistics for table {}; it is neither "
+            + "scannable nor queryable", qualifiedName);
+        continue;
+      }
+      if (store.isStale(qualifiedName, maxAgeMillis, maxModifiedFraction)) {
+        analyze(dataContext, schema, tableName);
+        ++n;
+      }
+    }
+    return n;
+  }
+
+  /** Records that rows of a table have been modified, so that its
+   * statistics may become stale. */
+  public void recordModification(List<String> qualifiedName, long rowCount) {
+    store.recordModification(qualifiedName, rowCount);
+  }
+
+  /** Records that a statement has modified rows of a table, and if the
+   * table's statistics have become stale, starts to refresh them in the
+   * background. Called from generated code, after INSERT and DELETE.
+   *
+   * <p>Tables whose statistics have never been collected are not
+   * analyzed. */
+  public static void recordModification(DataContext dataContext,
+      List<String> qualifiedName, long rowCount) {
+    final SchemaPlus rootSchema = dataContext.getRootSchema();
+    if (rowCount == 0 || rootSchema == null) {
+      return;
+    }
+    final StatisticsService service = instance(rootSchema);
+    service.recordModification(qualifiedName, rowCount);
+    service.refreshIfStale(dataContext, rootSchema, qualifiedName);
+  }
+
+  private void refreshIfStale(final DataContext dataContext,
+      SchemaPlus rootSchema, List<String> qualifiedName) {
+    final List<String> key = ImmutableList.copyOf(qualifiedName);
+    if (store.get(key) == null
+        || !store.isStale(key, DEFAULT_MAX_AGE_MILLIS,
+            DEFAULT_MAX_MODIFIED_FRACTION)
+        || !refreshing.add(key)) {
+      return;
+    }
+    SchemaPlus schema = rootSchema;
+    for (String name : Util.skipLast(key)) {
+      schema = schema.getSubSchema(name);
+      if (schema == null) {
+        refreshing.remove(key);
+        return;
+      }
+    }
+    final SchemaPlus schema2 = schema;
+    REFRESH_EXECUTOR.execute(
+        new Runnable() {
+          public void run() {
+            try {
+              analyze(dataContext, schema2, Util.last(key));
+            } catch (RuntimeException e) {
+              LOGGER.warn("Error while refreshing statistics of table {}",
+                  key, e);
+            } finally {
+              refreshing.remove(key);
+            }
+          }
+        });
+  }
+}
+
+// End StatisticsService.java
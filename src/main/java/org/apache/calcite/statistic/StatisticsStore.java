@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.statistic;
+
+import java.util.List;
+
+/**
+ * Repository of {@link TableStatistic} objects, keyed by the fully-qualified
+ * name of the table.
+ *
+ * <p>Implementations must be thread-safe.</p>
+ *
+ * @see MapStatisticsStore
+ * @see FileStatisticsStore
+ */
+public interface StatisticsStore {
+  /** Returns the statistics for a table, or null if none have been
+   * collected. */
+  TableStatistic get(List<String> qualifiedName);
+
+  /** Stores the statistics for a table, replacing any previous statistics
+   * and resetting its modification count. */
+  void put(List<String> qualifiedName, TableStatistic statistic);
+
+  /** Removes the statistics for a table. */
+  void remove(List<String> qualifiedName);
+
+  /** Records that {@code rowCount} rows of a table have been inserted,
+   * updated or deleted since its statistics were collected. */
+  void recordModification(List<String> qualifiedName, long rowCount);
+
+  /** Returns whether the statistics of a table are missing, or are older than
+   * {@code maxAgeMillis}, or whether more than {@code maxModifiedFraction} of
+   * its rows have been modified since they were collected. */
+  boolean isStale(List<String> qualifiedName, long maxAgeMillis,
+      double maxModifiedFraction);
+}
+
+// End StatisticsStore.java
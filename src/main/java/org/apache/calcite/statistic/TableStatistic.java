@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.statistic;
+
+import org.apache.calcite.rel.RelCollation;
+import org.apache.calcite.rel.RelDistribution;
+import org.apache.calcite.rel.RelReferentialConstraint;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexInputRef;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.schema.Statistic;
+import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.sql.type.SqlTypeFamily;
+import org.apache.calcite.util.ImmutableBitSet;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/**
+ * Statistics about a table, as computed by {@link StatisticsCollector}.
+ *
+ * <p>Instances are immutable. To find out whether the statistics are still
+ * current, see {@link StatisticsStore#isStale}.</p>
+ */
+public class TableStatistic {
+  /** Number of rows in the table when the statistics were collected. */
+  public final double rowCount;
+  /** Number of rows that were sampled; equal to {@link #rowCount} if the
+   * whole table was read. */
+  public final long sampleSize;
+  /** Statistics for each column, in the order of the table's row type. */
+  public final ImmutableList<ColumnStatistic> columns;
+  /** Time at which the statistics were collected, in milliseconds since
+   * the epoch. */
+  public final long timestamp;
+
+  public TableStatistic(double rowCount, long sampleSize,
+      List<ColumnStatistic> columns, long timestamp) {
+    this.rowCount = rowCount;
+    this.sampleSize = sampleSize;
+    this.columns = ImmutableList.copyOf(columns);
+    this.timestamp = timestamp;
+  }
+
+  /** Returns whether every row of the table was read; if so, the
+   * distinct-counts are exact, not estimates. */
+  public boolean isExact() {
+    return sampleSize >= rowCount;
+  }
+
+  /** Returns the statistic for a column, or null if there is no such
+   * column. */
+  public ColumnStatistic column(String name) {
+    for (ColumnStatistic column : columns) {
+      if (column.name.equals(name)) {
+        return column;
+      }
+    }
+    return null;
+  }
+
+  /** Estimates the fraction of rows that satisfy a predicate, or returns
+   * null if these statistics cannot estimate it.
+   *
+   * <p>Handles {@code IS NULL}, {@code IS NOT NULL}, and comparisons between
+   * a column and a literal. The predicate's input references are ordinals of
+   * columns of the table. Uses the histogram only if the literal's value is
+   * comparable with the values in the histogram; both numbers, or both of
+   * the same class. */
+  public Double selectivity(RexNode predicate) {
+    final SqlKind kind = predicate.getKind();
+    switch (kind) {
+    case IS_NULL:
+    case IS_NOT_NULL:
+      final ColumnStatistic column =
+          column(((RexCall) predicate).getOperands().get(0));
+      if (column == null) {
+        return null;
+      }
+      return kind == SqlKind.IS_NULL
+          ? column.nullFraction
+          : 1d - column.nullFraction;
+    case EQUALS:
+    case NOT_EQUALS:
+    case LESS_THAN:
+    case LESS_THAN_OR_EQUAL:
+    case GREATER_THAN:
+    case GREATER_THAN_OR_EQUAL:
+      final List<RexNode> operands = ((RexCall) predicate).getOperands();
+      if (operands.get(1) instanceof RexInputRef
+          && operands.get(0) instanceof RexLiteral) {
+        return comparisonSelectivity(kind.reverse(), operands.get(1),
+            (RexLiteral) operands.get(0));
+      }
+      if (operands.get(1) instanceof RexLiteral) {
+        return comparisonSelectivity(kind, operands.get(0),
+            (RexLiteral) operands.get(1));
+      }
+      return null;
+    default:
+      return null;
+    }
+  }
+
+  private Double comparisonSelectivity(SqlKind kind, RexNode ref,
+      RexLiteral literal) {
+    final ColumnStatistic column = column(ref);
+    if (column == null) {
+      return null;
+    }
+    if (literal.isNull()) {
+      // A comparison with null is never true
+      return 0d;
+    }
+    final Comparable value = value(literal);
+    final double nonNull = 1d - column.nullFraction;
+    final double equal = column.distinctCount < 1d
+        ? 1d : 1d / column.distinctCount;
+    final Histogram histogram =
+        column.histogram != null
+            && value != null
+            && comparable(value, column.histogram.min)
+            ? column.histogram
+            : null;
+    switch (kind) {
+    case EQUALS:
+      if (histogram != null
+          && (Histogram.compare(value, histogram.min) < 0
+              || Histogram.compare(value, histogram.max()) > 0)) {
+        return 0d;
+      }
+      return nonNull * equal;
+    case NOT_EQUALS:
+      return nonNull * (1d - equal);
+    default:
+      break;
+    }
+    if (histogram == null) {
+      return null;
+    }
+    final double lessOrEqual = histogram.fractionLessThanOrEqual(value);
+    switch (kind) {
+    case LESS_THAN:
+      return nonNull * Math.max(0d, lessOrEqual - equal);
+    case LESS_THAN_OR_EQUAL:
+      return nonNull * lessOrEqual;
+    case GREATER_THAN:
+      return nonNull * (1d - lessOrEqual);
+    case GREATER_THAN_OR_EQUAL:
+      return nonNull * Math.min(1d, 1d - lessOrEqual + equal);
+    default:
+      throw new AssertionError(kind);
+    }
+  }
+
+  /** Returns the statistic of the column that an expression references, or
+   * null if it is not a reference to a column. */
+  private ColumnStatistic column(RexNode node) {
+    if (node instanceof RexInputRef) {
+      final int i = ((RexInputRef) node).getIndex();
+      if (i < columns.size()) {
+        return columns.get(i);
+      }
+    }
+    return null;
+  }
+
+  /** Returns the value of a literal in the form that the collector would
+   * have read it from a table: exact and approximate numbers as
+   * {@link java.math.BigDecimal}, strings as {@link String}, and dates and
+   * times as {@link Integer} or {@link Long}. */
+  private static Comparable value(RexLiteral literal) {
+    if (literal.getTypeName().getFamily() == SqlTypeFamily.NUMERIC) {
+      return literal.getValue();
+    }
+    final Object value = literal.getValue2();
+    return value instanceof Comparable ? (Comparable) value : null;
+  }
+
+  private static boolean comparable(Comparable v0, Comparable v1) {
+    return v0 instanceof Number && v1 instanceof Number
+        || v0.getClass() == v1.getClass();
+  }
+
+  /** Returns a {@link Statistic} that reports the collected row count and
+   * keys, and otherwise defers to the table's own statistic. */
+  public Statistic toStatistic(final Statistic base) {
+    Preconditions.checkNotNull(base);
+    return new Statistic() {
+      public Double getRowCount() {
+        return rowCount;
+      }
+
+      public boolean isKey(ImmutableBitSet keyColumns) {
+        if (base.isKey(keyColumns)) {
+          return true;
+        }
+        if (!isExact()) {
+          return false;
+        }
+        for (int i : keyColumns) {
+          if (i < columns.size()) {
+            final ColumnStatistic column = columns.get(i);
+            if (column.nullFraction == 0d
+                && column.distinctCount >= rowCount) {
+              return true;
+            }
+          }
+        }
+        return false;
+      }
+
+      public List<RelReferentialConstraint> getReferentialConstraints() {
+        return base.getReferentialConstraints();
+      }
+
+      public List<RelCollation> getCollations() {
+        return base.getCollations();
+      }
+
+      public RelDistribution getDistribution() {
+        return base.getDistribution();
+      }
+    };
+  }
+
+  @Override public String toString() {
+    return "TableStatistic(rowCount: " + rowCount
+        + ", sampleSize: " + sampleSize
+        + ", columns: " + columns + ")";
+  }
+}
+
+// End TableStatistic.java
@@ -0,0 +1,35 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Collection and storage of table statistics.
+ *
+ * <p>A {@link org.apache.calcite.statistic.StatisticsCollector} scans a
+ * sample of a table and computes its row count and, for each column, the
+ * number of distinct values, the number of nulls, the range and an
+ * equi-depth histogram. The results are kept in a
+ * {@link org.apache.calcite.statistic.StatisticsStore}, optionally persisted
+ * to a file, and {@link org.apache.calcite.statistic.StatisticsService}
+ * makes them available to the planner in place of the table's own
+ * {@link org.apache.calcite.schema.Statistic}.</p>
+ */
+@PackageMarker
+package org.apache.calcite.statistic;
+
+import org.apache.calcite.avatica.util.PackageMarker;
+
+// End package-info.java
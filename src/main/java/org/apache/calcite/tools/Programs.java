@@ -19,6 +19,7 @@ package org.apache.calcite.tools;
 import org.apache.calcite.adapter.enumerable.EnumerableRules;
 import org.apache.calcite.config.CalciteConnectionConfig;
 import org.apache.calcite.interpreter.NoneToBindableConverterRule;
+import org.apache.calcite.plan.AbstractRelOptPlanner;
 import org.apache.calcite.plan.RelOptCostImpl;
 import org.apache.calcite.plan.RelOptLattice;
 import org.apache.calcite.plan.RelOptMaterialization;
@@ -199,6 +200,11 @@ public class Programs {
           List<RelOptLattice> lattices) {
         final HepPlanner hepPlanner = new HepPlanner(hepProgram,
             null, noDag, null, RelOptCostImpl.FACTORY);
+        if (planner instanceof AbstractRelOptPlanner
+            && ((AbstractRelOptPlanner) planner).getProfiler() != null) {
+          hepPlanner.setProfiler(
+              ((AbstractRelOptPlanner) planner).getProfiler());
+        }
 
         List<RelMetadataProvider> list = Lists.newArrayList();
         if (metadataProvider != null) {
@@ -17,7 +17,10 @@
 package org.apache.calcite.util;
 
 import org.apache.calcite.DataContext;
+import org.apache.calcite.adapter.enumerable.EnumerableIndexJoin;
 import org.apache.calcite.adapter.java.ReflectiveSchema;
+import org.apache.calcite.adapter.jdbc.JdbcBatchWriter;
+import org.apache.calcite.adapter.jdbc.JdbcBindJoin;
 import org.apache.calcite.adapter.jdbc.JdbcSchema;
 import org.apache.calcite.avatica.util.DateTimeUtils;
 import org.apache.calcite.avatica.util.TimeUnitRange;
@@ -43,6 +46,7 @@ import org.apache.calcite.linq4j.function.Predicate2;
 import org.apache.calcite.linq4j.tree.FunctionExpression;
 import org.apache.calcite.linq4j.tree.Primitive;
 import org.apache.calcite.linq4j.tree.Types;
+import org.apache.calcite.materialize.MaterializationService;
 import org.apache.calcite.rel.metadata.BuiltInMetadata.AllPredicates;
 import org.apache.calcite.rel.metadata.BuiltInMetadata.Collation;
 import org.apache.calcite.rel.metadata.BuiltInMetadata.ColumnOrigin;
@@ -80,6 +84,7 @@ import org.apache.calcite.runtime.SqlFunctions;
 import org.apache.calcite.runtime.SqlFunctions.FlatProductInputType;
 import org.apache.calcite.runtime.Utilities;
 import org.apache.calcite.schema.FilterableTable;
+import org.apache.calcite.schema.IndexableTable;
 import org.apache.calcite.schema.ModifiableTable;
 import org.apache.calcite.schema.ProjectableFilterableTable;
 import org.apache.calcite.schema.QueryableTable;
@@ -88,6 +93,7 @@ import org.apache.calcite.schema.Schema;
 import org.apache.calcite.schema.SchemaPlus;
 import org.apache.calcite.schema.Schemas;
 import org.apache.calcite.sql.SqlExplainLevel;
+import org.apache.calcite.statistic.StatisticsService;
 
 import com.google.common.collect.ImmutableMap;
 
@@ -137,10 +143,25 @@ public enum BuiltInMethod {
   DATA_CONTEXT_GET(DataContext.class, "get", String.class),
   DATA_CONTEXT_GET_ROOT_SCHEMA(DataContext.class, "getRootSchema"),
   JDBC_SCHEMA_DATA_SOURCE(JdbcSchema.class, "getDataSource"),
+  JDBC_SCHEMA_FETCH_SIZE(JdbcSchema.class, "getFetchSize"),
+  JDBC_BATCH_WRITER_INSERT(JdbcBatchWriter.class, "insert", JdbcSchema.class,
+      String.class, int[].class, Enumerable.class),
+  JDBC_BIND_JOIN(JdbcBindJoin.class, "join", Enumerable.class,
+      Function1.class, Function1.class, Function1.class, Function2.class,
+      DataContext.class, int.class, int.class),
   ROW_VALUE(Row.class, "getObject", int.class),
   ROW_AS_COPY(Row.class, "asCopy", Object[].class),
   RESULT_SET_ENUMERABLE_OF(ResultSetEnumerable.class, "of", DataSource.class,
       String.class, Function1.class),
+  RESULT_SET_ENUMERABLE_OF_FETCH(ResultSetEnumerable.class, "of",
+      DataSource.class, String.class, Function1.class, int.class),
+  RESULT_SET_ENUMERABLE_OF_PREPARED(ResultSetEnumerable.class, "of",
+      DataSource.class, String.class, Function1.class, int.class,
+      ResultSetEnumerable.PreparedStatementEnricher.class),
+  CREATE_ENRICHER(ResultSetEnumerable.class, "createEnricher", int[].class,
+      int[].class, DataContext.class),
+  RESULT_SET_ENUMERABLE_OF_PARTITIONS(ResultSetEnumerable.class,
+      "ofPartitions", DataSource.class, List.class, Function1.class, int.class),
   JOIN(ExtendedEnumerable.class, "join", Enumerable.class, Function1.class,
       Function1.class, Function2.class),
   MERGE_JOIN(EnumerableDefaults.class, "mergeJoin", Enumerable.class,
@@ -290,7 +311,16 @@ public enum BuiltInMethod {
   GREATER(SqlFunctions.class, "greater", Comparable.class, Comparable.class),
   MODIFIABLE_TABLE_GET_MODIFIABLE_COLLECTION(ModifiableTable.class,
       "getModifiableCollection"),
+  MATERIALIZATION_CAPTURE_CHANGES(MaterializationService.class,
+      "captureChanges", Object.class, Collection.class),
+  STATISTICS_RECORD_MODIFICATION(StatisticsService.class,
+      "recordModification", DataContext.class, List.class, long.class),
   SCANNABLE_TABLE_SCAN(ScannableTable.class, "scan", DataContext.class),
+  INDEXABLE_TABLE_LOOKUP(IndexableTable.class, "lookup", DataContext.class,
+      int.class, List.class),
+  ENUMERABLE_INDEX_JOIN(EnumerableIndexJoin.class, "join", Enumerable.class,
+      Function1.class, Function1.class, IndexableTable.class, int.class,
+      Function1.class, Function2.class, DataContext.class, int.class),
   STRING_TO_BOOLEAN(SqlFunctions.class, "toBoolean", String.class),
   INTERNAL_TO_DATE(SqlFunctions.class, "internalToDate", int.class),
   INTERNAL_TO_TIME(SqlFunctions.class, "internalToTime", int.class),
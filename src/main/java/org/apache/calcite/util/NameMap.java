@@ -52,6 +52,12 @@ public class NameMap<V> {
     map.put(name, v);
   }
 
+  /** Removes the entry with a given name (matched case-sensitively), and
+   * returns its value, or null if there was no such entry. */
+  public V remove(String name) {
+    return map.remove(name);
+  }
+
   /** Returns a map containing all the entries in the map that match the given
    * name. If case-sensitive, that map will have 0 or 1 elements; if
    * case-insensitive, it may have 0 or more. */
@@ -18,19 +18,36 @@ package org.apache.calcite.adapter.clone;
 
 import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
 import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
 import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.rel.RelCollation;
+import org.apache.calcite.rel.RelCollations;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeImpl;
 import org.apache.calcite.rel.type.RelDataTypeSystem;
+import org.apache.calcite.runtime.Hook;
+import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.util.ImmutableBitSet;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
 
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Unit test for {@link ArrayTable} and {@link ColumnLoader}.
@@ -282,6 +299,195 @@ public class ArrayTableTest {
     assertEquals(2, pair.cardinality);
   }
 
+  @Test public void testRunLength() {
+    ColumnLoader.ValueSet valueSet = new ColumnLoader.ValueSet(int.class);
+    for (int i = 0; i < 5000; i++) {
+      valueSet.add(i / 100 * 7);
+    }
+    final ArrayTable.Column pair = valueSet.freeze(0, null);
+    assertEquals(ArrayTable.RepresentationType.RUN_LENGTH,
+        pair.representation.getType());
+    assertEquals(50, pair.cardinality);
+    assertEquals(5000, pair.representation.size(pair.dataSet));
+    assertEquals(0, pair.representation.getObject(pair.dataSet, 99));
+    assertEquals(7, pair.representation.getObject(pair.dataSet, 100));
+    assertEquals(343, pair.representation.getObject(pair.dataSet, 4999));
+
+    final Object[] values = new Object[200];
+    pair.representation.decode(pair.dataSet, 50, 200, values);
+    assertEquals(0, values[49]);
+    assertEquals(7, values[50]);
+    assertEquals(7, values[149]);
+    assertEquals(14, values[150]);
+
+    final BitSet rows = new BitSet();
+    pair.representation.findEqual(pair.dataSet, 7, 150, 1000, rows);
+    assertEquals(150, rows.nextSetBit(0));
+    assertEquals(50, rows.cardinality());
+    pair.representation.findEqual(pair.dataSet, 8, 0, 5000, rows);
+    assertEquals(50, rows.cardinality());
+  }
+
+  @Test public void testFrameOfReference() {
+    ColumnLoader.ValueSet valueSet = new ColumnLoader.ValueSet(long.class);
+    for (int i = 0; i < 10; i++) {
+      valueSet.add(1000000000000L + i * 10);
+    }
+    final ArrayTable.Column pair = valueSet.freeze(0, null);
+    assertEquals(ArrayTable.RepresentationType.FRAME_OF_REFERENCE,
+        pair.representation.getType());
+    assertEquals(1000000000030L,
+        pair.representation.getObject(pair.dataSet, 3));
+
+    final Object[] values = new Object[4];
+    pair.representation.decode(pair.dataSet, 6, 4, values);
+    assertEquals("[1000000000060, 1000000000070, 1000000000080, "
+        + "1000000000090]", Arrays.toString(values));
+
+    final BitSet rows = new BitSet();
+    pair.representation.findEqual(pair.dataSet, 1000000000090L, 0, 10, rows);
+    pair.representation.findEqual(pair.dataSet, 90L, 0, 10, rows);
+    assertEquals("{9}", rows.toString());
+  }
+
+  @Test public void testPrimitiveDictionary() {
+    ColumnLoader.ValueSet valueSet = new ColumnLoader.ValueSet(long.class);
+    for (int i = 0; i < 3000; i++) {
+      valueSet.add((i % 3 + 1) * 1000000000000L);
+    }
+    final ArrayTable.Column pair = valueSet.freeze(0, null);
+    assertEquals(ArrayTable.RepresentationType.PRIMITIVE_DICTIONARY,
+        pair.representation.getType());
+    assertEquals(3, pair.cardinality);
+    assertEquals(2000000000000L,
+        pair.representation.getObject(pair.dataSet, 1));
+
+    final Object[] values = new Object[3];
+    pair.representation.decode(pair.dataSet, 2998, 2, values);
+    assertEquals("[2000000000000, 3000000000000, null]",
+        Arrays.toString(values));
+
+    final BitSet rows = new BitSet();
+    pair.representation.findEqual(pair.dataSet, 3000000000000L, 0, 9, rows);
+    assertEquals("{2, 5, 8}", rows.toString());
+  }
+
+  @Test public void testZoneMap() {
+    final List<Comparable> values = Arrays.<Comparable>asList(3, null, 1, 2);
+    final ArrayTable.ZoneMap zoneMap = ArrayTable.ZoneMap.of(values);
+    assertEquals("[1]", Arrays.toString(zoneMap.mins));
+    assertEquals("[3]", Arrays.toString(zoneMap.maxes));
+    assertEquals("[1]", Arrays.toString(zoneMap.nullCounts));
+    assertTrue(
+        new ArrayTable.ColumnPredicate(0, SqlKind.EQUALS, 2)
+            .mayMatch(zoneMap, 0));
+    assertFalse(
+        new ArrayTable.ColumnPredicate(0, SqlKind.EQUALS, 4)
+            .mayMatch(zoneMap, 0));
+    assertFalse(
+        new ArrayTable.ColumnPredicate(0, SqlKind.LESS_THAN, 1)
+            .mayMatch(zoneMap, 0));
+    assertTrue(
+        new ArrayTable.ColumnPredicate(0, SqlKind.IS_NULL, null)
+            .mayMatch(zoneMap, 0));
+  }
+
+  @Test public void testFilteredEnumerator() {
+    final ColumnLoader.ValueSet valueSet0 =
+        new ColumnLoader.ValueSet(int.class);
+    final ColumnLoader.ValueSet valueSet1 =
+        new ColumnLoader.ValueSet(String.class);
+    for (int i = 0; i < 10000; i++) {
+      valueSet0.add(i);
+      valueSet1.add(i % 2 == 0 ? "even" : null);
+    }
+    final ArrayTable.Content content =
+        new ArrayTable.Content(
+            Arrays.asList(valueSet0.freeze(0, null),
+                valueSet1.freeze(1, null)),
+            10000, ImmutableList.<RelCollation>of());
+
+    // Rows 9000 and above are in the last block; the zone map of column 0
+    // allows us to skip the first two blocks.
+    Enumerator<Object[]> enumerator =
+        content.filteredEnumerator(
+            Arrays.asList(
+                new ArrayTable.ColumnPredicate(0,
+                    SqlKind.GREATER_THAN_OR_EQUAL, 9000),
+                new ArrayTable.ColumnPredicate(1, SqlKind.EQUALS, "even")),
+            new int[] {0});
+    assertTrue(enumerator.moveNext());
+    assertEquals("[9000]", Arrays.toString(enumerator.current()));
+    int n = 1;
+    while (enumerator.moveNext()) {
+      ++n;
+    }
+    assertEquals(500, n);
+
+    enumerator =
+        content.filteredEnumerator(
+            Arrays.asList(
+                new ArrayTable.ColumnPredicate(0, SqlKind.LESS_THAN, 5),
+                new ArrayTable.ColumnPredicate(1, SqlKind.IS_NULL, null)),
+            new int[] {1, 0});
+    assertTrue(enumerator.moveNext());
+    assertEquals("[null, 1]", Arrays.toString(enumerator.current()));
+    assertTrue(enumerator.moveNext());
+    assertEquals("[null, 3]", Arrays.toString(enumerator.current()));
+    assertFalse(enumerator.moveNext());
+  }
+
+  @Test public void testIndexLookup() {
+    final ColumnLoader.ValueSet valueSet0 =
+        new ColumnLoader.ValueSet(int.class);
+    final ColumnLoader.ValueSet valueSet1 =
+        new ColumnLoader.ValueSet(String.class);
+    for (int i = 0; i < 1000; i++) {
+      valueSet0.add(i);
+      valueSet1.add(i % 3 == 0 ? null : "v" + (i % 7));
+    }
+    final List<ArrayTable.Column> columns =
+        Arrays.asList(valueSet0.freeze(0, null), valueSet1.freeze(1, null));
+    final ArrayTable.Content content =
+        new ArrayTable.Content(columns, 1000,
+            ImmutableList.<RelCollation>of(), ImmutableBitSet.of(0, 1));
+
+    // Rows are returned in the order of the keys; duplicate and null keys
+    // are ignored.
+    Enumerator<Object[]> enumerator =
+        content.lookup(0, Arrays.<Object>asList(500, 7, 500, null, 2000));
+    assertTrue(enumerator.moveNext());
+    assertEquals("[500, v3]", Arrays.toString(enumerator.current()));
+    assertTrue(enumerator.moveNext());
+    assertEquals("[7, v0]", Arrays.toString(enumerator.current()));
+    assertFalse(enumerator.moveNext());
+
+    // Within a key, rows are in their original order.
+    enumerator = content.lookup(1, Arrays.<Object>asList("v6"));
+    assertTrue(enumerator.moveNext());
+    assertEquals("[13, v6]", Arrays.toString(enumerator.current()));
+    assertTrue(enumerator.moveNext());
+    assertEquals("[20, v6]", Arrays.toString(enumerator.current()));
+    int n = 2;
+    while (enumerator.moveNext()) {
+      assertEquals("v6", enumerator.current()[1]);
+      ++n;
+    }
+    // 142 values of i below 1000 have i % 7 == 6, of which 48 are also
+    // multiples of 3
+    assertEquals(94, n);
+
+    try {
+      final Enumerator<Object[]> e =
+          new ArrayTable.Content(columns, 1000,
+              ImmutableList.<RelCollation>of())
+              .lookup(0, Arrays.<Object>asList(1));
+      fail("expected error, got " + e);
+    } catch (IllegalArgumentException e) {
+      assertEquals("column 0 has no index", e.getMessage());
+    }
+  }
+
   @Test public void testLoadSorted() {
     final JavaTypeFactoryImpl typeFactory =
         new JavaTypeFactoryImpl(RelDataTypeSystem.DEFAULT);
@@ -353,6 +559,200 @@ public class ArrayTableTest {
         "Column(representation=ObjectArray(ordinal=2), value=[Bill, Sebastian, Theodore, Eric])");
   }
 
+  /** Loads a table that has more than one chunk of rows, so that columns are
+   * loaded in parallel, several times. */
+  @Test public void testLoadChunks() {
+    final JavaTypeFactoryImpl typeFactory =
+        new JavaTypeFactoryImpl(RelDataTypeSystem.DEFAULT);
+    final RelDataType rowType =
+        typeFactory.builder()
+            .add("id", typeFactory.createType(int.class))
+            .add("digit", typeFactory.createType(int.class))
+            .add("name", typeFactory.createType(String.class))
+            .build();
+    final int n = ColumnLoader.CHUNK_SIZE * 2 + 100;
+    final List<Object[]> rows = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      rows.add(new Object[]{n - i, i % 10, "s" + i % 3});
+    }
+    final List<Object[]> events = new ArrayList<>();
+    final ColumnLoader<Object[]> loader;
+    try (Hook.Closeable ignored =
+             Hook.CLONE_LOAD.addThread(
+                 new Function<Object[], Void>() {
+                   public Void apply(Object[] event) {
+                     events.add(event);
+                     return null;
+                   }
+                 })) {
+      loader =
+          new ColumnLoader<Object[]>(typeFactory, Linq4j.asEnumerable(rows),
+              RelDataTypeImpl.proto(rowType), null);
+    }
+    assertEquals(n, loader.size());
+    assertTrue(loader.loadMillis >= 0);
+    assertEquals(loader.loadMillis,
+        new ArrayTable.Content(loader.representationValues, loader.size(),
+            ImmutableList.<RelCollation>of(), ImmutableBitSet.of(),
+            loader.loadMillis).getLoadMillis());
+
+    // Progress is reported after each full chunk, and when the load is
+    // complete.
+    assertEquals(3, events.size());
+    assertEquals(ColumnLoader.CHUNK_SIZE, events.get(0)[0]);
+    assertEquals(false, events.get(0)[2]);
+    assertEquals(ColumnLoader.CHUNK_SIZE * 2, events.get(1)[0]);
+    assertEquals(false, events.get(1)[2]);
+    assertEquals(n, events.get(2)[0]);
+    assertEquals(loader.loadMillis, events.get(2)[1]);
+    assertEquals(true, events.get(2)[2]);
+
+    // Column 0 is unique, so rows are sorted on it.
+    assertEquals(0, loader.sortField);
+    final ArrayTable.Column id = loader.representationValues.get(0);
+    final ArrayTable.Column digit = loader.representationValues.get(1);
+    final ArrayTable.Column name = loader.representationValues.get(2);
+    for (int row : new int[] {0, 1, ColumnLoader.CHUNK_SIZE, n - 1}) {
+      final int i = n - 1 - row;
+      assertEquals(n - i, id.representation.getObject(id.dataSet, row));
+      assertEquals(i % 10,
+          digit.representation.getObject(digit.dataSet, row));
+      assertEquals("s" + i % 3,
+          name.representation.getObject(name.dataSet, row));
+    }
+  }
+
+  /** Writes a table, whose columns have a variety of representations, to a
+   * snapshot file and reads it back. */
+  @Test public void testSnapshot() throws IOException {
+    final JavaTypeFactoryImpl typeFactory =
+        new JavaTypeFactoryImpl(RelDataTypeSystem.DEFAULT);
+    final RelDataType rowType =
+        typeFactory.builder()
+            .add("id", typeFactory.createType(int.class))
+            .add("grp", typeFactory.createType(int.class))
+            .add("name", typeFactory.createType(String.class))
+            .add("ts", typeFactory.createType(long.class))
+            .add("price", typeFactory.createType(double.class))
+            .add("flag", typeFactory.createType(String.class))
+            .build();
+    final List<Object[]> rows = new ArrayList<>();
+    for (int i = 0; i < 10000; i++) {
+      rows.add(
+          new Object[]{i, i / 1000, i % 7 == 0 ? null : "s" + i % 5,
+              1000000000000L + i * 3L, i % 3 * 0.5d, "k"});
+    }
+    final ColumnLoader<Object[]> loader =
+        new ColumnLoader<Object[]>(typeFactory, Linq4j.asEnumerable(rows),
+            RelDataTypeImpl.proto(rowType), null);
+    final ArrayTable.Content content =
+        new ArrayTable.Content(loader.representationValues, loader.size(),
+            ImmutableList.of(RelCollations.of(0)), ImmutableBitSet.of(2));
+
+    final File file = File.createTempFile("table", ".snapshot");
+    try {
+      ArrayTableSnapshot.write(content, rowType, file);
+      final ArrayTable.Content content2 =
+          ArrayTableSnapshot.read(file, rowType, ImmutableBitSet.of(2));
+      assertEquals(content.size, content2.size);
+      assertEquals(content.collations, content2.collations);
+      assertEquals(content.columns.size(), content2.columns.size());
+      int mappedCount = 0;
+      for (int i = 0; i < content.columns.size(); i++) {
+        final ArrayTable.Column column = content.columns.get(i);
+        final ArrayTable.Column column2 = content2.columns.get(i);
+        assertEquals(column.toString(), column2.toString());
+        assertEquals(column.cardinality, column2.cardinality);
+        assertEquals(Arrays.toString(column.zoneMap.mins),
+            Arrays.toString(column2.zoneMap.mins));
+        assertEquals(Arrays.toString(column.zoneMap.nullCounts),
+            Arrays.toString(column2.zoneMap.nullCounts));
+        switch (column2.representation.getType()) {
+        case PRIMITIVE_ARRAY:
+        case BIT_SLICED_PRIMITIVE_ARRAY:
+          // The data remains in the mapped file.
+          assertTrue(column2.dataSet instanceof Buffer);
+          ++mappedCount;
+          break;
+        default:
+          break;
+        }
+      }
+      assertTrue(mappedCount > 0);
+
+      // The index is rebuilt.
+      final Enumerator<Object[]> enumerator =
+          content2.lookup(2, Arrays.<Object>asList("s3"));
+      assertTrue(enumerator.moveNext());
+      assertEquals("[3, 0, s3, 1000000000009, 0.0, k]",
+          Arrays.toString(enumerator.current()));
+
+      // A snapshot of a table with a different row type is rejected.
+      final RelDataType rowType2 =
+          typeFactory.builder()
+              .add("id", typeFactory.createType(int.class))
+              .build();
+      try {
+        final ArrayTable.Content content3 =
+            ArrayTableSnapshot.read(file, rowType2, ImmutableBitSet.of());
+        fail("expected error, got " + content3);
+      } catch (IOException e) {
+        assertTrue(e.getMessage(), e.getMessage().contains("has row type"));
+      }
+
+      // So is a snapshot of a different version.
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        raf.seek(4);
+        raf.writeInt(ArrayTableSnapshot.VERSION + 1);
+      }
+      try {
+        final ArrayTable.Content content3 =
+            ArrayTableSnapshot.read(file, rowType, ImmutableBitSet.of());
+        fail("expected error, got " + content3);
+      } catch (IOException e) {
+        assertTrue(e.getMessage(), e.getMessage().contains("has version"));
+      }
+
+      // A corrupt snapshot, here with a negative string length, is rejected
+      ArrayTableSnapshot.write(content, rowType, file);
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        raf.seek(8);
+        raf.writeInt(-5);
+      }
+      try {
+        final ArrayTable.Content content3 =
+            ArrayTableSnapshot.read(file, rowType, ImmutableBitSet.of());
+        fail("expected error, got " + content3);
+      } catch (IOException e) {
+        assertTrue(e.getMessage(), e.getMessage().contains("is corrupt"));
+      }
+
+      // So is a truncated snapshot
+      ArrayTableSnapshot.write(content, rowType, file);
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        raf.setLength(raf.length() / 2);
+      }
+      try {
+        final ArrayTable.Content content3 =
+            ArrayTableSnapshot.read(file, rowType, ImmutableBitSet.of());
+        fail("expected error, got " + content3);
+      } catch (IOException e) {
+        assertTrue(e.getMessage(), e.getMessage().contains("is corrupt"));
+      }
+
+      // A clone table whose snapshot is corrupt loads from its source
+      final ArrayTable table =
+          (ArrayTable) CloneSchema.createCloneTable(typeFactory,
+              RelDataTypeImpl.proto(rowType),
+              ImmutableList.<RelCollation>of(), null,
+              Linq4j.asEnumerable(rows), false, ImmutableBitSet.of(), file);
+      assertEquals(10000, table.supplier.get().size);
+    } finally {
+      //noinspection ResultOfMethodCallIgnored
+      file.delete();
+    }
+  }
+
   private void checkColumn(ArrayTable.Column x,
       ArrayTable.RepresentationType expectedRepresentationType,
       String expectedString) {
@@ -0,0 +1,522 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.elasticsearch;
+
+import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeSystem;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.schema.Table;
+import org.apache.calcite.schema.impl.AbstractSchema;
+import org.apache.calcite.sql.fun.SqlStdOperatorTable;
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.calcite.test.CalciteAssert;
+import org.apache.calcite.util.Pair;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Unit test for {@link AbstractElasticsearchTable}, against a table whose
+ * search requests are answered from documents in memory.
+ */
+public class ElasticsearchTableTest {
+  private static final List<Map.Entry<String, Class>> N =
+      ImmutableList.<Map.Entry<String, Class>>of(Pair.<String, Class>of("n", Integer.class));
+
+  /** Reads ten documents, three per page. */
+  @Test public void testScroll() {
+    final StubTable table = new StubTable(10, 3, 1);
+    final Enumerable<Object> rows =
+        table.find("index", ImmutableList.<String>of(), N);
+    assertThat(rows.toList().toString(), is("[0, 1, 2, 3, 4, 5, 6, 7, 8, 9]"));
+    // One search, then four scrolls: three full pages, one page of one hit,
+    // and an empty page.
+    assertThat(table.requests.get(), is(5));
+    assertThat(table.cleared.size(), is(1));
+    assertThat(table.scrolls.isEmpty(), is(true));
+  }
+
+  /** Reads three slices in parallel. */
+  @Test public void testSlices() {
+    final StubTable table = new StubTable(10, 2, 3);
+    final Enumerable<Object> rows =
+        table.find("index", ImmutableList.<String>of(), N);
+    assertThat(new TreeSet<>(rows.toList()).toString(),
+        is("[0, 1, 2, 3, 4, 5, 6, 7, 8, 9]"));
+    assertThat(table.cleared.size(), is(3));
+    assertThat(table.scrolls.isEmpty(), is(true));
+  }
+
+  /** An offset and fetch are applied while scrolling, in one slice, and
+   * stop the scroll once enough rows have been read. */
+  @Test public void testOffsetFetch() {
+    final StubTable table = new StubTable(10, 2, 3);
+    final Enumerable<Object> rows =
+        table.find("index", ImmutableList.of("\"from\": 2", "\"size\": 3"), N);
+    assertThat(rows.toList().toString(), is("[2, 3, 4]"));
+    assertThat(table.requests.get(), is(3));
+    assertThat(table.cleared.size(), is(1));
+  }
+
+  /** The "_MAP" field is the whole document. */
+  @Test public void testMap() {
+    final StubTable table = new StubTable(2, 10, 1);
+    final Enumerable<Object> rows =
+        table.find("index", ImmutableList.<String>of(),
+            ImmutableList.<Map.Entry<String, Class>>of(
+                Pair.<String, Class>of("_MAP", Map.class)));
+    assertThat(rows.toList().toString(), is("[{n=0}, {n=1}]"));
+  }
+
+  /** Fields of a mapping become typed columns; fields of objects are
+   * flattened. */
+  @Test public void testMapping() throws IOException {
+    final Map<String, String> mapping =
+        AbstractElasticsearchTable.parseMapping("{\"properties\": {"
+            + "\"n\": {\"type\": \"long\"},"
+            + "\"loc\": {\"properties\": {\"lat\": {\"type\": \"double\"}}},"
+            + "\"tags\": {\"type\": \"nested\", \"properties\": {}}}}");
+    assertThat(mapping.toString(),
+        is("{n=long, loc.lat=double, tags=nested}"));
+    final StubTable table = new StubTable(3, 10, 1, mapping);
+    final RelDataType rowType =
+        table.getRowType(new JavaTypeFactoryImpl(RelDataTypeSystem.DEFAULT));
+    assertThat(rowType.toString(),
+        is("RecordType(BIGINT n, DOUBLE loc.lat, ANY tags)"));
+    final Enumerable<Object> rows =
+        table.find("index", ImmutableList.<String>of(),
+            ImmutableList.<Map.Entry<String, Class>>of(
+                Pair.<String, Class>of("n", Long.class)));
+    assertThat(rows.toList().toString(), is("[0, 1, 2]"));
+    assertThat(rows.first() instanceof Long, is(true));
+  }
+
+  /** Translates conditions to queries; adjacent ranges on a field are
+   * merged, and equalities on a field become a terms query. */
+  @Test public void testFilterTranslation() throws IOException {
+    final JavaTypeFactoryImpl typeFactory =
+        new JavaTypeFactoryImpl(RelDataTypeSystem.DEFAULT);
+    final RexBuilder rexBuilder = new RexBuilder(typeFactory);
+    final RexNode n =
+        rexBuilder.makeInputRef(typeFactory.createSqlType(SqlTypeName.BIGINT), 0);
+    final RexNode s =
+        rexBuilder.makeInputRef(typeFactory.createSqlType(SqlTypeName.VARCHAR), 1);
+    final ElasticsearchFilter.Translator translator =
+        new ElasticsearchFilter.Translator(ImmutableList.of("n", "s"));
+    final ObjectMapper mapper = new ObjectMapper();
+
+    final RexNode range =
+        rexBuilder.makeCall(SqlStdOperatorTable.AND,
+            rexBuilder.makeCall(SqlStdOperatorTable.GREATER_THAN_OR_EQUAL, n,
+                rexBuilder.makeExactLiteral(BigDecimal.valueOf(3))),
+            rexBuilder.makeCall(SqlStdOperatorTable.LESS_THAN, n,
+                rexBuilder.makeExactLiteral(BigDecimal.valueOf(10))),
+            rexBuilder.makeCall(SqlStdOperatorTable.LESS_THAN,
+                rexBuilder.makeExactLiteral(BigDecimal.valueOf(5)), n));
+    assertThat(mapper.writeValueAsString(translator.translate(range)),
+        is("{\"range\":{\"n\":{\"lt\":10,\"gt\":5}}}"));
+
+    final RexNode in =
+        rexBuilder.makeCall(SqlStdOperatorTable.OR,
+            rexBuilder.makeCall(SqlStdOperatorTable.EQUALS, s,
+                rexBuilder.makeLiteral("a")),
+            rexBuilder.makeCall(SqlStdOperatorTable.IS_NULL, n),
+            rexBuilder.makeCall(SqlStdOperatorTable.EQUALS, s,
+                rexBuilder.makeLiteral("b")));
+    assertThat(mapper.writeValueAsString(translator.translate(in)),
+        is("{\"bool\":{\"should\":["
+            + "{\"bool\":{\"must_not\":[{\"exists\":{\"field\":\"n\"}}]}},"
+            + "{\"terms\":{\"s\":[\"a\",\"b\"]}}]}}"));
+
+    final RexNode prefix =
+        rexBuilder.makeCall(SqlStdOperatorTable.LIKE, s,
+            rexBuilder.makeLiteral("ab%"));
+    assertThat(mapper.writeValueAsString(translator.translate(prefix)),
+        is("{\"prefix\":{\"s\":\"ab\"}}"));
+    final RexNode wildcard =
+        rexBuilder.makeCall(SqlStdOperatorTable.LIKE, s,
+            rexBuilder.makeLiteral("a_c*%"));
+    assertThat(mapper.writeValueAsString(translator.translate(wildcard)),
+        is("{\"wildcard\":{\"s\":\"a?c\\\\**\"}}"));
+
+    // An expression on a field is not translatable, so would stay in a
+    // filter above the Elasticsearch filter.
+    final RexNode plus =
+        rexBuilder.makeCall(SqlStdOperatorTable.GREATER_THAN,
+            rexBuilder.makeCall(SqlStdOperatorTable.PLUS, n,
+                rexBuilder.makeExactLiteral(BigDecimal.ONE)),
+            rexBuilder.makeExactLiteral(BigDecimal.valueOf(3)));
+    assertThat(ElasticsearchFilter.isTranslatable(plus, ImmutableList.of("n", "s")),
+        is(false));
+  }
+
+  /** Aggregations become a composite aggregation with metrics, and
+   * functions of no values, because a field is missing, are null. There is
+   * no embedded Elasticsearch node in this tree, so the table answers the
+   * aggregation requests from documents in memory. */
+  @Test public void testAggregate() throws IOException {
+    final StubTable table = groupedTable();
+    final CalciteAssert.AssertThat with =
+        CalciteAssert.that().withSchema("es", new StubSchema(table));
+    with.query("select \"g\", count(*) as c, count(\"v\") as cv,\n"
+        + " sum(\"v\") as s, min(\"n\") as mi, max(\"n\") as ma\n"
+        + "from \"t\"\n"
+        + "group by \"g\"\n"
+        + "order by \"g\"")
+        .explainContains("ElasticsearchAggregate")
+        .returnsOrdered("g=a; C=4; CV=4; S=18; MI=0; MA=9",
+            "g=b; C=3; CV=3; S=12; MI=1; MA=7",
+            "g=c; C=3; CV=0; S=null; MI=2; MA=8");
+    // The page size of the composite aggregation is larger than the number
+    // of groups, so there is one request for the buckets and one that
+    // returns none.
+    assertThat(table.requests.get(), is(2));
+
+    with.query("select count(*) as c, sum(\"v\") as s, max(\"n\") as m\n"
+        + "from \"t\"")
+        .explainContains("ElasticsearchAggregate")
+        .returnsOrdered("C=10; S=30; M=9");
+  }
+
+  /** A LIMIT, a projection of typed columns and filters on typed columns
+   * all become part of the search request. */
+  @Test public void testPushDown() throws IOException {
+    final CalciteAssert.AssertThat with =
+        CalciteAssert.that().withSchema("es", new StubSchema(groupedTable()));
+    with.query("select \"n\", \"g\" from \"t\" limit 3")
+        .explainContains("ElasticsearchSort(fetch=[3])")
+        .queryContains(elasticsearchChecker("\"size\": 3",
+            "\"_source\" : [\"n\", \"g\"]"))
+        .returnsOrdered("n=0; g=a", "n=1; g=b", "n=2; g=c");
+    // The table does not evaluate queries, so only the request is checked.
+    with.query("select \"n\" from \"t\" where \"g\" = 'a' and \"n\" > 5")
+        .explainContains("ElasticsearchFilter")
+        .queryContains(elasticsearchChecker("{\"term\":{\"g\":\"a\"}}",
+            "{\"range\":{\"n\":{\"gt\":5}}}", "\"_source\" : [\"n\"]"));
+  }
+
+  /** Returns a function that checks that the operations of the
+   * Elasticsearch request contain some strings. */
+  private static Function<List, Void> elasticsearchChecker(
+      final String... strings) {
+    return new Function<List, Void>() {
+      public Void apply(List actual) {
+        assertThat(actual.size(), is(1));
+        final String ops = actual.get(0).toString();
+        for (String string : strings) {
+          assertThat(ops, containsString(string));
+        }
+        return null;
+      }
+    };
+  }
+
+  /** Returns a table of ten documents with fields "g", "n" and "v".
+   * Document {@code i} is in group "a", "b" or "c" by {@code i % 3}, and has
+   * {@code n = i}, and, except in group "c", {@code v = i}. */
+  private static StubTable groupedTable() throws IOException {
+    final List<Map<String, Object>> documents = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      final Map<String, Object> document = new HashMap<>();
+      document.put("g", "abc".substring(i % 3, i % 3 + 1));
+      document.put("n", i);
+      if (i % 3 != 2) {
+        document.put("v", i);
+      }
+      documents.add(document);
+    }
+    return new StubTable(documents, 2, 1,
+        AbstractElasticsearchTable.parseMapping("{\"properties\": {"
+            + "\"g\": {\"type\": \"keyword\"},"
+            + "\"n\": {\"type\": \"long\"},"
+            + "\"v\": {\"type\": \"long\"}}}"));
+  }
+
+  /** Schema that contains a single table, "t", in index "index". */
+  private static class StubSchema extends AbstractSchema
+      implements ElasticsearchSchema {
+    private final AbstractElasticsearchTable table;
+
+    StubSchema(AbstractElasticsearchTable table) {
+      this.table = table;
+    }
+
+    public String getIndex() {
+      return "index";
+    }
+
+    @Override protected Map<String, Table> getTableMap() {
+      return ImmutableMap.<String, Table>of("t", table);
+    }
+  }
+
+  /** Table whose search and scroll requests are answered from documents in
+   * memory. By default, document {@code i} is <code>{"n": i}</code>.
+   *
+   * <p>A request with {@code "size": 0} is an aggregation. The query of a
+   * request is ignored; every document matches.</p> */
+  private static class StubTable extends AbstractElasticsearchTable {
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final List<Map<String, Object>> documents;
+    private final AtomicInteger scrollIds = new AtomicInteger();
+    final Map<String, Scroll> scrolls = new ConcurrentHashMap<>();
+    final AtomicInteger requests = new AtomicInteger();
+    final List<String> cleared =
+        Collections.synchronizedList(new ArrayList<String>());
+
+    StubTable(int documentCount, int fetchSize, int slices) {
+      this(documentCount, fetchSize, slices, null);
+    }
+
+    StubTable(int documentCount, int fetchSize, int slices,
+        Map<String, String> mapping) {
+      this(numbers(documentCount), fetchSize, slices, mapping);
+    }
+
+    StubTable(List<Map<String, Object>> documents, int fetchSize, int slices,
+        Map<String, String> mapping) {
+      super("index", "type", fetchSize, slices, mapping);
+      this.documents = documents;
+    }
+
+    private static List<Map<String, Object>> numbers(int documentCount) {
+      final List<Map<String, Object>> documents = new ArrayList<>();
+      for (int i = 0; i < documentCount; i++) {
+        documents.add(ImmutableMap.<String, Object>of("n", i));
+      }
+      return documents;
+    }
+
+    @Override protected String search(String index, String query,
+        String scroll) throws IOException {
+      requests.incrementAndGet();
+      final Map request = mapper.readValue(query, Map.class);
+      final int size = (Integer) request.get("size");
+      if (size == 0) {
+        return aggregate(request);
+      }
+      final Map slice = (Map) request.get("slice");
+      final List<Object> hits = new ArrayList<>();
+      for (int i = 0; i < documents.size(); i++) {
+        if (slice == null
+            || i % (Integer) slice.get("max") == (Integer) slice.get("id")) {
+          hits.add(
+              ImmutableMap.of("_id", String.valueOf(i), "_source",
+                  documents.get(i)));
+        }
+      }
+      final Scroll s = new Scroll(hits, size);
+      if (scroll == null) {
+        return response(null, s.next());
+      }
+      final String scrollId = "scroll" + scrollIds.incrementAndGet();
+      scrolls.put(scrollId, s);
+      return response(scrollId, s.next());
+    }
+
+    @Override protected String scroll(String scrollId, String scroll)
+        throws IOException {
+      requests.incrementAndGet();
+      return response(scrollId, scrolls.get(scrollId).next());
+    }
+
+    @Override protected void clearScroll(String scrollId) {
+      scrolls.remove(scrollId);
+      cleared.add(scrollId);
+    }
+
+    private String response(String scrollId, List<Object> hits)
+        throws IOException {
+      return response(scrollId, hits, null);
+    }
+
+    private String response(String scrollId, List<Object> hits,
+        Map<String, Object> aggregations) throws IOException {
+      final Map<String, Object> map = new HashMap<>();
+      if (scrollId != null) {
+        map.put("_scroll_id", scrollId);
+      }
+      if (aggregations != null) {
+        map.put("aggregations", aggregations);
+      }
+      map.put("hits", ImmutableMap.of("total", documents.size(), "hits", hits));
+      return mapper.writeValueAsString(map);
+    }
+
+    /** Answers a request whose metrics are either at the top level or
+     * nested in a composite aggregation called "groupBy". Buckets are in
+     * the order of their keys as JSON. */
+    private String aggregate(Map request) throws IOException {
+      final Map<String, Object> aggregations =
+          AbstractElasticsearchTable.map(request.get("aggregations"));
+      final Map<String, Object> groupBy =
+          AbstractElasticsearchTable.map(aggregations.get("groupBy"));
+      final Map<String, Object> result = new HashMap<>();
+      if (groupBy.isEmpty()) {
+        result.putAll(metrics(aggregations, documents));
+        return response(null, ImmutableList.<Object>of(), result);
+      }
+      final Map<String, Object> composite =
+          AbstractElasticsearchTable.map(groupBy.get("composite"));
+      final Map<String, String> sources = new LinkedHashMap<>();
+      for (Object source : (List) composite.get("sources")) {
+        final Map.Entry<String, Object> entry =
+            AbstractElasticsearchTable.map(source).entrySet().iterator().next();
+        final Map<String, Object> terms = AbstractElasticsearchTable.map(
+            AbstractElasticsearchTable.map(entry.getValue()).get("terms"));
+        sources.put(entry.getKey(), (String) terms.get("field"));
+      }
+      final TreeMap<String, List<Map<String, Object>>> groups = new TreeMap<>();
+      for (Map<String, Object> document : documents) {
+        final Map<String, Object> key = new LinkedHashMap<>();
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+          key.put(source.getKey(), document.get(source.getValue()));
+        }
+        final String json = mapper.writeValueAsString(key);
+        if (!groups.containsKey(json)) {
+          groups.put(json, new ArrayList<Map<String, Object>>());
+        }
+        groups.get(json).add(document);
+      }
+      final Object after = composite.get("after");
+      final SortedMap<String, List<Map<String, Object>>> remaining =
+          after == null
+              ? groups
+              : groups.tailMap(mapper.writeValueAsString(after), false);
+      final List<Object> buckets = new ArrayList<>();
+      Object afterKey = null;
+      for (Map.Entry<String, List<Map<String, Object>>> group
+          : remaining.entrySet()) {
+        if (buckets.size() == (Integer) composite.get("size")) {
+          break;
+        }
+        final Map<String, Object> bucket = new HashMap<>(
+            metrics(AbstractElasticsearchTable.map(groupBy.get("aggregations")),
+                group.getValue()));
+        afterKey = mapper.readValue(group.getKey(), Map.class);
+        bucket.put("key", afterKey);
+        bucket.put("doc_count", group.getValue().size());
+        buckets.add(bucket);
+      }
+      final Map<String, Object> groupByResult = new HashMap<>();
+      groupByResult.put("buckets", buckets);
+      if (afterKey != null) {
+        groupByResult.put("after_key", afterKey);
+      }
+      result.put("groupBy", groupByResult);
+      return response(null, ImmutableList.<Object>of(), result);
+    }
+
+    /** Evaluates metric aggregations on some documents. As in
+     * Elasticsearch, the sum of no values is 0, and their minimum, maximum
+     * and average are null. */
+    private static Map<String, Object> metrics(Map<String, Object> metrics,
+        List<Map<String, Object>> documents) {
+      final Map<String, Object> result = new HashMap<>();
+      for (Map.Entry<String, Object> metric : metrics.entrySet()) {
+        if (metric.getKey().equals("groupBy")) {
+          continue;
+        }
+        final Map.Entry<String, Object> definition =
+            AbstractElasticsearchTable.map(metric.getValue()).entrySet()
+                .iterator().next();
+        final Object field =
+            AbstractElasticsearchTable.map(definition.getValue()).get("field");
+        final List<Double> values = new ArrayList<>();
+        for (Map<String, Object> document : documents) {
+          final Object value = document.get(field);
+          if (value != null) {
+            values.add(((Number) value).doubleValue());
+          }
+        }
+        double sum = 0;
+        for (double value : values) {
+          sum += value;
+        }
+        final Object value;
+        switch (definition.getKey()) {
+        case "value_count":
+          value = values.size();
+          break;
+        case "sum":
+          value = sum;
+          break;
+        case "avg":
+          value = values.isEmpty() ? null : sum / values.size();
+          break;
+        case "min":
+          value = values.isEmpty() ? null : Collections.min(values);
+          break;
+        case "max":
+          value = values.isEmpty() ? null : Collections.max(values);
+          break;
+        default:
+          throw new AssertionError(definition.getKey());
+        }
+        result.put(metric.getKey(), Collections.singletonMap("value", value));
+      }
+      return result;
+    }
+  }
+
+  /** State of a scroll: the hits not yet returned. */
+  private static class Scroll {
+    private final List<Object> hits;
+    private final int size;
+
+    Scroll(List<Object> hits, int size) {
+      this.hits = hits;
+      this.size = size;
+    }
+
+    synchronized List<Object> next() {
+      final List<Object> page = new ArrayList<>();
+      while (page.size() < size && !hits.isEmpty()) {
+        page.add(hits.remove(0));
+      }
+      return page;
+    }
+  }
+}
+
+// End ElasticsearchTableTest.java
@@ -17,6 +17,7 @@
 package org.apache.calcite.plan;
 
 import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.JoinRelType;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeFactory;
 import org.apache.calcite.rel.type.RelDataTypeField;
@@ -34,6 +35,7 @@ import org.apache.calcite.tools.RelBuilder;
 import org.apache.calcite.util.TestUtil;
 import org.apache.calcite.util.Util;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 
@@ -42,7 +44,9 @@ import org.junit.Test;
 import java.util.Collections;
 import java.util.List;
 
+import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
 /**
@@ -187,6 +191,58 @@ public class RelOptUtilTest {
         REL_BUILDER.literal(true));
   }
 
+  /** Unit test for {@link RelOptMaterializationIndex}. */
+  @Test public void testMaterializationIndex() {
+    final RelBuilder b = REL_BUILDER;
+    final List<String> bonusName =
+        b.scan("BONUS").build().getTable().getQualifiedName();
+    // Pretend that BONUS is a materialization of EMP join DEPT.
+    final RelNode empDept = b.scan("EMP").scan("DEPT")
+        .join(JoinRelType.INNER, "DEPTNO").build();
+    final RelOptMaterialization m1 =
+        new RelOptMaterialization(empDept, empDept, null, bonusName);
+    final RelNode empAgg = b.scan("EMP")
+        .aggregate(b.groupKey("DEPTNO"), b.count(false, "C")).build();
+    final RelOptMaterialization m2 = new RelOptMaterialization(empAgg, empAgg,
+        null, ImmutableList.of("mv", "M2"));
+    final RelNode bonusAgg = b.scan("BONUS")
+        .aggregate(b.groupKey("JOB"), b.count(false, "C")).build();
+    final RelOptMaterialization m3 = new RelOptMaterialization(bonusAgg,
+        bonusAgg, null, ImmutableList.of("mv", "M3"));
+    final RelOptMaterializationIndex index =
+        RelOptMaterializationIndex.of(ImmutableList.of(m3, m2, m1));
+    assertThat(index.size(), is(3));
+
+    // M3 uses EMP via BONUS, and comes after BONUS.
+    final RelNode empFilter = b.scan("EMP")
+        .filter(b.equals(b.field("DEPTNO"), b.literal(10))).build();
+    final List<RelOptMaterialization> applicable =
+        index.getApplicable(empFilter);
+    assertThat(applicable.size(), is(3));
+    assertThat(applicable.indexOf(m1) < applicable.indexOf(m3), is(true));
+    assertThat(index.getApplicable(b.scan("SALGRADE").build()).isEmpty(),
+        is(true));
+
+    // Query tables {EMP} are a subset of M1's tables {EMP, DEPT}.
+    assertThat(index.getCandidates(empFilter, false),
+        is((List) ImmutableList.of(m1)));
+    assertThat(index.getCandidates(empAgg, true),
+        is((List) ImmutableList.of(m2)));
+
+    // M1's tables are a subset of the query's tables.
+    final RelNode empDeptSalgrade = b.scan("EMP").scan("DEPT")
+        .join(JoinRelType.INNER, "DEPTNO")
+        .scan("SALGRADE")
+        .join(JoinRelType.INNER, b.literal(true)).build();
+    assertThat(index.getCandidates(empDeptSalgrade, false),
+        is((List) ImmutableList.of(m1)));
+
+    // Neither {DEPT, SALGRADE} nor {EMP, DEPT} contains the other.
+    final RelNode deptSalgrade = b.scan("DEPT").scan("SALGRADE")
+        .join(JoinRelType.INNER, b.literal(true)).build();
+    assertThat(index.getCandidates(deptSalgrade, false).isEmpty(), is(true));
+  }
+
   private static void splitJoinConditionHelper(RexNode joinCond, List<Integer> expLeftKeys,
       List<Integer> expRightKeys, List<Boolean> expFilterNulls, RexNode expRemaining) {
     List<Integer> actLeftKeys = Lists.newArrayList();
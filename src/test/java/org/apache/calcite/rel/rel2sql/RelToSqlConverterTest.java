@@ -24,6 +24,7 @@ import org.apache.calcite.plan.hep.HepPlanner;
 import org.apache.calcite.plan.hep.HepProgram;
 import org.apache.calcite.plan.hep.HepProgramBuilder;
 import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.rules.ProjectToWindowRule;
 import org.apache.calcite.rel.rules.UnionMergeRule;
 import org.apache.calcite.runtime.FlatLists;
 import org.apache.calcite.schema.SchemaPlus;
@@ -1971,6 +1972,54 @@ public class RelToSqlConverterTest {
     sql(sql).ok(expected);
   }
 
+  /** Tests that a {@link org.apache.calcite.rel.core.Window} is converted
+   * to windowed aggregates in the SELECT clause, and that references to the
+   * window's constants become literals. */
+  @Test public void testWindow() {
+    final String query = "select \"product_id\",\n"
+        + "  max(\"net_weight\") over (partition by \"product_class_id\"\n"
+        + "    order by \"product_id\"\n"
+        + "    rows between 3 preceding and current row) as m\n"
+        + "from \"product\"";
+    final String expected = "SELECT \"product_id\", MAX(\"net_weight\")"
+        + " OVER (PARTITION BY \"product_class_id\" ORDER BY \"product_id\""
+        + " ROWS BETWEEN 3 PRECEDING AND CURRENT ROW) AS \"M\"\n"
+        + "FROM \"foodmart\".\"product\"";
+    final HepProgram program = new HepProgramBuilder()
+        .addRuleInstance(ProjectToWindowRule.PROJECT)
+        .build();
+    final RuleSet rules = RuleSets.ofList(ProjectToWindowRule.PROJECT);
+    sql(query)
+        .optimize(rules, new HepPlanner(program))
+        .ok(expected);
+  }
+
+  /** Tests that a filter on a windowed aggregate, as in a top-N-per-group
+   * query, reads the windowed aggregate from a sub-query. */
+  @Test public void testFilterOnWindow() {
+    final String query = "select \"product_id\", \"rn\"\n"
+        + "from (\n"
+        + "  select \"product_id\",\n"
+        + "    row_number() over (partition by \"product_class_id\"\n"
+        + "      order by \"net_weight\" desc) as \"rn\"\n"
+        + "  from \"product\")\n"
+        + "where \"rn\" <= 3";
+    final String expected = "SELECT *\n"
+        + "FROM (SELECT \"product_id\", ROW_NUMBER()"
+        + " OVER (PARTITION BY \"product_class_id\""
+        + " ORDER BY \"net_weight\" DESC"
+        + " ROWS BETWEEN UNBOUNDED PRECEDING AND CURRENT ROW) AS \"rn\"\n"
+        + "FROM \"foodmart\".\"product\") AS \"t0\"\n"
+        + "WHERE \"rn\" <= 3";
+    final HepProgram program = new HepProgramBuilder()
+        .addRuleInstance(ProjectToWindowRule.PROJECT)
+        .build();
+    final RuleSet rules = RuleSets.ofList(ProjectToWindowRule.PROJECT);
+    sql(query)
+        .optimize(rules, new HepPlanner(program))
+        .ok(expected);
+  }
+
   /** Fluid interface to run tests. */
   private static class Sql {
     private CalciteAssert.SchemaSpec schemaSpec;
@@ -0,0 +1,390 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.statistic;
+
+import org.apache.calcite.DataContext;
+import org.apache.calcite.jdbc.CalciteConnection;
+import org.apache.calcite.jdbc.CalciteSchema;
+import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.rel.type.RelDataTypeSystem;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.schema.SampleableTable;
+import org.apache.calcite.schema.ScannableTable;
+import org.apache.calcite.schema.SchemaPlus;
+import org.apache.calcite.schema.Schemas;
+import org.apache.calcite.schema.Statistic;
+import org.apache.calcite.schema.Statistics;
+import org.apache.calcite.schema.impl.AbstractSchema;
+import org.apache.calcite.schema.impl.AbstractTable;
+import org.apache.calcite.schema.impl.LongSchemaVersion;
+import org.apache.calcite.sql.fun.SqlStdOperatorTable;
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.calcite.util.ImmutableBitSet;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Unit tests for {@link StatisticsCollector}, {@link Histogram},
+ * {@link HyperLogLog}, {@link StatisticsStore} and
+ * {@link StatisticsService}.
+ */
+public class StatisticsCollectorTest {
+  private static final List<String> FIELD_NAMES = ImmutableList.of("ID", "G");
+
+  private static final ExecutorService EXECUTOR =
+      Executors.newFixedThreadPool(2,
+          new ThreadFactoryBuilder().setDaemon(true).build());
+
+  /** Returns rows (i, i % 10) for i in [0, n), with a null every 100th
+   * value of G. */
+  private static List<Object[]> rows(int n) {
+    final List<Object[]> rows = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      rows.add(new Object[] {i, i % 100 == 99 ? null : i % 10});
+    }
+    return rows;
+  }
+
+  private static StatisticsCollector collector(int sampleSize) {
+    return new StatisticsCollector(EXECUTOR, sampleSize, 4, new Random(0));
+  }
+
+  @Test public void testHistogram() {
+    final List<Integer> values = new ArrayList<>();
+    for (int i = 1; i <= 100; i++) {
+      values.add(i);
+    }
+    values.add(null);
+    final Histogram histogram = Histogram.of(values, 4);
+    assertThat(histogram.bucketCount(), is(4));
+    assertThat(histogram.min, is((Comparable) 1));
+    assertThat(histogram.max(), is((Comparable) 100));
+    assertThat(histogram.fractionLessThanOrEqual(0), is(0d));
+    assertThat(histogram.fractionLessThanOrEqual(50), is(0.5d));
+    assertThat(histogram.fractionLessThanOrEqual(1000), is(1d));
+    // Values of a different numeric type are compared by value
+    assertThat(histogram.fractionLessThanOrEqual(50L), is(0.5d));
+    assertThat(Histogram.of(ImmutableList.<Integer>of(), 4), nullValue());
+  }
+
+  @Test public void testCollectExact() {
+    final TableStatistic statistic =
+        collector(1000).collect(Linq4j.asEnumerable(rows(500)), FIELD_NAMES);
+    assertThat(statistic.rowCount, is(500d));
+    assertThat(statistic.isExact(), is(true));
+    assertThat(statistic.column("ID").distinctCount, is(500d));
+    assertThat(statistic.column("G").distinctCount, is(10d));
+    assertThat(statistic.column("G").nullFraction, is(0.01d));
+
+    // ID is unique, G is not
+    final Statistic s = statistic.toStatistic(Statistics.UNKNOWN);
+    assertThat(s.getRowCount(), is(500d));
+    assertThat(s.isKey(ImmutableBitSet.of(0)), is(true));
+    assertThat(s.isKey(ImmutableBitSet.of(1)), is(false));
+  }
+
+  @Test public void testCollectSampled() {
+    final TableStatistic statistic =
+        collector(200).collect(Linq4j.asEnumerable(rows(10000)), FIELD_NAMES);
+    assertThat(statistic.rowCount, is(10000d));
+    assertThat(statistic.sampleSize, is(200L));
+    assertThat(statistic.isExact(), is(false));
+    // Every value of ID occurs once in the sample, so GEE scales up
+    assertThat(statistic.column("ID").distinctCount > 1000d, is(true));
+    // Every value of G occurs many times, so GEE does not scale up
+    assertThat(statistic.column("G").distinctCount, is(10d));
+    assertThat(
+        statistic.toStatistic(Statistics.UNKNOWN)
+            .isKey(ImmutableBitSet.of(0)),
+        is(false));
+  }
+
+  @Test public void testStaleness() {
+    final List<String> name = ImmutableList.of("s", "t");
+    final StatisticsStore store = new MapStatisticsStore();
+    assertThat(store.isStale(name, Long.MAX_VALUE, 1d), is(true));
+    store.put(name,
+        collector(1000).collect(Linq4j.asEnumerable(rows(100)), FIELD_NAMES));
+    assertThat(store.isStale(name, Long.MAX_VALUE, 0.1d), is(false));
+    assertThat(store.isStale(name, -1L, 0.1d), is(true));
+    store.recordModification(name, 5);
+    assertThat(store.isStale(name, Long.MAX_VALUE, 0.1d), is(false));
+    store.recordModification(name, 10);
+    assertThat(store.isStale(name, Long.MAX_VALUE, 0.1d), is(true));
+  }
+
+  @Test public void testHyperLogLog() {
+    final HyperLogLog small = new HyperLogLog();
+    for (int i = 0; i < 1000; i++) {
+      small.add(i % 10);
+    }
+    assertThat(Math.abs(small.estimate() - 10d) < 1d, is(true));
+
+    // Split a stream between two sketches, then merge them.
+    final HyperLogLog h0 = new HyperLogLog();
+    final HyperLogLog h1 = new HyperLogLog();
+    for (int i = 0; i < 200000; i++) {
+      (i % 2 == 0 ? h0 : h1).add("v" + (i % 100000));
+    }
+    h0.merge(h1);
+    final double estimate = h0.estimate();
+    assertThat(estimate > 97000d && estimate < 103000d, is(true));
+
+    h0.clear();
+    assertThat(h0.estimate(), is(0d));
+
+    // Distinct longs whose hash codes are all 0. A 32-bit hash would count
+    // them as one value.
+    final HyperLogLog longs = new HyperLogLog();
+    for (long i = 0; i < 10000; i++) {
+      longs.add(i * ((1L << 32) + 1));
+    }
+    final double longEstimate = longs.estimate();
+    assertThat(longEstimate > 9700d && longEstimate < 10300d, is(true));
+
+    // Equal integers of different types are counted once, as are decimals
+    // that differ only in scale.
+    final HyperLogLog numbers = new HyperLogLog();
+    numbers.add(1);
+    numbers.add(1L);
+    numbers.add(new BigDecimal("1.0"));
+    numbers.add(new BigDecimal("1.00"));
+    assertThat(Math.round(numbers.estimate()), is(2L));
+  }
+
+  @Test public void testFileStore() throws IOException {
+    final File file = File.createTempFile("statistics", ".json");
+    try {
+      assertThat(file.delete(), is(true));
+      final List<String> name = ImmutableList.of("s", "t");
+      final StatisticsStore store = new FileStatisticsStore(file);
+      store.put(name,
+          collector(1000).collect(Linq4j.asEnumerable(rows(100)),
+              FIELD_NAMES));
+      assertThat(file.exists(), is(true));
+
+      final StatisticsStore store2 = new FileStatisticsStore(file);
+      final TableStatistic statistic = store2.get(name);
+      assertThat(statistic, notNullValue());
+      assertThat(statistic.rowCount, is(100d));
+      assertThat(statistic.column("ID").min(), is((Comparable) 0));
+      assertThat(statistic.column("ID").max(), is((Comparable) 99));
+      assertThat(statistic.column("G").distinctCount, is(10d));
+    } finally {
+      //noinspection ResultOfMethodCallIgnored
+      file.delete();
+    }
+  }
+
+  /** Tests that histogram bounds are read back from a file as values of the
+   * same type as they were written. */
+  @Test public void testFileStoreTypes() throws IOException {
+    final File file = File.createTempFile("statistics", ".json");
+    try {
+      assertThat(file.delete(), is(true));
+      final List<Object[]> rows = new ArrayList<>();
+      for (int i = 0; i < 10; i++) {
+        rows.add(
+            new Object[] {Date.valueOf("2017-01-0" + (i % 9 + 1)),
+                new BigDecimal("1.5").add(BigDecimal.valueOf(i)),
+                Long.MAX_VALUE - i});
+      }
+      final List<String> name = ImmutableList.of("s", "t");
+      new FileStatisticsStore(file).put(name,
+          collector(1000).collect(Linq4j.asEnumerable(rows),
+              ImmutableList.of("D", "N", "L")));
+
+      final TableStatistic statistic = new FileStatisticsStore(file).get(name);
+      assertThat(statistic.column("D").min(),
+          is((Comparable) Date.valueOf("2017-01-01")));
+      assertThat(statistic.column("N").max(),
+          is((Comparable) new BigDecimal("10.5")));
+      assertThat(statistic.column("L").min(),
+          is((Comparable) (Long.MAX_VALUE - 9)));
+    } finally {
+      //noinspection ResultOfMethodCallIgnored
+      file.delete();
+    }
+  }
+
+  @Test public void testSelectivity() {
+    final TableStatistic statistic =
+        collector(1000).collect(Linq4j.asEnumerable(rows(1000)), FIELD_NAMES);
+    final RexBuilder rexBuilder =
+        new RexBuilder(new JavaTypeFactoryImpl(RelDataTypeSystem.DEFAULT));
+    final RelDataType intType =
+        rexBuilder.getTypeFactory().createSqlType(SqlTypeName.INTEGER);
+    final RexNode id = rexBuilder.makeInputRef(intType, 0);
+    final RexNode g = rexBuilder.makeInputRef(intType, 1);
+
+    assertThat(
+        statistic.selectivity(
+            rexBuilder.makeCall(SqlStdOperatorTable.IS_NULL, g)),
+        is(0.01d));
+    final Double equals =
+        statistic.selectivity(
+            rexBuilder.makeCall(SqlStdOperatorTable.EQUALS, g,
+                rexBuilder.makeExactLiteral(BigDecimal.valueOf(3))));
+    assertThat(Math.abs(equals - 0.099d) < 1e-9, is(true));
+    // Outside the histogram's range
+    assertThat(
+        statistic.selectivity(
+            rexBuilder.makeCall(SqlStdOperatorTable.EQUALS, id,
+                rexBuilder.makeExactLiteral(BigDecimal.valueOf(5000)))),
+        is(0d));
+    // Literal on the left
+    final Double lessThan =
+        statistic.selectivity(
+            rexBuilder.makeCall(SqlStdOperatorTable.GREATER_THAN,
+                rexBuilder.makeExactLiteral(BigDecimal.valueOf(250)), id));
+    assertThat(lessThan > 0.24d && lessThan < 0.26d, is(true));
+    // A string cannot be compared with the integers in the histogram
+    assertThat(
+        statistic.selectivity(
+            rexBuilder.makeCall(SqlStdOperatorTable.LESS_THAN, id,
+                rexBuilder.makeLiteral("x"))),
+        nullValue());
+    // Not a comparison with a literal
+    assertThat(
+        statistic.selectivity(
+            rexBuilder.makeCall(SqlStdOperatorTable.EQUALS, id, g)),
+        nullValue());
+  }
+
+  /** Tests that the collector asks a {@link SampleableTable} for a sample,
+   * rather than scanning it, if it is large. */
+  @Test public void testCollectFromSampleableTable() throws SQLException {
+    final Connection connection = DriverManager.getConnection("jdbc:calcite:");
+    final SchemaPlus rootSchema =
+        connection.unwrap(CalciteConnection.class).getRootSchema();
+    final SampledTable table = new SampledTable(rows(400));
+    rootSchema.add("T", table);
+    final TableStatistic statistic =
+        collector(200).collect(
+            Schemas.createDataContext(connection, rootSchema), rootSchema,
+            "T");
+    assertThat(table.fraction, is(0.04d));
+    assertThat(statistic.rowCount, is(10000d));
+    assertThat(statistic.isExact(), is(false));
+    connection.close();
+  }
+
+  /** Tests that each connection has its own statistics, that statements
+   * (which plan against a snapshot of the root schema) see them, and that
+   * tables that can be neither scanned nor queried are skipped. */
+  @Test public void testServicePerConnection() throws SQLException {
+    final Connection connection = DriverManager.getConnection("jdbc:calcite:");
+    final SchemaPlus rootSchema =
+        connection.unwrap(CalciteConnection.class).getRootSchema();
+    final SchemaPlus schema = rootSchema.add("S", new AbstractSchema());
+    schema.add("T", new SampledTable(rows(100)));
+    schema.add("U", new AbstractTable() {
+      public RelDataType getRowType(RelDataTypeFactory typeFactory) {
+        return typeFactory.builder()
+            .add("X", SqlTypeName.INTEGER)
+            .build();
+      }
+    });
+    final StatisticsService service = StatisticsService.instance(rootSchema);
+    assertThat(
+        service.analyzeSchema(
+            Schemas.createDataContext(connection, rootSchema), schema,
+            Long.MAX_VALUE, 1d),
+        is(1));
+    assertThat(service.getStore().get(ImmutableList.of("S", "T")),
+        notNullValue());
+    assertThat(service.getStore().get(ImmutableList.of("S", "U")),
+        nullValue());
+
+    final CalciteSchema snapshot =
+        CalciteSchema.from(rootSchema).createSnapshot(new LongSchemaVersion(0));
+    assertThat(StatisticsService.instance(snapshot), sameInstance(service));
+
+    final Connection connection2 =
+        DriverManager.getConnection("jdbc:calcite:");
+    final StatisticsService service2 =
+        StatisticsService.instance(
+            connection2.unwrap(CalciteConnection.class).getRootSchema());
+    assertThat(service2, not(sameInstance(service)));
+    assertThat(service2.getStore().get(ImmutableList.of("S", "T")),
+        nullValue());
+    connection2.close();
+    connection.close();
+  }
+
+  /** Table that can be sampled, and that claims to have 10,000 rows. Its
+   * sample is fixed; it records the fraction that was requested. */
+  private static class SampledTable extends AbstractTable
+      implements ScannableTable, SampleableTable {
+    private final List<Object[]> rows;
+    double fraction;
+
+    SampledTable(List<Object[]> rows) {
+      this.rows = rows;
+    }
+
+    public RelDataType getRowType(RelDataTypeFactory typeFactory) {
+      return typeFactory.builder()
+          .add("ID", SqlTypeName.INTEGER)
+          .add("G", SqlTypeName.INTEGER)
+          .build();
+    }
+
+    @Override public Statistic getStatistic() {
+      return Statistics.of(10000d, ImmutableList.<ImmutableBitSet>of());
+    }
+
+    public Enumerable<Object[]> scan(DataContext root) {
+      return Linq4j.asEnumerable(rows);
+    }
+
+    public Enumerable<Object[]> sample(DataContext root, double fraction) {
+      this.fraction = fraction;
+      return Linq4j.asEnumerable(rows);
+    }
+  }
+}
+
+// End StatisticsCollectorTest.java
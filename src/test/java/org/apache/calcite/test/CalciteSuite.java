@@ -17,6 +17,7 @@
 package org.apache.calcite.test;
 
 import org.apache.calcite.adapter.clone.ArrayTableTest;
+import org.apache.calcite.adapter.elasticsearch.ElasticsearchTableTest;
 import org.apache.calcite.jdbc.CalciteRemoteDriverTest;
 import org.apache.calcite.plan.RelOptPlanReaderTest;
 import org.apache.calcite.plan.RelOptUtilTest;
@@ -46,6 +47,7 @@ import org.apache.calcite.sql.test.SqlTypeNameTest;
 import org.apache.calcite.sql.type.SqlTypeFactoryTest;
 import org.apache.calcite.sql.validate.LexCaseSensitiveTest;
 import org.apache.calcite.sql.validate.SqlValidatorUtilTest;
+import org.apache.calcite.statistic.StatisticsCollectorTest;
 import org.apache.calcite.test.enumerable.EnumerableCorrelateTest;
 import org.apache.calcite.tools.FrameworksTest;
 import org.apache.calcite.tools.PlannerTest;
@@ -111,6 +113,8 @@ import org.junit.runners.Suite;
     RexBuilderTest.class,
     SqlTypeFactoryTest.class,
     SqlValidatorUtilTest.class,
+    StatisticsCollectorTest.class,
+    ElasticsearchTableTest.class,
 
     // medium tests (above 0.1s)
     SqlParserTest.class,
@@ -16,21 +16,41 @@
  */
 package org.apache.calcite.test;
 
+import org.apache.calcite.adapter.enumerable.EnumerableConvention;
+import org.apache.calcite.plan.Convention;
+import org.apache.calcite.plan.RelOptProfiler;
+import org.apache.calcite.plan.RelOptRule;
 import org.apache.calcite.plan.hep.HepMatchOrder;
 import org.apache.calcite.plan.hep.HepPlanner;
 import org.apache.calcite.plan.hep.HepProgram;
 import org.apache.calcite.plan.hep.HepProgramBuilder;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.convert.ConverterRule;
 import org.apache.calcite.rel.logical.LogicalIntersect;
 import org.apache.calcite.rel.logical.LogicalUnion;
+import org.apache.calcite.rel.metadata.JaninoRelMetadataProvider;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
 import org.apache.calcite.rel.rules.CalcMergeRule;
 import org.apache.calcite.rel.rules.CoerceInputsRule;
 import org.apache.calcite.rel.rules.FilterToCalcRule;
 import org.apache.calcite.rel.rules.ProjectRemoveRule;
 import org.apache.calcite.rel.rules.ProjectToCalcRule;
+import org.apache.calcite.rel.rules.ReduceExpressionsRule;
 import org.apache.calcite.rel.rules.UnionToDistinctRule;
 
+import com.google.common.collect.ImmutableList;
+
 import org.junit.Test;
 
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
 /**
  * HepPlannerTest is a unit test for {@link HepPlanner}. See
  * {@link RelOptRulesTest} for an explanation of how to add tests; the tests in
@@ -186,6 +206,114 @@ public class HepPlannerTest extends RelOptTestBase {
         tester.convertSqlToRel("select upper(name) from dept where deptno=20").rel);
     planner.findBestExp();
   }
+
+  @Test public void testRuleAttemptCounts() throws Exception {
+    // Bottom-up, the rule first fires on the lower union, after it has been
+    // tried on the 6 vertices below it. When the planner restarts, it does
+    // not try those vertices again, because nothing below them has changed;
+    // it tries only the 2 new vertices (aggregate and union all) and the top
+    // union, where it fires again. The last pass tries only the 2 vertices
+    // that replaced the top union. 6 + 1 + 3 + 2 = 12 attempts.
+    checkRuleCounts(
+        ImmutableList.<RelOptRule>of(UnionToDistinctRule.INSTANCE), 12L);
+  }
+
+  /** As {@link #testRuleAttemptCounts()}, but the rule set contains a
+   * converter rule, so the planner cannot skip vertices. Every pass tries
+   * every vertex up to the one where the rule fires: 7 attempts in the first
+   * pass, 9 in the second and 10 in the last, when the tree has 10
+   * vertices. */
+  @Test public void testRuleAttemptCountsWithConverterRule() throws Exception {
+    final ConverterRule converterRule =
+        new ConverterRule(
+            RelNode.class,
+            Convention.NONE,
+            EnumerableConvention.INSTANCE,
+            "NoOpConverterRule") {
+          public RelNode convert(RelNode rel) {
+            return null;
+          }
+        };
+    checkRuleCounts(
+        ImmutableList.<RelOptRule>of(UnionToDistinctRule.INSTANCE,
+            converterRule), 26L);
+  }
+
+  private void checkRuleCounts(List<RelOptRule> rules, long attempts) {
+    HepProgramBuilder programBuilder = HepProgram.builder();
+    programBuilder.addMatchOrder(HepMatchOrder.BOTTOM_UP);
+    programBuilder.addRuleCollection(rules);
+
+    HepPlanner planner = new HepPlanner(programBuilder.build());
+    planner.setRoot(tester.convertSqlToRel(UNION_TREE).rel);
+    planner.findBestExp();
+    assertThat(planner.getRuleAttemptCounts().get(UnionToDistinctRule.INSTANCE),
+        is(attempts));
+    assertThat(planner.getRuleSuccessCounts().get(UnionToDistinctRule.INSTANCE),
+        is(2L));
+  }
+
+  @Test public void testProfiler() throws Exception {
+    HepProgramBuilder programBuilder = HepProgram.builder();
+    programBuilder.addRuleInstance(UnionToDistinctRule.INSTANCE);
+
+    HepPlanner planner = new HepPlanner(programBuilder.build());
+    final RelOptProfiler profiler = new RelOptProfiler();
+    planner.setProfiler(profiler);
+    planner.setRoot(tester.convertSqlToRel(UNION_TREE).rel);
+    planner.findBestExp();
+
+    assertThat(profiler.getRuleStats().size(), is(1));
+    final RelOptProfiler.RuleStats stats = profiler.getRuleStats().get(0);
+    assertThat(stats.rule, is((RelOptRule) UnionToDistinctRule.INSTANCE));
+    assertThat(stats.getMatchesCreated(), is(2L));
+    assertThat(stats.getMatchesFired(), is(2L));
+    assertThat(stats.getRelsProduced(), is(2L));
+    assertTrue(stats.getRelsChosen() > 0);
+    assertThat(profiler.toJson(),
+        containsString("\"rule\": \"UnionToDistinctRule\""));
+  }
+
+  /** Tests that the profiler times the metadata that rules ask for, even if
+   * the handlers were generated before planning started, and that it stops
+   * timing metadata when planning ends. */
+  @Test public void testProfilerMetadata() throws Exception {
+    HepProgramBuilder programBuilder = HepProgram.builder();
+    programBuilder.addRuleInstance(ReduceExpressionsRule.FILTER_INSTANCE);
+
+    HepPlanner planner = new HepPlanner(programBuilder.build());
+    final RelOptProfiler profiler = new RelOptProfiler();
+    planner.setProfiler(profiler);
+    final RelNode rel =
+        tester.convertSqlToRel("select * from emp where deptno = 10").rel;
+
+    // Generate the handlers, and cache a metadata query in the cluster
+    final JaninoRelMetadataProvider provider =
+        RelMetadataQuery.THREAD_PROVIDERS.get();
+    final RelMetadataQuery mq = rel.getCluster().getMetadataQuery();
+    assertThat(mq.getPulledUpPredicates(rel), notNullValue());
+
+    planner.setRoot(rel);
+    planner.findBestExp();
+
+    assertThat(RelMetadataQuery.THREAD_PROVIDERS.get(),
+        sameInstance(provider));
+    final long calls = predicateCalls(profiler);
+    assertTrue(calls > 0);
+
+    // After planning, metadata is no longer timed
+    rel.getCluster().getMetadataQuery().getPulledUpPredicates(rel);
+    assertThat(predicateCalls(profiler), is(calls));
+  }
+
+  private static long predicateCalls(RelOptProfiler profiler) {
+    for (RelOptProfiler.MetadataStats stats : profiler.getMetadataStats()) {
+      if (stats.name.equals("Predicates")) {
+        return stats.getCalls();
+      }
+    }
+    return 0L;
+  }
 }
 
 // End HepPlannerTest.java
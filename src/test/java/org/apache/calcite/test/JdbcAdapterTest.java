@@ -16,11 +16,20 @@
  */
 package org.apache.calcite.test;
 
+import org.apache.calcite.adapter.jdbc.JdbcConvention;
+import org.apache.calcite.adapter.jdbc.JdbcSchema;
 import org.apache.calcite.config.Lex;
 import org.apache.calcite.jdbc.CalciteConnection;
+import org.apache.calcite.runtime.Hook;
+import org.apache.calcite.schema.SchemaPlus;
+import org.apache.calcite.schema.Schemas;
+import org.apache.calcite.sql.SqlDialect;
 import org.apache.calcite.test.CalciteAssert.AssertThat;
 import org.apache.calcite.test.CalciteAssert.DatabaseInstance;
 
+import org.apache.commons.dbcp.BasicDataSource;
+import org.apache.commons.dbcp.DelegatingPreparedStatement;
+
 import com.google.common.base.Function;
 
 import org.hsqldb.jdbcDriver;
@@ -29,15 +38,19 @@ import org.junit.Test;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 
@@ -548,6 +561,83 @@ public class JdbcAdapterTest {
             + "\nFROM \"foodmart\".\"expense_fact\"");
   }
 
+  /** Tests that a top-N-per-group query pushes the filter on ROW_NUMBER()
+   * down with the windowed aggregate, so that only N rows per group are
+   * fetched. */
+  @Test public void testTopNPerGroup() {
+    CalciteAssert
+        .model(JdbcTest.FOODMART_MODEL)
+        .enable(CalciteAssert.DB == CalciteAssert.DatabaseInstance.POSTGRESQL)
+        .query("select \"account_id\", \"time_id\" from (\n"
+            + "  select \"account_id\", \"time_id\",\n"
+            + "    row_number() over (partition by \"account_id\""
+            + " order by \"time_id\" desc) as \"rn\"\n"
+            + "  from \"expense_fact\")\n"
+            + "where \"rn\" <= 2")
+        .explainContains("PLAN=JdbcToEnumerableConverter\n")
+        .runs()
+        .planHasSql("SELECT \"account_id\", \"time_id\"\n"
+            + "FROM (SELECT \"account_id\", \"time_id\","
+            + " ROW_NUMBER() OVER (PARTITION BY \"account_id\""
+            + " ORDER BY \"time_id\" DESC ROWS BETWEEN UNBOUNDED PRECEDING"
+            + " AND CURRENT ROW) AS \"rn\"\n"
+            + "FROM \"foodmart\".\"expense_fact\") AS \"t\"\n"
+            + "WHERE \"rn\" <= 2");
+  }
+
+  /** As {@link #testTopNPerGroup()}, but only plans the query, so it runs
+   * on the default database. The schema is the default foodmart data source
+   * with the PostgreSQL dialect, which supports windowed aggregates. */
+  @Test public void testTopNPerGroupPlan() {
+    CalciteAssert.that()
+        .with(
+            new CalciteAssert.ConnectionPostProcessor() {
+              public Connection apply(Connection connection)
+                  throws SQLException {
+                final SchemaPlus rootSchema =
+                    connection.unwrap(CalciteConnection.class).getRootSchema();
+                final ConnectionSpec cs = CalciteAssert.DB.foodmart;
+                final SqlDialect dialect =
+                    SqlDialect.DatabaseProduct.POSTGRESQL.getDialect();
+                final JdbcConvention convention =
+                    JdbcConvention.of(dialect,
+                        Schemas.subSchemaExpression(rootSchema, "foodmart",
+                            JdbcSchema.class),
+                        "foodmart");
+                rootSchema.add("foodmart",
+                    new JdbcSchema(
+                        JdbcSchema.dataSource(cs.url, cs.driver, cs.username,
+                            cs.password),
+                        dialect, convention, cs.catalog, cs.schema));
+                connection.setSchema("foodmart");
+                return connection;
+              }
+            })
+        .query("select \"account_id\", \"time_id\" from (\n"
+            + "  select \"account_id\", \"time_id\",\n"
+            + "    row_number() over (partition by \"account_id\""
+            + " order by \"time_id\" desc) as \"rn\"\n"
+            + "  from \"expense_fact\")\n"
+            + "where \"rn\" <= 2")
+        .explainContains("PLAN=JdbcToEnumerableConverter\n")
+        .explainContains("JdbcFilter(condition=[<=(")
+        .explainContains("JdbcWindow(");
+  }
+
+  /** Tests that windowed aggregates are not pushed to a database that does
+   * not support them. */
+  @Test public void testOverNotPushedToHsqldb() {
+    CalciteAssert
+        .model(JdbcTest.FOODMART_MODEL)
+        .enable(CalciteAssert.DB == CalciteAssert.DatabaseInstance.HSQLDB)
+        .query("select \"store_id\", \"account_id\",\n"
+            + "  row_number() over (partition by \"store_id\""
+            + " order by \"account_id\") as \"rn\"\n"
+            + "from \"expense_fact\"")
+        .explainContains("EnumerableWindow(")
+        .runs();
+  }
+
   /** Test case for
    * <a href="https://issues.apache.org/jira/browse/CALCITE-259">[CALCITE-259]
    * Using sub-queries in CASE statement against JDBC tables generates invalid
@@ -840,6 +930,123 @@ public class JdbcAdapterTest {
         .typeIs("[employee_id INTEGER NOT NULL, position_id INTEGER]");
   }
 
+  /** Reads a table in three partitions, each a range of employee numbers,
+   * concurrently. */
+  @Test public void testPartitionedScan() {
+    final String model = "{\n"
+        + "  version: '1.0',\n"
+        + "  defaultSchema: 'SCOTT',\n"
+        + "  schemas: [\n"
+        + "    {\n"
+        + "      type: 'custom',\n"
+        + "      name: 'SCOTT',\n"
+        + "      factory: '" + JdbcSchema.Factory.class.getName() + "',\n"
+        + "      operand: {\n"
+        + "        jdbcDriver: '" + JdbcTest.SCOTT.driver + "',\n"
+        + "        jdbcUser: '" + JdbcTest.SCOTT.username + "',\n"
+        + "        jdbcPassword: '" + JdbcTest.SCOTT.password + "',\n"
+        + "        jdbcUrl: '" + JdbcTest.SCOTT.url + "',\n"
+        + "        jdbcCatalog: " + (JdbcTest.SCOTT.catalog == null
+            ? "null" : "'" + JdbcTest.SCOTT.catalog + "'") + ",\n"
+        + "        jdbcSchema: '" + JdbcTest.SCOTT.schema + "',\n"
+        + "        fetchSize: 2,\n"
+        + "        partitions: 3,\n"
+        + "        partitionColumns: {EMP: 'EMPNO'}\n"
+        + "      }\n"
+        + "    }\n"
+        + "  ]\n"
+        + "}";
+    final List<String> sqls = new ArrayList<>();
+    CalciteAssert.model(model)
+        .query("select \"EMPNO\", \"ENAME\" from \"EMP\"\n"
+            + "where \"DEPTNO\" = 20")
+        .withHook(Hook.QUERY_PLAN,
+            new Function<String, Void>() {
+              public Void apply(String sql) {
+                sqls.add(sql);
+                return null;
+              }
+            })
+        .returnsUnordered("EMPNO=7369; ENAME=SMITH",
+            "EMPNO=7566; ENAME=JONES",
+            "EMPNO=7788; ENAME=SCOTT",
+            "EMPNO=7876; ENAME=ADAMS",
+            "EMPNO=7902; ENAME=FORD");
+    assertThat(sqls.size(), is(3));
+    assertThat(sqls.get(0).contains("\"EMPNO\" < 7557"), is(true));
+    assertThat(sqls.get(1).contains("\"EMPNO\" >= 7557"), is(true));
+    assertThat(sqls.get(1).contains("\"EMPNO\" < 7745"), is(true));
+    assertThat(sqls.get(2).contains("\"EMPNO\" >= 7745"), is(true));
+  }
+
+  /** Tests that dynamic parameters are sent to the database as bind
+   * variables, so that the same SQL is executed, and can be re-used, for
+   * different parameter values.
+   *
+   * <p>The data source pools prepared statements per connection, keyed by
+   * SQL. DBCP 1.x does not count statement pool hits, so the test checks
+   * that preparing the generated SQL twice on a pooled connection returns
+   * the same underlying statement. */
+  @Test public void testDynamicParameters() throws SQLException {
+    final List<String> sqls = new ArrayList<>();
+    CalciteAssert.model(JdbcTest.SCOTT_MODEL)
+        .doWithConnection(
+            new Function<CalciteConnection, Void>() {
+              public Void apply(CalciteConnection connection) {
+                final String sql = "select \"ENAME\" from \"SCOTT\".\"EMP\"\n"
+                    + "where \"EMPNO\" = ?";
+                try (Hook.Closeable ignore = Hook.QUERY_PLAN.addThread(
+                        new Function<String, Void>() {
+                          public Void apply(String s) {
+                            sqls.add(s);
+                            return null;
+                          }
+                        });
+                     PreparedStatement statement =
+                         connection.prepareStatement(sql)) {
+                  statement.setInt(1, 7369);
+                  assertThat(CalciteAssert.toString(statement.executeQuery()),
+                      is("ENAME=SMITH\n"));
+                  statement.setInt(1, 7902);
+                  assertThat(CalciteAssert.toString(statement.executeQuery()),
+                      is("ENAME=FORD\n"));
+                  return null;
+                } catch (SQLException e) {
+                  throw new RuntimeException(e);
+                }
+              }
+            });
+    assertThat(sqls.isEmpty(), is(false));
+    assertThat(sqls.get(0).contains("\"EMPNO\" = ?"), is(true));
+    for (String sql : sqls) {
+      assertThat(sql, is(sqls.get(0)));
+    }
+
+    final BasicDataSource dataSource =
+        (BasicDataSource) JdbcSchema.dataSource(JdbcTest.SCOTT.url,
+            JdbcTest.SCOTT.driver, JdbcTest.SCOTT.username,
+            JdbcTest.SCOTT.password);
+    assertThat(dataSource.isPoolPreparedStatements(), is(true));
+    assertThat(dataSource.getMaxOpenPreparedStatements() > 0, is(true));
+    try (Connection connection = dataSource.getConnection()) {
+      final Statement first = innermost(connection.prepareStatement(sqls.get(0)));
+      final Statement second = innermost(connection.prepareStatement(sqls.get(0)));
+      assertThat(second, sameInstance(first));
+    }
+    // Connections, and the statements they hold, went back to the pool.
+    assertThat(dataSource.getNumIdle() > 0, is(true));
+  }
+
+  /** Returns the driver's statement that a pooled statement wraps, and
+   * closes the pooled statement, which returns it to the pool. */
+  private static Statement innermost(PreparedStatement statement)
+      throws SQLException {
+    final Statement delegate =
+        ((DelegatingPreparedStatement) statement).getInnermostDelegate();
+    statement.close();
+    return delegate;
+  }
+
   /** Acquires a lock, and releases it when closed. */
   static class LockWrapper implements AutoCloseable {
     private final Lock lock;
@@ -16,6 +16,7 @@
  */
 package org.apache.calcite.test;
 
+import org.apache.calcite.materialize.LatticeAdvisor;
 import org.apache.calcite.materialize.Lattices;
 import org.apache.calcite.materialize.MaterializationService;
 import org.apache.calcite.plan.RelOptUtil;
@@ -39,6 +40,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.CoreMatchers.anyOf;
@@ -510,6 +512,35 @@ public class LatticeTest {
     assertThat(mats.toString(), mats.size(), equalTo(2));
   }
 
+  /** Tests that the lattice advisor records the grouping sets that queries
+   * need, and builds a tile that later queries use. */
+  @Test public void testLatticeAdvisor() throws Exception {
+    MaterializationService.setThreadLocal();
+    final LatticeAdvisor advisor =
+        MaterializationService.instance().getLatticeAdvisor();
+    advisor.setMemoryBudget(1L << 20);
+    final String sql = "select t.\"the_year\", count(*) as c\n"
+        + "from \"foodmart\".\"sales_fact_1997\" as s\n"
+        + "join \"foodmart\".\"time_by_day\" as t using (\"time_id\")\n"
+        + "group by t.\"the_year\"";
+    final CalciteAssert.AssertThat that = foodmartModel(" auto: false,\n"
+        + "  defaultMeasures: [ {\n"
+        + "    agg: 'count'\n"
+        + "  } ]\n").pooled();
+    that.query(sql)
+        .enableMaterializations(true)
+        .returnsUnordered("the_year=1997; C=86837");
+
+    // No tile existed, but the advisor knows what the query needed.
+    for (Future<?> future : advisor.tune()) {
+      future.get();
+    }
+    that.query(sql)
+        .enableMaterializations(true)
+        .explainContains("EnumerableTableScan(table=[[adhoc, m{27}]])")
+        .returnsUnordered("the_year=1997; C=86837");
+  }
+
   /** Rolling up SUM. */
   @Test public void testSum() {
     foodmartModelWithOneTile()
@@ -17,7 +17,15 @@
 package org.apache.calcite.test;
 
 import org.apache.calcite.adapter.java.ReflectiveSchema;
+import org.apache.calcite.jdbc.CalciteConnection;
+import org.apache.calcite.jdbc.CalciteSchema;
 import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.linq4j.QueryProvider;
+import org.apache.calcite.linq4j.Queryable;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.materialize.MaterializationKey;
 import org.apache.calcite.materialize.MaterializationService;
 import org.apache.calcite.plan.RelOptPlanner;
 import org.apache.calcite.plan.RelOptRule;
@@ -30,6 +38,7 @@ import org.apache.calcite.rel.RelReferentialConstraintImpl;
 import org.apache.calcite.rel.RelVisitor;
 import org.apache.calcite.rel.core.TableScan;
 import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
 import org.apache.calcite.rel.type.RelDataTypeSystem;
 import org.apache.calcite.rex.RexBuilder;
 import org.apache.calcite.rex.RexInputRef;
@@ -39,8 +48,14 @@ import org.apache.calcite.rex.RexSimplify;
 import org.apache.calcite.rex.RexUtil;
 import org.apache.calcite.runtime.Hook;
 import org.apache.calcite.schema.QueryableTable;
+import org.apache.calcite.schema.SchemaPlus;
+import org.apache.calcite.schema.Schemas;
+import org.apache.calcite.schema.Table;
 import org.apache.calcite.schema.TranslatableTable;
+import org.apache.calcite.schema.impl.AbstractSchema;
+import org.apache.calcite.schema.impl.AbstractTableQueryable;
 import org.apache.calcite.sql.fun.SqlStdOperatorTable;
+import org.apache.calcite.sql.type.SqlTypeName;
 import org.apache.calcite.test.JdbcTest.Department;
 import org.apache.calcite.test.JdbcTest.Dependent;
 import org.apache.calcite.test.JdbcTest.Employee;
@@ -59,16 +74,22 @@ import com.google.common.collect.Ordering;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.lang.reflect.Type;
 import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
 import java.sql.ResultSet;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
@@ -176,6 +197,89 @@ public class MaterializationTest {
     }
   }
 
+  /** Tests that a materialization becomes stale when a table that its query
+   * reads is modified, and is brought up to date by a refresh. The table's
+   * rows are {@link Employee} objects, whose fields the maintainer cannot
+   * read, so the refresh re-executes the query. */
+  @Test public void testMaterializationRefresh() throws Exception {
+    MaterializationService.setThreadLocal();
+    final MaterializationService service = MaterializationService.instance();
+    final List<Employee> employees = new ArrayList<>();
+    employees.add(new Employee(0, 10, "first", 0f, null));
+    try (Connection connection = DriverManager.getConnection("jdbc:calcite:");
+         Statement statement = connection.createStatement()) {
+      final SchemaPlus rootSchema =
+          connection.unwrap(CalciteConnection.class).getRootSchema();
+      final SchemaPlus schema = rootSchema.add("foo", new AbstractSchema());
+      schema.add("bar", JdbcFrontLinqBackTest.mutable("bar", employees));
+      final MaterializationKey key =
+          service.defineMaterialization(CalciteSchema.from(schema), null,
+              "select \"deptno\", count(*) as c\n"
+                  + "from \"foo\".\"bar\" group by \"deptno\"",
+              ImmutableList.of("foo"), "m0", true, false);
+      assertThat(service.isStale(key), is(false));
+      assertThat(service.getVersion(key), is(0L));
+
+      statement.executeUpdate("insert into \"foo\".\"bar\"\n"
+          + "values (1, 10, 'second', 2, 2), (2, 20, 'third', 3, 3)");
+      assertThat(service.isStale(key), is(true));
+
+      service.refresh(key);
+      assertThat(service.isStale(key), is(false));
+      assertThat(service.getVersion(key), is(1L));
+      try (ResultSet resultSet = statement.executeQuery(
+          "select * from \"foo\".\"m0\" order by \"deptno\"")) {
+        assertThat(CalciteAssert.toString(resultSet),
+            is("deptno=10; C=2\ndeptno=20; C=1\n"));
+      }
+    }
+  }
+
+  /** Tests that a materialization over a table whose rows are arrays is
+   * refreshed incrementally; that is, the change is applied to the existing
+   * materialized table, whereas re-executing the query would create a new
+   * table. */
+  @Test public void testMaterializationRefreshIncremental() throws Exception {
+    MaterializationService.setThreadLocal();
+    final MaterializationService service = MaterializationService.instance();
+    final List<Object[]> rows = new ArrayList<>();
+    rows.add(new Object[] {10, "first"});
+    try (Connection connection = DriverManager.getConnection("jdbc:calcite:");
+         Statement statement = connection.createStatement()) {
+      final SchemaPlus rootSchema =
+          connection.unwrap(CalciteConnection.class).getRootSchema();
+      final SchemaPlus schema = rootSchema.add("foo", new AbstractSchema());
+      schema.add("bar", new MutableArrayTable(rows));
+      final MaterializationKey key =
+          service.defineMaterialization(CalciteSchema.from(schema), null,
+              "select \"deptno\", count(*) as c, max(\"name\") as m\n"
+                  + "from \"foo\".\"bar\" group by \"deptno\"",
+              ImmutableList.of("foo"), "m0", true, false);
+
+      statement.executeUpdate("insert into \"foo\".\"bar\"\n"
+          + "values (10, 'second'), (20, 'fourth')");
+      service.refresh(key);
+      final Table table = schema.getTable("m0");
+      final String sql = "select * from \"foo\".\"m0\" order by \"deptno\"";
+      try (ResultSet resultSet = statement.executeQuery(sql)) {
+        assertThat(CalciteAssert.toString(resultSet),
+            is("deptno=10; C=2; M=second\ndeptno=20; C=1; M=fourth\n"));
+      }
+
+      statement.executeUpdate("insert into \"foo\".\"bar\"\n"
+          + "values (20, 'third')");
+      assertThat(service.isStale(key), is(true));
+      service.refresh(key);
+      assertThat(service.isStale(key), is(false));
+      assertThat(service.getVersion(key), is(2L));
+      assertThat(schema.getTable("m0"), sameInstance(table));
+      try (ResultSet resultSet = statement.executeQuery(sql)) {
+        assertThat(CalciteAssert.toString(resultSet),
+            is("deptno=10; C=2; M=second\ndeptno=20; C=2; M=third\n"));
+      }
+    }
+  }
+
   /** Checks that a given query can use a materialized view with a given
    * definition. */
   private void checkMaterialize(String materialize, String query) {
@@ -2116,6 +2220,49 @@ public class MaterializationTest {
   /**
    * Hr schema with FK-UK relationship.
    */
+  /** Modifiable table whose rows are arrays. */
+  private static class MutableArrayTable
+      extends JdbcTest.AbstractModifiableTable {
+    private final List<Object[]> rows;
+
+    MutableArrayTable(List<Object[]> rows) {
+      super("bar");
+      this.rows = rows;
+    }
+
+    public RelDataType getRowType(RelDataTypeFactory typeFactory) {
+      return typeFactory.builder()
+          .add("deptno", SqlTypeName.INTEGER)
+          .add("name", SqlTypeName.VARCHAR, 20)
+          .build();
+    }
+
+    public <T> Queryable<T> asQueryable(QueryProvider queryProvider,
+        SchemaPlus schema, String tableName) {
+      return new AbstractTableQueryable<T>(queryProvider, schema, this,
+          tableName) {
+        public Enumerator<T> enumerator() {
+          //noinspection unchecked
+          return (Enumerator<T>) Linq4j.enumerator(rows);
+        }
+      };
+    }
+
+    public Type getElementType() {
+      return Object[].class;
+    }
+
+    public Expression getExpression(SchemaPlus schema, String tableName,
+        Class clazz) {
+      return Schemas.tableExpression(schema, getElementType(), tableName,
+          clazz);
+    }
+
+    public Collection getModifiableCollection() {
+      return rows;
+    }
+  }
+
   public static class HrFKUKSchema {
     @Override public String toString() {
       return "HrFKUKSchema";
@@ -17,11 +17,17 @@
 package org.apache.calcite.test;
 
 import org.apache.calcite.adapter.java.ReflectiveSchema;
+import org.apache.calcite.adapter.jdbc.JdbcBatchWriter;
 import org.apache.calcite.adapter.jdbc.JdbcSchema;
 import org.apache.calcite.jdbc.CalciteConnection;
+import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
 import org.apache.calcite.prepare.CalcitePrepareImpl;
+import org.apache.calcite.schema.Schema;
 import org.apache.calcite.schema.SchemaPlus;
+import org.apache.calcite.schema.Schemas;
+import org.apache.calcite.statistic.StatisticsService;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Sets;
 
 import org.junit.Test;
@@ -37,6 +43,10 @@ import java.util.concurrent.atomic.AtomicInteger;
 import javax.sql.DataSource;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
@@ -81,6 +91,115 @@ public class MultiJdbcSchemaJoinTest {
     assertThat(CalciteAssert.toString(rs), equalTo("ID=a; FIELD1=aaaa\n"));
   }
 
+  /** Inserts rows read from one database into a table of another. The
+   * statement cannot be executed by either database, so the rows are written
+   * in batches, two rows per INSERT statement, by two connections. */
+  @Test public void testInsertFromOtherDatabase() throws SQLException {
+    final String db1 = TempDb.INSTANCE.getUrl();
+    Connection c1 = DriverManager.getConnection(db1, "", "");
+    Statement stmt1 = c1.createStatement();
+    stmt1.execute("create table table1(id integer not null primary key, "
+        + "field1 varchar(10))");
+    for (int i = 0; i < 7; i++) {
+      stmt1.execute("insert into table1 values(" + i + ", 'x" + i + "')");
+    }
+    c1.close();
+
+    final String db2 = TempDb.INSTANCE.getUrl();
+    Connection c2 = DriverManager.getConnection(db2, "", "");
+    Statement stmt2 = c2.createStatement();
+    stmt2.execute("create table table2(id integer not null primary key, "
+        + "field1 varchar(10))");
+    c2.close();
+
+    Connection connection = DriverManager.getConnection("jdbc:calcite:");
+    CalciteConnection calciteConnection =
+        connection.unwrap(CalciteConnection.class);
+    SchemaPlus rootSchema = calciteConnection.getRootSchema();
+    rootSchema.add("DB1",
+        JdbcSchema.create(rootSchema, "DB1",
+            JdbcSchema.dataSource(db1, "org.hsqldb.jdbcDriver", "", ""),
+            null, null));
+    rootSchema.add("DB2",
+        JdbcSchema.create(rootSchema, "DB2",
+            JdbcSchema.dataSource(db2, "org.hsqldb.jdbcDriver", "", ""),
+            null, null, 0, 1, ImmutableMap.<String, String>of(),
+            new JdbcBatchWriter.Config(3, 2, 2, 3)));
+
+    final String sql = "insert into db2.table2\n"
+        + "select id, field1 from db1.table1";
+    Statement stmt3 = connection.createStatement();
+    ResultSet rs = stmt3.executeQuery("explain plan for " + sql);
+    assertThat(CalciteAssert.toString(rs).contains("JdbcBatchInsert"),
+        equalTo(true));
+    assertThat(stmt3.executeUpdate(sql), equalTo(7));
+    rs = stmt3.executeQuery("select count(*) as c, sum(id) as s\n"
+        + "from db2.table2");
+    assertThat(CalciteAssert.toString(rs), equalTo("C=7; S=21\n"));
+    connection.close();
+  }
+
+  /** Joins a small table in one database to a large table in another. Rather
+   * than reading the whole large table, Calcite reads the small table and
+   * queries the large one for the keys it finds. */
+  @Test public void testBindJoin() throws SQLException {
+    final String db1 = TempDb.INSTANCE.getUrl();
+    Connection c1 = DriverManager.getConnection(db1, "", "");
+    Statement stmt1 = c1.createStatement();
+    stmt1.execute("create table table1(id integer not null primary key, "
+        + "field1 varchar(10))");
+    for (int i = 0; i < 3; i++) {
+      stmt1.execute("insert into table1 values(" + (i * 100) + ", 'x')");
+    }
+    stmt1.execute("insert into table1 values(5000, 'y')");
+    c1.close();
+
+    final String db2 = TempDb.INSTANCE.getUrl();
+    Connection c2 = DriverManager.getConnection(db2, "", "");
+    c2.createStatement().execute("create table table2("
+        + "id integer not null primary key, field2 varchar(10))");
+    PreparedStatement insert =
+        c2.prepareStatement("insert into table2 values(?, ?)");
+    for (int i = 0; i < 1000; i++) {
+      insert.setInt(1, i);
+      insert.setString(2, "v" + i);
+      insert.addBatch();
+    }
+    insert.executeBatch();
+    c2.close();
+
+    Connection connection = DriverManager.getConnection("jdbc:calcite:");
+    CalciteConnection calciteConnection =
+        connection.unwrap(CalciteConnection.class);
+    SchemaPlus rootSchema = calciteConnection.getRootSchema();
+    rootSchema.add("DB1",
+        JdbcSchema.create(rootSchema, "DB1",
+            JdbcSchema.dataSource(db1, "org.hsqldb.jdbcDriver", "", ""),
+            null, null));
+    rootSchema.add("DB2",
+        JdbcSchema.create(rootSchema, "DB2",
+            JdbcSchema.dataSource(db2, "org.hsqldb.jdbcDriver", "", ""),
+            null, null));
+
+    // With statistics, the planner knows that TABLE2 is large.
+    StatisticsService.instance(rootSchema).analyze(
+        Schemas.createDataContext(connection, rootSchema),
+        rootSchema.getSubSchema("DB2"), "TABLE2");
+
+    final String sql = "select t1.id, t2.field2\n"
+        + "from db1.table1 as t1\n"
+        + "join db2.table2 as t2 on t1.id = t2.id";
+    Statement stmt3 = connection.createStatement();
+    ResultSet rs = stmt3.executeQuery("explain plan for " + sql);
+    assertThat(CalciteAssert.toString(rs).contains("JdbcBindJoin"), is(true));
+    rs = stmt3.executeQuery(sql + " order by t1.id");
+    assertThat(CalciteAssert.toString(rs),
+        equalTo("ID=0; FIELD2=v0\n"
+            + "ID=100; FIELD2=v100\n"
+            + "ID=200; FIELD2=v200\n"));
+    connection.close();
+  }
+
   /** Makes sure that {@link #test} is re-entrant.
    * Effectively a test for {@code TempDb}. */
   @Test public void test2() throws SQLException, ClassNotFoundException {
@@ -218,6 +337,46 @@ public class MultiJdbcSchemaJoinTest {
     c1.close();
   }
 
+  /** Tests that a schema with a metadata time-to-live finds a table by name
+   * without listing all tables, and re-uses the row types it has read. */
+  @Test public void testMetadataCache() throws Exception {
+    final String db = TempDb.INSTANCE.getUrl();
+    Connection c1 = DriverManager.getConnection(db, "", "");
+    Statement stmt1 = c1.createStatement();
+    stmt1.execute("create table table1(id varchar(10) not null primary key, "
+        + "field1 varchar(10))");
+
+    Connection connection = DriverManager.getConnection("jdbc:calcite:");
+    CalciteConnection calciteConnection =
+        connection.unwrap(CalciteConnection.class);
+    SchemaPlus rootSchema = calciteConnection.getRootSchema();
+    final DataSource ds =
+        JdbcSchema.dataSource(db, "org.hsqldb.jdbcDriver", "", "");
+    final JdbcSchema schema =
+        JdbcSchema.create(rootSchema, "DB", ds, null, null, 0, 1,
+            ImmutableMap.<String, String>of(), JdbcBatchWriter.Config.DEFAULT,
+            60000L);
+    schema.prefetch().get();
+    assertThat(schema.getTableNames().contains("TABLE1"), is(true));
+    assertThat(schema.snapshot(null), sameInstance((Schema) schema));
+
+    // Row type was read by the prefetch; a new column is not seen yet
+    stmt1.execute("alter table table1 add column field2 varchar(10)");
+    final JavaTypeFactoryImpl typeFactory = new JavaTypeFactoryImpl();
+    assertThat(schema.getTable("TABLE1").getRowType(typeFactory)
+        .getFieldCount(), is(2));
+
+    // A table created after the listing is found by name
+    stmt1.execute("create table table2(id varchar(10) not null primary key)");
+    assertThat(schema.getTable("TABLE2"), notNullValue());
+    assertThat(schema.getTable("TABLE2").getRowType(typeFactory)
+        .getFieldCount(), is(1));
+
+    // "_" in a name is not a wildcard
+    assertThat(schema.getTable("TABLE_"), nullValue());
+    c1.close();
+  }
+
   /** Pool of temporary databases. */
   static class TempDb {
     public static final TempDb INSTANCE = new TempDb();
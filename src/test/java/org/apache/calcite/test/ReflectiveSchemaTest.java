@@ -16,6 +16,7 @@
  */
 package org.apache.calcite.test;
 
+import org.apache.calcite.DataContext;
 import org.apache.calcite.adapter.java.ReflectiveSchema;
 import org.apache.calcite.avatica.util.DateTimeUtils;
 import org.apache.calcite.config.Lex;
@@ -30,15 +31,23 @@ import org.apache.calcite.linq4j.tree.Expressions;
 import org.apache.calcite.linq4j.tree.ParameterExpression;
 import org.apache.calcite.linq4j.tree.Primitive;
 import org.apache.calcite.linq4j.tree.Types;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.runtime.Hook;
+import org.apache.calcite.schema.ProjectableTable;
 import org.apache.calcite.schema.SchemaPlus;
+import org.apache.calcite.schema.Table;
 import org.apache.calcite.schema.impl.AbstractSchema;
+import org.apache.calcite.schema.impl.AbstractTable;
 import org.apache.calcite.schema.impl.TableMacroImpl;
 import org.apache.calcite.schema.impl.ViewTable;
+import org.apache.calcite.util.ImmutableIntList;
 import org.apache.calcite.util.Smalls;
 import org.apache.calcite.util.Util;
 
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 
 import org.junit.Assert;
 import org.junit.Ignore;
@@ -54,16 +63,19 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Time;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 import static org.apache.calcite.test.JdbcTest.Employee;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
@@ -749,6 +761,84 @@ public class ReflectiveSchemaTest {
     }
   }
 
+  /** Tests that scanning a table converts objects to rows, optionally
+   * reading only some of their fields; and that the interpreter pushes
+   * projects into the scan. */
+  @Test public void testScan() {
+    final ReflectiveSchema schema =
+        new ReflectiveSchema(new JdbcTest.HrSchema());
+    final ProjectableTable table =
+        (ProjectableTable) schema.getTable("emps");
+    final List<String> rows = new ArrayList<>();
+    for (Object[] row : table.scan(null)) {
+      rows.add(Arrays.toString(row));
+    }
+    assertThat(rows.get(0), is("[100, 10, Bill, 10000.0, 1000]"));
+    assertThat(rows.get(2), is("[150, 10, Sebastian, 7000.0, null]"));
+    rows.clear();
+    for (Object[] row : table.scan(null, new int[] {2, 0})) {
+      rows.add(Arrays.toString(row));
+    }
+    assertThat(rows.toString(),
+        is("[[Bill, 100], [Eric, 200], [Sebastian, 150], [Theodore, 110]]"));
+
+    // Employee is public, so its fields are read by generated code, not by
+    // reflection
+    final Function1<Object, Object[]> selector =
+        ReflectiveSchema.fieldSelector(Employee.class,
+            ImmutableIntList.of(2, 0));
+    assertThat(selector.getClass().getSimpleName(),
+        not(equalTo("FieldSelector")));
+    assertThat(
+        Arrays.toString(
+            selector.apply(new Employee(100, 10, "Bill", 10000, 1000))),
+        is("[Bill, 100]"));
+
+    final List<String> projects = new ArrayList<>();
+    final AbstractSchema schema2 =
+        new AbstractSchema() {
+          @Override protected Map<String, Table> getTableMap() {
+            return ImmutableMap.<String, Table>of("emps",
+                new RecordingTable(table, projects));
+          }
+        };
+    CalciteAssert.that()
+        .withSchema("s", schema2)
+        .query("select \"name\", \"empid\" from \"s\".\"emps\"")
+        .withProperty(Hook.ENABLE_BINDABLE, true)
+        .returnsUnordered("name=Bill; empid=100", "name=Eric; empid=200",
+            "name=Sebastian; empid=150", "name=Theodore; empid=110");
+    // The interpreter passed the projects to the scan
+    assertThat(projects.toString(), is("[[2, 0]]"));
+  }
+
+  /** Table that delegates to a {@link ProjectableTable}, and records the
+   * projects with which it is scanned. */
+  private static class RecordingTable extends AbstractTable
+      implements ProjectableTable {
+    private final ProjectableTable table;
+    private final List<String> scans;
+
+    RecordingTable(ProjectableTable table, List<String> scans) {
+      this.table = table;
+      this.scans = scans;
+    }
+
+    public RelDataType getRowType(RelDataTypeFactory typeFactory) {
+      return table.getRowType(typeFactory);
+    }
+
+    public Enumerable<Object[]> scan(DataContext root) {
+      scans.add("all");
+      return table.scan(root);
+    }
+
+    public Enumerable<Object[]> scan(DataContext root, int[] projects) {
+      scans.add(Arrays.toString(projects));
+      return table.scan(root, projects);
+    }
+  }
+
   /** Extension to {@link Employee} with a {@code hireDate} column. */
   public static class EmployeeWithHireDate extends Employee {
     public final java.sql.Date hireDate;
@@ -55,6 +55,7 @@ import org.apache.calcite.rel.logical.LogicalSort;
 import org.apache.calcite.rel.logical.LogicalTableScan;
 import org.apache.calcite.rel.logical.LogicalUnion;
 import org.apache.calcite.rel.logical.LogicalValues;
+import org.apache.calcite.rel.metadata.BuiltInMetadata;
 import org.apache.calcite.rel.metadata.CachingRelMetadataProvider;
 import org.apache.calcite.rel.metadata.ChainedRelMetadataProvider;
 import org.apache.calcite.rel.metadata.DefaultRelMetadataProvider;
@@ -66,9 +67,12 @@ import org.apache.calcite.rel.metadata.ReflectiveRelMetadataProvider;
 import org.apache.calcite.rel.metadata.RelColumnOrigin;
 import org.apache.calcite.rel.metadata.RelMdCollation;
 import org.apache.calcite.rel.metadata.RelMdUtil;
+import org.apache.calcite.rel.metadata.RelMetadataCache;
 import org.apache.calcite.rel.metadata.RelMetadataProvider;
 import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rel.metadata.UnboundMetadata;
 import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
 import org.apache.calcite.rex.RexBuilder;
 import org.apache.calcite.rex.RexCall;
 import org.apache.calcite.rex.RexInputRef;
@@ -77,6 +81,8 @@ import org.apache.calcite.rex.RexNode;
 import org.apache.calcite.rex.RexTableInputRef;
 import org.apache.calcite.rex.RexTableInputRef.RelTableRef;
 import org.apache.calcite.schema.SchemaPlus;
+import org.apache.calcite.schema.VersionedTable;
+import org.apache.calcite.schema.impl.AbstractTable;
 import org.apache.calcite.sql.SqlKind;
 import org.apache.calcite.sql.SqlOperator;
 import org.apache.calcite.sql.SqlSpecialOperator;
@@ -116,6 +122,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.hamcrest.CoreMatchers.endsWith;
 import static org.hamcrest.CoreMatchers.equalTo;
@@ -125,6 +133,7 @@ import static org.hamcrest.CoreMatchers.isA;
 import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.hamcrest.CoreMatchers.startsWith;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
@@ -1768,6 +1777,254 @@ public class RelMetadataTest extends SqlToRelTestBase {
     assertNull(r);
   }
 
+  /** Tests {@link JaninoRelMetadataProvider#generateAll}. Generating on one
+   * thread and on several produces a handler for each kind of metadata;
+   * generating again returns the same handlers, without compiling; and
+   * queries use the handlers that were generated ahead of time. */
+  @Test public void testGenerateAllHandlers() {
+    // Use new providers, so that no handlers have been generated yet.
+    final RelMetadataProvider inner =
+        ChainedRelMetadataProvider.of(
+            ImmutableList.<RelMetadataProvider>of(
+                DefaultRelMetadataProvider.INSTANCE));
+    final JaninoRelMetadataProvider serial =
+        JaninoRelMetadataProvider.of(inner);
+    final JaninoRelMetadataProvider parallel =
+        JaninoRelMetadataProvider.of(
+            ChainedRelMetadataProvider.of(
+                ImmutableList.of(inner)));
+    final ExecutorService executor1 = Executors.newSingleThreadExecutor();
+    final ExecutorService executorN =
+        Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    try {
+      final List<MetadataHandler> serialHandlers =
+          serial.generateAll(executor1);
+      final List<MetadataHandler> handlers = parallel.generateAll(executorN);
+      assertThat(handlers.size(), is(serialHandlers.size()));
+      final Set<MetadataDef> defs = new HashSet<>();
+      for (int i = 0; i < handlers.size(); i++) {
+        assertThat(handlers.get(i).getDef(),
+            is(serialHandlers.get(i).getDef()));
+        assertThat(defs.add(handlers.get(i).getDef()), is(true));
+      }
+      assertThat(defs.contains(BuiltInMetadata.RowCount.DEF), is(true));
+      assertThat(defs.contains(BuiltInMetadata.Predicates.DEF), is(true));
+
+      // Second time, handlers are already generated
+      final List<MetadataHandler> handlers2 = parallel.generateAll(executorN);
+      for (int i = 0; i < handlers.size(); i++) {
+        assertThat(handlers2.get(i), sameInstance(handlers.get(i)));
+      }
+    } finally {
+      executor1.shutdown();
+      executorN.shutdown();
+    }
+
+    final RelNode rel = convertSql("select * from emp where deptno = 10");
+    RelMetadataQuery.THREAD_PROVIDERS.set(parallel);
+    try {
+      final RelMetadataQuery mq = RelMetadataQuery.instance();
+      assertThat(mq.getRowCount(rel), notNullValue());
+      assertThat(mq.getPulledUpPredicates(rel).pulledUpPredicates.size(),
+          is(1));
+    } finally {
+      RelMetadataQuery.THREAD_PROVIDERS.remove();
+    }
+  }
+
+  /** Measures how long the first metadata calls of a query take with a
+   * provider whose handlers have not been generated ("cold"), and with one
+   * whose handlers were generated ahead of time by
+   * {@link JaninoRelMetadataProvider#generateAll}, as
+   * {@code -Dcalcite.metadata.warmUp=true} does at startup ("warm"). Prints
+   * the timings, and checks that the warm provider is faster. Runs only if
+   * {@link CalciteAssert#ENABLE_SLOW}.
+   *
+   * <p>The gain from {@code -Dcalcite.metadata.profile} cannot be measured in
+   * this JVM. It comes from registering classes before the first handler is
+   * generated, and registered classes are global, so earlier tests have
+   * already registered them. */
+  @Test public void testGenerateAllBenchmark() {
+    if (!CalciteAssert.ENABLE_SLOW) {
+      return;
+    }
+    final RelNode rel =
+        convertSql("select e.ename, d.name from emp as e\n"
+            + "join dept as d on e.deptno = d.deptno\n"
+            + "where e.sal > 1000");
+    final ExecutorService executor =
+        Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    try {
+      long coldTotal = 0;
+      long warmTotal = 0;
+      for (int i = 0; i < 5; i++) {
+        final long cold =
+            firstQueryNanos(JaninoRelMetadataProvider.of(newProvider()), rel);
+        final JaninoRelMetadataProvider warm =
+            JaninoRelMetadataProvider.of(newProvider());
+        final long t0 = System.nanoTime();
+        warm.generateAll(executor);
+        final long generate = System.nanoTime() - t0;
+        final long warmed = firstQueryNanos(warm, rel);
+        System.out.println("first metadata query: cold " + cold / 1000000
+            + "ms, warm " + warmed / 1000000
+            + "ms (generateAll " + generate / 1000000 + "ms)");
+        coldTotal += cold;
+        warmTotal += warmed;
+      }
+      assertThat(warmTotal < coldTotal, is(true));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /** Returns the time, in nanoseconds, that a new metadata query takes to
+   * compute the row count, predicates, unique keys, column origins and cost
+   * of an expression. */
+  private static long firstQueryNanos(JaninoRelMetadataProvider provider,
+      RelNode rel) {
+    RelMetadataQuery.THREAD_PROVIDERS.set(provider);
+    try {
+      final long t0 = System.nanoTime();
+      final RelMetadataQuery mq = RelMetadataQuery.instance();
+      mq.getRowCount(rel);
+      mq.getPulledUpPredicates(rel);
+      mq.getUniqueKeys(rel);
+      mq.getColumnOrigins(rel, 0);
+      mq.getCumulativeCost(rel);
+      return System.nanoTime() - t0;
+    } finally {
+      RelMetadataQuery.THREAD_PROVIDERS.remove();
+    }
+  }
+
+  /** Returns a provider that supplies the same metadata as
+   * {@link DefaultRelMetadataProvider} but is equal to no other provider, so
+   * no handlers have been generated for it. */
+  private static RelMetadataProvider newProvider() {
+    return new RelMetadataProvider() {
+      public <M extends Metadata> UnboundMetadata<M> apply(
+          Class<? extends RelNode> relClass,
+          Class<? extends M> metadataClass) {
+        return DefaultRelMetadataProvider.INSTANCE.apply(relClass,
+            metadataClass);
+      }
+
+      public <M extends Metadata> Multimap<Method, MetadataHandler<M>>
+      handlers(MetadataDef<M> def) {
+        return DefaultRelMetadataProvider.INSTANCE.handlers(def);
+      }
+    };
+  }
+
+  /** Tests that {@link RelMetadataCache} shares results between
+   * structurally identical expressions from different queries, and that
+   * entries are not found after a table's version changes. */
+  @Test public void testSharedMetadataCache() {
+    final VersionedEmpTable table = new VersionedEmpTable();
+    final SchemaPlus rootSchema = Frameworks.createRootSchema(true);
+    rootSchema.add("T", table);
+    rootSchema.add("U", new AbstractTable() {
+      public RelDataType getRowType(RelDataTypeFactory typeFactory) {
+        return table.getRowType(typeFactory);
+      }
+    });
+    final FrameworkConfig config =
+        Frameworks.newConfigBuilder().defaultSchema(rootSchema).build();
+    final Function<String, RelNode> filter =
+        new Function<String, RelNode>() {
+          public RelNode apply(String tableName) {
+            final RelBuilder b = RelBuilder.create(config);
+            return b.scan(tableName)
+                .filter(
+                    b.equals(b.field("DEPTNO"), b.literal(10)),
+                    b.call(SqlStdOperatorTable.GREATER_THAN, b.field("EMPNO"),
+                        b.literal(100)))
+                .build();
+          }
+        };
+    final RelNode rel1 = filter.apply("T");
+    final RelNode rel2 = filter.apply("T");
+    final RelNode rel3 = RelBuilder.create(config).scan("T").build();
+    assertThat(rel1 == rel2, is(false));
+    assertThat(RelMetadataCache.digest(rel1),
+        is(RelMetadataCache.digest(rel2)));
+    // U is not versioned, so its expressions are not cached
+    assertThat(RelMetadataCache.digest(filter.apply("U")), nullValue());
+
+    final RelMetadataCache cache = new RelMetadataCache(1000);
+    final RelOptPredicateList list1 =
+        RelMetadataQuery.instance(cache).getPulledUpPredicates(rel1);
+    final long misses = cache.stats().missCount();
+    assertThat(misses > 0, is(true));
+    assertThat(cache.stats().hitCount(), is(0L));
+
+    final RelOptPredicateList list2 =
+        RelMetadataQuery.instance(cache).getPulledUpPredicates(rel2);
+    assertThat(list2.pulledUpPredicates.toString(),
+        is(list1.pulledUpPredicates.toString()));
+    assertThat(cache.stats().hitCount(), is(1L));
+    assertThat(cache.stats().missCount(), is(misses));
+
+    // A different query misses at the top, but shares the table scan
+    RelMetadataQuery.instance(cache).getPulledUpPredicates(rel3);
+    assertThat(cache.stats().hitCount(), is(2L));
+
+    // Kinds of metadata other than predicates are cached too
+    final Double rowCount1 = RelMetadataQuery.instance(cache).getRowCount(rel1);
+    final long hits = cache.stats().hitCount();
+    assertThat(RelMetadataQuery.instance(cache).getRowCount(rel2),
+        is(rowCount1));
+    assertThat(cache.stats().hitCount(), is(hits + 1));
+
+    // After the table changes, its entries are no longer found
+    table.version++;
+    RelMetadataQuery.instance(cache).getRowCount(rel2);
+    assertThat(cache.stats().hitCount(), is(hits + 1));
+
+    // Without a cache, nothing is shared
+    final long misses2 = cache.stats().missCount();
+    RelMetadataQuery.instance().getRowCount(rel1);
+    assertThat(cache.stats().missCount(), is(misses2));
+
+    // A query whose metadata provider is different does not see the results
+    // of the default provider
+    final long hits2 = cache.stats().hitCount();
+    RelMetadataQuery.THREAD_PROVIDERS.set(
+        JaninoRelMetadataProvider.of(
+            ChainedRelMetadataProvider.of(
+                ImmutableList.<RelMetadataProvider>of(
+                    DefaultRelMetadataProvider.INSTANCE))));
+    try {
+      RelMetadataQuery.instance(cache).getRowCount(rel1);
+      assertThat(cache.stats().hitCount(), is(hits2));
+      assertThat(cache.stats().missCount() > misses2, is(true));
+    } finally {
+      RelMetadataQuery.THREAD_PROVIDERS.remove();
+    }
+    RelMetadataQuery.instance(cache).getRowCount(rel1);
+    assertThat(cache.stats().hitCount(), is(hits2 + 1));
+  }
+
+  /** Table with the columns of EMP whose version can be changed by a
+   * test. */
+  private static class VersionedEmpTable extends AbstractTable
+      implements VersionedTable {
+    long version;
+
+    public RelDataType getRowType(RelDataTypeFactory typeFactory) {
+      return typeFactory.builder()
+          .add("EMPNO", SqlTypeName.INTEGER)
+          .add("ENAME", SqlTypeName.VARCHAR, 20)
+          .add("DEPTNO", SqlTypeName.INTEGER)
+          .build();
+    }
+
+    public long getVersion() {
+      return version;
+    }
+  }
+
   @Test public void testAllPredicates() {
     final Project rel = (Project) convertSql("select * from emp, dept");
     final Join join = (Join) rel.getInput();